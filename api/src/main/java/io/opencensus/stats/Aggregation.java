@@ -25,12 +25,13 @@ import javax.annotation.concurrent.Immutable;
  * {@link Aggregation} is the process of combining a certain set of {@code MeasureValue}s for a
  * given {@code Measure} into an {@link AggregationData}.
  *
- * <p>{@link Aggregation} currently supports 4 types of basic aggregation:
+ * <p>{@link Aggregation} currently supports 5 types of basic aggregation:
  *
  * <ul>
  *   <li>Sum
  *   <li>Count
  *   <li>Distribution
+ *   <li>ExponentialDistribution
  *   <li>LastValue
  * </ul>
  *
@@ -203,6 +204,89 @@ public abstract class Aggregation {
     }
   }
 
+  /**
+   * Calculate distribution stats on aggregated {@code MeasureValue}s, using a histogram with
+   * exponentially growing buckets instead of explicit bucket boundaries.
+   *
+   * <p>Each bucket is wider than the previous one by a constant factor, chosen so that any value
+   * in a bucket is within the requested relative error of the bucket's midpoint. The range of the
+   * histogram follows the recorded values. If the values span more than {@link #getMaxBuckets()}
+   * buckets, neighboring buckets are merged, which doubles the bucket width (and so the relative
+   * error) each time.
+   *
+   * <p>Values that are zero, negative or NaN are counted in a separate zero bucket.
+   *
+   * @since 0.29
+   */
+  @Immutable
+  @AutoValue
+  public abstract static class ExponentialDistribution extends Aggregation {
+
+    /**
+     * The maximum number of buckets used by {@link #create(double)}.
+     *
+     * @since 0.29
+     */
+    public static final int DEFAULT_MAX_BUCKETS = 160;
+
+    ExponentialDistribution() {}
+
+    /**
+     * Construct an {@code ExponentialDistribution} with at most {@link #DEFAULT_MAX_BUCKETS}
+     * buckets.
+     *
+     * @param relativeError the targeted relative error of the histogram buckets, between 0 and 1
+     *     exclusive. For example {@code 0.01} for 1%.
+     * @return a new {@code ExponentialDistribution}.
+     * @since 0.29
+     */
+    public static ExponentialDistribution create(double relativeError) {
+      return create(relativeError, DEFAULT_MAX_BUCKETS);
+    }
+
+    /**
+     * Construct an {@code ExponentialDistribution}.
+     *
+     * @param relativeError the targeted relative error of the histogram buckets, between 0 and 1
+     *     exclusive. For example {@code 0.01} for 1%.
+     * @param maxBuckets the maximum number of histogram buckets, not counting the zero bucket.
+     * @return a new {@code ExponentialDistribution}.
+     * @since 0.29
+     */
+    public static ExponentialDistribution create(double relativeError, int maxBuckets) {
+      Utils.checkArgument(
+          relativeError > 0 && relativeError < 1, "relativeError should be between 0 and 1.");
+      Utils.checkArgument(maxBuckets >= 2, "maxBuckets should be at least 2.");
+      return new AutoValue_Aggregation_ExponentialDistribution(relativeError, maxBuckets);
+    }
+
+    /**
+     * Returns the targeted relative error of the histogram buckets.
+     *
+     * @return the targeted relative error of the histogram buckets.
+     * @since 0.29
+     */
+    public abstract double getRelativeError();
+
+    /**
+     * Returns the maximum number of histogram buckets, not counting the zero bucket.
+     *
+     * @return the maximum number of histogram buckets.
+     * @since 0.29
+     */
+    public abstract int getMaxBuckets();
+
+    @Override
+    public final <T> T match(
+        Function<? super Sum, T> p0,
+        Function<? super Count, T> p1,
+        Function<? super Distribution, T> p2,
+        Function<? super LastValue, T> p3,
+        Function<? super Aggregation, T> defaultFunction) {
+      return defaultFunction.apply(this);
+    }
+  }
+
   /**
    * Calculate the last value of aggregated {@code MeasureValue}s.
    *
@@ -29,13 +29,14 @@ import javax.annotation.concurrent.Immutable;
  * {@link AggregationData} is the result of applying a given {@link Aggregation} to a set of {@code
  * MeasureValue}s.
  *
- * <p>{@link AggregationData} currently supports 6 types of basic aggregation values:
+ * <p>{@link AggregationData} currently supports 7 types of basic aggregation values:
  *
  * <ul>
  *   <li>SumDataDouble
  *   <li>SumDataLong
  *   <li>CountData
  *   <li>DistributionData
+ *   <li>ExponentialDistributionData
  *   <li>LastValueDataDouble
  *   <li>LastValueDataLong
  * </ul>
@@ -444,6 +445,127 @@ public abstract class AggregationData {
     }
   }
 
+  /**
+   * The distribution stats of aggregated {@code MeasureValue}s, for an {@link
+   * Aggregation.ExponentialDistribution}. Distribution stats include mean, count, exponential
+   * histogram and sum of squared deviations.
+   *
+   * <p>The histogram buckets grow by a factor of {@code base = 2^(2^-scale)}. The bucket at
+   * position {@code i} of {@link #getBucketCounts()} counts the values in {@code [base^(offset + i),
+   * base^(offset + i + 1))}, where {@code offset} is {@link #getIndexOffset()}. Histograms with a
+   * different scale can be merged by first lowering the higher scale: lowering the scale by one
+   * merges each pair of buckets {@code 2k} and {@code 2k + 1} into bucket {@code k}.
+   *
+   * @since 0.29
+   */
+  @Immutable
+  @AutoValue
+  public abstract static class ExponentialDistributionData extends AggregationData {
+
+    ExponentialDistributionData() {}
+
+    /**
+     * Creates an {@code ExponentialDistributionData}.
+     *
+     * @param mean mean value.
+     * @param count count value.
+     * @param sumOfSquaredDeviations sum of squared deviations.
+     * @param scale the scale of the histogram buckets.
+     * @param zeroCount the number of values that are zero, negative or NaN.
+     * @param indexOffset the index of the first histogram bucket.
+     * @param bucketCounts histogram bucket counts, starting at {@code indexOffset}.
+     * @return an {@code ExponentialDistributionData}.
+     * @since 0.29
+     */
+    public static ExponentialDistributionData create(
+        double mean,
+        long count,
+        double sumOfSquaredDeviations,
+        int scale,
+        long zeroCount,
+        int indexOffset,
+        List<Long> bucketCounts) {
+      Utils.checkArgument(zeroCount >= 0, "zeroCount should be non-negative.");
+      List<Long> bucketCountsCopy =
+          Collections.unmodifiableList(
+              new ArrayList<Long>(Utils.checkNotNull(bucketCounts, "bucketCounts")));
+      for (Long bucketCount : bucketCountsCopy) {
+        Utils.checkNotNull(bucketCount, "bucketCount");
+      }
+      return new AutoValue_AggregationData_ExponentialDistributionData(
+          mean, count, sumOfSquaredDeviations, scale, zeroCount, indexOffset, bucketCountsCopy);
+    }
+
+    /**
+     * Returns the aggregated mean.
+     *
+     * @return the aggregated mean.
+     * @since 0.29
+     */
+    public abstract double getMean();
+
+    /**
+     * Returns the aggregated count.
+     *
+     * @return the aggregated count.
+     * @since 0.29
+     */
+    public abstract long getCount();
+
+    /**
+     * Returns the aggregated sum of squared deviations.
+     *
+     * @return the aggregated sum of squared deviations.
+     * @since 0.29
+     */
+    public abstract double getSumOfSquaredDeviations();
+
+    /**
+     * Returns the scale of the histogram buckets. Buckets grow by a factor of {@code 2^(2^-scale)}.
+     *
+     * @return the scale of the histogram buckets.
+     * @since 0.29
+     */
+    public abstract int getScale();
+
+    /**
+     * Returns the number of values that are zero, negative or NaN.
+     *
+     * @return the number of values that are zero, negative or NaN.
+     * @since 0.29
+     */
+    public abstract long getZeroCount();
+
+    /**
+     * Returns the index of the first histogram bucket.
+     *
+     * @return the index of the first histogram bucket.
+     * @since 0.29
+     */
+    public abstract int getIndexOffset();
+
+    /**
+     * Returns the aggregated bucket counts, starting at {@link #getIndexOffset()}. The returned
+     * list is immutable, trying to update it will throw an {@code UnsupportedOperationException}.
+     *
+     * @return the aggregated bucket counts.
+     * @since 0.29
+     */
+    public abstract List<Long> getBucketCounts();
+
+    @Override
+    public final <T> T match(
+        Function<? super SumDataDouble, T> p0,
+        Function<? super SumDataLong, T> p1,
+        Function<? super CountData, T> p2,
+        Function<? super DistributionData, T> p3,
+        Function<? super LastValueDataDouble, T> p4,
+        Function<? super LastValueDataLong, T> p5,
+        Function<? super AggregationData, T> defaultFunction) {
+      return defaultFunction.apply(this);
+    }
+  }
+
   /**
    * The last value of aggregated {@code MeasureValueDouble}s.
    *
@@ -323,6 +323,13 @@ public abstract class ViewData {
                   aggregationData);
               return null;
             }
+            if (arg instanceof Aggregation.ExponentialDistribution) {
+              throwIfAggregationMismatch(
+                  aggregationData instanceof AggregationData.ExponentialDistributionData,
+                  aggregation,
+                  aggregationData);
+              return null;
+            }
             throw new AssertionError();
           }
         });
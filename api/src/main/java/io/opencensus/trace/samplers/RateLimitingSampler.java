@@ -0,0 +1,144 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.trace.samplers;
+
+import io.opencensus.internal.Utils;
+import io.opencensus.trace.Sampler;
+import io.opencensus.trace.Span;
+import io.opencensus.trace.SpanContext;
+import io.opencensus.trace.SpanId;
+import io.opencensus.trace.TraceId;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Samples at most a given number of new traces per second for each span name, with a token bucket
+ * per span name that holds up to one second of traces. Spans with a sampled parent or parent link
+ * are always sampled and do not take a token.
+ *
+ * <p>Each bucket is a single {@link AtomicLong}, the time until which its tokens are spent, so
+ * taking a token is one compare-and-set.
+ */
+@ThreadSafe
+final class RateLimitingSampler extends Sampler {
+  // Bounds the number of buckets. Spans with more names share a single bucket.
+  private static final int MAX_SPAN_NAMES = 1000;
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final double maxTracesPerSecond;
+  private final long nanosPerTrace;
+  // How long a bucket takes to fill up.
+  private final long capacityNanos;
+  private final ConcurrentMap<String, AtomicLong> buckets =
+      new ConcurrentHashMap<String, AtomicLong>();
+  private final AtomicLong otherSpanNamesBucket;
+
+  private RateLimitingSampler(double maxTracesPerSecond, long nowNanos) {
+    this.maxTracesPerSecond = maxTracesPerSecond;
+    this.nanosPerTrace = (long) (NANOS_PER_SECOND / maxTracesPerSecond);
+    this.capacityNanos = Math.max(nanosPerTrace, NANOS_PER_SECOND);
+    this.otherSpanNamesBucket = new AtomicLong(nowNanos - capacityNanos);
+  }
+
+  /**
+   * Returns a new {@link RateLimitingSampler}.
+   *
+   * @param maxTracesPerSecond the maximum number of new traces sampled per second for each span
+   *     name. Must be positive.
+   * @return a new {@link RateLimitingSampler}.
+   * @throws IllegalArgumentException if {@code maxTracesPerSecond} is not positive.
+   */
+  static RateLimitingSampler create(double maxTracesPerSecond) {
+    return create(maxTracesPerSecond, System.nanoTime());
+  }
+
+  // Visible for testing.
+  static RateLimitingSampler create(double maxTracesPerSecond, long nowNanos) {
+    Utils.checkArgument(maxTracesPerSecond > 0, "maxTracesPerSecond must be positive");
+    return new RateLimitingSampler(maxTracesPerSecond, nowNanos);
+  }
+
+  @Override
+  public boolean shouldSample(
+      @Nullable SpanContext parentContext,
+      @Nullable Boolean hasRemoteParent,
+      TraceId traceId,
+      SpanId spanId,
+      String name,
+      @Nullable List<Span> parentLinks) {
+    // If the parent is sampled keep the sampling decision.
+    if (parentContext != null && parentContext.getTraceOptions().isSampled()) {
+      return true;
+    }
+    if (parentLinks != null) {
+      // If any parent link is sampled keep the sampling decision.
+      for (Span parentLink : parentLinks) {
+        if (parentLink.getContext().getTraceOptions().isSampled()) {
+          return true;
+        }
+      }
+    }
+    return trySampleTrace(name, System.nanoTime());
+  }
+
+  // Takes a token from the bucket of the span name, if there is one. Visible for testing.
+  boolean trySampleTrace(String name, long nowNanos) {
+    AtomicLong bucket = getBucket(name, nowNanos);
+    // Time is compared by subtraction, as System.nanoTime may overflow.
+    long fullUntil = nowNanos - capacityNanos;
+    while (true) {
+      long spentUntil = bucket.get();
+      // The bucket does not hold more tokens than its capacity.
+      long next = (spentUntil - fullUntil < 0 ? fullUntil : spentUntil) + nanosPerTrace;
+      if (next - nowNanos > 0) {
+        return false;
+      }
+      if (bucket.compareAndSet(spentUntil, next)) {
+        return true;
+      }
+    }
+  }
+
+  private AtomicLong getBucket(String name, long nowNanos) {
+    AtomicLong bucket = buckets.get(name);
+    if (bucket != null) {
+      return bucket;
+    }
+    if (buckets.size() >= MAX_SPAN_NAMES) {
+      return otherSpanNamesBucket;
+    }
+    // A new bucket is full.
+    AtomicLong newBucket = new AtomicLong(nowNanos - capacityNanos);
+    bucket = buckets.putIfAbsent(name, newBucket);
+    return bucket != null ? bucket : newBucket;
+  }
+
+  @Override
+  public String getDescription() {
+    return String.format("RateLimitingSampler{%.6f}", maxTracesPerSecond);
+  }
+
+  @Override
+  public String toString() {
+    return getDescription();
+  }
+}
@@ -62,4 +62,22 @@ public final class Samplers {
   public static Sampler probabilitySampler(double probability) {
     return ProbabilitySampler.create(probability);
   }
+
+  /**
+   * Returns a {@link Sampler} that makes a "yes" decision for at most a given number of new traces
+   * per second for each span name, and always for a {@link Span} with a sampled parent.
+   *
+   * <p>Unlike {@link #probabilitySampler(double)}, it bounds the number of sampled traces when the
+   * number of requests grows.
+   *
+   * @param maxTracesPerSecond the maximum number of new traces sampled per second for each span
+   *     name. Must be positive.
+   * @return a {@code Sampler} that samples at most {@code maxTracesPerSecond} new traces per
+   *     second for each span name.
+   * @throws IllegalArgumentException if {@code maxTracesPerSecond} is not positive.
+   * @since 0.29
+   */
+  public static Sampler rateLimitingSampler(double maxTracesPerSecond) {
+    return RateLimitingSampler.create(maxTracesPerSecond);
+  }
 }
@@ -27,6 +27,7 @@ import io.opencensus.metrics.data.AttachmentValue.AttachmentValueString;
 import io.opencensus.metrics.data.Exemplar;
 import io.opencensus.stats.AggregationData.CountData;
 import io.opencensus.stats.AggregationData.DistributionData;
+import io.opencensus.stats.AggregationData.ExponentialDistributionData;
 import io.opencensus.stats.AggregationData.LastValueDataDouble;
 import io.opencensus.stats.AggregationData.LastValueDataLong;
 import io.opencensus.stats.AggregationData.MeanData;
@@ -105,6 +106,33 @@ public class AggregationDataTest {
         1, 1, 0, Arrays.asList(0L, 1L, 1L), Collections.<Exemplar>singletonList(null));
   }
 
+  @Test
+  public void testCreateExponentialDistributionData() {
+    ExponentialDistributionData distributionData =
+        ExponentialDistributionData.create(7.5, 4, 11.5, 3, 1, -2, Arrays.asList(1L, 0L, 2L));
+    assertThat(distributionData.getMean()).isWithin(TOLERANCE).of(7.5);
+    assertThat(distributionData.getCount()).isEqualTo(4);
+    assertThat(distributionData.getSumOfSquaredDeviations()).isWithin(TOLERANCE).of(11.5);
+    assertThat(distributionData.getScale()).isEqualTo(3);
+    assertThat(distributionData.getZeroCount()).isEqualTo(1);
+    assertThat(distributionData.getIndexOffset()).isEqualTo(-2);
+    assertThat(distributionData.getBucketCounts()).containsExactly(1L, 0L, 2L).inOrder();
+  }
+
+  @Test
+  public void preventNullExponentialBucketCountList() {
+    thrown.expect(NullPointerException.class);
+    thrown.expectMessage("bucketCounts");
+    ExponentialDistributionData.create(1, 1, 0, 0, 0, 0, null);
+  }
+
+  @Test
+  public void preventNegativeZeroCount() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("zeroCount should be non-negative.");
+    ExponentialDistributionData.create(1, 1, 0, 0, -1, 0, Arrays.asList(1L));
+  }
+
   @Test
   public void testEquals() {
     new EqualsTester()
@@ -125,6 +153,13 @@ public class AggregationDataTest {
         .addEqualityGroup(MeanData.create(-5.0, 1), MeanData.create(-5.0, 1))
         .addEqualityGroup(LastValueDataDouble.create(20.0), LastValueDataDouble.create(20.0))
         .addEqualityGroup(LastValueDataLong.create(20), LastValueDataLong.create(20))
+        .addEqualityGroup(
+            ExponentialDistributionData.create(10, 10, 0, 2, 0, 5, Arrays.asList(10L)),
+            ExponentialDistributionData.create(10, 10, 0, 2, 0, 5, Arrays.asList(10L)))
+        .addEqualityGroup(
+            ExponentialDistributionData.create(10, 10, 0, 2, 0, 4, Arrays.asList(10L)))
+        .addEqualityGroup(
+            ExponentialDistributionData.create(10, 10, 0, 1, 0, 5, Arrays.asList(10L)))
         .testEquals();
   }
 
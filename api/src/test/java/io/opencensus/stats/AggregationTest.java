@@ -22,6 +22,7 @@ import com.google.common.testing.EqualsTester;
 import io.opencensus.common.Functions;
 import io.opencensus.stats.Aggregation.Count;
 import io.opencensus.stats.Aggregation.Distribution;
+import io.opencensus.stats.Aggregation.ExponentialDistribution;
 import io.opencensus.stats.Aggregation.LastValue;
 import io.opencensus.stats.Aggregation.Mean;
 import io.opencensus.stats.Aggregation.Sum;
@@ -54,6 +55,33 @@ public class AggregationTest {
     Distribution.create(null);
   }
 
+  @Test
+  public void testCreateExponentialDistribution() {
+    ExponentialDistribution distribution = ExponentialDistribution.create(0.01, 50);
+    assertThat(distribution.getRelativeError()).isEqualTo(0.01);
+    assertThat(distribution.getMaxBuckets()).isEqualTo(50);
+  }
+
+  @Test
+  public void testCreateExponentialDistribution_DefaultMaxBuckets() {
+    assertThat(ExponentialDistribution.create(0.01).getMaxBuckets())
+        .isEqualTo(ExponentialDistribution.DEFAULT_MAX_BUCKETS);
+  }
+
+  @Test
+  public void testCreateExponentialDistribution_InvalidRelativeError() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("relativeError should be between 0 and 1.");
+    ExponentialDistribution.create(1.0);
+  }
+
+  @Test
+  public void testCreateExponentialDistribution_InvalidMaxBuckets() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("maxBuckets should be at least 2.");
+    ExponentialDistribution.create(0.01, 1);
+  }
+
   @Test
   public void testEquals() {
     new EqualsTester()
@@ -68,6 +96,10 @@ public class AggregationTest {
             Distribution.create(BucketBoundaries.create(Arrays.asList(1.0, 2.0, 5.0))))
         .addEqualityGroup(Mean.create(), Mean.create())
         .addEqualityGroup(LastValue.create(), LastValue.create())
+        .addEqualityGroup(
+            ExponentialDistribution.create(0.01),
+            ExponentialDistribution.create(0.01, ExponentialDistribution.DEFAULT_MAX_BUCKETS))
+        .addEqualityGroup(ExponentialDistribution.create(0.01, 20))
         .testEquals();
   }
 
@@ -79,7 +111,8 @@ public class AggregationTest {
             Count.create(),
             Mean.create(),
             Distribution.create(BucketBoundaries.create(Arrays.asList(-10.0, 1.0, 5.0))),
-            LastValue.create());
+            LastValue.create(),
+            ExponentialDistribution.create(0.01));
 
     List<String> actual = new ArrayList<String>();
     for (Aggregation aggregation : aggregations) {
@@ -93,6 +126,7 @@ public class AggregationTest {
     }
 
     assertThat(actual)
-        .isEqualTo(Arrays.asList("SUM", "COUNT", "UNKNOWN", "DISTRIBUTION", "LASTVALUE"));
+        .isEqualTo(
+            Arrays.asList("SUM", "COUNT", "UNKNOWN", "DISTRIBUTION", "LASTVALUE", "UNKNOWN"));
   }
 }
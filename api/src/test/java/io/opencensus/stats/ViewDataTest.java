@@ -217,6 +217,26 @@ public final class ViewDataTest {
     aggregationAndAggregationDataMismatch(createView(Mean.create()), ENTRIES);
   }
 
+  @Test
+  public void preventAggregationAndAggregationDataMismatch_ExponentialDistribution_Distribution() {
+    aggregationAndAggregationDataMismatch(
+        createView(Aggregation.ExponentialDistribution.create(0.01)), ENTRIES);
+  }
+
+  @Test
+  public void testExponentialDistributionViewData() {
+    View view = createView(Aggregation.ExponentialDistribution.create(0.01));
+    Map<List<TagValue>, AggregationData> entries =
+        ImmutableMap.<List<TagValue>, AggregationData>of(
+            Arrays.asList(V1, V2),
+            AggregationData.ExponentialDistributionData.create(
+                1, 1, 0, 6, 0, 0, Arrays.asList(1L)));
+    CumulativeData cumulativeData =
+        CumulativeData.create(Timestamp.fromMillis(1000), Timestamp.fromMillis(2000));
+    ViewData viewData = ViewData.create(view, entries, cumulativeData);
+    assertThat(viewData.getAggregationMap()).isEqualTo(entries);
+  }
+
   @Test
   public void preventAggregationAndAggregationDataMismatch_Distribution_Count() {
     aggregationAndAggregationDataMismatch(
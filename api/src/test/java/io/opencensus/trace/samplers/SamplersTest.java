@@ -30,6 +30,7 @@ import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -278,4 +279,112 @@ public class SamplersTest {
   public void probabilitySampler_ToString() {
     assertThat(Samplers.probabilitySampler(0.5).toString()).contains("0.5");
   }
+
+  @Test
+  public void rateLimitingSampler_SampledParent() {
+    Sampler sampler = Samplers.rateLimitingSampler(1);
+    for (int i = 0; i < NUM_SAMPLE_TRIES; i++) {
+      assertThat(
+              sampler.shouldSample(
+                  sampledSpanContext,
+                  false,
+                  traceId,
+                  spanId,
+                  SPAN_NAME,
+                  Collections.<Span>emptyList()))
+          .isTrue();
+    }
+  }
+
+  @Test
+  public void rateLimitingSampler_SampledParentLink() {
+    Sampler sampler = Samplers.rateLimitingSampler(1);
+    for (int i = 0; i < NUM_SAMPLE_TRIES; i++) {
+      assertThat(
+              sampler.shouldSample(
+                  notSampledSpanContext,
+                  false,
+                  traceId,
+                  spanId,
+                  SPAN_NAME,
+                  Collections.singletonList(sampledSpan)))
+          .isTrue();
+    }
+  }
+
+  @Test
+  public void rateLimitingSampler_LimitsNewTraces() {
+    Sampler sampler = Samplers.rateLimitingSampler(1);
+    int sampled = 0;
+    for (int i = 0; i < NUM_SAMPLE_TRIES; i++) {
+      if (sampler.shouldSample(
+          notSampledSpanContext,
+          false,
+          traceId,
+          spanId,
+          SPAN_NAME,
+          Collections.<Span>emptyList())) {
+        sampled++;
+      }
+    }
+    // One trace per second, the loop may take just over a second on a slow machine.
+    assertThat(sampled).isAtLeast(1);
+    assertThat(sampled).isAtMost(2);
+  }
+
+  @Test
+  public void rateLimitingSampler_RefillsOverTime() {
+    long nowNanos = 1234567;
+    RateLimitingSampler sampler = RateLimitingSampler.create(2, nowNanos);
+    assertThat(sampler.trySampleTrace(SPAN_NAME, nowNanos)).isTrue();
+    assertThat(sampler.trySampleTrace(SPAN_NAME, nowNanos)).isTrue();
+    assertThat(sampler.trySampleTrace(SPAN_NAME, nowNanos)).isFalse();
+    nowNanos += TimeUnit.MILLISECONDS.toNanos(499);
+    assertThat(sampler.trySampleTrace(SPAN_NAME, nowNanos)).isFalse();
+    nowNanos += TimeUnit.MILLISECONDS.toNanos(1);
+    assertThat(sampler.trySampleTrace(SPAN_NAME, nowNanos)).isTrue();
+    assertThat(sampler.trySampleTrace(SPAN_NAME, nowNanos)).isFalse();
+    // Tokens do not accumulate beyond one second of traces.
+    nowNanos += TimeUnit.SECONDS.toNanos(10);
+    assertThat(sampler.trySampleTrace(SPAN_NAME, nowNanos)).isTrue();
+    assertThat(sampler.trySampleTrace(SPAN_NAME, nowNanos)).isTrue();
+    assertThat(sampler.trySampleTrace(SPAN_NAME, nowNanos)).isFalse();
+  }
+
+  @Test
+  public void rateLimitingSampler_LimitsEachSpanName() {
+    long nowNanos = 0;
+    RateLimitingSampler sampler = RateLimitingSampler.create(1, nowNanos);
+    assertThat(sampler.trySampleTrace(SPAN_NAME, nowNanos)).isTrue();
+    assertThat(sampler.trySampleTrace(SPAN_NAME, nowNanos)).isFalse();
+    assertThat(sampler.trySampleTrace("Another name", nowNanos)).isTrue();
+    assertThat(sampler.trySampleTrace("Another name", nowNanos)).isFalse();
+  }
+
+  @Test
+  public void rateLimitingSampler_LessThanOneTracePerSecond() {
+    long nowNanos = 0;
+    RateLimitingSampler sampler = RateLimitingSampler.create(0.5, nowNanos);
+    assertThat(sampler.trySampleTrace(SPAN_NAME, nowNanos)).isTrue();
+    nowNanos += TimeUnit.SECONDS.toNanos(1);
+    assertThat(sampler.trySampleTrace(SPAN_NAME, nowNanos)).isFalse();
+    nowNanos += TimeUnit.SECONDS.toNanos(1);
+    assertThat(sampler.trySampleTrace(SPAN_NAME, nowNanos)).isTrue();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rateLimitingSampler_ZeroRate() {
+    Samplers.rateLimitingSampler(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rateLimitingSampler_NegativeRate() {
+    Samplers.rateLimitingSampler(-1);
+  }
+
+  @Test
+  public void rateLimitingSampler_getDescription() {
+    assertThat(Samplers.rateLimitingSampler(10).getDescription())
+        .isEqualTo(String.format("RateLimitingSampler{%.6f}", 10.0));
+  }
 }
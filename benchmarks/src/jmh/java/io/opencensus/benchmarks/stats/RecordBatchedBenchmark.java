@@ -38,7 +38,7 @@ public class RecordBatchedBenchmark {
     @Param({"0", "1", "2", "3", "6", "8"})
     int numValues;
 
-    @Param({"impl", "impl-lite"})
+    @Param({"impl", "impl-sync", "impl-lite"})
     String implementation;
 
     private StatsRecorder recorder;
@@ -49,7 +49,7 @@ public class RecordBatchedBenchmark {
     public void setup() throws Exception {
       ViewManager manager = StatsBenchmarksUtil.getViewManager(implementation);
       recorder = StatsBenchmarksUtil.getStatsRecorder(implementation);
-      tagger = TagsBenchmarksUtil.getTagger(implementation);
+      tagger = StatsBenchmarksUtil.getTagger(implementation);
       tags = TagsBenchmarksUtil.createTagContext(tagger.emptyBuilder(), 1);
       for (int i = 0; i < numValues; i++) {
         manager.registerView(StatsBenchmarksUtil.DOUBLE_COUNT_VIEWS[i]);
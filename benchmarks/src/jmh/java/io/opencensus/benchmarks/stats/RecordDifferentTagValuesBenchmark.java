@@ -41,7 +41,7 @@ public class RecordDifferentTagValuesBenchmark {
     @Param({"0", "1", "2", "3", "6", "8"})
     int numTags;
 
-    @Param({"impl", "impl-lite"})
+    @Param({"impl", "impl-sync", "impl-lite"})
     String implementation;
 
     private StatsRecorder recorder;
@@ -53,7 +53,7 @@ public class RecordDifferentTagValuesBenchmark {
     public void setup() throws Exception {
       manager = StatsBenchmarksUtil.getViewManager(implementation);
       recorder = StatsBenchmarksUtil.getStatsRecorder(implementation);
-      tagger = TagsBenchmarksUtil.getTagger(implementation);
+      tagger = StatsBenchmarksUtil.getTagger(implementation);
       contexts = createContexts(numTags);
       manager.registerView(StatsBenchmarksUtil.DOUBLE_COUNT_VIEWS[0]);
       manager.registerView(StatsBenchmarksUtil.LONG_COUNT_VIEWS[0]);
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.benchmarks.stats;
+
+import io.opencensus.benchmarks.tags.TagsBenchmarksUtil;
+import io.opencensus.stats.Aggregation;
+import io.opencensus.stats.BucketBoundaries;
+import io.opencensus.stats.Measure;
+import io.opencensus.stats.MeasureMap;
+import io.opencensus.stats.StatsRecorder;
+import io.opencensus.stats.ViewManager;
+import io.opencensus.tags.TagContext;
+import io.opencensus.tags.Tagger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks for recording into distribution views with different bucket boundaries. */
+public class RecordDistributionBenchmark {
+  // Values recorded in turn, spread over the whole range of the boundaries.
+  private static final int NUM_VALUES = 64;
+
+  @State(org.openjdk.jmh.annotations.Scope.Benchmark)
+  public static class Data {
+    @Param({"0", "8", "20", "40", "60", "100"})
+    int numBoundaries;
+
+    @Param({"linear", "exponential", "explicit"})
+    String layout;
+
+    @Param({"impl-sync", "impl-lite"})
+    String implementation;
+
+    private StatsRecorder recorder;
+    private TagContext tagContext;
+    private Measure.MeasureDouble measure;
+    private double[] values;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+      ViewManager manager = StatsBenchmarksUtil.getViewManager(implementation);
+      recorder = StatsBenchmarksUtil.getStatsRecorder(implementation);
+      Tagger tagger = StatsBenchmarksUtil.getTagger(implementation);
+      tagContext =
+          tagger
+              .emptyBuilder()
+              .put(
+                  TagsBenchmarksUtil.TAG_KEYS.get(0),
+                  TagsBenchmarksUtil.TAG_VALUES.get(0),
+                  TagsBenchmarksUtil.UNLIMITED_PROPAGATION)
+              .build();
+      String name = "Distribution_" + layout + "_" + numBoundaries;
+      measure = Measure.MeasureDouble.create(name + "_MD", "", "ns");
+      List<Double> boundaries = createBoundaries(layout, numBoundaries);
+      manager.registerView(
+          StatsBenchmarksUtil.createView(
+              name,
+              measure,
+              Aggregation.Distribution.create(BucketBoundaries.create(boundaries)),
+              TagsBenchmarksUtil.TAG_KEYS.get(0)));
+      double max = boundaries.isEmpty() ? 1.0 : boundaries.get(boundaries.size() - 1) * 1.1;
+      values = new double[NUM_VALUES];
+      for (int i = 0; i < NUM_VALUES; i++) {
+        values[i] = max * i / NUM_VALUES;
+      }
+    }
+
+    private double nextValue() {
+      double value = values[next];
+      next = (next + 1) % NUM_VALUES;
+      return value;
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public MeasureMap recordDistribution(Data data) {
+    MeasureMap map = data.recorder.newMeasureMap();
+    map.put(data.measure, data.nextValue()).record(data.tagContext);
+    return map;
+  }
+
+  // Linear boundaries are 10, 20, 30, ...; exponential ones 1, 2, 4, ...; explicit ones follow
+  // no pattern, like hand-picked latency boundaries.
+  private static List<Double> createBoundaries(String layout, int size) {
+    List<Double> boundaries = new ArrayList<Double>(size);
+    double boundary = 0.0;
+    for (int i = 0; i < size; i++) {
+      if (layout.equals("linear")) {
+        boundary = 10.0 * (i + 1);
+      } else if (layout.equals("exponential")) {
+        boundary = Math.pow(2, i);
+      } else if (layout.equals("explicit")) {
+        boundary += 1.0 + (i * 7) % 5;
+      } else {
+        throw new RuntimeException("Invalid bucket boundaries layout specified.");
+      }
+      boundaries.add(boundary);
+    }
+    return boundaries;
+  }
+}
@@ -41,7 +41,7 @@ public class RecordMultipleViewsBenchmark {
     @Param({"0", "1", "2", "3", "6", "8"})
     int numViews;
 
-    @Param({"impl", "impl-lite"})
+    @Param({"impl", "impl-sync", "impl-lite"})
     String implementation;
 
     private StatsRecorder recorder;
@@ -52,7 +52,7 @@ public class RecordMultipleViewsBenchmark {
     public void setup() throws Exception {
       ViewManager manager = StatsBenchmarksUtil.getViewManager(implementation);
       recorder = StatsBenchmarksUtil.getStatsRecorder(implementation);
-      tagger = TagsBenchmarksUtil.getTagger(implementation);
+      tagger = StatsBenchmarksUtil.getTagger(implementation);
       tagContext = createContext(numViews);
 
       for (int i = 0; i < numViews; i++) {
@@ -18,7 +18,9 @@ package io.opencensus.benchmarks.stats;
 
 import static io.opencensus.benchmarks.tags.TagsBenchmarksUtil.TAG_KEYS;
 
+import io.opencensus.benchmarks.tags.TagsBenchmarksUtil;
 import io.opencensus.impl.stats.StatsComponentImpl;
+import io.opencensus.implcore.stats.StatsComponentOptions;
 import io.opencensus.impllite.stats.StatsComponentImplLite;
 import io.opencensus.stats.Aggregation;
 import io.opencensus.stats.BucketBoundaries;
@@ -27,11 +29,15 @@ import io.opencensus.stats.StatsRecorder;
 import io.opencensus.stats.View;
 import io.opencensus.stats.ViewManager;
 import io.opencensus.tags.TagKey;
+import io.opencensus.tags.Tagger;
 import java.util.Arrays;
 
 /** Util class for Benchmarks. */
 final class StatsBenchmarksUtil {
-  private static final StatsComponentImpl statsComponentImpl = new StatsComponentImpl();
+  private static final StatsComponentImpl statsComponentImpl =
+      new StatsComponentImpl(StatsComponentOptions.DEFAULT);
+  private static final StatsComponentImpl statsComponentImplSync =
+      new StatsComponentImpl(StatsComponentOptions.builder().setRecordSynchronously(true).build());
   private static final StatsComponentImplLite statsComponentImplLite = new StatsComponentImplLite();
 
   private static final int MEASURES = 8;
@@ -86,6 +92,9 @@ final class StatsBenchmarksUtil {
       // TODO(bdrutu): Make everything not be a singleton (disruptor, etc.) and use a new
       // TraceComponentImpl similar to TraceComponentImplLite.
       return statsComponentImpl.getStatsRecorder();
+    } else if (implementation.equals("impl-sync")) {
+      // Same as "impl", but records on the calling thread instead of the Disruptor thread.
+      return statsComponentImplSync.getStatsRecorder();
     } else if (implementation.equals("impl-lite")) {
       return statsComponentImplLite.getStatsRecorder();
     } else {
@@ -100,6 +109,8 @@ final class StatsBenchmarksUtil {
       // TODO(bdrutu): Make everything not be a singleton (disruptor, etc.) and use a new
       // TraceComponentImpl similar to TraceComponentImplLite.
       return statsComponentImpl.getViewManager();
+    } else if (implementation.equals("impl-sync")) {
+      return statsComponentImplSync.getViewManager();
     } else if (implementation.equals("impl-lite")) {
       return statsComponentImplLite.getViewManager();
     } else {
@@ -107,6 +118,12 @@ final class StatsBenchmarksUtil {
     }
   }
 
+  static Tagger getTagger(String implementation) {
+    // The tags implementation does not depend on how stats are recorded.
+    return TagsBenchmarksUtil.getTagger(
+        implementation.equals("impl-sync") ? "impl" : implementation);
+  }
+
   private static View[] createViews(
       int size, Measure[] measures, Aggregation aggregation, TagKey... keys) {
     View[] views = new View[size];
@@ -18,6 +18,7 @@ package io.opencensus.benchmarks.trace;
 
 import static com.google.common.base.Preconditions.checkState;
 
+import io.opencensus.implcore.trace.RecordEventsSpanImpl;
 import io.opencensus.trace.AttributeValue;
 import io.opencensus.trace.BlankSpan;
 import io.opencensus.trace.Link;
@@ -43,12 +44,15 @@ public class RecordTraceEventsBenchmark {
   private static final String ANNOTATION_DESCRIPTION = "MyAnnotation";
   private static final String ATTRIBUTE_KEY = "MyAttributeKey";
   private static final String ATTRIBUTE_VALUE = "MyAttributeValue";
+  // Number of each kind of event recorded on the span converted to SpanData.
+  private static final int NUM_EVENTS = 16;
 
   @State(Scope.Benchmark)
   public static class Data {
 
     private Span linkedSpan = BlankSpan.INSTANCE;
     private Span span = BlankSpan.INSTANCE;
+    private Span spanWithEvents = BlankSpan.INSTANCE;
 
     @Param({"impl", "impl-lite"})
     String implementation;
@@ -69,6 +73,18 @@ public class RecordTraceEventsBenchmark {
               .spanBuilderWithExplicitParent(SPAN_NAME, null)
               .setSampler(sampled ? Samplers.alwaysSample() : Samplers.neverSample())
               .startSpan();
+      spanWithEvents =
+          tracer
+              .spanBuilderWithExplicitParent(SPAN_NAME, null)
+              .setSampler(sampled ? Samplers.alwaysSample() : Samplers.neverSample())
+              .startSpan();
+      for (int i = 0; i < NUM_EVENTS; i++) {
+        spanWithEvents.putAttribute(
+            ATTRIBUTE_KEY + i, AttributeValue.stringAttributeValue(ATTRIBUTE_VALUE));
+        spanWithEvents.addAnnotation(ANNOTATION_DESCRIPTION);
+        spanWithEvents.addMessageEvent(
+            io.opencensus.trace.MessageEvent.builder(Type.RECEIVED, i).build());
+      }
     }
 
     @TearDown
@@ -77,6 +93,7 @@ public class RecordTraceEventsBenchmark {
       checkState(span != BlankSpan.INSTANCE, "Uninitialized span");
       linkedSpan.end();
       span.end();
+      spanWithEvents.end();
     }
   }
 
@@ -119,4 +136,18 @@ public class RecordTraceEventsBenchmark {
         Link.fromSpanContext(data.linkedSpan.getContext(), Link.Type.PARENT_LINKED_SPAN));
     return data.span;
   }
+
+  /**
+   * This benchmark attempts to measure performance of converting a span with attributes,
+   * annotations and network events to {@code SpanData}.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public Object toSpanData(Data data) {
+    if (data.spanWithEvents instanceof RecordEventsSpanImpl) {
+      return ((RecordEventsSpanImpl) data.spanWithEvents).toSpanData();
+    }
+    return data.spanWithEvents;
+  }
 }
@@ -345,6 +345,9 @@ final class StatszZPageHandler extends ZPageHandler {
                     if (arg instanceof Aggregation.Mean) {
                       return "Mean";
                     }
+                    if (arg instanceof Aggregation.ExponentialDistribution) {
+                      return "Exponential Distribution";
+                    }
                     throw new AssertionError();
                   }
                 });
@@ -437,7 +440,8 @@ final class StatszZPageHandler extends ZPageHandler {
                 // we need to continue supporting Mean, since it could still be used by users and
                 // some
                 // deprecated RPC views.
-                if (arg instanceof Aggregation.Mean) {
+                if (arg instanceof Aggregation.Mean
+                    || arg instanceof Aggregation.ExponentialDistribution) {
                   formatter.format("<th>%s, %s</th>", TABLE_HEADER_MEAN, unit);
                   formatter.format("<th class=\"borderL\">%s</th>", TABLE_HEADER_COUNT);
                   return null;
@@ -525,6 +529,13 @@ final class StatszZPageHandler extends ZPageHandler {
                   formatter.format("<td class=\"borderLL\">%d</td>", meanData.getCount());
                   return null;
                 }
+                if (arg instanceof AggregationData.ExponentialDistributionData) {
+                  AggregationData.ExponentialDistributionData distributionData =
+                      (AggregationData.ExponentialDistributionData) arg;
+                  formatter.format("<td>%.3f</td>", distributionData.getMean());
+                  formatter.format("<td class=\"borderLL\">%d</td>", distributionData.getCount());
+                  return null;
+                }
                 throw new IllegalArgumentException("Unknown Aggregation.");
               }
             });
@@ -19,15 +19,26 @@ package io.opencensus.exporter.stats.stackdriver;
 import static io.opencensus.exporter.stats.stackdriver.StackdriverExportUtils.MAX_BATCH_EXPORT_SIZE;
 
 import com.google.api.MonitoredResource;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
 import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
 import com.google.cloud.monitoring.v3.MetricServiceClient;
-import com.google.common.collect.Lists;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.monitoring.v3.CreateTimeSeriesRequest;
 import com.google.monitoring.v3.ProjectName;
 import com.google.monitoring.v3.TimeSeries;
+import com.google.protobuf.Empty;
 import io.opencensus.exporter.metrics.util.MetricExporter;
 import io.opencensus.metrics.LabelKey;
 import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.LongCumulative;
+import io.opencensus.metrics.LongCumulative.LongPoint;
+import io.opencensus.metrics.MetricOptions;
+import io.opencensus.metrics.Metrics;
 import io.opencensus.metrics.export.Metric;
 import io.opencensus.trace.Span;
 import io.opencensus.trace.Status;
@@ -35,70 +46,238 @@ import io.opencensus.trace.Tracer;
 import io.opencensus.trace.Tracing;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/*
+ * Converts the metrics to TimeSeries with a TimeSeriesCache, and sends them in CreateTimeSeries
+ * requests of at most MAX_BATCH_EXPORT_SIZE TimeSeries with the async client, so that the next
+ * batch is converted while the previous ones are in flight. At most maxConcurrentRequests requests
+ * are in flight, and the export returns once all of them completed.
+ */
 final class CreateTimeSeriesExporter extends MetricExporter {
   private static final Tracer tracer = Tracing.getTracer();
   private static final Logger logger = Logger.getLogger(CreateTimeSeriesExporter.class.getName());
 
+  // A request that fails with a retryable error is sent up to MAX_ATTEMPTS times, after an
+  // exponential backoff with jitter.
+  @VisibleForTesting static final int MAX_ATTEMPTS = 3;
+  @VisibleForTesting static final long INITIAL_BACKOFF_MILLIS = 100;
+  private static final Random random = new Random();
+  private static final ScheduledThreadPoolExecutor retryExecutor = newRetryExecutor();
+
+  private static final LongCumulative requests =
+      addLongCumulative(
+          "oc_exporter_stackdriver_stats_requests", "Number of CreateTimeSeries requests.", "1");
+  private static final LongCumulative requestLatency =
+      addLongCumulative(
+          "oc_exporter_stackdriver_stats_request_latency",
+          "Total time spent in CreateTimeSeries requests, including their retries.",
+          "ms");
+  private static final LongCumulative requestRetries =
+      addLongCumulative(
+          "oc_exporter_stackdriver_stats_request_retries",
+          "Number of retried CreateTimeSeries requests.",
+          "1");
+  private static final LongCumulative requestFailures =
+      addLongCumulative(
+          "oc_exporter_stackdriver_stats_request_failures",
+          "Number of CreateTimeSeries requests that failed, after their retries.",
+          "1");
+  private static final LongPoint requestsPoint =
+      requests.getOrCreateTimeSeries(Collections.<LabelValue>emptyList());
+  private static final LongPoint requestLatencyPoint =
+      requestLatency.getOrCreateTimeSeries(Collections.<LabelValue>emptyList());
+  private static final LongPoint requestRetriesPoint =
+      requestRetries.getOrCreateTimeSeries(Collections.<LabelValue>emptyList());
+  private static final LongPoint requestFailuresPoint =
+      requestFailures.getOrCreateTimeSeries(Collections.<LabelValue>emptyList());
+
   private final ProjectName projectName;
   private final MetricServiceClient metricServiceClient;
-  private final MonitoredResource monitoredResource;
-  private final String domain;
-  private final Map<LabelKey, LabelValue> constantLabels;
+  private final TimeSeriesCache timeSeriesCache;
+  private final int maxConcurrentRequests;
 
   CreateTimeSeriesExporter(
       String projectId,
       MetricServiceClient metricServiceClient,
       MonitoredResource monitoredResource,
       @javax.annotation.Nullable String metricNamePrefix,
-      Map<LabelKey, LabelValue> constantLabels) {
+      Map<LabelKey, LabelValue> constantLabels,
+      int maxConcurrentRequests) {
     projectName = ProjectName.newBuilder().setProject(projectId).build();
     this.metricServiceClient = metricServiceClient;
-    this.monitoredResource = monitoredResource;
-    this.domain = StackdriverExportUtils.getDomain(metricNamePrefix);
-    this.constantLabels = constantLabels;
+    this.timeSeriesCache =
+        new TimeSeriesCache(
+            monitoredResource,
+            StackdriverExportUtils.getDomain(metricNamePrefix),
+            projectId,
+            constantLabels);
+    this.maxConcurrentRequests = maxConcurrentRequests;
   }
 
   @Override
   public void export(Collection<Metric> metrics) {
-    List<TimeSeries> timeSeriesList = new ArrayList<>(metrics.size());
-    for (Metric metric : metrics) {
-      timeSeriesList.addAll(
-          StackdriverExportUtils.createTimeSeriesList(
-              metric, monitoredResource, domain, projectName.getProject(), constantLabels));
+    Span span = tracer.getCurrentSpan();
+    Semaphore inFlightRequests = new Semaphore(maxConcurrentRequests);
+    try {
+      List<TimeSeries> batch = new ArrayList<>(MAX_BATCH_EXPORT_SIZE);
+      for (Metric metric : metrics) {
+        for (TimeSeries timeSeries : timeSeriesCache.createTimeSeriesList(metric)) {
+          batch.add(timeSeries);
+          if (batch.size() == MAX_BATCH_EXPORT_SIZE) {
+            send(batch, span, inFlightRequests);
+            batch = new ArrayList<>(MAX_BATCH_EXPORT_SIZE);
+          }
+        }
+      }
+      // The series that are no longer exported are removed from the cache.
+      timeSeriesCache.evictUnused();
+      if (!batch.isEmpty()) {
+        send(batch, span, inFlightRequests);
+      }
+      // Waits for the requests in flight.
+      inFlightRequests.acquire(maxConcurrentRequests);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.log(Level.WARNING, "Interrupted while exporting TimeSeries.", e);
+      span.setStatus(Status.CANCELLED.withDescription("Interrupted while exporting TimeSeries."));
     }
+  }
 
-    Span span = tracer.getCurrentSpan();
-    for (List<TimeSeries> batchedTimeSeries :
-        Lists.partition(timeSeriesList, MAX_BATCH_EXPORT_SIZE)) {
+  // Waits for a request to complete if maxConcurrentRequests are in flight, then sends the batch.
+  private void send(List<TimeSeries> batch, Span span, Semaphore inFlightRequests)
+      throws InterruptedException {
+    inFlightRequests.acquire();
+    CreateTimeSeriesRequest request =
+        CreateTimeSeriesRequest.newBuilder()
+            .setName(projectName.toString())
+            .addAllTimeSeries(batch)
+            .build();
+    new CreateTimeSeriesCall(request, span, inFlightRequests).run();
+  }
+
+  // The error codes of CreateTimeSeries requests that were not processed, and can be sent again.
+  // The client does not retry them as CreateTimeSeries is not idempotent.
+  @VisibleForTesting
+  static boolean isRetryable(ApiException e) {
+    return e.isRetryable()
+        || e.getStatusCode().getCode() == StatusCode.Code.UNAVAILABLE
+        || e.getStatusCode().getCode() == StatusCode.Code.RESOURCE_EXHAUSTED;
+  }
+
+  // Returns a random backoff between 0.5 and 1.5 times the exponential backoff, so that the
+  // requests that failed together are not retried together.
+  @VisibleForTesting
+  static long backoffMillis(int attempts, double jitter) {
+    return (long) ((INITIAL_BACKOFF_MILLIS << (attempts - 1)) * (0.5 + jitter));
+  }
+
+  private static ScheduledThreadPoolExecutor newRetryExecutor() {
+    ScheduledThreadPoolExecutor executor =
+        new ScheduledThreadPoolExecutor(
+            1,
+            new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("OpenCensus.StackdriverStatsRetry-%d")
+                .build());
+    // The thread is only kept while there are retries.
+    executor.setKeepAliveTime(60, TimeUnit.SECONDS);
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private static LongCumulative addLongCumulative(String name, String description, String unit) {
+    return Metrics.getMetricRegistry()
+        .addLongCumulative(
+            name,
+            MetricOptions.builder()
+                .setDescription(description)
+                .setUnit(unit)
+                .setLabelKeys(Collections.<LabelKey>emptyList())
+                .build());
+  }
+
+  // A CreateTimeSeries request, with its retries. Holds a permit of inFlightRequests until it
+  // succeeds or fails for good.
+  private final class CreateTimeSeriesCall implements Runnable, ApiFutureCallback<Empty> {
+    private final CreateTimeSeriesRequest request;
+    private final Span span;
+    private final Semaphore inFlightRequests;
+    private final long startNanos = System.nanoTime();
+    private int attempts = 0;
+
+    private CreateTimeSeriesCall(
+        CreateTimeSeriesRequest request, Span span, Semaphore inFlightRequests) {
+      this.request = request;
+      this.span = span;
+      this.inFlightRequests = inFlightRequests;
+    }
+
+    // Sends an attempt of the request.
+    @Override
+    public void run() {
+      attempts++;
       span.addAnnotation("Export Stackdriver TimeSeries.");
+      ApiFuture<Empty> future;
       try {
-        CreateTimeSeriesRequest request =
-            CreateTimeSeriesRequest.newBuilder()
-                .setName(projectName.toString())
-                .addAllTimeSeries(batchedTimeSeries)
-                .build();
-        metricServiceClient.createTimeSeries(request);
-        span.addAnnotation("Finish exporting TimeSeries.");
-      } catch (ApiException e) {
+        future = metricServiceClient.createTimeSeriesCallable().futureCall(request);
+      } catch (Throwable e) {
+        onFailure(e);
+        return;
+      }
+      ApiFutures.addCallback(future, this, MoreExecutors.directExecutor());
+    }
+
+    @Override
+    public void onSuccess(Empty result) {
+      span.addAnnotation("Finish exporting TimeSeries.");
+      complete();
+    }
+
+    @Override
+    public void onFailure(Throwable e) {
+      if (e instanceof ApiException && isRetryable((ApiException) e) && attempts < MAX_ATTEMPTS) {
+        try {
+          retryExecutor.schedule(
+              this, backoffMillis(attempts, random.nextDouble()), TimeUnit.MILLISECONDS);
+          requestRetriesPoint.add(1);
+          return;
+        } catch (RejectedExecutionException rejected) {
+          // Reported as a failure below.
+        }
+      }
+      requestFailuresPoint.add(1);
+      if (e instanceof ApiException) {
         logger.log(Level.WARNING, "ApiException thrown when exporting TimeSeries.", e);
         span.setStatus(
-            Status.CanonicalCode.valueOf(e.getStatusCode().getCode().name())
+            Status.CanonicalCode.valueOf(((ApiException) e).getStatusCode().getCode().name())
                 .toStatus()
                 .withDescription(
                     "ApiException thrown when exporting TimeSeries: "
                         + StackdriverExportUtils.exceptionMessage(e)));
-      } catch (Throwable e) {
+      } else {
         logger.log(Level.WARNING, "Exception thrown when exporting TimeSeries.", e);
         span.setStatus(
             Status.UNKNOWN.withDescription(
                 "Exception thrown when exporting TimeSeries: "
                     + StackdriverExportUtils.exceptionMessage(e)));
       }
+      complete();
+    }
+
+    private void complete() {
+      requestsPoint.add(1);
+      requestLatencyPoint.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+      inFlightRequests.release();
     }
   }
 }
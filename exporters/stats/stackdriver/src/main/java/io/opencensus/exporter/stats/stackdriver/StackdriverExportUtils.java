@@ -293,15 +293,10 @@ final class StackdriverExportUtils {
     List<TimeSeries> timeSeriesList = Lists.newArrayList();
     io.opencensus.metrics.export.MetricDescriptor metricDescriptor = metric.getMetricDescriptor();
 
-    if (!projectId.equals(cachedProjectIdForExemplar)) {
-      cachedProjectIdForExemplar = projectId;
-    }
+    updateCachedProjectIdForExemplar(projectId);
 
     // Shared fields for all TimeSeries generated from the same Metric
-    TimeSeries.Builder shared = TimeSeries.newBuilder();
-    shared.setMetricKind(createMetricKind(metricDescriptor.getType()));
-    shared.setResource(monitoredResource);
-    shared.setValueType(createValueType(metricDescriptor.getType()));
+    TimeSeries.Builder shared = createSharedTimeSeriesBuilder(metricDescriptor, monitoredResource);
 
     // Each entry in timeSeriesList will be converted into an independent TimeSeries object
     for (io.opencensus.metrics.export.TimeSeries timeSeries : metric.getTimeSeriesList()) {
@@ -309,16 +304,38 @@ final class StackdriverExportUtils {
       TimeSeries.Builder builder = shared.clone();
       builder.setMetric(
           createMetric(metricDescriptor, timeSeries.getLabelValues(), domain, constantLabels));
-
-      io.opencensus.common.Timestamp startTimeStamp = timeSeries.getStartTimestamp();
-      for (io.opencensus.metrics.export.Point point : timeSeries.getPoints()) {
-        builder.addPoints(createPoint(point, startTimeStamp));
-      }
+      addPoints(builder, timeSeries);
       timeSeriesList.add(builder.build());
     }
     return timeSeriesList;
   }
 
+  static void updateCachedProjectIdForExemplar(String projectId) {
+    if (!projectId.equals(cachedProjectIdForExemplar)) {
+      cachedProjectIdForExemplar = projectId;
+    }
+  }
+
+  // Create a TimeSeries builder with the fields shared by all TimeSeries of a Metric.
+  static TimeSeries.Builder createSharedTimeSeriesBuilder(
+      io.opencensus.metrics.export.MetricDescriptor metricDescriptor,
+      MonitoredResource monitoredResource) {
+    TimeSeries.Builder shared = TimeSeries.newBuilder();
+    shared.setMetricKind(createMetricKind(metricDescriptor.getType()));
+    shared.setResource(monitoredResource);
+    shared.setValueType(createValueType(metricDescriptor.getType()));
+    return shared;
+  }
+
+  // Convert the points of an OpenCensus TimeSeries and add them to the TimeSeries builder.
+  static void addPoints(
+      TimeSeries.Builder builder, io.opencensus.metrics.export.TimeSeries timeSeries) {
+    io.opencensus.common.Timestamp startTimeStamp = timeSeries.getStartTimestamp();
+    for (io.opencensus.metrics.export.Point point : timeSeries.getPoints()) {
+      builder.addPoints(createPoint(point, startTimeStamp));
+    }
+  }
+
   // Create a Metric using the LabelKeys and LabelValues.
   @VisibleForTesting
   static Metric createMetric(
@@ -49,6 +49,7 @@ public abstract class StackdriverStatsConfiguration {
   static final String DEFAULT_PROJECT_ID =
       Strings.nullToEmpty(ServiceOptions.getDefaultProjectId());
   static final Duration DEFAULT_DEADLINE = Duration.create(60, 0);
+  static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
 
   StackdriverStatsConfiguration() {}
 
@@ -131,6 +132,16 @@ public abstract class StackdriverStatsConfiguration {
   @Nullable
   public abstract MetricServiceStub getMetricServiceStub();
 
+  /**
+   * Returns the maximum number of {@code CreateTimeSeries} requests in flight during an export.
+   *
+   * <p>Default value is 4.
+   *
+   * @return the maximum number of {@code CreateTimeSeries} requests in flight.
+   * @since 0.29
+   */
+  public abstract int getMaxConcurrentRequests();
+
   /**
    * Returns a new {@link Builder}.
    *
@@ -143,7 +154,8 @@ public abstract class StackdriverStatsConfiguration {
         .setConstantLabels(DEFAULT_CONSTANT_LABELS)
         .setExportInterval(DEFAULT_INTERVAL)
         .setMonitoredResource(DEFAULT_RESOURCE)
-        .setDeadline(DEFAULT_DEADLINE);
+        .setDeadline(DEFAULT_DEADLINE)
+        .setMaxConcurrentRequests(DEFAULT_MAX_CONCURRENT_REQUESTS);
   }
 
   /**
@@ -258,12 +270,25 @@ public abstract class StackdriverStatsConfiguration {
      */
     public abstract Builder setMetricServiceStub(MetricServiceStub stub);
 
+    /**
+     * Sets the maximum number of {@code CreateTimeSeries} requests in flight during an export. The
+     * TimeSeries of an export are sent in requests of at most 200 TimeSeries.
+     *
+     * @param maxConcurrentRequests the maximum number of {@code CreateTimeSeries} requests in
+     *     flight.
+     * @return this
+     * @since 0.29
+     */
+    public abstract Builder setMaxConcurrentRequests(int maxConcurrentRequests);
+
     abstract String getProjectId();
 
     abstract Map<LabelKey, LabelValue> getConstantLabels();
 
     abstract Duration getDeadline();
 
+    abstract int getMaxConcurrentRequests();
+
     abstract StackdriverStatsConfiguration autoBuild();
 
     /**
@@ -285,6 +310,8 @@ public abstract class StackdriverStatsConfiguration {
         Preconditions.checkNotNull(constantLabel.getValue(), "constant label value");
       }
       Preconditions.checkArgument(getDeadline().compareTo(ZERO) > 0, "Deadline must be positive.");
+      Preconditions.checkArgument(
+          getMaxConcurrentRequests() > 0, "Max concurrent requests must be positive.");
       return autoBuild();
     }
   }
@@ -21,6 +21,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static io.opencensus.exporter.stats.stackdriver.StackdriverExportUtils.DEFAULT_CONSTANT_LABELS;
 import static io.opencensus.exporter.stats.stackdriver.StackdriverStatsConfiguration.DEFAULT_DEADLINE;
+import static io.opencensus.exporter.stats.stackdriver.StackdriverStatsConfiguration.DEFAULT_MAX_CONCURRENT_REQUESTS;
 import static io.opencensus.exporter.stats.stackdriver.StackdriverStatsConfiguration.DEFAULT_PROJECT_ID;
 import static io.opencensus.exporter.stats.stackdriver.StackdriverStatsConfiguration.DEFAULT_RESOURCE;
 
@@ -95,7 +96,8 @@ public final class StackdriverStatsExporter {
       MonitoredResource monitoredResource,
       @Nullable String metricNamePrefix,
       @Nullable String displayNamePrefix,
-      Map<LabelKey, LabelValue> constantLabels) {
+      Map<LabelKey, LabelValue> constantLabels,
+      int maxConcurrentRequests) {
     IntervalMetricReader.Options.Builder intervalMetricReaderOptionsBuilder =
         IntervalMetricReader.Options.builder();
     intervalMetricReaderOptionsBuilder.setExportInterval(exportInterval);
@@ -112,7 +114,8 @@ public final class StackdriverStatsExporter {
                     metricServiceClient,
                     monitoredResource,
                     metricNamePrefix,
-                    constantLabels)),
+                    constantLabels,
+                    maxConcurrentRequests)),
             MetricReader.create(
                 MetricReader.Options.builder()
                     .setMetricProducerManager(
@@ -150,7 +153,8 @@ public final class StackdriverStatsExporter {
         null,
         DEFAULT_CONSTANT_LABELS,
         DEFAULT_DEADLINE,
-        null);
+        null,
+        DEFAULT_MAX_CONCURRENT_REQUESTS);
   }
 
   /**
@@ -189,7 +193,8 @@ public final class StackdriverStatsExporter {
         null,
         DEFAULT_CONSTANT_LABELS,
         DEFAULT_DEADLINE,
-        null);
+        null,
+        DEFAULT_MAX_CONCURRENT_REQUESTS);
   }
 
   /**
@@ -231,7 +236,8 @@ public final class StackdriverStatsExporter {
         configuration.getDisplayNamePrefix(),
         configuration.getConstantLabels(),
         configuration.getDeadline(),
-        configuration.getMetricServiceStub());
+        configuration.getMetricServiceStub(),
+        configuration.getMaxConcurrentRequests());
   }
 
   /**
@@ -299,7 +305,8 @@ public final class StackdriverStatsExporter {
         null,
         DEFAULT_CONSTANT_LABELS,
         DEFAULT_DEADLINE,
-        null);
+        null,
+        DEFAULT_MAX_CONCURRENT_REQUESTS);
   }
 
   /**
@@ -337,7 +344,8 @@ public final class StackdriverStatsExporter {
         null,
         DEFAULT_CONSTANT_LABELS,
         DEFAULT_DEADLINE,
-        null);
+        null,
+        DEFAULT_MAX_CONCURRENT_REQUESTS);
   }
 
   /**
@@ -375,7 +383,8 @@ public final class StackdriverStatsExporter {
         null,
         DEFAULT_CONSTANT_LABELS,
         DEFAULT_DEADLINE,
-        null);
+        null,
+        DEFAULT_MAX_CONCURRENT_REQUESTS);
   }
 
   // Use createInternal() (instead of constructor) to enforce singleton.
@@ -388,7 +397,8 @@ public final class StackdriverStatsExporter {
       @Nullable String displayNamePrefix,
       Map<LabelKey, LabelValue> constantLabels,
       Duration deadline,
-      @Nullable MetricServiceStub stub)
+      @Nullable MetricServiceStub stub,
+      int maxConcurrentRequests)
       throws IOException {
     synchronized (monitor) {
       checkState(instance == null, "Stackdriver stats exporter is already created.");
@@ -404,7 +414,8 @@ public final class StackdriverStatsExporter {
               monitoredResource,
               metricNamePrefix,
               displayNamePrefix,
-              constantLabels);
+              constantLabels,
+              maxConcurrentRequests);
     }
   }
 
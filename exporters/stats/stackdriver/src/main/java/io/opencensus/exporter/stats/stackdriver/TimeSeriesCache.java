@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.exporter.stats.stackdriver;
+
+import com.google.api.MonitoredResource;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.monitoring.v3.TimeSeries;
+import io.opencensus.metrics.LabelKey;
+import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.export.Metric;
+import io.opencensus.metrics.export.MetricDescriptor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Converts Metrics to TimeSeries like StackdriverExportUtils.createTimeSeriesList, but keeps the
+ * TimeSeries without points (metric type and labels, resource, kind and value type) of each metric
+ * descriptor and label values, so that an export only converts the points of the series it already
+ * exported. The series that were not converted since the previous call to evictUnused are removed
+ * by evictUnused, which is called at the end of each export.
+ */
+final class TimeSeriesCache {
+  private final MonitoredResource monitoredResource;
+  private final String domain;
+  private final String projectId;
+  private final Map<LabelKey, LabelValue> constantLabels;
+
+  // The series of each metric descriptor, keyed by their label values.
+  private final Map<MetricDescriptor, Map<List<LabelValue>, Entry>> entries = new HashMap<>();
+  // Incremented by evictUnused; the entries converted since then have this generation.
+  private long generation;
+
+  TimeSeriesCache(
+      MonitoredResource monitoredResource,
+      String domain,
+      String projectId,
+      Map<LabelKey, LabelValue> constantLabels) {
+    this.monitoredResource = monitoredResource;
+    this.domain = domain;
+    this.projectId = projectId;
+    this.constantLabels = constantLabels;
+  }
+
+  // Convert metric's timeseries to a list of TimeSeries, reusing the cached TimeSeries without
+  // points of the series that were already converted.
+  synchronized List<TimeSeries> createTimeSeriesList(Metric metric) {
+    StackdriverExportUtils.updateCachedProjectIdForExemplar(projectId);
+    MetricDescriptor metricDescriptor = metric.getMetricDescriptor();
+    Map<List<LabelValue>, Entry> series = entries.get(metricDescriptor);
+    if (series == null) {
+      series = new HashMap<>();
+      entries.put(metricDescriptor, series);
+    }
+    TimeSeries.Builder shared = null;
+    List<TimeSeries> timeSeriesList = new ArrayList<>(metric.getTimeSeriesList().size());
+    for (io.opencensus.metrics.export.TimeSeries timeSeries : metric.getTimeSeriesList()) {
+      Entry entry = series.get(timeSeries.getLabelValues());
+      if (entry == null) {
+        if (shared == null) {
+          shared =
+              StackdriverExportUtils.createSharedTimeSeriesBuilder(
+                  metricDescriptor, monitoredResource);
+        }
+        TimeSeries withoutPoints =
+            shared
+                .clone()
+                .setMetric(
+                    StackdriverExportUtils.createMetric(
+                        metricDescriptor, timeSeries.getLabelValues(), domain, constantLabels))
+                .build();
+        entry = new Entry(withoutPoints);
+        series.put(timeSeries.getLabelValues(), entry);
+      }
+      entry.generation = generation;
+      // The builder shares the immutable metric and resource messages of the cached TimeSeries.
+      TimeSeries.Builder builder = entry.withoutPoints.toBuilder();
+      StackdriverExportUtils.addPoints(builder, timeSeries);
+      timeSeriesList.add(builder.build());
+    }
+    return timeSeriesList;
+  }
+
+  // Removes the series that were not converted since the previous call.
+  synchronized void evictUnused() {
+    Iterator<Map<List<LabelValue>, Entry>> descriptors = entries.values().iterator();
+    while (descriptors.hasNext()) {
+      Map<List<LabelValue>, Entry> series = descriptors.next();
+      Iterator<Entry> it = series.values().iterator();
+      while (it.hasNext()) {
+        if (it.next().generation != generation) {
+          it.remove();
+        }
+      }
+      if (series.isEmpty()) {
+        descriptors.remove();
+      }
+    }
+    generation++;
+  }
+
+  @VisibleForTesting
+  synchronized int size() {
+    int size = 0;
+    for (Map<List<LabelValue>, Entry> series : entries.values()) {
+      size += series.size();
+    }
+    return size;
+  }
+
+  private static final class Entry {
+    private final TimeSeries withoutPoints;
+    private long generation;
+
+    private Entry(TimeSeries withoutPoints) {
+      this.withoutPoints = withoutPoints;
+    }
+  }
+}
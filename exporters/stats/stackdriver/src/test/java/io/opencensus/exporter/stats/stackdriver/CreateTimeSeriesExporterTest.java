@@ -17,14 +17,22 @@
 package io.opencensus.exporter.stats.stackdriver;
 
 import static io.opencensus.exporter.stats.stackdriver.StackdriverExportUtils.DEFAULT_CONSTANT_LABELS;
+import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import com.google.api.MetricDescriptor;
 import com.google.api.MonitoredResource;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.core.SettableApiFuture;
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.ApiExceptionFactory;
 import com.google.api.gax.rpc.UnaryCallable;
 import com.google.cloud.monitoring.v3.stub.MetricServiceStub;
 import com.google.monitoring.v3.CreateMetricDescriptorRequest;
@@ -41,12 +49,19 @@ import io.opencensus.metrics.export.Value;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 /** Unit tests for {@link CreateTimeSeriesExporter}. */
 @RunWith(JUnit4.class)
@@ -85,6 +100,8 @@ public class CreateTimeSeriesExporterTest {
 
   @Mock private UnaryCallable<CreateTimeSeriesRequest, Empty> mockCreateTimeSeriesCallable;
 
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
   @Before
   public void setUp() {
     MockitoAnnotations.initMocks(this);
@@ -94,18 +111,34 @@ public class CreateTimeSeriesExporterTest {
     doReturn(null)
         .when(mockCreateMetricDescriptorCallable)
         .call(any(CreateMetricDescriptorRequest.class));
-    doReturn(null).when(mockCreateTimeSeriesCallable).call(any(CreateTimeSeriesRequest.class));
+    doReturn(ApiFutures.immediateFuture(Empty.getDefaultInstance()))
+        .when(mockCreateTimeSeriesCallable)
+        .futureCall(any(CreateTimeSeriesRequest.class));
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private CreateTimeSeriesExporter createExporter(int maxConcurrentRequests) {
+    return new CreateTimeSeriesExporter(
+        PROJECT_ID,
+        new FakeMetricServiceClient(mockStub),
+        DEFAULT_RESOURCE,
+        null,
+        DEFAULT_CONSTANT_LABELS,
+        maxConcurrentRequests);
+  }
+
+  private static ApiException createApiException(io.grpc.Status.Code code) {
+    return ApiExceptionFactory.createException(
+        new RuntimeException(code.name()), GrpcStatusCode.of(code), false);
   }
 
   @Test
   public void export() {
-    CreateTimeSeriesExporter exporter =
-        new CreateTimeSeriesExporter(
-            PROJECT_ID,
-            new FakeMetricServiceClient(mockStub),
-            DEFAULT_RESOURCE,
-            null,
-            DEFAULT_CONSTANT_LABELS);
+    CreateTimeSeriesExporter exporter = createExporter(1);
     exporter.export(Collections.singletonList(METRIC));
     verify(mockStub, times(1)).createTimeSeriesCallable();
 
@@ -118,7 +151,7 @@ public class CreateTimeSeriesExporterTest {
             DEFAULT_CONSTANT_LABELS);
 
     verify(mockCreateTimeSeriesCallable, times(1))
-        .call(
+        .futureCall(
             eq(
                 CreateTimeSeriesRequest.newBuilder()
                     .setName("projects/" + PROJECT_ID)
@@ -128,13 +161,7 @@ public class CreateTimeSeriesExporterTest {
 
   @Test
   public void splitInMultipleBatches() {
-    CreateTimeSeriesExporter exporter =
-        new CreateTimeSeriesExporter(
-            PROJECT_ID,
-            new FakeMetricServiceClient(mockStub),
-            DEFAULT_RESOURCE,
-            null,
-            DEFAULT_CONSTANT_LABELS);
+    CreateTimeSeriesExporter exporter = createExporter(1);
     final int numExportedTimeSeries = 4 * StackdriverExportUtils.MAX_BATCH_EXPORT_SIZE;
     ArrayList<Metric> exportedMetrics = new ArrayList<>(numExportedTimeSeries);
     for (int i = 0; i < numExportedTimeSeries; i++) {
@@ -146,14 +173,106 @@ public class CreateTimeSeriesExporterTest {
 
   @Test
   public void doNotExportForEmptyMetrics() {
-    CreateTimeSeriesExporter exporter =
-        new CreateTimeSeriesExporter(
-            PROJECT_ID,
-            new FakeMetricServiceClient(mockStub),
-            DEFAULT_RESOURCE,
-            null,
-            DEFAULT_CONSTANT_LABELS);
+    CreateTimeSeriesExporter exporter = createExporter(1);
     exporter.export(Collections.<Metric>emptyList());
     verify(mockStub, times(0)).createTimeSeriesCallable();
   }
+
+  @Test
+  public void limitsConcurrentRequests() {
+    final AtomicInteger inFlightRequests = new AtomicInteger();
+    final AtomicInteger maxInFlightRequests = new AtomicInteger();
+    doAnswer(
+            new Answer<ApiFuture<Empty>>() {
+              @Override
+              public ApiFuture<Empty> answer(InvocationOnMock invocation) {
+                final SettableApiFuture<Empty> future = SettableApiFuture.create();
+                int inFlight = inFlightRequests.incrementAndGet();
+                if (inFlight > maxInFlightRequests.get()) {
+                  maxInFlightRequests.set(inFlight);
+                }
+                executor.schedule(
+                    new Runnable() {
+                      @Override
+                      public void run() {
+                        inFlightRequests.decrementAndGet();
+                        future.set(Empty.getDefaultInstance());
+                      }
+                    },
+                    20,
+                    TimeUnit.MILLISECONDS);
+                return future;
+              }
+            })
+        .when(mockCreateTimeSeriesCallable)
+        .futureCall(any(CreateTimeSeriesRequest.class));
+    CreateTimeSeriesExporter exporter = createExporter(2);
+    int numExportedTimeSeries = 6 * StackdriverExportUtils.MAX_BATCH_EXPORT_SIZE;
+    exporter.export(Collections.nCopies(numExportedTimeSeries, METRIC));
+    verify(mockCreateTimeSeriesCallable, times(6)).futureCall(any(CreateTimeSeriesRequest.class));
+    // All the requests completed before the export returned.
+    assertThat(inFlightRequests.get()).isEqualTo(0);
+    assertThat(maxInFlightRequests.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void retriesUnavailable() {
+    doReturn(ApiFutures.immediateFailedFuture(createApiException(io.grpc.Status.Code.UNAVAILABLE)))
+        .doReturn(ApiFutures.immediateFuture(Empty.getDefaultInstance()))
+        .when(mockCreateTimeSeriesCallable)
+        .futureCall(any(CreateTimeSeriesRequest.class));
+    createExporter(1).export(Collections.singletonList(METRIC));
+    verify(mockCreateTimeSeriesCallable, times(2)).futureCall(any(CreateTimeSeriesRequest.class));
+  }
+
+  @Test
+  public void retriesAtMostMaxAttempts() {
+    doReturn(ApiFutures.immediateFailedFuture(createApiException(io.grpc.Status.Code.UNAVAILABLE)))
+        .when(mockCreateTimeSeriesCallable)
+        .futureCall(any(CreateTimeSeriesRequest.class));
+    createExporter(1).export(Collections.singletonList(METRIC));
+    verify(mockCreateTimeSeriesCallable, times(CreateTimeSeriesExporter.MAX_ATTEMPTS))
+        .futureCall(any(CreateTimeSeriesRequest.class));
+  }
+
+  @Test
+  public void doesNotRetryInvalidArgument() {
+    doReturn(
+            ApiFutures.immediateFailedFuture(
+                createApiException(io.grpc.Status.Code.INVALID_ARGUMENT)))
+        .when(mockCreateTimeSeriesCallable)
+        .futureCall(any(CreateTimeSeriesRequest.class));
+    createExporter(1).export(Collections.singletonList(METRIC));
+    verify(mockCreateTimeSeriesCallable, times(1)).futureCall(any(CreateTimeSeriesRequest.class));
+  }
+
+  @Test
+  public void isRetryable() {
+    assertThat(
+            CreateTimeSeriesExporter.isRetryable(
+                createApiException(io.grpc.Status.Code.UNAVAILABLE)))
+        .isTrue();
+    assertThat(
+            CreateTimeSeriesExporter.isRetryable(
+                createApiException(io.grpc.Status.Code.RESOURCE_EXHAUSTED)))
+        .isTrue();
+    assertThat(
+            CreateTimeSeriesExporter.isRetryable(
+                createApiException(io.grpc.Status.Code.DEADLINE_EXCEEDED)))
+        .isFalse();
+    assertThat(
+            CreateTimeSeriesExporter.isRetryable(
+                createApiException(io.grpc.Status.Code.PERMISSION_DENIED)))
+        .isFalse();
+  }
+
+  @Test
+  public void backoffMillis() {
+    long initialBackoffMillis = CreateTimeSeriesExporter.INITIAL_BACKOFF_MILLIS;
+    assertThat(CreateTimeSeriesExporter.backoffMillis(1, 0)).isEqualTo(initialBackoffMillis / 2);
+    assertThat(CreateTimeSeriesExporter.backoffMillis(1, 0.5)).isEqualTo(initialBackoffMillis);
+    assertThat(CreateTimeSeriesExporter.backoffMillis(3, 0.5)).isEqualTo(4 * initialBackoffMillis);
+    assertThat(CreateTimeSeriesExporter.backoffMillis(2, 0.99))
+        .isLessThan(3 * initialBackoffMillis);
+  }
 }
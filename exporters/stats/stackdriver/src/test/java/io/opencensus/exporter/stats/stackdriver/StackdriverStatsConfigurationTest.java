@@ -20,6 +20,7 @@ import static com.google.common.truth.Truth.assertThat;
 import static io.opencensus.exporter.stats.stackdriver.StackdriverExportUtils.DEFAULT_CONSTANT_LABELS;
 import static io.opencensus.exporter.stats.stackdriver.StackdriverStatsConfiguration.DEFAULT_DEADLINE;
 import static io.opencensus.exporter.stats.stackdriver.StackdriverStatsConfiguration.DEFAULT_INTERVAL;
+import static io.opencensus.exporter.stats.stackdriver.StackdriverStatsConfiguration.DEFAULT_MAX_CONCURRENT_REQUESTS;
 
 import com.google.api.MonitoredResource;
 import com.google.auth.Credentials;
@@ -80,6 +81,7 @@ public class StackdriverStatsConfigurationTest {
             .setConstantLabels(Collections.<LabelKey, LabelValue>emptyMap())
             .setDeadline(DURATION)
             .setMetricServiceStub(mockStub)
+            .setMaxConcurrentRequests(8)
             .build();
     assertThat(configuration.getCredentials()).isEqualTo(FAKE_CREDENTIALS);
     assertThat(configuration.getProjectId()).isEqualTo(PROJECT_ID);
@@ -90,6 +92,7 @@ public class StackdriverStatsConfigurationTest {
     assertThat(configuration.getConstantLabels()).isEmpty();
     assertThat(configuration.getDeadline()).isEqualTo(DURATION);
     assertThat(configuration.getMetricServiceStub()).isEqualTo(mockStub);
+    assertThat(configuration.getMaxConcurrentRequests()).isEqualTo(8);
   }
 
   @Test
@@ -109,6 +112,7 @@ public class StackdriverStatsConfigurationTest {
     assertThat(configuration.getConstantLabels()).isEqualTo(DEFAULT_CONSTANT_LABELS);
     assertThat(configuration.getDeadline()).isEqualTo(DEFAULT_DEADLINE);
     assertThat(configuration.getMetricServiceStub()).isNull();
+    assertThat(configuration.getMaxConcurrentRequests()).isEqualTo(DEFAULT_MAX_CONCURRENT_REQUESTS);
   }
 
   @Test
@@ -227,4 +231,13 @@ public class StackdriverStatsConfigurationTest {
     thrown.expect(IllegalArgumentException.class);
     builder.build();
   }
+
+  @Test
+  public void disallowZeroMaxConcurrentRequests() {
+    StackdriverStatsConfiguration.Builder builder =
+        StackdriverStatsConfiguration.builder().setProjectId("test");
+    builder.setMaxConcurrentRequests(0);
+    thrown.expect(IllegalArgumentException.class);
+    builder.build();
+  }
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.exporter.stats.stackdriver;
+
+import static com.google.common.truth.Truth.assertThat;
+import static io.opencensus.exporter.stats.stackdriver.StackdriverExportUtils.CUSTOM_OPENCENSUS_DOMAIN;
+import static io.opencensus.exporter.stats.stackdriver.StackdriverExportUtils.DEFAULT_CONSTANT_LABELS;
+
+import com.google.api.MonitoredResource;
+import com.google.monitoring.v3.TimeSeries;
+import io.opencensus.common.Timestamp;
+import io.opencensus.metrics.LabelKey;
+import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.export.Metric;
+import io.opencensus.metrics.export.MetricDescriptor;
+import io.opencensus.metrics.export.MetricDescriptor.Type;
+import io.opencensus.metrics.export.Point;
+import io.opencensus.metrics.export.Value;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link TimeSeriesCache}. */
+@RunWith(JUnit4.class)
+public class TimeSeriesCacheTest {
+  private static final String PROJECT_ID = "id";
+  private static final MonitoredResource DEFAULT_RESOURCE =
+      MonitoredResource.newBuilder().setType("global").build();
+  private static final MetricDescriptor METRIC_DESCRIPTOR =
+      MetricDescriptor.create(
+          "my measurement",
+          "measure description",
+          "us",
+          Type.CUMULATIVE_DOUBLE,
+          Collections.singletonList(LabelKey.create("KEY1", "key description")));
+  private static final List<LabelValue> LABEL_VALUE =
+      Collections.singletonList(LabelValue.create("VALUE1"));
+  private static final List<LabelValue> LABEL_VALUE_2 =
+      Collections.singletonList(LabelValue.create("VALUE2"));
+  private static final Timestamp START_TIMESTAMP = Timestamp.fromMillis(1000);
+  private static final Point POINT =
+      Point.create(Value.doubleValue(12345678.2), Timestamp.fromMillis(3000));
+  private static final Point POINT_2 =
+      Point.create(Value.doubleValue(133.79), Timestamp.fromMillis(4000));
+  private static final io.opencensus.metrics.export.TimeSeries TIME_SERIES =
+      io.opencensus.metrics.export.TimeSeries.createWithOnePoint(
+          LABEL_VALUE, POINT, START_TIMESTAMP);
+  private static final io.opencensus.metrics.export.TimeSeries TIME_SERIES_2 =
+      io.opencensus.metrics.export.TimeSeries.createWithOnePoint(
+          LABEL_VALUE_2, POINT_2, START_TIMESTAMP);
+
+  private final TimeSeriesCache cache =
+      new TimeSeriesCache(
+          DEFAULT_RESOURCE, CUSTOM_OPENCENSUS_DOMAIN, PROJECT_ID, DEFAULT_CONSTANT_LABELS);
+
+  @Test
+  public void createTimeSeriesList_SameAsStackdriverExportUtils() {
+    Metric metric = Metric.create(METRIC_DESCRIPTOR, Arrays.asList(TIME_SERIES, TIME_SERIES_2));
+    List<TimeSeries> expected =
+        StackdriverExportUtils.createTimeSeriesList(
+            metric,
+            DEFAULT_RESOURCE,
+            CUSTOM_OPENCENSUS_DOMAIN,
+            PROJECT_ID,
+            DEFAULT_CONSTANT_LABELS);
+    List<TimeSeries> timeSeriesList = cache.createTimeSeriesList(metric);
+    assertThat(timeSeriesList).containsExactlyElementsIn(expected).inOrder();
+    assertThat(cache.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void createTimeSeriesList_ReusesCachedSeries() {
+    List<TimeSeries> first =
+        cache.createTimeSeriesList(Metric.createWithOneTimeSeries(METRIC_DESCRIPTOR, TIME_SERIES));
+    cache.evictUnused();
+    io.opencensus.metrics.export.TimeSeries updated =
+        io.opencensus.metrics.export.TimeSeries.createWithOnePoint(
+            LABEL_VALUE, POINT_2, START_TIMESTAMP);
+    List<TimeSeries> second =
+        cache.createTimeSeriesList(Metric.createWithOneTimeSeries(METRIC_DESCRIPTOR, updated));
+    assertThat(cache.size()).isEqualTo(1);
+    // Only the points differ, and the metric and resource messages are shared.
+    assertThat(second.get(0).getMetric()).isSameInstanceAs(first.get(0).getMetric());
+    assertThat(second.get(0).getResource()).isSameInstanceAs(first.get(0).getResource());
+    assertThat(second.get(0).getPointsList())
+        .containsExactly(StackdriverExportUtils.createPoint(POINT_2, START_TIMESTAMP));
+  }
+
+  @Test
+  public void evictUnused() {
+    cache.createTimeSeriesList(
+        Metric.create(METRIC_DESCRIPTOR, Arrays.asList(TIME_SERIES, TIME_SERIES_2)));
+    cache.evictUnused();
+    assertThat(cache.size()).isEqualTo(2);
+    cache.createTimeSeriesList(Metric.createWithOneTimeSeries(METRIC_DESCRIPTOR, TIME_SERIES_2));
+    cache.evictUnused();
+    assertThat(cache.size()).isEqualTo(1);
+    cache.evictUnused();
+    assertThat(cache.size()).isEqualTo(0);
+  }
+}
@@ -16,10 +16,8 @@
 
 package io.opencensus.exporter.trace.datadog;
 
-import com.google.gson.FieldNamingPolicy;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import io.opencensus.common.Duration;
+import com.google.common.io.ByteStreams;
+import com.google.gson.stream.JsonWriter;
 import io.opencensus.common.Functions;
 import io.opencensus.common.Timestamp;
 import io.opencensus.exporter.trace.util.TimeLimitedHandler;
@@ -29,19 +27,25 @@ import io.opencensus.trace.SpanId;
 import io.opencensus.trace.Status;
 import io.opencensus.trace.Tracing;
 import io.opencensus.trace.export.SpanData;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
 import javax.annotation.Nullable;
 
 @SuppressWarnings({
@@ -52,21 +56,23 @@ import javax.annotation.Nullable;
 final class DatadogExporterHandler extends TimeLimitedHandler {
 
   private static final String EXPORT_SPAN_NAME = "ExportDatadogTraces";
-  private static final Gson gson =
-      new GsonBuilder()
-          .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-          .create();
+  private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
 
   private final URL agentEndpoint;
   private final String service;
   private final String type;
-
-  DatadogExporterHandler(String agentEndpoint, String service, String type, Duration deadline)
-      throws MalformedURLException {
-    super(deadline, EXPORT_SPAN_NAME);
-    this.agentEndpoint = new URL(agentEndpoint);
-    this.service = service;
-    this.type = type;
+  private final boolean compressRequests;
+  private final int maxRequestBytes;
+  // The request buffer is kept between exports, so that it does not grow again at each export.
+  private final AtomicReference<ByteArrayOutputStream> pooledBuffer = new AtomicReference<>();
+
+  DatadogExporterHandler(DatadogTraceConfiguration configuration) throws MalformedURLException {
+    super(configuration.getDeadline(), EXPORT_SPAN_NAME);
+    this.agentEndpoint = new URL(configuration.getAgentEndpoint());
+    this.service = configuration.getService();
+    this.type = configuration.getType();
+    this.compressRequests = configuration.getCompressRequests();
+    this.maxRequestBytes = configuration.getMaxRequestBytes();
   }
 
   private static String attributeValueToString(AttributeValue attributeValue) {
@@ -78,15 +84,6 @@ final class DatadogExporterHandler extends TimeLimitedHandler {
         Functions.throwIllegalArgumentException());
   }
 
-  private static Map<String, String> attributesToMeta(
-      final Map<String, AttributeValue> attributes) {
-    final HashMap<String, String> result = new HashMap<>();
-    attributes.entrySet().stream()
-        .filter(entry -> entry.getValue() != null)
-        .forEach(entry -> result.put(entry.getKey(), attributeValueToString(entry.getValue())));
-    return result;
-  }
-
   private static long convertSpanId(final SpanId spanId) {
     final byte[] bytes = spanId.getBytes();
     long result = 0;
@@ -104,7 +101,7 @@ final class DatadogExporterHandler extends TimeLimitedHandler {
     return TimeUnit.SECONDS.toNanos(timestamp.getSeconds()) + timestamp.getNanos();
   }
 
-  private static Integer errorCode(@Nullable final Status status) {
+  private static int errorCode(@Nullable final Status status) {
     if (status == null || status.equals(Status.OK) || status.equals(Status.ALREADY_EXISTS)) {
       return 0;
     }
@@ -112,66 +109,143 @@ final class DatadogExporterHandler extends TimeLimitedHandler {
     return 1;
   }
 
-  String convertToJson(Collection<SpanData> spanDataList) {
-    final ArrayList<DatadogSpan> datadogSpans = new ArrayList<>();
+  // Groups the spans by trace, the agent expects the spans of a trace in the same array.
+  private static Collection<List<SpanData>> groupByTrace(Collection<SpanData> spanDataList) {
+    final Map<Long, List<SpanData>> traces = new LinkedHashMap<>();
     for (SpanData sd : spanDataList) {
-      SpanContext sc = sd.getContext();
-
-      final long startTime = timestampToNanos(sd.getStartTimestamp());
-      final Timestamp endTimestamp =
-          Optional.ofNullable(sd.getEndTimestamp()).orElseGet(() -> Tracing.getClock().now());
-      final long endTime = timestampToNanos(endTimestamp);
-      final long duration = endTime - startTime;
-
-      final Long parentId =
-          Optional.ofNullable(sd.getParentSpanId())
-              .map(DatadogExporterHandler::convertSpanId)
-              .orElse(null);
-
-      final Map<String, AttributeValue> attributes = sd.getAttributes().getAttributeMap();
-      final Map<String, String> meta =
-          attributes.isEmpty() ? new HashMap<>() : attributesToMeta(attributes);
-
-      final String resource = meta.getOrDefault("resource", "UNKNOWN");
-
-      final DatadogSpan span =
-          new DatadogSpan(
-              sc.getTraceId().getLowerLong(),
-              convertSpanId(sc.getSpanId()),
-              sd.getName(),
-              resource,
-              this.service,
-              this.type,
-              startTime,
-              duration,
-              parentId,
-              errorCode(sd.getStatus()),
-              meta);
-      datadogSpans.add(span);
+      traces
+          .computeIfAbsent(sd.getContext().getTraceId().getLowerLong(), k -> new ArrayList<>())
+          .add(sd);
     }
+    return traces.values();
+  }
+
+  private static JsonWriter newJsonWriter(Writer writer) {
+    final JsonWriter jsonWriter = new JsonWriter(writer);
+    // Escapes the same characters as Gson does by default.
+    jsonWriter.setHtmlSafe(true);
+    return jsonWriter;
+  }
 
-    final Collection<List<DatadogSpan>> traces =
-        datadogSpans.stream()
-            .collect(Collectors.groupingBy(DatadogSpan::getTraceId, Collectors.toList()))
-            .values();
+  String convertToJson(Collection<SpanData> spanDataList) throws IOException {
+    final StringWriter writer = new StringWriter();
+    final JsonWriter jsonWriter = newJsonWriter(writer);
+    jsonWriter.beginArray();
+    for (List<SpanData> trace : groupByTrace(spanDataList)) {
+      writeTrace(trace, jsonWriter);
+    }
+    jsonWriter.endArray();
+    jsonWriter.close();
+    return writer.toString();
+  }
 
-    return gson.toJson(traces);
+  private void writeTrace(List<SpanData> trace, JsonWriter writer) throws IOException {
+    writer.beginArray();
+    for (SpanData sd : trace) {
+      writeSpan(sd, writer);
+    }
+    writer.endArray();
   }
 
+  private void writeSpan(SpanData sd, JsonWriter writer) throws IOException {
+    final SpanContext sc = sd.getContext();
+    final long startTime = timestampToNanos(sd.getStartTimestamp());
+    Timestamp endTimestamp = sd.getEndTimestamp();
+    if (endTimestamp == null) {
+      endTimestamp = Tracing.getClock().now();
+    }
+    final Map<String, AttributeValue> attributes = sd.getAttributes().getAttributeMap();
+    final AttributeValue resource = attributes.get("resource");
+
+    writer.beginObject();
+    writer.name("trace_id").value(sc.getTraceId().getLowerLong());
+    writer.name("span_id").value(convertSpanId(sc.getSpanId()));
+    writer.name("name").value(sd.getName());
+    writer
+        .name("resource")
+        .value(resource == null ? "UNKNOWN" : attributeValueToString(resource));
+    writer.name("service").value(service);
+    writer.name("type").value(type);
+    writer.name("start").value(startTime);
+    writer.name("duration").value(timestampToNanos(endTimestamp) - startTime);
+    final SpanId parentSpanId = sd.getParentSpanId();
+    if (parentSpanId != null) {
+      writer.name("parent_id").value(convertSpanId(parentSpanId));
+    }
+    writer.name("error").value(errorCode(sd.getStatus()));
+    writer.name("meta").beginObject();
+    for (Map.Entry<String, AttributeValue> entry : attributes.entrySet()) {
+      if (entry.getValue() != null) {
+        writer.name(entry.getKey()).value(attributeValueToString(entry.getValue()));
+      }
+    }
+    writer.endObject();
+    writer.endObject();
+  }
+
+  // Streams the traces into the request buffer, and sends it whenever it reaches maxRequestBytes.
   @Override
   public void timeLimitedExport(Collection<SpanData> spanDataList) throws Exception {
-    final String data = convertToJson(spanDataList);
+    ByteArrayOutputStream buffer = pooledBuffer.getAndSet(null);
+    if (buffer == null) {
+      buffer = new ByteArrayOutputStream(INITIAL_BUFFER_BYTES);
+    }
+    try {
+      JsonWriter writer = null;
+      for (List<SpanData> trace : groupByTrace(spanDataList)) {
+        if (writer == null) {
+          writer = newJsonWriter(newRequestWriter(buffer));
+          writer.beginArray();
+        }
+        writeTrace(trace, writer);
+        // With gzip, the size is only approximate: the deflater keeps some of the input.
+        writer.flush();
+        if (buffer.size() >= maxRequestBytes) {
+          writer.endArray();
+          writer.close();
+          send(buffer);
+          writer = null;
+        }
+      }
+      if (writer != null) {
+        writer.endArray();
+        writer.close();
+        send(buffer);
+      }
+    } finally {
+      buffer.reset();
+      pooledBuffer.set(buffer);
+    }
+  }
 
+  private Writer newRequestWriter(OutputStream buffer) throws IOException {
+    return new OutputStreamWriter(
+        compressRequests ? new GZIPOutputStream(buffer) : buffer, StandardCharsets.UTF_8);
+  }
+
+  // Sends the request, and reads the whole response so that the connection can be reused.
+  private void send(ByteArrayOutputStream body) throws Exception {
     final HttpURLConnection connection = (HttpURLConnection) agentEndpoint.openConnection();
     connection.setRequestMethod("POST");
     connection.setRequestProperty("Content-Type", "application/json");
+    if (compressRequests) {
+      connection.setRequestProperty("Content-Encoding", "gzip");
+    }
     connection.setDoOutput(true);
-    OutputStream outputStream = connection.getOutputStream();
-    outputStream.write(data.getBytes(Charset.defaultCharset()));
-    outputStream.flush();
-    outputStream.close();
-    if (connection.getResponseCode() != 200) {
-      throw new Exception("Response " + connection.getResponseCode());
+    connection.setFixedLengthStreamingMode(body.size());
+    try (OutputStream outputStream = connection.getOutputStream()) {
+      body.writeTo(outputStream);
+    }
+    body.reset();
+    final int responseCode = connection.getResponseCode();
+    try (InputStream inputStream =
+        responseCode < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+      if (inputStream != null) {
+        ByteStreams.exhaust(inputStream);
+      }
+    }
+    if (responseCode / 100 != 2) {
+      throw new Exception("Response " + responseCode);
     }
   }
 }
@@ -33,6 +33,7 @@ public abstract class DatadogTraceConfiguration {
 
   @VisibleForTesting static final Duration DEFAULT_DEADLINE = Duration.create(10, 0);
   @VisibleForTesting static final Duration ZERO = Duration.fromMillis(0);
+  @VisibleForTesting static final int DEFAULT_MAX_REQUEST_BYTES = 1024 * 1024;
 
   DatadogTraceConfiguration() {}
 
@@ -70,6 +71,27 @@ public abstract class DatadogTraceConfiguration {
    */
   public abstract Duration getDeadline();
 
+  /**
+   * Returns whether the requests to the Datadog agent are compressed with gzip.
+   *
+   * <p>Default value is {@code false}.
+   *
+   * @return whether the requests are compressed with gzip.
+   * @since 0.29
+   */
+  public abstract boolean getCompressRequests();
+
+  /**
+   * Returns the size in bytes above which the spans of an export are split into several requests.
+   * The spans of a trace are always sent in the same request.
+   *
+   * <p>Default value is 1 MiB.
+   *
+   * @return the size in bytes above which the spans are split into several requests.
+   * @since 0.29
+   */
+  public abstract int getMaxRequestBytes();
+
   /**
    * Return a new {@link Builder}.
    *
@@ -77,7 +99,10 @@ public abstract class DatadogTraceConfiguration {
    * @since 0.19
    */
   public static Builder builder() {
-    return new AutoValue_DatadogTraceConfiguration.Builder().setDeadline(DEFAULT_DEADLINE);
+    return new AutoValue_DatadogTraceConfiguration.Builder()
+        .setDeadline(DEFAULT_DEADLINE)
+        .setCompressRequests(false)
+        .setMaxRequestBytes(DEFAULT_MAX_REQUEST_BYTES);
   }
 
   /**
@@ -126,8 +151,28 @@ public abstract class DatadogTraceConfiguration {
      */
     public abstract Builder setDeadline(Duration deadline);
 
+    /**
+     * Sets whether the requests to the Datadog agent are compressed with gzip.
+     *
+     * @param compressRequests whether the requests are compressed with gzip.
+     * @return this
+     * @since 0.29
+     */
+    public abstract Builder setCompressRequests(boolean compressRequests);
+
+    /**
+     * Sets the size in bytes above which the spans of an export are split into several requests.
+     *
+     * @param maxRequestBytes the size in bytes above which the spans are split.
+     * @return this
+     * @since 0.29
+     */
+    public abstract Builder setMaxRequestBytes(int maxRequestBytes);
+
     abstract Duration getDeadline();
 
+    abstract int getMaxRequestBytes();
+
     abstract DatadogTraceConfiguration autoBuild();
 
     /**
@@ -138,6 +183,7 @@ public abstract class DatadogTraceConfiguration {
      */
     public DatadogTraceConfiguration build() {
       Preconditions.checkArgument(getDeadline().compareTo(ZERO) > 0, "Deadline must be positive.");
+      Preconditions.checkArgument(getMaxRequestBytes() > 0, "Max request bytes must be positive.");
       return autoBuild();
     }
   }
@@ -67,12 +67,7 @@ public final class DatadogTraceExporter {
     synchronized (monitor) {
       checkState(handler == null, "Datadog exporter is already registered.");
 
-      String agentEndpoint = configuration.getAgentEndpoint();
-      String service = configuration.getService();
-      String type = configuration.getType();
-
-      final DatadogExporterHandler exporterHandler =
-          new DatadogExporterHandler(agentEndpoint, service, type, configuration.getDeadline());
+      final DatadogExporterHandler exporterHandler = new DatadogExporterHandler(configuration);
       handler = exporterHandler;
       Tracing.getExportComponent()
           .getSpanExporter()
@@ -17,9 +17,14 @@
 package io.opencensus.exporter.trace.datadog;
 
 import static com.google.common.truth.Truth.assertThat;
-import static io.opencensus.exporter.trace.datadog.DatadogTraceConfiguration.DEFAULT_DEADLINE;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 import io.opencensus.common.Timestamp;
 import io.opencensus.trace.Annotation;
 import io.opencensus.trace.AttributeValue;
@@ -31,9 +36,21 @@ import io.opencensus.trace.TraceId;
 import io.opencensus.trace.TraceOptions;
 import io.opencensus.trace.Tracestate;
 import io.opencensus.trace.export.SpanData;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import javax.annotation.concurrent.GuardedBy;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -53,16 +70,66 @@ public class DatadogExporterHandlerTest {
   private static final List<SpanData.TimedEvent<MessageEvent>> messageEvents =
       Collections.emptyList();
 
+  private final FakeAgent fakeAgent = new FakeAgent();
+  private HttpServer server;
   private DatadogExporterHandler handler;
 
   @Before
   public void setup() throws Exception {
     this.handler =
-        new DatadogExporterHandler("http://localhost", "service", "web", DEFAULT_DEADLINE);
+        new DatadogExporterHandler(
+            DatadogTraceConfiguration.builder()
+                .setAgentEndpoint("http://localhost")
+                .setService("service")
+                .setType("web")
+                .build());
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", fakeAgent);
+    server.start();
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  private DatadogTraceConfiguration.Builder agentConfigurationBuilder() {
+    return DatadogTraceConfiguration.builder()
+        .setAgentEndpoint("http://localhost:" + server.getAddress().getPort() + "/v0.3/traces")
+        .setService("service")
+        .setType("web");
+  }
+
+  private static SpanData createSpan(String traceId, String name) {
+    return SpanData.create(
+        SpanContext.create(
+            TraceId.fromLowerBase16(traceId),
+            SpanId.fromLowerBase16(SPAN_ID),
+            TraceOptions.builder().setIsSampled(true).build(),
+            Tracestate.builder().build()),
+        /* parentSpanId= */ null,
+        /* hasRemoteParent= */ false,
+        name,
+        /* kind= */ null,
+        /* startTimestamp= */ Timestamp.create(1505855794, 194009601),
+        SpanData.Attributes.create(attributes, 0),
+        SpanData.TimedEvents.create(annotations, 0),
+        SpanData.TimedEvents.create(messageEvents, 0),
+        SpanData.Links.create(Collections.emptyList(), 0),
+        /* childSpanCount= */ null,
+        Status.OK,
+        /* endTimestamp= */ Timestamp.create(1505855799, 465726528));
+  }
+
+  private static List<SpanData> createTraces() {
+    return Arrays.asList(
+        createSpan(TRACE_ID, "first"),
+        createSpan("00000000000000000000000000000001", "second"),
+        createSpan(TRACE_ID, "third"));
   }
 
   @Test
-  public void testJsonConversion() {
+  public void testJsonConversion() throws IOException {
     SpanData data =
         SpanData.create(
             SpanContext.create(
@@ -97,8 +164,8 @@ public class DatadogExporterHandlerTest {
             + "\"parent_id\":8429705776517054011,"
             + "\"error\":0,"
             + "\"meta\":{"
-            + "\"resource\":\"/foo\","
-            + "\"http.url\":\"http://localhost/foo\""
+            + "\"http.url\":\"http://localhost/foo\","
+            + "\"resource\":\"/foo\""
             + "}"
             + "}"
             + "]]";
@@ -107,7 +174,7 @@ public class DatadogExporterHandlerTest {
   }
 
   @Test
-  public void testNullableConversion() {
+  public void testNullableConversion() throws IOException {
     SpanData data =
         SpanData.create(
             SpanContext.create(
@@ -141,12 +208,135 @@ public class DatadogExporterHandlerTest {
             + "\"duration\":-1505855794194009601," // the tracer clock is set to 0 in tests
             + "\"error\":0,"
             + "\"meta\":{"
-            + "\"resource\":\"/foo\","
-            + "\"http.url\":\"http://localhost/foo\""
+            + "\"http.url\":\"http://localhost/foo\","
+            + "\"resource\":\"/foo\""
             + "}"
             + "}"
             + "]]";
 
     assertThat(handler.convertToJson(Collections.singletonList(data))).isEqualTo(expected);
   }
+
+  @Test
+  public void export_GroupsSpansByTrace() throws Exception {
+    new DatadogExporterHandler(agentConfigurationBuilder().build())
+        .timeLimitedExport(createTraces());
+    List<Request> requests = fakeAgent.getRequests();
+    assertThat(requests).hasSize(1);
+    assertThat(requests.get(0).path).isEqualTo("/v0.3/traces");
+    assertThat(requests.get(0).contentEncoding).isNull();
+    JsonArray traces = JsonParser.parseString(requests.get(0).body).getAsJsonArray();
+    assertThat(traces.size()).isEqualTo(2);
+    assertThat(traces.get(0).getAsJsonArray().size()).isEqualTo(2);
+    assertThat(traces.get(1).getAsJsonArray().size()).isEqualTo(1);
+  }
+
+  @Test
+  public void export_SplitsRequestsAtTraceBoundaries() throws Exception {
+    new DatadogExporterHandler(agentConfigurationBuilder().setMaxRequestBytes(1).build())
+        .timeLimitedExport(createTraces());
+    List<Request> requests = fakeAgent.getRequests();
+    assertThat(requests).hasSize(2);
+    assertThat(JsonParser.parseString(requests.get(0).body).getAsJsonArray().size()).isEqualTo(1);
+    assertThat(JsonParser.parseString(requests.get(1).body).getAsJsonArray().size()).isEqualTo(1);
+    assertThat(requests.get(0).body).contains("\"name\":\"third\"");
+    assertThat(requests.get(1).body).contains("\"name\":\"second\"");
+    // The requests reuse the same kept-alive connection.
+    Set<InetSocketAddress> clientAddresses = new HashSet<>();
+    for (Request request : requests) {
+      clientAddresses.add(request.clientAddress);
+    }
+    assertThat(clientAddresses).hasSize(1);
+  }
+
+  @Test
+  public void export_Compressed() throws Exception {
+    DatadogExporterHandler exporterHandler =
+        new DatadogExporterHandler(agentConfigurationBuilder().setCompressRequests(true).build());
+    exporterHandler.timeLimitedExport(createTraces());
+    // The second export reuses the request buffer of the first one.
+    exporterHandler.timeLimitedExport(createTraces());
+    List<Request> requests = fakeAgent.getRequests();
+    assertThat(requests).hasSize(2);
+    for (Request request : requests) {
+      assertThat(request.contentEncoding).isEqualTo("gzip");
+      assertThat(request.body).isEqualTo(handler.convertToJson(createTraces()));
+    }
+  }
+
+  @Test
+  public void export_NoSpans() throws Exception {
+    new DatadogExporterHandler(agentConfigurationBuilder().build())
+        .timeLimitedExport(Collections.<SpanData>emptyList());
+    assertThat(fakeAgent.getRequests()).isEmpty();
+  }
+
+  @Test
+  public void export_ErrorResponse() throws Exception {
+    fakeAgent.setResponseCode(500);
+    try {
+      new DatadogExporterHandler(agentConfigurationBuilder().build())
+          .timeLimitedExport(createTraces());
+      throw new AssertionError("Expected an exception.");
+    } catch (Exception e) {
+      assertThat(e.getMessage()).isEqualTo("Response 500");
+    }
+  }
+
+  private static final class Request {
+    private final String path;
+    private final String contentEncoding;
+    private final String body;
+    private final InetSocketAddress clientAddress;
+
+    private Request(
+        String path, String contentEncoding, String body, InetSocketAddress clientAddress) {
+      this.path = path;
+      this.contentEncoding = contentEncoding;
+      this.body = body;
+      this.clientAddress = clientAddress;
+    }
+  }
+
+  // Records the requests, and answers them all with the same response code.
+  private static final class FakeAgent implements HttpHandler {
+    @GuardedBy("this")
+    private final List<Request> requests = new ArrayList<>();
+
+    @GuardedBy("this")
+    private int responseCode = 200;
+
+    synchronized void setResponseCode(int responseCode) {
+      this.responseCode = responseCode;
+    }
+
+    synchronized List<Request> getRequests() {
+      return new ArrayList<>(requests);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      String contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+      InputStream requestBody = exchange.getRequestBody();
+      if ("gzip".equals(contentEncoding)) {
+        requestBody = new GZIPInputStream(requestBody);
+      }
+      String body = new String(ByteStreams.toByteArray(requestBody), StandardCharsets.UTF_8);
+      int code;
+      synchronized (this) {
+        requests.add(
+            new Request(
+                exchange.getRequestURI().getPath(),
+                contentEncoding,
+                body,
+                exchange.getRemoteAddress()));
+        code = responseCode;
+      }
+      byte[] responseBytes = "OK".getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(code, responseBytes.length);
+      OutputStream responseBody = exchange.getResponseBody();
+      responseBody.write(responseBytes);
+      responseBody.close();
+    }
+  }
 }
@@ -35,6 +35,7 @@ public abstract class ElasticsearchTraceConfiguration {
 
   @VisibleForTesting static final Duration DEFAULT_DEADLINE = Duration.create(10, 0);
   @VisibleForTesting static final Duration ZERO = Duration.fromMillis(0);
+  @VisibleForTesting static final int DEFAULT_MAX_BULK_ACTIONS = 500;
 
   /**
    * Returns a new {@link Builder}.
@@ -43,7 +44,12 @@ public abstract class ElasticsearchTraceConfiguration {
    * @since 0.20.0
    */
   public static Builder builder() {
-    return new AutoValue_ElasticsearchTraceConfiguration.Builder().setDeadline(DEFAULT_DEADLINE);
+    return new AutoValue_ElasticsearchTraceConfiguration.Builder()
+        .setDeadline(DEFAULT_DEADLINE)
+        .setUseBulkApi(false)
+        .setMaxBulkActions(DEFAULT_MAX_BULK_ACTIONS)
+        .setBulkParallelism(1)
+        .setCompressRequests(false);
   }
 
   /**
@@ -106,6 +112,48 @@ public abstract class ElasticsearchTraceConfiguration {
    */
   public abstract Duration getDeadline();
 
+  /**
+   * Returns whether the spans are exported with the Elasticsearch {@code _bulk} API, in one request
+   * per {@link #getMaxBulkActions()} spans, instead of in one request per span.
+   *
+   * <p>Default value is {@code false}.
+   *
+   * @return whether the spans are exported with the {@code _bulk} API.
+   * @since 0.29
+   */
+  public abstract boolean getUseBulkApi();
+
+  /**
+   * Returns the maximum number of spans sent in one {@code _bulk} request.
+   *
+   * <p>Default value is 500.
+   *
+   * @return the maximum number of spans sent in one {@code _bulk} request.
+   * @since 0.29
+   */
+  public abstract int getMaxBulkActions();
+
+  /**
+   * Returns the maximum number of {@code _bulk} requests sent at the same time to export a batch of
+   * spans.
+   *
+   * <p>Default value is 1.
+   *
+   * @return the maximum number of concurrent {@code _bulk} requests.
+   * @since 0.29
+   */
+  public abstract int getBulkParallelism();
+
+  /**
+   * Returns whether the {@code _bulk} requests are compressed with gzip.
+   *
+   * <p>Default value is {@code false}.
+   *
+   * @return whether the {@code _bulk} requests are compressed with gzip.
+   * @since 0.29
+   */
+  public abstract boolean getCompressRequests();
+
   /**
    * Builds a {@link ElasticsearchTraceConfiguration}.
    *
@@ -181,6 +229,42 @@ public abstract class ElasticsearchTraceConfiguration {
      */
     public abstract Builder setDeadline(Duration deadline);
 
+    /**
+     * Sets whether the spans are exported with the Elasticsearch {@code _bulk} API.
+     *
+     * @param useBulkApi whether the spans are exported with the {@code _bulk} API.
+     * @return this
+     * @since 0.29
+     */
+    public abstract Builder setUseBulkApi(boolean useBulkApi);
+
+    /**
+     * Sets the maximum number of spans sent in one {@code _bulk} request.
+     *
+     * @param maxBulkActions the maximum number of spans sent in one {@code _bulk} request.
+     * @return this
+     * @since 0.29
+     */
+    public abstract Builder setMaxBulkActions(int maxBulkActions);
+
+    /**
+     * Sets the maximum number of {@code _bulk} requests sent at the same time.
+     *
+     * @param bulkParallelism the maximum number of concurrent {@code _bulk} requests.
+     * @return this
+     * @since 0.29
+     */
+    public abstract Builder setBulkParallelism(int bulkParallelism);
+
+    /**
+     * Sets whether the {@code _bulk} requests are compressed with gzip.
+     *
+     * @param compressRequests whether the {@code _bulk} requests are compressed with gzip.
+     * @return this
+     * @since 0.29
+     */
+    public abstract Builder setCompressRequests(boolean compressRequests);
+
     /**
      * Builder for {@link ElasticsearchTraceConfiguration}.
      *
@@ -201,6 +285,12 @@ public abstract class ElasticsearchTraceConfiguration {
       Preconditions.checkArgument(
           elasticsearchTraceConfiguration.getDeadline().compareTo(ZERO) > 0,
           "Deadline must be positive.");
+      Preconditions.checkArgument(
+          elasticsearchTraceConfiguration.getMaxBulkActions() > 0,
+          "Max bulk actions must be positive.");
+      Preconditions.checkArgument(
+          elasticsearchTraceConfiguration.getBulkParallelism() > 0,
+          "Bulk parallelism must be positive.");
       return elasticsearchTraceConfiguration;
     }
   }
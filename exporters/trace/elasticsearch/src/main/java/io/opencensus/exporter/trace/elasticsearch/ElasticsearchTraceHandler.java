@@ -16,19 +16,36 @@
 
 package io.opencensus.exporter.trace.elasticsearch;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
 import com.google.common.io.BaseEncoding;
+import com.google.common.io.CharStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.opencensus.exporter.trace.util.TimeLimitedHandler;
 import io.opencensus.trace.export.SpanData;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 import javax.annotation.Nullable;
 
 final class ElasticsearchTraceHandler extends TimeLimitedHandler {
@@ -36,11 +53,23 @@ final class ElasticsearchTraceHandler extends TimeLimitedHandler {
   private final ElasticsearchTraceConfiguration elasticsearchTraceConfiguration;
   private final String appName;
   private final URL indexUrl;
+  private final URL bulkUrl;
+  @Nullable private final String authorization;
+  // Only used with a bulk parallelism greater than 1.
+  @Nullable private final ThreadPoolExecutor bulkExecutor;
   private static final String CONTENT_TYPE = "application/json";
+  private static final String BULK_CONTENT_TYPE = "application/x-ndjson";
+  // The index and the type are the ones of the URL.
+  private static final String BULK_INDEX_ACTION = "{\"index\":{}}\n";
   private static final String REQUEST_METHOD = "POST";
   private static final int CONNECTION_TIMEOUT_MILLISECONDS = 6000;
   private static final String EXPORT_SPAN_NAME = "ExportElasticsearchTraces";
 
+  private static final Pattern BULK_ERRORS = Pattern.compile("\"errors\"\\s*:\\s*true");
+  private static final Pattern BULK_ITEM_STATUS = Pattern.compile("\"status\"\\s*:\\s*(\\d+)");
+  private static final Pattern BULK_ITEM_REASON =
+      Pattern.compile("\"reason\"\\s*:\\s*\"((?:[^\"\\\\]|\\\\.)*)\"");
+
   ElasticsearchTraceHandler(ElasticsearchTraceConfiguration elasticsearchTraceConfiguration)
       throws MalformedURLException {
     super(elasticsearchTraceConfiguration.getDeadline(), EXPORT_SPAN_NAME);
@@ -50,7 +79,38 @@ final class ElasticsearchTraceHandler extends TimeLimitedHandler {
     sb.append(elasticsearchTraceConfiguration.getElasticsearchIndex()).append("/");
     sb.append(elasticsearchTraceConfiguration.getElasticsearchType()).append("/");
     indexUrl = new URL(sb.toString());
+    bulkUrl = new URL(sb.append("_bulk").toString());
     appName = elasticsearchTraceConfiguration.getAppName();
+    if (elasticsearchTraceConfiguration.getUserName() != null) {
+      authorization =
+          "Basic "
+              + BaseEncoding.base64()
+                  .encode(
+                      (elasticsearchTraceConfiguration.getUserName()
+                              + ":"
+                              + elasticsearchTraceConfiguration.getPassword())
+                          .getBytes(Charsets.UTF_8));
+    } else {
+      authorization = null;
+    }
+    int bulkParallelism = elasticsearchTraceConfiguration.getBulkParallelism();
+    if (elasticsearchTraceConfiguration.getUseBulkApi() && bulkParallelism > 1) {
+      bulkExecutor =
+          new ThreadPoolExecutor(
+              bulkParallelism,
+              bulkParallelism,
+              60,
+              TimeUnit.SECONDS,
+              new LinkedBlockingQueue<Runnable>(),
+              new ThreadFactoryBuilder()
+                  .setDaemon(true)
+                  .setNameFormat("OpenCensus.ElasticsearchBulk-%d")
+                  .build());
+      // Threads are only kept while there are exports.
+      bulkExecutor.allowCoreThreadTimeOut(true);
+    } else {
+      bulkExecutor = null;
+    }
   }
 
   /**
@@ -60,6 +120,10 @@ final class ElasticsearchTraceHandler extends TimeLimitedHandler {
    */
   @Override
   public void timeLimitedExport(Collection<SpanData> spanDataList) throws Exception {
+    if (elasticsearchTraceConfiguration.getUseBulkApi()) {
+      bulkExport(spanDataList);
+      return;
+    }
     List<String> jsonList = JsonConversionUtils.convertToJson(appName, spanDataList);
     if (jsonList.isEmpty()) {
       return;
@@ -67,36 +131,154 @@ final class ElasticsearchTraceHandler extends TimeLimitedHandler {
     for (String json : jsonList) {
 
       OutputStream outputStream = null;
-      InputStream inputStream = null;
 
       try {
-        HttpURLConnection connection = (HttpURLConnection) indexUrl.openConnection();
-        if (elasticsearchTraceConfiguration.getUserName() != null) {
-          String parameters =
-              BaseEncoding.base64()
-                  .encode(
-                      (elasticsearchTraceConfiguration.getUserName()
-                              + ":"
-                              + elasticsearchTraceConfiguration.getPassword())
-                          .getBytes("UTF-8"));
-          connection.setRequestProperty("Authorization", "Basic " + parameters);
-        }
-        connection.setRequestMethod(REQUEST_METHOD);
-        connection.setDoOutput(true);
-        connection.setConnectTimeout(CONNECTION_TIMEOUT_MILLISECONDS);
-        connection.setRequestProperty("Content-Type", CONTENT_TYPE);
+        HttpURLConnection connection = openConnection(indexUrl, CONTENT_TYPE);
         outputStream = connection.getOutputStream();
-        outputStream.write(json.getBytes(Charset.defaultCharset()));
+        outputStream.write(json.getBytes(Charsets.UTF_8));
         outputStream.flush();
-        inputStream = connection.getInputStream();
-        if (connection.getResponseCode() != 200) {
-          throw new Exception("Response " + connection.getResponseCode());
+        readResponse(connection);
+      } finally {
+        closeStream(outputStream);
+      }
+    }
+  }
+
+  // Sends the spans in _bulk requests of at most maxBulkActions spans, bulkParallelism at a time.
+  private void bulkExport(Collection<SpanData> spanDataList) throws Exception {
+    List<SpanData> endedSpans = new ArrayList<SpanData>(spanDataList.size());
+    for (SpanData span : spanDataList) {
+      if (span.getEndTimestamp() != null) {
+        endedSpans.add(span);
+      }
+    }
+    List<List<SpanData>> bulks =
+        Lists.partition(endedSpans, elasticsearchTraceConfiguration.getMaxBulkActions());
+    ThreadPoolExecutor executor = bulkExecutor;
+    if (executor == null || bulks.size() < 2) {
+      for (List<SpanData> bulk : bulks) {
+        sendBulk(bulk);
+      }
+      return;
+    }
+    List<Future<Void>> futures = new ArrayList<Future<Void>>(bulks.size());
+    try {
+      for (final List<SpanData> bulk : bulks) {
+        futures.add(
+            executor.submit(
+                new Callable<Void>() {
+                  @Override
+                  public Void call() throws Exception {
+                    sendBulk(bulk);
+                    return null;
+                  }
+                }));
+      }
+      for (Future<Void> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          throw cause instanceof Exception ? (Exception) cause : e;
         }
+      }
+    } finally {
+      // Cancels the remaining requests after a failure, or when the export times out.
+      for (Future<Void> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  // Streams the spans as NDJSON into the request, which reuses a kept-alive connection once the
+  // response of the previous request is fully read.
+  private void sendBulk(List<SpanData> bulk) throws Exception {
+    HttpURLConnection connection = openConnection(bulkUrl, BULK_CONTENT_TYPE);
+    connection.setChunkedStreamingMode(0);
+    boolean compressRequests = elasticsearchTraceConfiguration.getCompressRequests();
+    if (compressRequests) {
+      connection.setRequestProperty("Content-Encoding", "gzip");
+    }
+    OutputStream outputStream = connection.getOutputStream();
+    try {
+      if (compressRequests) {
+        outputStream = new GZIPOutputStream(outputStream);
+      }
+      Writer writer = new OutputStreamWriter(outputStream, Charsets.UTF_8);
+      StringBuilder sb = new StringBuilder();
+      for (SpanData span : bulk) {
+        sb.setLength(0);
+        JsonConversionUtils.appendJson(appName, span, sb);
+        writer.write(BULK_INDEX_ACTION);
+        writer.append(sb).append('\n');
+      }
+      // Also finishes the gzip stream.
+      writer.close();
+    } finally {
+      closeStream(outputStream);
+    }
+    checkBulkResponse(readResponse(connection), bulk.size());
+  }
+
+  private HttpURLConnection openConnection(URL url, String contentType) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    if (authorization != null) {
+      connection.setRequestProperty("Authorization", authorization);
+    }
+    connection.setRequestMethod(REQUEST_METHOD);
+    connection.setDoOutput(true);
+    connection.setConnectTimeout(CONNECTION_TIMEOUT_MILLISECONDS);
+    connection.setRequestProperty("Content-Type", contentType);
+    return connection;
+  }
+
+  // Reads the whole response, so that the connection can be reused, and throws if it is an error.
+  private static String readResponse(HttpURLConnection connection) throws Exception {
+    int responseCode = connection.getResponseCode();
+    InputStream inputStream =
+        responseCode < 400 ? connection.getInputStream() : connection.getErrorStream();
+    String response = "";
+    if (inputStream != null) {
+      try {
+        response = CharStreams.toString(new InputStreamReader(inputStream, Charsets.UTF_8));
       } finally {
         closeStream(inputStream);
-        closeStream(outputStream);
       }
     }
+    if (responseCode / 100 != 2) {
+      throw new Exception("Response " + responseCode + ": " + response);
+    }
+    return response;
+  }
+
+  /**
+   * Throws if some items of a {@code _bulk} response failed. The response is scanned rather than
+   * parsed: only the items have a status, and only the reason of the first failure is reported.
+   *
+   * @param response the body of the {@code _bulk} response.
+   * @param items the number of items of the request.
+   * @throws Exception if some items failed.
+   */
+  @VisibleForTesting
+  static void checkBulkResponse(String response, int items) throws Exception {
+    if (!BULK_ERRORS.matcher(response).find()) {
+      return;
+    }
+    int failedItems = 0;
+    Matcher status = BULK_ITEM_STATUS.matcher(response);
+    while (status.find()) {
+      if (Integer.parseInt(status.group(1)) >= 300) {
+        failedItems++;
+      }
+    }
+    Matcher reason = BULK_ITEM_REASON.matcher(response);
+    throw new Exception(
+        "Failed to index "
+            + failedItems
+            + " of "
+            + items
+            + " spans"
+            + (reason.find() ? ": " + reason.group(1) : ""));
   }
 
   // Closes an input or output stream and ignores potential IOException.
@@ -115,53 +115,68 @@ final class JsonConversionUtils {
     }
     StringBuilder sb = new StringBuilder();
     for (final SpanData span : spanDataList) {
-      final SpanContext spanContext = span.getContext();
-      final SpanId parentSpanId = span.getParentSpanId();
-      final Timestamp startTimestamp = span.getStartTimestamp();
-      final Timestamp endTimestamp = span.getEndTimestamp();
-      final Status status = span.getStatus();
-      if (endTimestamp == null) {
-        continue;
+      sb.setLength(0);
+      if (appendJson(appName, span, sb)) {
+        spanJson.add(sb.toString());
       }
-      sb.append('{');
-      sb.append("\"appName\":\"").append(appName).append("\",");
-      sb.append("\"spanId\":\"").append(encodeSpanId(spanContext.getSpanId())).append("\",");
-      sb.append("\"traceId\":\"").append(encodeTraceId(spanContext.getTraceId())).append("\",");
-      if (parentSpanId != null) {
-        sb.append("\"parentId\":\"").append(encodeSpanId(parentSpanId)).append("\",");
-      }
-      sb.append("\"timestamp\":").append(toMillis(startTimestamp)).append(',');
-      sb.append("\"duration\":").append(toMillis(startTimestamp, endTimestamp)).append(',');
-      sb.append("\"name\":\"").append(toSpanName(span)).append("\",");
-      sb.append("\"kind\":\"").append(toSpanKind(span)).append("\",");
-      sb.append("\"dateStarted\":\"").append(formatDate(startTimestamp)).append("\",");
-      sb.append("\"dateEnded\":\"").append(formatDate(endTimestamp)).append('"');
-      if (status == null) {
-        sb.append(",\"status\":").append("\"ok\"");
-      } else if (!status.isOk()) {
-        sb.append(",\"error\":").append("true");
-      }
-      Map<String, AttributeValue> attributeMap = span.getAttributes().getAttributeMap();
-      if (attributeMap.size() > 0) {
-        StringBuilder builder = new StringBuilder();
-        builder.append('{');
-        for (Entry<String, AttributeValue> entry : attributeMap.entrySet()) {
-          if (builder.length() > 1) {
-            builder.append(',');
-          }
-          builder
-              .append("\"")
-              .append(entry.getKey())
-              .append("\":\"")
-              .append(attributeValueToString(entry.getValue()))
-              .append("\"");
+    }
+    return spanJson;
+  }
+
+  /**
+   * Appends the json of a {@link SpanData} to a {@code StringBuilder}, unless the span has not
+   * ended.
+   *
+   * @param appName the name of app to include in traces.
+   * @param span the {@code SpanData} to be converted to json.
+   * @param sb the {@code StringBuilder} to append to.
+   * @return {@code true} if the json was appended, {@code false} if the span has not ended.
+   */
+  static boolean appendJson(String appName, SpanData span, StringBuilder sb) {
+    final SpanContext spanContext = span.getContext();
+    final SpanId parentSpanId = span.getParentSpanId();
+    final Timestamp startTimestamp = span.getStartTimestamp();
+    final Timestamp endTimestamp = span.getEndTimestamp();
+    final Status status = span.getStatus();
+    if (endTimestamp == null) {
+      return false;
+    }
+    sb.append('{');
+    sb.append("\"appName\":\"").append(appName).append("\",");
+    sb.append("\"spanId\":\"").append(encodeSpanId(spanContext.getSpanId())).append("\",");
+    sb.append("\"traceId\":\"").append(encodeTraceId(spanContext.getTraceId())).append("\",");
+    if (parentSpanId != null) {
+      sb.append("\"parentId\":\"").append(encodeSpanId(parentSpanId)).append("\",");
+    }
+    sb.append("\"timestamp\":").append(toMillis(startTimestamp)).append(',');
+    sb.append("\"duration\":").append(toMillis(startTimestamp, endTimestamp)).append(',');
+    sb.append("\"name\":\"").append(toSpanName(span)).append("\",");
+    sb.append("\"kind\":\"").append(toSpanKind(span)).append("\",");
+    sb.append("\"dateStarted\":\"").append(formatDate(startTimestamp)).append("\",");
+    sb.append("\"dateEnded\":\"").append(formatDate(endTimestamp)).append('"');
+    if (status == null) {
+      sb.append(",\"status\":").append("\"ok\"");
+    } else if (!status.isOk()) {
+      sb.append(",\"error\":").append("true");
+    }
+    Map<String, AttributeValue> attributeMap = span.getAttributes().getAttributeMap();
+    if (attributeMap.size() > 0) {
+      sb.append(",\"data\":{");
+      boolean first = true;
+      for (Entry<String, AttributeValue> entry : attributeMap.entrySet()) {
+        if (!first) {
+          sb.append(',');
         }
-        builder.append('}');
-        sb.append(",\"data\":").append(builder);
+        first = false;
+        sb.append("\"")
+            .append(entry.getKey())
+            .append("\":\"")
+            .append(attributeValueToString(entry.getValue()))
+            .append("\"");
       }
       sb.append('}');
-      spanJson.add(sb.toString());
     }
-    return spanJson;
+    sb.append('}');
+    return true;
   }
 }
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.exporter.trace.elasticsearch;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.opencensus.common.Timestamp;
+import io.opencensus.trace.Annotation;
+import io.opencensus.trace.AttributeValue;
+import io.opencensus.trace.Link;
+import io.opencensus.trace.MessageEvent;
+import io.opencensus.trace.SpanContext;
+import io.opencensus.trace.SpanId;
+import io.opencensus.trace.Status;
+import io.opencensus.trace.TraceId;
+import io.opencensus.trace.TraceOptions;
+import io.opencensus.trace.export.SpanData;
+import io.opencensus.trace.export.SpanData.Attributes;
+import io.opencensus.trace.export.SpanData.Links;
+import io.opencensus.trace.export.SpanData.TimedEvent;
+import io.opencensus.trace.export.SpanData.TimedEvents;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import javax.annotation.concurrent.GuardedBy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link ElasticsearchTraceHandler}. */
+@RunWith(JUnit4.class)
+public class ElasticsearchTraceHandlerTest {
+  private static final String BULK_SUCCESS = "{\"took\":3,\"errors\":false,\"items\":[]}";
+  private final Random random = new Random(1234);
+  private final FakeElasticsearch fakeElasticsearch = new FakeElasticsearch();
+  private HttpServer server;
+
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", fakeElasticsearch);
+    server.start();
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  private ElasticsearchTraceConfiguration.Builder configurationBuilder() {
+    return ElasticsearchTraceConfiguration.builder()
+        .setAppName("test-app")
+        .setElasticsearchUrl("http://localhost:" + server.getAddress().getPort())
+        .setElasticsearchIndex("opencensus")
+        .setElasticsearchType("trace");
+  }
+
+  private List<SpanData> createSpans(int numSpans) {
+    List<SpanData> spans = new ArrayList<SpanData>(numSpans);
+    for (int i = 0; i < numSpans; i++) {
+      spans.add(
+          SpanData.create(
+              SpanContext.create(
+                  TraceId.generateRandomId(random),
+                  SpanId.generateRandomId(random),
+                  TraceOptions.builder().setIsSampled(true).build()),
+              null,
+              null,
+              "span" + i,
+              null,
+              Timestamp.create(1505855794, 194009601),
+              Attributes.create(Collections.<String, AttributeValue>emptyMap(), 0),
+              TimedEvents.create(Collections.<TimedEvent<Annotation>>emptyList(), 0),
+              TimedEvents.create(Collections.<TimedEvent<MessageEvent>>emptyList(), 0),
+              Links.create(Collections.<Link>emptyList(), 0),
+              null,
+              Status.OK,
+              Timestamp.create(1505855799, 465726528)));
+    }
+    return spans;
+  }
+
+  @Test
+  public void exportOneRequestPerSpan() throws Exception {
+    fakeElasticsearch.setResponse(201, "{\"result\":\"created\"}");
+    ElasticsearchTraceHandler handler =
+        new ElasticsearchTraceHandler(configurationBuilder().build());
+    handler.timeLimitedExport(createSpans(3));
+    List<Request> requests = fakeElasticsearch.getRequests();
+    assertThat(requests).hasSize(3);
+    for (int i = 0; i < 3; i++) {
+      assertThat(requests.get(i).path).isEqualTo("/opencensus/trace/");
+      assertThat(requests.get(i).body).contains("\"name\":\"span" + i + "\"");
+    }
+  }
+
+  @Test
+  public void bulkExport() throws Exception {
+    fakeElasticsearch.setResponse(200, BULK_SUCCESS);
+    ElasticsearchTraceHandler handler =
+        new ElasticsearchTraceHandler(configurationBuilder().setUseBulkApi(true).build());
+    handler.timeLimitedExport(createSpans(3));
+    List<Request> requests = fakeElasticsearch.getRequests();
+    assertThat(requests).hasSize(1);
+    Request request = requests.get(0);
+    assertThat(request.path).isEqualTo("/opencensus/trace/_bulk");
+    assertThat(request.contentType).isEqualTo("application/x-ndjson");
+    String[] lines = request.body.split("\n", -1);
+    assertThat(lines.length).isEqualTo(7);
+    for (int i = 0; i < 3; i++) {
+      assertThat(lines[2 * i]).isEqualTo("{\"index\":{}}");
+      assertThat(lines[2 * i + 1]).contains("\"name\":\"span" + i + "\"");
+    }
+    assertThat(lines[6]).isEmpty();
+  }
+
+  @Test
+  public void bulkExport_Compressed() throws Exception {
+    fakeElasticsearch.setResponse(200, BULK_SUCCESS);
+    ElasticsearchTraceHandler handler =
+        new ElasticsearchTraceHandler(
+            configurationBuilder().setUseBulkApi(true).setCompressRequests(true).build());
+    handler.timeLimitedExport(createSpans(2));
+    List<Request> requests = fakeElasticsearch.getRequests();
+    assertThat(requests).hasSize(1);
+    assertThat(requests.get(0).contentEncoding).isEqualTo("gzip");
+    assertThat(requests.get(0).body).contains("\"name\":\"span1\"");
+  }
+
+  @Test
+  public void bulkExport_SplitsInMaxBulkActions() throws Exception {
+    fakeElasticsearch.setResponse(200, BULK_SUCCESS);
+    ElasticsearchTraceHandler handler =
+        new ElasticsearchTraceHandler(
+            configurationBuilder().setUseBulkApi(true).setMaxBulkActions(2).build());
+    handler.timeLimitedExport(createSpans(5));
+    List<Request> requests = fakeElasticsearch.getRequests();
+    assertThat(requests).hasSize(3);
+    assertThat(requests.get(2).body).contains("\"name\":\"span4\"");
+    // The requests reuse the same kept-alive connection.
+    Set<InetSocketAddress> clientAddresses = new HashSet<InetSocketAddress>();
+    for (Request request : requests) {
+      clientAddresses.add(request.clientAddress);
+    }
+    assertThat(clientAddresses).hasSize(1);
+  }
+
+  @Test
+  public void bulkExport_Parallel() throws Exception {
+    fakeElasticsearch.setResponse(200, BULK_SUCCESS);
+    ElasticsearchTraceHandler handler =
+        new ElasticsearchTraceHandler(
+            configurationBuilder()
+                .setUseBulkApi(true)
+                .setMaxBulkActions(2)
+                .setBulkParallelism(3)
+                .build());
+    handler.timeLimitedExport(createSpans(6));
+    StringBuilder bodies = new StringBuilder();
+    List<Request> requests = fakeElasticsearch.getRequests();
+    for (Request request : requests) {
+      bodies.append(request.body);
+    }
+    assertThat(requests).hasSize(3);
+    for (int i = 0; i < 6; i++) {
+      assertThat(bodies.toString()).contains("\"name\":\"span" + i + "\"");
+    }
+  }
+
+  @Test
+  public void bulkExport_ItemErrors() throws Exception {
+    fakeElasticsearch.setResponse(
+        200,
+        "{\"took\":3,\"errors\":true,\"items\":["
+            + "{\"index\":{\"_index\":\"opencensus\",\"status\":201}},"
+            + "{\"index\":{\"_index\":\"opencensus\",\"status\":400,\"error\":{"
+            + "\"type\":\"mapper_parsing_exception\",\"reason\":\"failed to parse\"}}}]}");
+    ElasticsearchTraceHandler handler =
+        new ElasticsearchTraceHandler(configurationBuilder().setUseBulkApi(true).build());
+    try {
+      handler.timeLimitedExport(createSpans(2));
+      throw new AssertionError("Expected an exception.");
+    } catch (Exception e) {
+      assertThat(e.getMessage()).isEqualTo("Failed to index 1 of 2 spans: failed to parse");
+    }
+  }
+
+  @Test
+  public void bulkExport_ErrorResponse() throws Exception {
+    fakeElasticsearch.setResponse(503, "unavailable");
+    ElasticsearchTraceHandler handler =
+        new ElasticsearchTraceHandler(configurationBuilder().setUseBulkApi(true).build());
+    try {
+      handler.timeLimitedExport(createSpans(1));
+      throw new AssertionError("Expected an exception.");
+    } catch (Exception e) {
+      assertThat(e.getMessage()).isEqualTo("Response 503: unavailable");
+    }
+  }
+
+  @Test
+  public void checkBulkResponse_NoErrors() throws Exception {
+    ElasticsearchTraceHandler.checkBulkResponse(
+        "{\"took\":3,\"errors\":false,\"items\":[{\"index\":{\"status\":201}}]}", 1);
+  }
+
+  private static final class Request {
+    private final String path;
+    private final String contentType;
+    private final String contentEncoding;
+    private final String body;
+    private final InetSocketAddress clientAddress;
+
+    private Request(
+        String path,
+        String contentType,
+        String contentEncoding,
+        String body,
+        InetSocketAddress clientAddress) {
+      this.path = path;
+      this.contentType = contentType;
+      this.contentEncoding = contentEncoding;
+      this.body = body;
+      this.clientAddress = clientAddress;
+    }
+  }
+
+  // Records the requests, and answers them all with the same response.
+  private static final class FakeElasticsearch implements HttpHandler {
+    @GuardedBy("this")
+    private final List<Request> requests = new ArrayList<Request>();
+
+    @GuardedBy("this")
+    private int responseCode = 200;
+
+    @GuardedBy("this")
+    private String response = "";
+
+    synchronized void setResponse(int responseCode, String response) {
+      this.responseCode = responseCode;
+      this.response = response;
+    }
+
+    synchronized List<Request> getRequests() {
+      return new ArrayList<Request>(requests);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      String contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+      InputStream requestBody = exchange.getRequestBody();
+      if ("gzip".equals(contentEncoding)) {
+        requestBody = new GZIPInputStream(requestBody);
+      }
+      String body = new String(ByteStreams.toByteArray(requestBody), Charsets.UTF_8);
+      byte[] responseBytes;
+      int code;
+      synchronized (this) {
+        requests.add(
+            new Request(
+                exchange.getRequestURI().getPath(),
+                exchange.getRequestHeaders().getFirst("Content-Type"),
+                contentEncoding,
+                body,
+                exchange.getRemoteAddress()));
+        code = responseCode;
+        responseBytes = response.getBytes(Charsets.UTF_8);
+      }
+      exchange.sendResponseHeaders(code, responseBytes.length);
+      OutputStream responseBody = exchange.getResponseBody();
+      responseBody.write(responseBytes);
+      responseBody.close();
+    }
+  }
+}
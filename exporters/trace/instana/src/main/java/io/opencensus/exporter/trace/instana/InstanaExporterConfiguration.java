@@ -33,6 +33,7 @@ public abstract class InstanaExporterConfiguration {
 
   @VisibleForTesting static final Duration DEFAULT_DEADLINE = Duration.create(10, 0);
   @VisibleForTesting static final Duration ZERO = Duration.fromMillis(0);
+  @VisibleForTesting static final int DEFAULT_MAX_REQUEST_BYTES = 1024 * 1024;
 
   InstanaExporterConfiguration() {}
 
@@ -54,6 +55,26 @@ public abstract class InstanaExporterConfiguration {
    */
   public abstract Duration getDeadline();
 
+  /**
+   * Returns whether the requests to the Instana agent are compressed with gzip.
+   *
+   * <p>Default value is {@code false}.
+   *
+   * @return whether the requests are compressed with gzip.
+   * @since 0.29
+   */
+  public abstract boolean getCompressRequests();
+
+  /**
+   * Returns the size in bytes above which the spans of an export are split into several requests.
+   *
+   * <p>Default value is 1 MiB.
+   *
+   * @return the size in bytes above which the spans are split into several requests.
+   * @since 0.29
+   */
+  public abstract int getMaxRequestBytes();
+
   /**
    * Return a new {@link Builder}.
    *
@@ -61,7 +82,10 @@ public abstract class InstanaExporterConfiguration {
    * @since 0.22
    */
   public static Builder builder() {
-    return new AutoValue_InstanaExporterConfiguration.Builder().setDeadline(DEFAULT_DEADLINE);
+    return new AutoValue_InstanaExporterConfiguration.Builder()
+        .setDeadline(DEFAULT_DEADLINE)
+        .setCompressRequests(false)
+        .setMaxRequestBytes(DEFAULT_MAX_REQUEST_BYTES);
   }
 
   /**
@@ -93,8 +117,28 @@ public abstract class InstanaExporterConfiguration {
      */
     public abstract Builder setDeadline(Duration deadline);
 
+    /**
+     * Sets whether the requests to the Instana agent are compressed with gzip.
+     *
+     * @param compressRequests whether the requests are compressed with gzip.
+     * @return this
+     * @since 0.29
+     */
+    public abstract Builder setCompressRequests(boolean compressRequests);
+
+    /**
+     * Sets the size in bytes above which the spans of an export are split into several requests.
+     *
+     * @param maxRequestBytes the size in bytes above which the spans are split.
+     * @return this
+     * @since 0.29
+     */
+    public abstract Builder setMaxRequestBytes(int maxRequestBytes);
+
     abstract Duration getDeadline();
 
+    abstract int getMaxRequestBytes();
+
     abstract InstanaExporterConfiguration autoBuild();
 
     /**
@@ -105,6 +149,7 @@ public abstract class InstanaExporterConfiguration {
      */
     public InstanaExporterConfiguration build() {
       Preconditions.checkArgument(getDeadline().compareTo(ZERO) > 0, "Deadline must be positive.");
+      Preconditions.checkArgument(getMaxRequestBytes() > 0, "Max request bytes must be positive.");
       return autoBuild();
     }
   }
@@ -19,7 +19,8 @@ package io.opencensus.exporter.trace.instana;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
-import com.google.common.io.BaseEncoding;
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
 import io.opencensus.common.Duration;
 import io.opencensus.common.Function;
 import io.opencensus.common.Functions;
@@ -32,16 +33,22 @@ import io.opencensus.trace.SpanId;
 import io.opencensus.trace.Status;
 import io.opencensus.trace.TraceId;
 import io.opencensus.trace.export.SpanData;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
 
 /*>>>
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -53,8 +60,8 @@ import org.checkerframework.checker.nullness.qual.Nullable;
  * https://github.com/instana/instana-java-sdk#instana-trace-webservice
  *
  * Currently does a blocking export using HttpUrlConnection.
- * Also uses a StringBuilder to build JSON.
- * Both can be improved should 3rd party library usage not be a concern.
+ * The JSON is written directly into a request buffer kept between exports, optionally gzipped, and
+ * the spans of an export are split into several requests when they exceed maxRequestBytes.
  *
  * Major TODO is the limitation of Instana to only suport 64bit trace ids, which will be resolved.
  * Until then it is crossing fingers and treating it as 50% sampler :).
@@ -62,19 +69,71 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 final class InstanaExporterHandler extends TimeLimitedHandler {
 
   private static final String EXPORT_SPAN_NAME = "ExportInstanaTraces";
+  private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+  // Instana only uses the first 8 bytes of the trace id.
+  private static final int TRACE_ID_CHARS = 16;
+  private static final int SPAN_ID_CHARS = 2 * SpanId.SIZE;
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
   private final URL agentEndpoint;
+  private final boolean compressRequests;
+  private final int maxRequestBytes;
+  // The request buffer is kept between exports, so that it does not grow again at each export.
+  private final AtomicReference</*@Nullable*/ ByteArrayOutputStream> pooledBuffer =
+      new AtomicReference</*@Nullable*/ ByteArrayOutputStream>();
+
+  InstanaExporterHandler(InstanaExporterConfiguration configuration)
+      throws MalformedURLException {
+    super(configuration.getDeadline(), EXPORT_SPAN_NAME);
+    this.agentEndpoint = new URL(configuration.getAgentEndpoint());
+    this.compressRequests = configuration.getCompressRequests();
+    this.maxRequestBytes = configuration.getMaxRequestBytes();
+  }
 
-  InstanaExporterHandler(URL agentEndpoint, Duration deadline) {
-    super(deadline, EXPORT_SPAN_NAME);
-    this.agentEndpoint = agentEndpoint;
+  private static void writeTraceId(TraceId traceId, Writer writer, char[] idChars)
+      throws IOException {
+    traceId.copyLowerBase16To(idChars, 0);
+    writer.write('"');
+    writer.write(idChars, 0, TRACE_ID_CHARS);
+    writer.write('"');
   }
 
-  private static String encodeTraceId(TraceId traceId) {
-    return BaseEncoding.base16().lowerCase().encode(traceId.getBytes(), 0, 8);
+  private static void writeSpanId(SpanId spanId, Writer writer, char[] idChars)
+      throws IOException {
+    spanId.copyLowerBase16To(idChars, 0);
+    writer.write('"');
+    writer.write(idChars, 0, SPAN_ID_CHARS);
+    writer.write('"');
   }
 
-  private static String encodeSpanId(SpanId spanId) {
-    return BaseEncoding.base16().lowerCase().encode(spanId.getBytes());
+  // Writes a JSON string, escaping the quotes, the backslashes and the control characters.
+  private static void writeString(String value, Writer writer) throws IOException {
+    writer.write('"');
+    int start = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c != '"' && c != '\\' && c >= 0x20) {
+        continue;
+      }
+      writer.write(value, start, i - start);
+      start = i + 1;
+      writer.write('\\');
+      if (c == '"' || c == '\\') {
+        writer.write(c);
+      } else if (c == '\n') {
+        writer.write('n');
+      } else if (c == '\r') {
+        writer.write('r');
+      } else if (c == '\t') {
+        writer.write('t');
+      } else {
+        writer.write("u00");
+        writer.write(HEX_DIGITS[c >> 4]);
+        writer.write(HEX_DIGITS[c & 0xf]);
+      }
+    }
+    writer.write(value, start, value.length() - start);
+    writer.write('"');
   }
 
   private static String toSpanName(SpanData spanData) {
@@ -122,75 +181,138 @@ final class InstanaExporterHandler extends TimeLimitedHandler {
         Functions.</*@Nullable*/ String>returnNull());
   }
 
-  static String convertToJson(Collection<SpanData> spanDataList) {
-    StringBuilder sb = new StringBuilder();
-    sb.append('[');
-    for (final SpanData span : spanDataList) {
-      final SpanContext spanContext = span.getContext();
-      final SpanId parentSpanId = span.getParentSpanId();
-      final Timestamp startTimestamp = span.getStartTimestamp();
-      final Timestamp endTimestamp = span.getEndTimestamp();
-      final Status status = span.getStatus();
-      if (status == null || endTimestamp == null) {
-        continue;
+  static String convertToJson(Collection<SpanData> spanDataList) throws IOException {
+    StringWriter writer = new StringWriter();
+    char[] idChars = new char[2 * TraceId.SIZE];
+    int spans = 0;
+    for (SpanData span : spanDataList) {
+      if (writeSpan(span, spans == 0 ? '[' : ',', writer, idChars)) {
+        spans++;
       }
-      if (sb.length() > 1) {
-        sb.append(',');
-      }
-      sb.append('{');
-      sb.append("\"spanId\":\"").append(encodeSpanId(spanContext.getSpanId())).append("\",");
-      sb.append("\"traceId\":\"").append(encodeTraceId(spanContext.getTraceId())).append("\",");
-      if (parentSpanId != null) {
-        sb.append("\"parentId\":\"").append(encodeSpanId(parentSpanId)).append("\",");
-      }
-      sb.append("\"timestamp\":").append(toMillis(startTimestamp)).append(',');
-      sb.append("\"duration\":").append(toMillis(startTimestamp, endTimestamp)).append(',');
-      sb.append("\"name\":\"").append(toSpanName(span)).append("\",");
-      sb.append("\"type\":\"").append(toSpanType(span)).append('"');
-      if (!status.isOk()) {
-        sb.append(",\"error\":").append("true");
-      }
-      Map<String, AttributeValue> attributeMap = span.getAttributes().getAttributeMap();
-      if (attributeMap.size() > 0) {
-        StringBuilder dataSb = new StringBuilder();
-        dataSb.append('{');
-        for (Entry<String, AttributeValue> entry : attributeMap.entrySet()) {
-          if (dataSb.length() > 1) {
-            dataSb.append(',');
-          }
-          dataSb
-              .append("\"")
-              .append(entry.getKey())
-              .append("\":\"")
-              .append(attributeValueToString(entry.getValue()))
-              .append("\"");
-        }
-        dataSb.append('}');
+    }
+    if (spans == 0) {
+      writer.write('[');
+    }
+    writer.write(']');
+    return writer.toString();
+  }
 
-        sb.append(",\"data\":").append(dataSb);
+  // Writes the separator followed by the span, unless the span has not ended. Returns whether the
+  // span was written.
+  private static boolean writeSpan(SpanData span, char separator, Writer writer, char[] idChars)
+      throws IOException {
+    final SpanContext spanContext = span.getContext();
+    final SpanId parentSpanId = span.getParentSpanId();
+    final Timestamp startTimestamp = span.getStartTimestamp();
+    final Timestamp endTimestamp = span.getEndTimestamp();
+    final Status status = span.getStatus();
+    if (status == null || endTimestamp == null) {
+      return false;
+    }
+    writer.write(separator);
+    writer.write("{\"spanId\":");
+    writeSpanId(spanContext.getSpanId(), writer, idChars);
+    writer.write(",\"traceId\":");
+    writeTraceId(spanContext.getTraceId(), writer, idChars);
+    if (parentSpanId != null) {
+      writer.write(",\"parentId\":");
+      writeSpanId(parentSpanId, writer, idChars);
+    }
+    writer.write(",\"timestamp\":");
+    writer.write(Long.toString(toMillis(startTimestamp)));
+    writer.write(",\"duration\":");
+    writer.write(Long.toString(toMillis(startTimestamp, endTimestamp)));
+    writer.write(",\"name\":");
+    writeString(toSpanName(span), writer);
+    writer.write(",\"type\":\"");
+    writer.write(toSpanType(span));
+    writer.write('"');
+    if (!status.isOk()) {
+      writer.write(",\"error\":true");
+    }
+    Map<String, AttributeValue> attributeMap = span.getAttributes().getAttributeMap();
+    if (attributeMap.size() > 0) {
+      char dataSeparator = '{';
+      writer.write(",\"data\":");
+      for (Entry<String, AttributeValue> entry : attributeMap.entrySet()) {
+        writer.write(dataSeparator);
+        dataSeparator = ',';
+        writeString(entry.getKey(), writer);
+        writer.write(':');
+        writeString(String.valueOf(attributeValueToString(entry.getValue())), writer);
       }
-      sb.append('}');
+      writer.write('}');
     }
-    sb.append(']');
-    return sb.toString();
+    writer.write('}');
+    return true;
   }
 
+  // Streams the spans into the request buffer, and sends it whenever it reaches maxRequestBytes.
   @Override
   public void timeLimitedExport(Collection<SpanData> spanDataList) throws Exception {
-    String json = convertToJson(spanDataList);
+    ByteArrayOutputStream buffer = pooledBuffer.getAndSet(null);
+    if (buffer == null) {
+      buffer = new ByteArrayOutputStream(INITIAL_BUFFER_BYTES);
+    }
+    char[] idChars = new char[2 * TraceId.SIZE];
+    try {
+      Writer writer = newRequestWriter(buffer);
+      int spans = 0;
+      for (SpanData span : spanDataList) {
+        if (!writeSpan(span, spans == 0 ? '[' : ',', writer, idChars)) {
+          continue;
+        }
+        spans++;
+        // With gzip, the size is only approximate: the deflater keeps some of the input.
+        writer.flush();
+        if (buffer.size() >= maxRequestBytes) {
+          writer.write(']');
+          writer.close();
+          send(buffer);
+          writer = newRequestWriter(buffer);
+          spans = 0;
+        }
+      }
+      writer.write(']');
+      writer.close();
+      if (spans > 0) {
+        send(buffer);
+      }
+    } finally {
+      buffer.reset();
+      pooledBuffer.set(buffer);
+    }
+  }
 
+  private Writer newRequestWriter(OutputStream buffer) throws IOException {
+    return new OutputStreamWriter(
+        compressRequests ? new GZIPOutputStream(buffer) : buffer, Charsets.UTF_8);
+  }
+
+  // Sends the request, and reads the whole response so that the connection can be reused.
+  private void send(ByteArrayOutputStream body) throws Exception {
     OutputStream outputStream = null;
     InputStream inputStream = null;
     try {
       HttpURLConnection connection = (HttpURLConnection) agentEndpoint.openConnection();
       connection.setRequestMethod("POST");
+      connection.setRequestProperty("Content-Type", "application/json");
+      if (compressRequests) {
+        connection.setRequestProperty("Content-Encoding", "gzip");
+      }
       connection.setDoOutput(true);
+      connection.setFixedLengthStreamingMode(body.size());
       outputStream = connection.getOutputStream();
-      outputStream.write(json.getBytes(Charset.defaultCharset()));
-      outputStream.flush();
-      inputStream = connection.getInputStream();
-      if (connection.getResponseCode() != 200) {
-        throw new Exception("Response " + connection.getResponseCode());
+      body.writeTo(outputStream);
+      outputStream.close();
+      body.reset();
+      int responseCode = connection.getResponseCode();
+      inputStream = responseCode < 400 ? connection.getInputStream() : connection.getErrorStream();
+      if (inputStream != null) {
+        ByteStreams.exhaust(inputStream);
+      }
+      if (responseCode / 100 != 2) {
+        throw new Exception("Response " + responseCode);
       }
     } finally {
       closeStream(inputStream);
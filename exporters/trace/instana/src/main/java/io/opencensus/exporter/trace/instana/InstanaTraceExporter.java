@@ -23,7 +23,6 @@ import io.opencensus.trace.Tracing;
 import io.opencensus.trace.export.SpanExporter;
 import io.opencensus.trace.export.SpanExporter.Handler;
 import java.net.MalformedURLException;
-import java.net.URL;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 
@@ -67,9 +66,7 @@ public final class InstanaTraceExporter {
       throws MalformedURLException {
     synchronized (monitor) {
       checkState(handler == null, "Instana exporter is already registered.");
-      Handler newHandler =
-          new InstanaExporterHandler(
-              new URL(configuration.getAgentEndpoint()), configuration.getDeadline());
+      Handler newHandler = new InstanaExporterHandler(configuration);
       handler = newHandler;
       register(Tracing.getExportComponent().getSpanExporter(), newHandler);
     }
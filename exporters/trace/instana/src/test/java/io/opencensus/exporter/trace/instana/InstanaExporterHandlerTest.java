@@ -19,7 +19,12 @@ package io.opencensus.exporter.trace.instana;
 import static com.google.common.truth.Truth.assertThat;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 import io.opencensus.common.Timestamp;
 import io.opencensus.trace.Annotation;
 import io.opencensus.trace.AttributeValue;
@@ -37,9 +42,20 @@ import io.opencensus.trace.export.SpanData.Attributes;
 import io.opencensus.trace.export.SpanData.Links;
 import io.opencensus.trace.export.SpanData.TimedEvent;
 import io.opencensus.trace.export.SpanData.TimedEvents;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import javax.annotation.concurrent.GuardedBy;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -61,9 +77,59 @@ public class InstanaExporterHandlerTest {
           TimedEvent.create(
               Timestamp.create(1505855799, 459486280),
               MessageEvent.builder(Type.SENT, 0).setCompressedMessageSize(13).build()));
+  private final FakeAgent fakeAgent = new FakeAgent();
+  private HttpServer server;
+
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", fakeAgent);
+    server.start();
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  private InstanaExporterConfiguration.Builder configurationBuilder() {
+    return InstanaExporterConfiguration.builder()
+        .setAgentEndpoint(
+            "http://localhost:"
+                + server.getAddress().getPort()
+                + "/com.instana.plugin.generic.trace");
+  }
+
+  private static SpanData createSpan(String name, Map<String, AttributeValue> spanAttributes) {
+    return SpanData.create(
+        SpanContext.create(
+            TraceId.fromLowerBase16(TRACE_ID),
+            SpanId.fromLowerBase16(SPAN_ID),
+            TraceOptions.builder().setIsSampled(true).build()),
+        null, /* parentSpanId */
+        false, /* hasRemoteParent */
+        name,
+        null, /* kind */
+        Timestamp.create(1505855794, 194009601) /* startTimestamp */,
+        Attributes.create(spanAttributes, 0 /* droppedAttributesCount */),
+        TimedEvents.create(annotations, 0 /* droppedEventsCount */),
+        TimedEvents.create(messageEvents, 0 /* droppedEventsCount */),
+        Links.create(Collections.<Link>emptyList(), 0 /* droppedLinksCount */),
+        null, /* childSpanCount */
+        Status.OK,
+        Timestamp.create(1505855799, 465726528) /* endTimestamp */);
+  }
+
+  private static List<SpanData> createSpans(int numSpans) {
+    List<SpanData> spans = new ArrayList<SpanData>(numSpans);
+    for (int i = 0; i < numSpans; i++) {
+      spans.add(createSpan("span" + i, attributes));
+    }
+    return spans;
+  }
 
   @Test
-  public void generateSpan_NoKindAndRemoteParent() {
+  public void generateSpan_NoKindAndRemoteParent() throws IOException {
     SpanData data =
         SpanData.create(
             SpanContext.create(
@@ -101,7 +167,7 @@ public class InstanaExporterHandlerTest {
   }
 
   @Test
-  public void generateSpan_ServerKind() {
+  public void generateSpan_ServerKind() throws IOException {
     SpanData data =
         SpanData.create(
             SpanContext.create(
@@ -139,7 +205,7 @@ public class InstanaExporterHandlerTest {
   }
 
   @Test
-  public void generateSpan_ClientKind() {
+  public void generateSpan_ClientKind() throws IOException {
     SpanData data =
         SpanData.create(
             SpanContext.create(
@@ -177,7 +243,7 @@ public class InstanaExporterHandlerTest {
   }
 
   @Test
-  public void generateSpan_NullStatus() {
+  public void generateSpan_NullStatus() throws IOException {
     SpanData data =
         SpanData.create(
             SpanContext.create(
@@ -202,7 +268,7 @@ public class InstanaExporterHandlerTest {
   }
 
   @Test
-  public void generateSpan_ErrorStatus() {
+  public void generateSpan_ErrorStatus() throws IOException {
     SpanData data =
         SpanData.create(
             SpanContext.create(
@@ -241,7 +307,7 @@ public class InstanaExporterHandlerTest {
   }
 
   @Test
-  public void generateSpan_MultipleSpans() {
+  public void generateSpan_MultipleSpans() throws IOException {
     SpanData data =
         SpanData.create(
             SpanContext.create(
@@ -290,7 +356,7 @@ public class InstanaExporterHandlerTest {
   }
 
   @Test
-  public void generateSpan_MultipleAttributes() {
+  public void generateSpan_MultipleAttributes() throws IOException {
     Map<String, AttributeValue> multipleAttributes =
         ImmutableMap.of(
             "http.url", AttributeValue.stringAttributeValue("http://localhost/foo"),
@@ -334,4 +400,147 @@ public class InstanaExporterHandlerTest {
                 + "}"
                 + "]");
   }
+
+  @Test
+  public void generateSpan_EscapesStrings() throws IOException {
+    SpanData data =
+        createSpan(
+            "Span\"Name\\",
+            ImmutableMap.of("sql", AttributeValue.stringAttributeValue("SELECT\n\t\"a\"\u0001")));
+
+    assertThat(InstanaExporterHandler.convertToJson(Collections.singletonList(data)))
+        .isEqualTo(
+            "["
+                + "{"
+                + "\"spanId\":\"9cc1e3049173be09\","
+                + "\"traceId\":\"d239036e7d5cec11\","
+                + "\"timestamp\":1505855794194,"
+                + "\"duration\":5271,"
+                + "\"name\":\"Span\\\"Name\\\\\","
+                + "\"type\":\"ENTRY\","
+                + "\"data\":"
+                + "{\"sql\":\"SELECT\\n\\t\\\"a\\\"\\u0001\"}"
+                + "}"
+                + "]");
+  }
+
+  @Test
+  public void export() throws Exception {
+    List<SpanData> spans = createSpans(3);
+    new InstanaExporterHandler(configurationBuilder().build()).timeLimitedExport(spans);
+    List<Request> requests = fakeAgent.getRequests();
+    assertThat(requests).hasSize(1);
+    assertThat(requests.get(0).path).isEqualTo("/com.instana.plugin.generic.trace");
+    assertThat(requests.get(0).contentEncoding).isNull();
+    assertThat(requests.get(0).body).isEqualTo(InstanaExporterHandler.convertToJson(spans));
+  }
+
+  @Test
+  public void export_Compressed() throws Exception {
+    List<SpanData> spans = createSpans(3);
+    InstanaExporterHandler handler =
+        new InstanaExporterHandler(configurationBuilder().setCompressRequests(true).build());
+    handler.timeLimitedExport(spans);
+    // The second export reuses the request buffer of the first one.
+    handler.timeLimitedExport(spans);
+    List<Request> requests = fakeAgent.getRequests();
+    assertThat(requests).hasSize(2);
+    for (Request request : requests) {
+      assertThat(request.contentEncoding).isEqualTo("gzip");
+      assertThat(request.body).isEqualTo(InstanaExporterHandler.convertToJson(spans));
+    }
+  }
+
+  @Test
+  public void export_SplitsRequests() throws Exception {
+    List<SpanData> spans = createSpans(3);
+    new InstanaExporterHandler(configurationBuilder().setMaxRequestBytes(1).build())
+        .timeLimitedExport(spans);
+    List<Request> requests = fakeAgent.getRequests();
+    assertThat(requests).hasSize(3);
+    for (int i = 0; i < 3; i++) {
+      assertThat(requests.get(i).body)
+          .isEqualTo(InstanaExporterHandler.convertToJson(Collections.singletonList(spans.get(i))));
+    }
+    // The requests reuse the same kept-alive connection.
+    Set<InetSocketAddress> clientAddresses = new HashSet<InetSocketAddress>();
+    for (Request request : requests) {
+      clientAddresses.add(request.clientAddress);
+    }
+    assertThat(clientAddresses).hasSize(1);
+  }
+
+  @Test
+  public void export_NoEndedSpans() throws Exception {
+    new InstanaExporterHandler(configurationBuilder().build())
+        .timeLimitedExport(Collections.<SpanData>emptyList());
+    assertThat(fakeAgent.getRequests()).isEmpty();
+  }
+
+  @Test
+  public void export_ErrorResponse() throws Exception {
+    fakeAgent.setResponseCode(500);
+    try {
+      new InstanaExporterHandler(configurationBuilder().build()).timeLimitedExport(createSpans(1));
+      throw new AssertionError("Expected an exception.");
+    } catch (Exception e) {
+      assertThat(e.getMessage()).isEqualTo("Response 500");
+    }
+  }
+
+  private static final class Request {
+    private final String path;
+    private final String contentEncoding;
+    private final String body;
+    private final InetSocketAddress clientAddress;
+
+    private Request(
+        String path, String contentEncoding, String body, InetSocketAddress clientAddress) {
+      this.path = path;
+      this.contentEncoding = contentEncoding;
+      this.body = body;
+      this.clientAddress = clientAddress;
+    }
+  }
+
+  // Records the requests, and answers them all with the same response code.
+  private static final class FakeAgent implements HttpHandler {
+    @GuardedBy("this")
+    private final List<Request> requests = new ArrayList<Request>();
+
+    @GuardedBy("this")
+    private int responseCode = 204;
+
+    synchronized void setResponseCode(int responseCode) {
+      this.responseCode = responseCode;
+    }
+
+    synchronized List<Request> getRequests() {
+      return new ArrayList<Request>(requests);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      String contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+      InputStream requestBody = exchange.getRequestBody();
+      if ("gzip".equals(contentEncoding)) {
+        requestBody = new GZIPInputStream(requestBody);
+      }
+      String body = new String(ByteStreams.toByteArray(requestBody), Charsets.UTF_8);
+      int code;
+      synchronized (this) {
+        requests.add(
+            new Request(
+                exchange.getRequestURI().getPath(),
+                contentEncoding,
+                body,
+                exchange.getRemoteAddress()));
+        code = responseCode;
+      }
+      // No response body.
+      exchange.sendResponseHeaders(code, -1);
+      OutputStream responseBody = exchange.getResponseBody();
+      responseBody.close();
+    }
+  }
 }
@@ -16,11 +16,19 @@
 
 package io.opencensus.exporter.trace.util;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.SimpleTimeLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.TimeLimiter;
 import com.google.errorprone.annotations.MustBeClosed;
 import io.opencensus.common.Duration;
 import io.opencensus.common.Scope;
+import io.opencensus.metrics.LabelKey;
+import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.LongCumulative;
+import io.opencensus.metrics.LongCumulative.LongPoint;
+import io.opencensus.metrics.MetricOptions;
+import io.opencensus.metrics.Metrics;
 import io.opencensus.trace.Sampler;
 import io.opencensus.trace.Span;
 import io.opencensus.trace.Status;
@@ -32,8 +40,11 @@ import io.opencensus.trace.export.SpanExporter;
 import io.opencensus.trace.export.SpanExporter.Handler;
 import io.opencensus.trace.samplers.Samplers;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
@@ -44,6 +55,14 @@ import java.util.logging.Logger;
  * spans in their own format within a given time frame. If export does not complete within the time
  * frame, spans will be dropped and no retries will be performed.
  *
+ * <p>Each {@code TimeLimitedHandler} runs its exports on its own small pool of daemon threads, so
+ * that a hung backend does not delay the exports of the other handlers. An export that does not
+ * complete within the time frame is cancelled by interrupting its thread. Blocking I/O may ignore
+ * the interruption and keep the thread busy, so an export is rejected, and counted as failed, when
+ * all the threads of the handler are still busy. The number of exports, their total latency, and
+ * the number of timed out and failed exports of each handler are reported through {@link
+ * Metrics#getMetricRegistry()}, labeled with the export span name of the handler.
+ *
  * <p>Only extend this class if the client APIs don't support timeout natively. If there is a
  * timeout option in the client APIs (for example Stackdriver Trace V2 API allows you to set
  * timeout), use that instead.
@@ -59,12 +78,47 @@ public abstract class TimeLimitedHandler extends SpanExporter.Handler {
   private static final Tracer tracer = Tracing.getTracer();
   private static final Sampler lowProbabilitySampler = Samplers.probabilitySampler(0.0001);
 
+  // Each handler exports one batch at a time. The other threads are only used while the threads of
+  // timed out exports are still blocked. Exports never wait in a queue, so that waiting does not
+  // count against their deadline.
+  @VisibleForTesting static final int MAX_EXPORT_THREADS = 4;
+
+  private static final List<LabelKey> LABEL_KEYS =
+      Collections.singletonList(
+          LabelKey.create("exporter", "The export span name of the exporter."));
+  private static final LongCumulative exports =
+      addLongCumulative("oc_exporter_trace_exports", "Number of span exports.", "1");
+  private static final LongCumulative exportLatency =
+      addLongCumulative(
+          "oc_exporter_trace_export_latency", "Total time spent exporting spans.", "ms");
+  private static final LongCumulative exportTimeouts =
+      addLongCumulative(
+          "oc_exporter_trace_export_timeouts",
+          "Number of span exports that did not complete within the deadline.",
+          "1");
+  private static final LongCumulative exportFailures =
+      addLongCumulative(
+          "oc_exporter_trace_export_failures",
+          "Number of span exports that failed, other than by timing out.",
+          "1");
+
   private final Duration deadline;
   private final String exportSpanName;
+  private final TimeLimiter timeLimiter;
+  private final LongPoint exportsPoint;
+  private final LongPoint exportLatencyPoint;
+  private final LongPoint exportTimeoutsPoint;
+  private final LongPoint exportFailuresPoint;
 
   protected TimeLimitedHandler(Duration deadline, String exportSpanName) {
     this.deadline = deadline;
     this.exportSpanName = exportSpanName;
+    this.timeLimiter = SimpleTimeLimiter.create(newExportExecutor(exportSpanName));
+    List<LabelValue> labelValues = Collections.singletonList(LabelValue.create(exportSpanName));
+    this.exportsPoint = exports.getOrCreateTimeSeries(labelValues);
+    this.exportLatencyPoint = exportLatency.getOrCreateTimeSeries(labelValues);
+    this.exportTimeoutsPoint = exportTimeouts.getOrCreateTimeSeries(labelValues);
+    this.exportFailuresPoint = exportFailures.getOrCreateTimeSeries(labelValues);
   }
 
   /**
@@ -81,8 +135,9 @@ public abstract class TimeLimitedHandler extends SpanExporter.Handler {
   @Override
   public void export(final Collection<SpanData> spanDataList) {
     final Scope exportScope = newExportScope();
+    long startNanos = System.nanoTime();
     try {
-      TimeLimiter timeLimiter = SimpleTimeLimiter.create(Executors.newSingleThreadExecutor());
+      // Cancels the export, interrupting its thread, if it does not complete in time.
       timeLimiter.callWithTimeout(
           new Callable<Void>() {
             @Override
@@ -94,16 +149,47 @@ public abstract class TimeLimitedHandler extends SpanExporter.Handler {
           deadline.toMillis(),
           TimeUnit.MILLISECONDS);
     } catch (TimeoutException e) {
+      exportTimeoutsPoint.add(1);
       handleException(e, "Timeout when exporting traces: " + e);
     } catch (InterruptedException e) {
+      exportFailuresPoint.add(1);
       handleException(e, "Interrupted when exporting traces: " + e);
     } catch (Exception e) {
+      exportFailuresPoint.add(1);
       handleException(e, "Failed to export traces: " + e);
     } finally {
+      exportsPoint.add(1);
+      exportLatencyPoint.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
       exportScope.close();
     }
   }
 
+  private static ThreadPoolExecutor newExportExecutor(String exportSpanName) {
+    // Threads are only kept while there are exports.
+    return new ThreadPoolExecutor(
+        0,
+        MAX_EXPORT_THREADS,
+        60,
+        TimeUnit.SECONDS,
+        new SynchronousQueue<Runnable>(),
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat(
+                "OpenCensus.TimeLimitedHandler." + exportSpanName.replace("%", "%%") + "-%d")
+            .build());
+  }
+
+  private static LongCumulative addLongCumulative(String name, String description, String unit) {
+    return Metrics.getMetricRegistry()
+        .addLongCumulative(
+            name,
+            MetricOptions.builder()
+                .setDescription(description)
+                .setUnit(unit)
+                .setLabelKeys(LABEL_KEYS)
+                .build());
+  }
+
   @MustBeClosed
   private Scope newExportScope() {
     return tracer.spanBuilder(exportSpanName).setSampler(lowProbabilitySampler).startScopedSpan();
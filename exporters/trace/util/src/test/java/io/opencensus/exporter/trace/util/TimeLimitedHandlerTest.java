@@ -0,0 +1,184 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.exporter.trace.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.opencensus.common.Duration;
+import io.opencensus.common.Function;
+import io.opencensus.common.Functions;
+import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.Metrics;
+import io.opencensus.metrics.export.Metric;
+import io.opencensus.metrics.export.MetricProducer;
+import io.opencensus.metrics.export.TimeSeries;
+import io.opencensus.trace.export.SpanData;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link TimeLimitedHandler}. */
+@RunWith(JUnit4.class)
+public class TimeLimitedHandlerTest {
+  private static final Duration LONG_DEADLINE = Duration.create(10, 0);
+  private static final Duration SHORT_DEADLINE = Duration.fromMillis(10);
+  private static final Collection<SpanData> SPANS = Collections.<SpanData>emptyList();
+
+  private final CountDownLatch unblocked = new CountDownLatch(1);
+
+  @After
+  public void tearDown() {
+    unblocked.countDown();
+  }
+
+  @Test
+  public void export_CountsExportsAndLatency() {
+    TimeLimitedHandler handler =
+        new TimeLimitedHandler(LONG_DEADLINE, "SlowExport") {
+          @Override
+          public void timeLimitedExport(Collection<SpanData> spanDataList) {
+            Uninterruptibles.sleepUninterruptibly(20, TimeUnit.MILLISECONDS);
+          }
+        };
+    handler.export(SPANS);
+    handler.export(SPANS);
+    assertThat(getValue("oc_exporter_trace_exports", "SlowExport")).isEqualTo(2);
+    assertThat(getValue("oc_exporter_trace_export_latency", "SlowExport")).isAtLeast(40);
+    assertThat(getValue("oc_exporter_trace_export_timeouts", "SlowExport")).isEqualTo(0);
+    assertThat(getValue("oc_exporter_trace_export_failures", "SlowExport")).isEqualTo(0);
+  }
+
+  @Test
+  public void export_CountsTimeouts() {
+    TimeLimitedHandler handler =
+        new TimeLimitedHandler(SHORT_DEADLINE, "TimedOutExport") {
+          @Override
+          public void timeLimitedExport(Collection<SpanData> spanDataList)
+              throws InterruptedException {
+            unblocked.await();
+          }
+        };
+    handler.export(SPANS);
+    assertThat(getValue("oc_exporter_trace_exports", "TimedOutExport")).isEqualTo(1);
+    assertThat(getValue("oc_exporter_trace_export_timeouts", "TimedOutExport")).isEqualTo(1);
+    assertThat(getValue("oc_exporter_trace_export_failures", "TimedOutExport")).isEqualTo(0);
+  }
+
+  @Test
+  public void export_CountsFailures() {
+    TimeLimitedHandler handler =
+        new TimeLimitedHandler(LONG_DEADLINE, "FailedExport") {
+          @Override
+          public void timeLimitedExport(Collection<SpanData> spanDataList) throws IOException {
+            throw new IOException("Backend unavailable");
+          }
+        };
+    handler.export(SPANS);
+    assertThat(getValue("oc_exporter_trace_exports", "FailedExport")).isEqualTo(1);
+    assertThat(getValue("oc_exporter_trace_export_timeouts", "FailedExport")).isEqualTo(0);
+    assertThat(getValue("oc_exporter_trace_export_failures", "FailedExport")).isEqualTo(1);
+  }
+
+  @Test
+  public void export_RejectedWhenAllThreadsAreBusy() {
+    TimeLimitedHandler handler = new HungHandler("HungExport");
+    // Each timed out export keeps its thread, because it ignores the interruption.
+    for (int i = 0; i < TimeLimitedHandler.MAX_EXPORT_THREADS; i++) {
+      handler.export(SPANS);
+    }
+    assertThat(getValue("oc_exporter_trace_export_timeouts", "HungExport"))
+        .isEqualTo(TimeLimitedHandler.MAX_EXPORT_THREADS);
+    assertThat(getValue("oc_exporter_trace_export_failures", "HungExport")).isEqualTo(0);
+
+    handler.export(SPANS);
+    assertThat(getValue("oc_exporter_trace_exports", "HungExport"))
+        .isEqualTo(TimeLimitedHandler.MAX_EXPORT_THREADS + 1);
+    assertThat(getValue("oc_exporter_trace_export_timeouts", "HungExport"))
+        .isEqualTo(TimeLimitedHandler.MAX_EXPORT_THREADS);
+    assertThat(getValue("oc_exporter_trace_export_failures", "HungExport")).isEqualTo(1);
+  }
+
+  @Test
+  public void export_NotDelayedByOtherHungHandler() {
+    TimeLimitedHandler hungHandler = new HungHandler("OtherHungExport");
+    for (int i = 0; i < TimeLimitedHandler.MAX_EXPORT_THREADS; i++) {
+      hungHandler.export(SPANS);
+    }
+    TimeLimitedHandler handler =
+        new TimeLimitedHandler(LONG_DEADLINE, "IndependentExport") {
+          @Override
+          public void timeLimitedExport(Collection<SpanData> spanDataList) {}
+        };
+    handler.export(SPANS);
+    assertThat(getValue("oc_exporter_trace_exports", "IndependentExport")).isEqualTo(1);
+    assertThat(getValue("oc_exporter_trace_export_timeouts", "IndependentExport")).isEqualTo(0);
+    assertThat(getValue("oc_exporter_trace_export_failures", "IndependentExport")).isEqualTo(0);
+  }
+
+  // Returns the value of the time series of the given metric for the given export span name.
+  private static long getValue(String metricName, String exportSpanName) {
+    for (MetricProducer producer :
+        Metrics.getExportComponent().getMetricProducerManager().getAllMetricProducer()) {
+      for (Metric metric : producer.getMetrics()) {
+        if (!metric.getMetricDescriptor().getName().equals(metricName)) {
+          continue;
+        }
+        for (TimeSeries timeSeries : metric.getTimeSeriesList()) {
+          if (timeSeries.getLabelValues().equals(
+              Collections.singletonList(LabelValue.create(exportSpanName)))) {
+            return timeSeries
+                .getPoints()
+                .get(0)
+                .getValue()
+                .match(
+                    Functions.<Long>throwAssertionError(),
+                    new Function<Long, Long>() {
+                      @Override
+                      public Long apply(Long value) {
+                        return value;
+                      }
+                    },
+                    Functions.<Long>throwAssertionError(),
+                    Functions.<Long>throwAssertionError(),
+                    Functions.<Long>throwAssertionError());
+          }
+        }
+      }
+    }
+    throw new AssertionError("No time series of " + metricName + " for " + exportSpanName);
+  }
+
+  // Handler whose exports block until the end of the test, ignoring interruptions like blocking
+  // I/O does.
+  private final class HungHandler extends TimeLimitedHandler {
+    private HungHandler(String exportSpanName) {
+      super(SHORT_DEADLINE, exportSpanName);
+    }
+
+    @Override
+    public void timeLimitedExport(Collection<SpanData> spanDataList) {
+      Uninterruptibles.awaitUninterruptibly(unblocked);
+    }
+  }
+}
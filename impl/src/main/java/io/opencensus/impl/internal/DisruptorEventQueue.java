@@ -16,20 +16,46 @@
 
 package io.opencensus.impl.internal;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BusySpinWaitStrategy;
 import com.lmax.disruptor.EventFactory;
 import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.InsufficientCapacityException;
 import com.lmax.disruptor.RingBuffer;
 import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
 import com.lmax.disruptor.dsl.Disruptor;
 import com.lmax.disruptor.dsl.ProducerType;
+import io.opencensus.common.ToLongFunction;
 import io.opencensus.implcore.internal.DaemonThreadFactory;
 import io.opencensus.implcore.internal.EventQueue;
+import io.opencensus.implcore.internal.EventQueueMetrics;
+import io.opencensus.metrics.DerivedLongCumulative;
+import io.opencensus.metrics.DerivedLongGauge;
+import io.opencensus.metrics.LabelKey;
+import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.MetricOptions;
+import io.opencensus.metrics.Metrics;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
+/*>>>
+import org.checkerframework.checker.nullness.qual.Nullable;
+*/
+
 /**
  * A low-latency event queue for background updating of (possibly contended) objects. This is
  * intended for use by instrumentation methods to ensure that they do not block foreground
@@ -85,62 +111,176 @@ import javax.annotation.concurrent.ThreadSafe;
  *   }
  * }
  * </pre>
+ *
+ * <p>By default all the entries go through one ring buffer, processed by one thread. The queue can
+ * be split into several partitions, each with its own ring buffer and thread, with the system
+ * property {@value #PARTITIONS_PROPERTY}. An {@link EventQueue.PartitionedEntry} goes to the
+ * partition picked by its key, so entries with the same key are still processed in order. All the
+ * other entries go to the first partition.
+ *
+ * <p>The system properties {@value #BUFFER_SIZE_PROPERTY} and {@value #WAIT_STRATEGY_PROPERTY} set
+ * the size of each ring buffer and how idle threads wait for entries. When a ring buffer is full,
+ * {@link #enqueue(Entry)} waits for room, unless {@value #OVERFLOW_POLICY_PROPERTY} is {@code
+ * drop}: droppable entries are then dropped and counted by {@link #getDroppedEvents()}, so that
+ * instrumented threads never wait for a queue that falls behind.
+ *
+ * <p>The queue reports its remaining capacity, dropped entries, the time producers waited for
+ * room, the number of batches and the processing time of each entry type through {@link
+ * Metrics#getMetricRegistry()}, so that a queue that falls behind can be noticed before it slows
+ * down the application.
  */
 @ThreadSafe
 public final class DisruptorEventQueue implements EventQueue {
 
   private static final Logger logger = Logger.getLogger(DisruptorEventQueue.class.getName());
 
-  // Number of events that can be enqueued at any one time. If more than this are enqueued,
-  // then subsequent attempts to enqueue new entries will block.
-  // TODO(aveitch): consider making this a parameter to the constructor, so the queue can be
-  // configured to a size appropriate to the system (smaller/less busy systems will not need as
-  // large a queue.
-  private static final int DISRUPTOR_BUFFER_SIZE = 8192;
+  /**
+   * System property that sets the number of partitions, each with its own consumer thread.
+   *
+   * <p>Stats recordings are partitioned by the first measure of their {@code MeasureMap}. With
+   * several partitions, the recordings of a measure are only processed in order if it is always
+   * the first measure of its {@code MeasureMap}s; otherwise its LastValue views may report an older
+   * value than the latest one recorded.
+   */
+  public static final String PARTITIONS_PROPERTY =
+      "io.opencensus.impl.internal.DisruptorEventQueue.partitions";
+
+  /** System property that sets the size of the ring buffer of a partition, a power of two. */
+  public static final String BUFFER_SIZE_PROPERTY =
+      "io.opencensus.impl.internal.DisruptorEventQueue.bufferSize";
+
+  /**
+   * System property that sets how the consumer threads wait for entries: {@code sleeping} (the
+   * default), {@code blocking}, {@code yielding} or {@code busy-spin}.
+   */
+  public static final String WAIT_STRATEGY_PROPERTY =
+      "io.opencensus.impl.internal.DisruptorEventQueue.waitStrategy";
+
+  /**
+   * System property that sets what happens to an entry enqueued on a full partition: {@code block}
+   * (the default) or {@code drop}.
+   */
+  public static final String OVERFLOW_POLICY_PROPERTY =
+      "io.opencensus.impl.internal.DisruptorEventQueue.overflowPolicy";
+
+  private static final int DEFAULT_NUM_PARTITIONS = 1;
+
+  // Number of events that can be enqueued at any one time in a partition. If more than this are
+  // enqueued, then subsequent attempts to enqueue new entries will block or drop them.
+  private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  private static final EventQueueMetrics metrics = new EventQueueMetrics("DisruptorEventQueue");
+
   // The single instance of the class.
-  private static final DisruptorEventQueue eventQueue = create();
+  private static final DisruptorEventQueue eventQueue =
+      create(
+          getPositiveIntProperty(PARTITIONS_PROPERTY, DEFAULT_NUM_PARTITIONS),
+          getBufferSizeProperty(),
+          WaitStrategyType.fromProperty(),
+          OverflowPolicy.fromProperty());
+
+  static {
+    // Only the singleton reports its health, the time series can only be registered once.
+    eventQueue.registerMetrics();
+  }
 
-  // The event queue is built on this {@link Disruptor}.
-  private final Disruptor<DisruptorEvent> disruptor;
+  // The event queue is built on these {@link Disruptor}s, one per partition.
+  private final List<Disruptor<DisruptorEvent>> disruptors;
+
+  private final Counters counters;
 
   private volatile DisruptorEnqueuer enqueuer;
 
   // Creates a new EventQueue. Private to prevent creation of non-singleton instance.
-  private DisruptorEventQueue(Disruptor<DisruptorEvent> disruptor, DisruptorEnqueuer enqueuer) {
-    this.disruptor = disruptor;
+  private DisruptorEventQueue(
+      List<Disruptor<DisruptorEvent>> disruptors, DisruptorEnqueuer enqueuer, Counters counters) {
+    this.disruptors = disruptors;
     this.enqueuer = enqueuer;
+    this.counters = counters;
   }
 
-  // Creates a new EventQueue. Private to prevent creation of non-singleton instance.
-  private static DisruptorEventQueue create() {
-    // Create new Disruptor for processing. Note that Disruptor creates a single thread per
+  // Creates a new EventQueue. Only used directly by tests, to avoid creating non-singleton
+  // instances.
+  @VisibleForTesting
+  static DisruptorEventQueue create(
+      int numPartitions,
+      int bufferSize,
+      WaitStrategyType waitStrategyType,
+      OverflowPolicy overflowPolicy) {
+    checkArgument(numPartitions > 0, "numPartitions should be positive.");
+    checkArgument(Integer.bitCount(bufferSize) == 1, "bufferSize should be a power of two.");
+    checkNotNull(waitStrategyType, "waitStrategyType");
+    checkNotNull(overflowPolicy, "overflowPolicy");
+    // Create new Disruptors for processing. Note that Disruptor creates a single thread per
     // consumer (see https://github.com/LMAX-Exchange/disruptor/issues/121 for details);
     // this ensures that the event handler can take unsynchronized actions whenever possible.
-    Disruptor<DisruptorEvent> disruptor =
-        new Disruptor<>(
-            DisruptorEventFactory.INSTANCE,
-            DISRUPTOR_BUFFER_SIZE,
-            new DaemonThreadFactory("OpenCensus.Disruptor"),
-            ProducerType.MULTI,
-            new SleepingWaitStrategy(0, 1000 * 1000));
-    disruptor.handleEventsWith(new DisruptorEventHandler[] {DisruptorEventHandler.INSTANCE});
-    disruptor.start();
-    final RingBuffer<DisruptorEvent> ringBuffer = disruptor.getRingBuffer();
-
-    DisruptorEnqueuer enqueuer =
-        new DisruptorEnqueuer() {
-          @Override
-          public void enqueue(Entry entry) {
-            long sequence = ringBuffer.next();
-            try {
-              DisruptorEvent event = ringBuffer.get(sequence);
-              event.setEntry(entry);
-            } finally {
-              ringBuffer.publish(sequence);
-            }
-          }
-        };
-    return new DisruptorEventQueue(disruptor, enqueuer);
+    DaemonThreadFactory threadFactory = new DaemonThreadFactory("OpenCensus.Disruptor");
+    List<Disruptor<DisruptorEvent>> disruptors =
+        new ArrayList<Disruptor<DisruptorEvent>>(numPartitions);
+    List<RingBuffer<DisruptorEvent>> ringBuffers =
+        new ArrayList<RingBuffer<DisruptorEvent>>(numPartitions);
+    Counters counters = new Counters();
+    for (int i = 0; i < numPartitions; i++) {
+      Disruptor<DisruptorEvent> disruptor =
+          new Disruptor<>(
+              DisruptorEventFactory.INSTANCE,
+              bufferSize,
+              threadFactory,
+              ProducerType.MULTI,
+              waitStrategyType.newWaitStrategy());
+      // One handler per partition, each only used by the thread of its partition.
+      disruptor.handleEventsWith(new DisruptorEventHandler[] {new DisruptorEventHandler(counters)});
+      disruptor.start();
+      disruptors.add(disruptor);
+      ringBuffers.add(disruptor.getRingBuffer());
+    }
+    DisruptorEnqueuer enqueuer = new RingBufferEnqueuer(ringBuffers, overflowPolicy, counters);
+    return new DisruptorEventQueue(disruptors, enqueuer, counters);
+  }
+
+  private void registerMetrics() {
+    LabelKey partitionKey = LabelKey.create("partition", "The partition of the event queue.");
+    DerivedLongGauge remainingCapacity =
+        Metrics.getMetricRegistry()
+            .addDerivedLongGauge(
+                "oc_event_queue_remaining_capacity",
+                MetricOptions.builder()
+                    .setDescription("Number of entries that can be enqueued without waiting.")
+                    .setUnit("1")
+                    .setLabelKeys(Collections.singletonList(partitionKey))
+                    .build());
+    for (int i = 0; i < disruptors.size(); i++) {
+      remainingCapacity.createTimeSeries(
+          Collections.singletonList(LabelValue.create(Integer.toString(i))),
+          disruptors.get(i).getRingBuffer(),
+          ReportRemainingCapacity.INSTANCE);
+    }
+    addCumulative(
+        "oc_event_queue_entries_dropped",
+        "Number of entries dropped because the event queue was full.",
+        "1",
+        counters.droppedEvents);
+    addCumulative(
+        "oc_event_queue_enqueue_wait_time",
+        "Total time spent by producers waiting for room in the event queue.",
+        "ns",
+        counters.enqueueWaitNanos);
+    addCumulative(
+        "oc_event_queue_batches",
+        "Number of batches of entries processed by the event queue. The number of processed "
+            + "entries divided by this is the average batch size.",
+        "1",
+        counters.processedBatches);
+  }
+
+  private static void addCumulative(
+      String name, String description, String unit, AtomicLong counter) {
+    DerivedLongCumulative cumulative =
+        Metrics.getMetricRegistry()
+            .addDerivedLongCumulative(
+                name,
+                MetricOptions.builder().setDescription(description).setUnit(unit).build());
+    cumulative.createTimeSeries(Collections.<LabelValue>emptyList(), counter, ReportCount.INSTANCE);
   }
 
   /**
@@ -162,7 +302,35 @@ public final class DisruptorEventQueue implements EventQueue {
     enqueuer.enqueue(entry);
   }
 
-  /** Shuts down the underlying disruptor. */
+  /**
+   * Returns the number of entries dropped because their partition was full.
+   *
+   * @return the number of entries dropped because their partition was full.
+   */
+  public long getDroppedEvents() {
+    return counters.droppedEvents.get();
+  }
+
+  /**
+   * Returns the total time spent by producers waiting for room in a full partition, in
+   * nanoseconds.
+   *
+   * @return the total time spent by producers waiting for room in a full partition.
+   */
+  public long getEnqueueWaitNanos() {
+    return counters.enqueueWaitNanos.get();
+  }
+
+  /**
+   * Returns the number of batches of entries processed by all the partitions.
+   *
+   * @return the number of batches of entries processed by all the partitions.
+   */
+  public long getProcessedBatches() {
+    return counters.processedBatches.get();
+  }
+
+  /** Shuts down the underlying disruptors. */
   @Override
   public void shutdown() {
     enqueuer =
@@ -177,7 +345,102 @@ public final class DisruptorEventQueue implements EventQueue {
           }
         };
 
-    disruptor.shutdown();
+    for (Disruptor<DisruptorEvent> disruptor : disruptors) {
+      disruptor.shutdown();
+    }
+  }
+
+  private static int getPositiveIntProperty(String property, int defaultValue) {
+    Integer value = Integer.getInteger(property);
+    if (value == null) {
+      return defaultValue;
+    }
+    if (value <= 0) {
+      logger.log(
+          Level.WARNING, "Ignoring " + property + "=" + value + ", which should be positive.");
+      return defaultValue;
+    }
+    return value;
+  }
+
+  private static int getBufferSizeProperty() {
+    int bufferSize = getPositiveIntProperty(BUFFER_SIZE_PROPERTY, DEFAULT_BUFFER_SIZE);
+    if (Integer.bitCount(bufferSize) != 1) {
+      logger.log(
+          Level.WARNING,
+          "Ignoring " + BUFFER_SIZE_PROPERTY + "=" + bufferSize + ", which is not a power of two.");
+      return DEFAULT_BUFFER_SIZE;
+    }
+    return bufferSize;
+  }
+
+  // Returns the constant of the enum whose name matches the value of the property, ignoring case
+  // and dashes, or the default value if the property is not set or does not match.
+  private static <T extends Enum<T>> T getEnumProperty(
+      String property, Class<T> enumClass, T defaultValue) {
+    String value = System.getProperty(property);
+    if (value == null) {
+      return defaultValue;
+    }
+    for (T constant : enumClass.getEnumConstants()) {
+      if (constant.name().equals(value.replace('-', '_').toUpperCase(Locale.ROOT))) {
+        return constant;
+      }
+    }
+    logger.log(Level.WARNING, "Ignoring unknown " + property + "=" + value + ".");
+    return defaultValue;
+  }
+
+  /** How the consumer threads wait for new entries. */
+  @VisibleForTesting
+  enum WaitStrategyType {
+    // Spins, then yields, then sleeps: low CPU usage when idle, at the cost of some latency.
+    SLEEPING {
+      @Override
+      WaitStrategy newWaitStrategy() {
+        return new SleepingWaitStrategy(0, 1000 * 1000);
+      }
+    },
+    // Waits on a lock: lowest CPU usage, but producers signal the condition on every publish.
+    BLOCKING {
+      @Override
+      WaitStrategy newWaitStrategy() {
+        return new BlockingWaitStrategy();
+      }
+    },
+    // Spins, then yields: low latency, and gives up the CPU to other threads when idle.
+    YIELDING {
+      @Override
+      WaitStrategy newWaitStrategy() {
+        return new YieldingWaitStrategy();
+      }
+    },
+    // Spins: lowest latency, but keeps one core busy per partition.
+    BUSY_SPIN {
+      @Override
+      WaitStrategy newWaitStrategy() {
+        return new BusySpinWaitStrategy();
+      }
+    };
+
+    abstract WaitStrategy newWaitStrategy();
+
+    private static WaitStrategyType fromProperty() {
+      return getEnumProperty(WAIT_STRATEGY_PROPERTY, WaitStrategyType.class, SLEEPING);
+    }
+  }
+
+  /** What happens to an entry enqueued on a full partition. */
+  @VisibleForTesting
+  enum OverflowPolicy {
+    // Waits until the partition has room.
+    BLOCK,
+    // Drops the entry if it is an EventQueue.PartitionedEntry that may be dropped, otherwise waits.
+    DROP;
+
+    private static OverflowPolicy fromProperty() {
+      return getEnumProperty(OVERFLOW_POLICY_PROPERTY, OverflowPolicy.class, BLOCK);
+    }
   }
 
   // Allows this event queue to safely shutdown by not enqueuing events on the ring buffer
@@ -186,6 +449,57 @@ public final class DisruptorEventQueue implements EventQueue {
     public abstract void enqueue(Entry entry);
   }
 
+  // Publishes the entries on the ring buffer of their partition.
+  private static final class RingBufferEnqueuer extends DisruptorEnqueuer {
+    private final List<RingBuffer<DisruptorEvent>> ringBuffers;
+    private final OverflowPolicy overflowPolicy;
+    private final Counters counters;
+
+    private RingBufferEnqueuer(
+        List<RingBuffer<DisruptorEvent>> ringBuffers,
+        OverflowPolicy overflowPolicy,
+        Counters counters) {
+      this.ringBuffers = ringBuffers;
+      this.overflowPolicy = overflowPolicy;
+      this.counters = counters;
+    }
+
+    @Override
+    public void enqueue(Entry entry) {
+      int partition = 0;
+      boolean droppable = false;
+      if (entry instanceof PartitionedEntry) {
+        PartitionedEntry partitionedEntry = (PartitionedEntry) entry;
+        if (ringBuffers.size() > 1) {
+          int key = partitionedEntry.getPartitionKey();
+          // Spreads the high bits of the key, e.g. of a String hash code, over the low bits.
+          partition = ((key ^ (key >>> 16)) & Integer.MAX_VALUE) % ringBuffers.size();
+        }
+        droppable = overflowPolicy == OverflowPolicy.DROP && partitionedEntry.isDroppable();
+      }
+      RingBuffer<DisruptorEvent> ringBuffer = ringBuffers.get(partition);
+      long sequence;
+      try {
+        sequence = ringBuffer.tryNext();
+      } catch (InsufficientCapacityException e) {
+        if (droppable) {
+          counters.droppedEvents.incrementAndGet();
+          return;
+        }
+        // Only time the enqueues that have to wait, so the others do not pay for System.nanoTime.
+        long startNanos = System.nanoTime();
+        sequence = ringBuffer.next();
+        counters.enqueueWaitNanos.addAndGet(System.nanoTime() - startNanos);
+      }
+      try {
+        DisruptorEvent event = ringBuffer.get(sequence);
+        event.setEntry(entry);
+      } finally {
+        ringBuffer.publish(sequence);
+      }
+    }
+  }
+
   // An event in the {@link EventQueue}. Just holds a reference to an EventQueue.Entry.
   private static final class DisruptorEvent {
 
@@ -215,21 +529,63 @@ public final class DisruptorEventQueue implements EventQueue {
     }
   }
 
+  // The counters shared by the producers and the consumer threads of one queue.
+  private static final class Counters {
+    // Number of entries dropped because their partition was full.
+    private final AtomicLong droppedEvents = new AtomicLong();
+    // Time spent by producers in RingBuffer.next() waiting for room.
+    private final AtomicLong enqueueWaitNanos = new AtomicLong();
+    // Number of times a consumer thread reached the end of a batch.
+    private final AtomicLong processedBatches = new AtomicLong();
+  }
+
   /**
    * Every event that gets added to {@link EventQueue} will get processed here. Just calls the
    * underlying process() method.
    */
-  private enum DisruptorEventHandler implements EventHandler<DisruptorEvent> {
-    INSTANCE;
+  private static final class DisruptorEventHandler implements EventHandler<DisruptorEvent> {
+    private final Counters counters;
+
+    private DisruptorEventHandler(Counters counters) {
+      this.counters = counters;
+    }
 
     @Override
     public void onEvent(DisruptorEvent event, long sequence, boolean endOfBatch) {
       Entry entry = event.getEntry();
       if (entry != null) {
-        entry.process();
+        metrics.process(entry);
       }
       // Remove the reference to the previous entry to allow the memory to be gc'ed.
       event.setEntry(null);
+      if (endOfBatch) {
+        counters.processedBatches.incrementAndGet();
+      }
+    }
+  }
+
+  private enum ReportRemainingCapacity
+      implements ToLongFunction</*@Nullable*/ RingBuffer<DisruptorEvent>> {
+    INSTANCE;
+
+    @Override
+    public long applyAsLong(/*@Nullable*/ RingBuffer<DisruptorEvent> ringBuffer) {
+      if (ringBuffer == null) {
+        return 0;
+      }
+      return ringBuffer.remainingCapacity();
+    }
+  }
+
+  private enum ReportCount implements ToLongFunction</*@Nullable*/ AtomicLong> {
+    INSTANCE;
+
+    @Override
+    public long applyAsLong(/*@Nullable*/ AtomicLong counter) {
+      if (counter == null) {
+        return 0;
+      }
+      return counter.get();
     }
   }
 }
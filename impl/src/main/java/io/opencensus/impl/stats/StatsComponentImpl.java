@@ -16,16 +16,117 @@
 
 package io.opencensus.impl.stats;
 
+import io.opencensus.common.Duration;
 import io.opencensus.impl.internal.DisruptorEventQueue;
 import io.opencensus.implcore.common.MillisClock;
+import io.opencensus.implcore.stats.AggregationTemporality;
+import io.opencensus.implcore.stats.CardinalityLimits;
 import io.opencensus.implcore.stats.StatsComponentImplBase;
+import io.opencensus.implcore.stats.StatsComponentOptions;
 import io.opencensus.stats.StatsComponent;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
 
-/** Java 7 and 8 implementation of {@link StatsComponent}. */
+/**
+ * Java 7 and 8 implementation of {@link StatsComponent}.
+ *
+ * <p>By default stats are recorded on the {@link DisruptorEventQueue} thread. Setting the system
+ * property {@value #RECORD_SYNCHRONOUSLY_PROPERTY} to {@code true} records them directly on the
+ * calling thread instead, which avoids the queue hop and keeps stats independent of trace traffic
+ * on the queue.
+ *
+ * <p>The number of series of cumulative views is unlimited by default. The system properties
+ * {@value #MAX_SERIES_PER_VIEW_PROPERTY}, {@value #MAX_SERIES_PROPERTY} and {@value
+ * #SERIES_IDLE_TIMEOUT_MILLIS_PROPERTY} set the corresponding {@link CardinalityLimits}. Values
+ * that are not positive integers are logged and ignored.
+ *
+ * <p>Setting the system property {@value #DELTA_TEMPORALITY_PROPERTY} to {@code true} makes the
+ * registered {@code MetricProducer} report {@link AggregationTemporality#DELTA} points.
+ */
 public final class StatsComponentImpl extends StatsComponentImplBase {
 
+  private static final Logger logger = Logger.getLogger(StatsComponentImpl.class.getName());
+
+  /** System property that enables recording stats on the calling thread. */
+  public static final String RECORD_SYNCHRONOUSLY_PROPERTY =
+      "io.opencensus.impl.stats.StatsComponentImpl.recordSynchronously";
+
+  /** System property that sets {@link CardinalityLimits#getMaxSeriesPerView()}. */
+  public static final String MAX_SERIES_PER_VIEW_PROPERTY =
+      "io.opencensus.impl.stats.StatsComponentImpl.maxSeriesPerView";
+
+  /** System property that sets {@link CardinalityLimits#getMaxSeries()}. */
+  public static final String MAX_SERIES_PROPERTY =
+      "io.opencensus.impl.stats.StatsComponentImpl.maxSeries";
+
+  /** System property that sets {@link CardinalityLimits#getSeriesIdleTimeout()} in milliseconds. */
+  public static final String SERIES_IDLE_TIMEOUT_MILLIS_PROPERTY =
+      "io.opencensus.impl.stats.StatsComponentImpl.seriesIdleTimeoutMillis";
+
+  /** System property that enables {@link AggregationTemporality#DELTA}. */
+  public static final String DELTA_TEMPORALITY_PROPERTY =
+      "io.opencensus.impl.stats.StatsComponentImpl.deltaTemporality";
+
   /** Public constructor to be used with reflection loading. */
   public StatsComponentImpl() {
-    super(DisruptorEventQueue.getInstance(), MillisClock.getInstance());
+    this(
+        StatsComponentOptions.builder()
+            .setRecordSynchronously(Boolean.getBoolean(RECORD_SYNCHRONOUSLY_PROPERTY))
+            .setCardinalityLimits(getCardinalityLimitsFromProperties())
+            .setAggregationTemporality(
+                Boolean.getBoolean(DELTA_TEMPORALITY_PROPERTY)
+                    ? AggregationTemporality.DELTA
+                    : AggregationTemporality.CUMULATIVE)
+            .build());
+  }
+
+  /**
+   * Creates a new {@code StatsComponentImpl}.
+   *
+   * @param options the options of the component.
+   */
+  public StatsComponentImpl(StatsComponentOptions options) {
+    super(DisruptorEventQueue.getInstance(), MillisClock.getInstance(), options);
+  }
+
+  private static CardinalityLimits getCardinalityLimitsFromProperties() {
+    CardinalityLimits.Builder builder = CardinalityLimits.builder();
+    Long maxSeriesPerView = getPositiveProperty(MAX_SERIES_PER_VIEW_PROPERTY, Integer.MAX_VALUE);
+    if (maxSeriesPerView != null) {
+      builder.setMaxSeriesPerView(maxSeriesPerView.intValue());
+    }
+    Long maxSeries = getPositiveProperty(MAX_SERIES_PROPERTY, Integer.MAX_VALUE);
+    if (maxSeries != null) {
+      builder.setMaxSeries(maxSeries.intValue());
+    }
+    Long seriesIdleTimeoutMillis =
+        getPositiveProperty(SERIES_IDLE_TIMEOUT_MILLIS_PROPERTY, Long.MAX_VALUE);
+    if (seriesIdleTimeoutMillis != null) {
+      builder.setSeriesIdleTimeout(Duration.fromMillis(seriesIdleTimeoutMillis));
+    }
+    return builder.build();
+  }
+
+  // Returns the value of the given property, or null if it is not set or is not an integer in
+  // [1, maxValue]. Invalid values are logged instead of failing the reflective construction.
+  @Nullable
+  private static Long getPositiveProperty(String property, long maxValue) {
+    String value = System.getProperty(property);
+    if (value == null) {
+      return null;
+    }
+    try {
+      long parsedValue = Long.parseLong(value.trim());
+      if (parsedValue > 0 && parsedValue <= maxValue) {
+        return parsedValue;
+      }
+    } catch (NumberFormatException e) {
+      // Logged below.
+    }
+    logger.log(
+        Level.WARNING,
+        "Ignoring " + property + "=" + value + ", which should be a positive integer.");
+    return null;
   }
 }
@@ -21,14 +21,54 @@ import io.opencensus.impl.internal.DisruptorEventQueue;
 import io.opencensus.impl.trace.internal.ThreadLocalRandomHandler;
 import io.opencensus.implcore.common.MillisClock;
 import io.opencensus.implcore.trace.TraceComponentImplBase;
+import io.opencensus.implcore.trace.export.SpanExporterImpl;
 import io.opencensus.trace.TraceComponent;
 import io.opencensus.trace.Tracer;
 import io.opencensus.trace.config.TraceConfig;
 import io.opencensus.trace.export.ExportComponent;
 import io.opencensus.trace.propagation.PropagationComponent;
+import java.io.File;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-/** Java 7 and 8 implementation of the {@link TraceComponent}. */
+/**
+ * Java 7 and 8 implementation of the {@link TraceComponent}.
+ *
+ * <p>Setting the system property {@value #COMPACT_SAMPLED_SPANS_MAX_BYTES_PROPERTY} to a positive
+ * number of bytes makes the sampled span store keep its samples as compact encoded records, within
+ * that budget, instead of keeping the sampled spans. Other values are logged and leave the compact
+ * samples disabled.
+ *
+ * <p>Setting the system property {@value #SPILL_DIRECTORY_PROPERTY} to a directory makes the span
+ * exporter spill to that directory the batches that a handler cannot keep up with, instead of
+ * dropping them, see {@link SpanExporterImpl#enableSpill}. The system properties {@value
+ * #SPILL_MAX_BYTES_PROPERTY} and {@value #SPILLED_SPANS_PER_SECOND_PROPERTY} bound the size of the
+ * spilled batches of each handler and the rate at which they are exported again; values that are
+ * not positive integers are logged and replaced by the defaults.
+ */
 public final class TraceComponentImpl extends TraceComponent {
+
+  private static final Logger logger = Logger.getLogger(TraceComponentImpl.class.getName());
+
+  /** System property that sets the budget of the compact samples of the sampled span store. */
+  public static final String COMPACT_SAMPLED_SPANS_MAX_BYTES_PROPERTY =
+      "io.opencensus.impl.trace.TraceComponentImpl.compactSampledSpansMaxBytes";
+
+  /** System property that sets the directory of the spilled spans. */
+  public static final String SPILL_DIRECTORY_PROPERTY =
+      "io.opencensus.impl.trace.TraceComponentImpl.spillDirectory";
+
+  /** System property that sets the maximum number of bytes of the spilled spans of a handler. */
+  public static final String SPILL_MAX_BYTES_PROPERTY =
+      "io.opencensus.impl.trace.TraceComponentImpl.spillMaxBytes";
+
+  /** System property that sets the number of spilled spans exported per second by a handler. */
+  public static final String SPILLED_SPANS_PER_SECOND_PROPERTY =
+      "io.opencensus.impl.trace.TraceComponentImpl.spilledSpansPerSecond";
+
+  private static final long DEFAULT_SPILL_MAX_BYTES = 64L * 1024 * 1024;
+  private static final long DEFAULT_SPILLED_SPANS_PER_SECOND = 1000;
+
   private final TraceComponentImplBase traceComponentImplBase;
 
   /** Public constructor to be used with reflection loading. */
@@ -37,7 +77,40 @@ public final class TraceComponentImpl extends TraceComponent {
         new TraceComponentImplBase(
             MillisClock.getInstance(),
             new ThreadLocalRandomHandler(),
-            DisruptorEventQueue.getInstance());
+            DisruptorEventQueue.getInstance(),
+            getPositiveLongProperty(COMPACT_SAMPLED_SPANS_MAX_BYTES_PROPERTY, 0));
+    String spillDirectory = System.getProperty(SPILL_DIRECTORY_PROPERTY);
+    if (spillDirectory != null) {
+      traceComponentImplBase
+          .getExportComponent()
+          .getSpanExporter()
+          .enableSpill(
+              new File(spillDirectory),
+              getPositiveLongProperty(SPILL_MAX_BYTES_PROPERTY, DEFAULT_SPILL_MAX_BYTES),
+              getPositiveLongProperty(
+                  SPILLED_SPANS_PER_SECOND_PROPERTY, DEFAULT_SPILLED_SPANS_PER_SECOND));
+    }
+  }
+
+  // Invalid values are logged and replaced by the default instead of failing the reflective
+  // construction.
+  private static long getPositiveLongProperty(String property, long defaultValue) {
+    String value = System.getProperty(property);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      long parsedValue = Long.parseLong(value.trim());
+      if (parsedValue > 0) {
+        return parsedValue;
+      }
+    } catch (NumberFormatException e) {
+      // Logged below.
+    }
+    logger.log(
+        Level.WARNING,
+        "Ignoring " + property + "=" + value + ", which should be a positive integer.");
+    return defaultValue;
   }
 
   @Override
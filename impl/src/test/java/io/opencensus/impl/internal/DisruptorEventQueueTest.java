@@ -18,7 +18,14 @@ package io.opencensus.impl.internal;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import io.opencensus.impl.internal.DisruptorEventQueue.OverflowPolicy;
+import io.opencensus.impl.internal.DisruptorEventQueue.WaitStrategyType;
 import io.opencensus.implcore.internal.EventQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -71,6 +78,77 @@ public class DisruptorEventQueueTest {
     }
   }
 
+  // PartitionedEntry that appends its sequence number to the list of its key.
+  private static class AppendEvent implements EventQueue.PartitionedEntry {
+    private final List<Integer> list;
+    private final int key;
+    private final int sequence;
+    private final CountDownLatch done;
+
+    AppendEvent(List<Integer> list, int key, int sequence, CountDownLatch done) {
+      this.list = list;
+      this.key = key;
+      this.sequence = sequence;
+      this.done = done;
+    }
+
+    @Override
+    public void process() {
+      list.add(sequence);
+      done.countDown();
+    }
+
+    @Override
+    public int getPartitionKey() {
+      return key;
+    }
+
+    @Override
+    public boolean isDroppable() {
+      return true;
+    }
+  }
+
+  // Entry that blocks its consumer thread until released.
+  private static class BlockingEvent implements EventQueue.Entry {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Override
+    public void process() {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  // Droppable PartitionedEntry that counts how many times it was processed.
+  private static class CountEvent implements EventQueue.PartitionedEntry {
+    private final AtomicInteger processed;
+
+    CountEvent(AtomicInteger processed) {
+      this.processed = processed;
+    }
+
+    @Override
+    public void process() {
+      processed.incrementAndGet();
+    }
+
+    @Override
+    public int getPartitionKey() {
+      return 0;
+    }
+
+    @Override
+    public boolean isDroppable() {
+      return true;
+    }
+  }
+
   @Test
   public void incrementOnce() {
     Counter counter = new Counter();
@@ -101,4 +179,154 @@ public class DisruptorEventQueueTest {
     }
     counter.check(tenK);
   }
+
+  @Test
+  public void partitioned_KeepsOrderOfEntriesWithTheSameKey() throws InterruptedException {
+    DisruptorEventQueue queue =
+        DisruptorEventQueue.create(4, 1024, WaitStrategyType.YIELDING, OverflowPolicy.BLOCK);
+    try {
+      final int numKeys = 16;
+      final int entriesPerKey = 1000;
+      CountDownLatch done = new CountDownLatch(numKeys * entriesPerKey);
+      List<List<Integer>> lists = new ArrayList<List<Integer>>();
+      for (int key = 0; key < numKeys; key++) {
+        // Only accessed by the consumer thread of the partition of the key.
+        lists.add(new ArrayList<Integer>());
+      }
+      for (int i = 0; i < entriesPerKey; i++) {
+        for (int key = 0; key < numKeys; key++) {
+          queue.enqueue(new AppendEvent(lists.get(key), key, i, done));
+        }
+      }
+      assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+      List<Integer> expected = new ArrayList<Integer>();
+      for (int i = 0; i < entriesPerKey; i++) {
+        expected.add(i);
+      }
+      for (List<Integer> list : lists) {
+        assertThat(list).isEqualTo(expected);
+      }
+    } finally {
+      queue.shutdown();
+    }
+  }
+
+  @Test
+  public void partitioned_ProcessesOtherEntriesOnOneThread() {
+    DisruptorEventQueue queue =
+        DisruptorEventQueue.create(4, 1024, WaitStrategyType.BLOCKING, OverflowPolicy.BLOCK);
+    try {
+      Counter counter = new Counter();
+      for (int i = 0; i < 1000; i++) {
+        queue.enqueue(new IncrementEvent(counter));
+      }
+      // Sleep briefly, to allow background operations to complete.
+      try {
+        Thread.sleep(500);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      counter.check(1000);
+    } finally {
+      queue.shutdown();
+    }
+  }
+
+  @Test
+  public void dropPolicy_DropsDroppableEntriesWhenFull() throws InterruptedException {
+    DisruptorEventQueue queue =
+        DisruptorEventQueue.create(1, 4, WaitStrategyType.SLEEPING, OverflowPolicy.DROP);
+    try {
+      BlockingEvent blockingEvent = new BlockingEvent();
+      queue.enqueue(blockingEvent);
+      assertThat(blockingEvent.started.await(10, TimeUnit.SECONDS)).isTrue();
+      // The blocking entry still holds one of the 4 slots until it is processed.
+      AtomicInteger processed = new AtomicInteger();
+      for (int i = 0; i < 10; i++) {
+        queue.enqueue(new CountEvent(processed));
+      }
+      assertThat(queue.getDroppedEvents()).isEqualTo(7);
+      blockingEvent.release.countDown();
+      // Not droppable, so it waits for room and is processed after the others.
+      BlockingEvent lastEvent = new BlockingEvent();
+      lastEvent.release.countDown();
+      queue.enqueue(lastEvent);
+      assertThat(lastEvent.started.await(10, TimeUnit.SECONDS)).isTrue();
+      assertThat(processed.get()).isEqualTo(3);
+      assertThat(queue.getDroppedEvents()).isEqualTo(7);
+    } finally {
+      queue.shutdown();
+    }
+  }
+
+  @Test
+  public void blockPolicy_DoesNotDropEntries() throws InterruptedException {
+    DisruptorEventQueue queue =
+        DisruptorEventQueue.create(1, 4, WaitStrategyType.SLEEPING, OverflowPolicy.BLOCK);
+    try {
+      AtomicInteger processed = new AtomicInteger();
+      for (int i = 0; i < 100; i++) {
+        queue.enqueue(new CountEvent(processed));
+      }
+      CountDownLatch done = new CountDownLatch(1);
+      queue.enqueue(new AppendEvent(new ArrayList<Integer>(), 0, 0, done));
+      assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+      assertThat(processed.get()).isEqualTo(100);
+      assertThat(queue.getDroppedEvents()).isEqualTo(0);
+    } finally {
+      queue.shutdown();
+    }
+  }
+
+  @Test
+  public void blockPolicy_CountsEnqueueWaitTime() throws InterruptedException {
+    final DisruptorEventQueue queue =
+        DisruptorEventQueue.create(1, 4, WaitStrategyType.SLEEPING, OverflowPolicy.BLOCK);
+    try {
+      BlockingEvent blockingEvent = new BlockingEvent();
+      queue.enqueue(blockingEvent);
+      assertThat(blockingEvent.started.await(10, TimeUnit.SECONDS)).isTrue();
+      final AtomicInteger processed = new AtomicInteger();
+      for (int i = 0; i < 3; i++) {
+        queue.enqueue(new CountEvent(processed));
+      }
+      assertThat(queue.getEnqueueWaitNanos()).isEqualTo(0);
+      // The queue is full, so this waits until the blocking entry is released.
+      Thread producer =
+          new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  queue.enqueue(new CountEvent(processed));
+                }
+              });
+      producer.start();
+      Thread.sleep(100);
+      blockingEvent.release.countDown();
+      producer.join(10000);
+      assertThat(queue.getEnqueueWaitNanos()).isGreaterThan(0L);
+      assertThat(queue.getDroppedEvents()).isEqualTo(0);
+    } finally {
+      queue.shutdown();
+    }
+  }
+
+  @Test
+  public void countsProcessedBatches() throws InterruptedException {
+    DisruptorEventQueue queue =
+        DisruptorEventQueue.create(2, 1024, WaitStrategyType.YIELDING, OverflowPolicy.BLOCK);
+    try {
+      CountDownLatch done = new CountDownLatch(100);
+      for (int i = 0; i < 100; i++) {
+        queue.enqueue(new AppendEvent(new ArrayList<Integer>(), i, i, done));
+      }
+      assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+      // Each partition ends its last batch after its last entry.
+      Thread.sleep(100);
+      assertThat(queue.getProcessedBatches()).isAtLeast(2L);
+      assertThat(queue.getProcessedBatches()).isAtMost(100L);
+    } finally {
+      queue.shutdown();
+    }
+  }
 }
@@ -33,4 +33,27 @@ public interface EventQueue {
      */
     void process();
   }
+
+  /**
+   * An {@link Entry} that tells a queue with several consumer threads how to route it, and whether
+   * it may be dropped when the queue is full. Entries that do not implement this interface are all
+   * processed in order, and are never dropped.
+   */
+  interface PartitionedEntry extends Entry {
+    /**
+     * Returns the key used to pick the consumer thread. Entries with the same key are processed in
+     * the order they were enqueued.
+     *
+     * @return the key used to pick the consumer thread.
+     */
+    int getPartitionKey();
+
+    /**
+     * Returns {@code true} if this entry may be dropped instead of waiting for room in a full
+     * queue.
+     *
+     * @return {@code true} if this entry may be dropped.
+     */
+    boolean isDroppable();
+  }
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.internal;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.opencensus.common.ToLongFunction;
+import io.opencensus.metrics.DerivedLongCumulative;
+import io.opencensus.metrics.LabelKey;
+import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.MetricOptions;
+import io.opencensus.metrics.Metrics;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.concurrent.ThreadSafe;
+
+/*>>>
+import org.checkerframework.checker.nullness.qual.Nullable;
+*/
+
+/**
+ * Reports how many entries of each type an {@link EventQueue} processed, and how long they took,
+ * through {@link Metrics#getMetricRegistry()}.
+ *
+ * <p>Entries may be processed on the threads that record them, e.g. by {@link SimpleEventQueue}, so
+ * the counters are striped over several cells, and the processing time is only measured for one
+ * entry in {@value #TIMING_SAMPLE_PERIOD} of each cell and scaled up. Processing an entry that is
+ * not timed only costs a lookup of its type and an uncontended increment.
+ *
+ * <p>The time series of a queue and an entry type can only be registered once, so there must be
+ * at most one {@code EventQueueMetrics} per queue name, usually held in a static field of the
+ * queue class.
+ */
+@ThreadSafe
+public final class EventQueueMetrics {
+  private static final List<LabelKey> LABEL_KEYS =
+      Arrays.asList(
+          LabelKey.create("queue", "The event queue."),
+          LabelKey.create("entry_type", "The type of the processed entries."));
+
+  private static final DerivedLongCumulative processedEntries =
+      Metrics.getMetricRegistry()
+          .addDerivedLongCumulative(
+              "oc_event_queue_entries_processed",
+              MetricOptions.builder()
+                  .setDescription("Number of entries processed by the event queue.")
+                  .setUnit("1")
+                  .setLabelKeys(LABEL_KEYS)
+                  .build());
+  private static final DerivedLongCumulative processingTime =
+      Metrics.getMetricRegistry()
+          .addDerivedLongCumulative(
+              "oc_event_queue_processing_time",
+              MetricOptions.builder()
+                  .setDescription(
+                      "Total time spent processing entries of the event queue, estimated from "
+                          + "a sample of the entries.")
+                  .setUnit("ns")
+                  .setLabelKeys(LABEL_KEYS)
+                  .build());
+
+  /** The processing time is measured for one entry in this many, a power of two. */
+  @VisibleForTesting static final int TIMING_SAMPLE_PERIOD = 16;
+
+  private final LabelValue queue;
+  private final ConcurrentMap<Class<?>, EntryTypeStats> statsByEntryType =
+      new ConcurrentHashMap<Class<?>, EntryTypeStats>();
+
+  /**
+   * Creates a new {@code EventQueueMetrics}.
+   *
+   * @param queue the name of the queue, reported in the {@code queue} label.
+   */
+  public EventQueueMetrics(String queue) {
+    this.queue = LabelValue.create(checkNotNull(queue, "queue"));
+  }
+
+  /**
+   * Processes the entry on the current thread, and records that it was processed.
+   *
+   * @param entry the entry to process.
+   */
+  public void process(EventQueue.Entry entry) {
+    EntryTypeStats stats = getEntryTypeStats(entry.getClass());
+    long processedInCell = stats.processedEntries.addAndGetCell(1);
+    if ((processedInCell & (TIMING_SAMPLE_PERIOD - 1)) != 1) {
+      entry.process();
+      return;
+    }
+    long startNanos = System.nanoTime();
+    entry.process();
+    stats.processingNanos.addAndGetCell((System.nanoTime() - startNanos) * TIMING_SAMPLE_PERIOD);
+  }
+
+  @VisibleForTesting
+  long getProcessedEntries(Class<?> entryType) {
+    return getEntryTypeStats(entryType).processedEntries.sum();
+  }
+
+  @VisibleForTesting
+  long getProcessingNanos(Class<?> entryType) {
+    return getEntryTypeStats(entryType).processingNanos.sum();
+  }
+
+  private EntryTypeStats getEntryTypeStats(Class<?> entryType) {
+    EntryTypeStats stats = statsByEntryType.get(entryType);
+    if (stats != null) {
+      return stats;
+    }
+    synchronized (this) {
+      stats = statsByEntryType.get(entryType);
+      if (stats == null) {
+        stats = new EntryTypeStats();
+        // Registered before the stats are visible to other threads, so only once per entry type.
+        // The full name, because entries of different classes may share a simple name.
+        List<LabelValue> labelValues = Arrays.asList(queue, LabelValue.create(entryType.getName()));
+        processedEntries.createTimeSeries(
+            labelValues, stats.processedEntries, ReportCount.INSTANCE);
+        processingTime.createTimeSeries(labelValues, stats.processingNanos, ReportCount.INSTANCE);
+        statsByEntryType.put(entryType, stats);
+      }
+      return stats;
+    }
+  }
+
+  private static final class EntryTypeStats {
+    // Counted before the entry is processed.
+    private final StripedLongCounter processedEntries = new StripedLongCounter();
+    // Estimated from the timed entries.
+    private final StripedLongCounter processingNanos = new StripedLongCounter();
+  }
+
+  private enum ReportCount implements ToLongFunction</*@Nullable*/ StripedLongCounter> {
+    INSTANCE;
+
+    @Override
+    public long applyAsLong(/*@Nullable*/ StripedLongCounter counter) {
+      if (counter == null) {
+        return 0;
+      }
+      return counter.sum();
+    }
+  }
+}
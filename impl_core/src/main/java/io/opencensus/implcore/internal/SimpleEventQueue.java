@@ -21,10 +21,11 @@ package io.opencensus.implcore.internal;
  * testing.
  */
 public class SimpleEventQueue implements EventQueue {
+  private static final EventQueueMetrics metrics = new EventQueueMetrics("SimpleEventQueue");
 
   @Override
   public void enqueue(Entry entry) {
-    entry.process();
+    metrics.process(entry);
   }
 
   @Override
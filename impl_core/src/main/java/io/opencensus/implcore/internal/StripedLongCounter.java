@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.internal;
+
+import com.google.common.math.IntMath;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A counter that threads update in different cells, so that counting from many threads does not
+ * contend on a single {@code AtomicLong}. A stand-in for {@code java.util.concurrent.atomic
+ * .LongAdder}, which is not available on Java 7 and older Android versions.
+ *
+ * <p>The cells are picked by thread id, and the value is the sum of all the cells.
+ */
+@ThreadSafe
+public final class StripedLongCounter {
+
+  // The same number of cells as LongAdder at most.
+  private static final int NUM_CELLS =
+      IntMath.ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors());
+  // Each cell takes a cache line of 64 bytes, so that updating a cell does not invalidate the
+  // others.
+  private static final int CELL_STRIDE = 8;
+
+  private final AtomicLongArray cells = new AtomicLongArray(NUM_CELLS * CELL_STRIDE);
+
+  /**
+   * Adds the given value to the cell of the current thread.
+   *
+   * @param delta the value to add.
+   * @return the new value of the cell of the current thread, not of the whole counter.
+   */
+  public long addAndGetCell(long delta) {
+    return cells.addAndGet(cellIndex(), delta);
+  }
+
+  /**
+   * Returns the sum of all the cells. Not a snapshot: concurrent updates may or may not be counted.
+   *
+   * @return the sum of all the cells.
+   */
+  public long sum() {
+    long sum = 0;
+    for (int i = 0; i < NUM_CELLS; i++) {
+      sum += cells.get(i * CELL_STRIDE);
+    }
+    return sum;
+  }
+
+  /**
+   * Returns the sum of all the cells and resets them to zero. Not a snapshot, but every update is
+   * counted exactly once, by this call or by a later one.
+   *
+   * @return the sum of all the cells before they were reset.
+   */
+  public long sumThenReset() {
+    long sum = 0;
+    for (int i = 0; i < NUM_CELLS; i++) {
+      sum += cells.getAndSet(i * CELL_STRIDE, 0);
+    }
+    return sum;
+  }
+
+  // Thread ids are assigned sequentially, so they spread well over a power of two table.
+  private static int cellIndex() {
+    return ((int) Thread.currentThread().getId() & (NUM_CELLS - 1)) * CELL_STRIDE;
+  }
+}
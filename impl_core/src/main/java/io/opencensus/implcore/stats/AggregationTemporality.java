@@ -0,0 +1,36 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+/**
+ * How the {@code MetricProducer} of a {@link StatsComponentImplBase} reports the points of
+ * cumulative views.
+ */
+public enum AggregationTemporality {
+  /** Points cover everything recorded since the view was registered. */
+  CUMULATIVE,
+
+  /**
+   * Points only cover what was recorded since the previous read, and each read resets the views.
+   * The start timestamp of a point is the time of the previous read. Series without recordings
+   * since the previous read are left out, and gauges (last value views) are reported as usual.
+   *
+   * <p>Since the views are reset, {@code ViewManager.getView} also only returns the stats recorded
+   * since the previous read of the {@code MetricProducer}.
+   */
+  DELTA
+}
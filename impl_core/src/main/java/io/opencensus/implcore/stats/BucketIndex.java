@@ -0,0 +1,218 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import io.opencensus.stats.BucketBoundaries;
+import java.util.List;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Finds the histogram bucket of a value for a given {@link BucketBoundaries}.
+ *
+ * <p>The boundaries are flattened into a {@code double[]} and searched with a binary search. When
+ * the boundaries are evenly spaced (linear) or grow by a constant factor (exponential), the bucket
+ * is computed directly and then corrected against the actual boundaries, so the result is always
+ * the same as a linear scan.
+ */
+@Immutable
+abstract class BucketIndex {
+
+  // Boundaries that deviate from the fitted linear or exponential layout by more than this
+  // fraction of one bucket fall back to a binary search.
+  private static final double LAYOUT_TOLERANCE = 1e-6;
+
+  // Distributions of the same view share one BucketIndex. Values are weakly referenced so that
+  // the index is dropped together with the last distribution that uses it.
+  private static final LoadingCache<BucketBoundaries, BucketIndex> cache =
+      CacheBuilder.newBuilder()
+          .weakValues()
+          .build(
+              new CacheLoader<BucketBoundaries, BucketIndex>() {
+                @Override
+                public BucketIndex load(BucketBoundaries bucketBoundaries) {
+                  return create(bucketBoundaries);
+                }
+              });
+
+  final double[] boundaries;
+
+  private BucketIndex(double[] boundaries) {
+    this.boundaries = boundaries;
+  }
+
+  /**
+   * Returns the {@code BucketIndex} for the given {@code BucketBoundaries}.
+   *
+   * @param bucketBoundaries the bucket boundaries.
+   * @return the {@code BucketIndex} for the given {@code BucketBoundaries}.
+   */
+  static BucketIndex forBoundaries(BucketBoundaries bucketBoundaries) {
+    checkNotNull(bucketBoundaries, "bucketBoundaries");
+    return cache.getUnchecked(bucketBoundaries);
+  }
+
+  @VisibleForTesting
+  static BucketIndex create(BucketBoundaries bucketBoundaries) {
+    List<Double> boundaryList = bucketBoundaries.getBoundaries();
+    double[] boundaries = new double[boundaryList.size()];
+    for (int i = 0; i < boundaries.length; i++) {
+      boundaries[i] = boundaryList.get(i);
+    }
+    if (boundaries.length >= 3) {
+      if (isLinear(boundaries)) {
+        return new LinearBucketIndex(boundaries);
+      }
+      if (isExponential(boundaries)) {
+        return new ExponentialBucketIndex(boundaries);
+      }
+    }
+    return new SearchBucketIndex(boundaries);
+  }
+
+  /**
+   * Returns the index of the bucket for the given value, i.e. the index of the first boundary
+   * greater than the value, or the number of boundaries if there is no such boundary.
+   *
+   * @param value the recorded value.
+   * @return the index of the bucket for the given value.
+   */
+  abstract int getBucket(double value);
+
+  // Moves an estimated bucket to the exact one. Only takes a step or two when the estimate comes
+  // from a layout that matches the boundaries.
+  final int correct(int estimate, double value) {
+    int bucket = estimate;
+    while (bucket > 0 && value < boundaries[bucket - 1]) {
+      bucket--;
+    }
+    while (bucket < boundaries.length && !(value < boundaries[bucket])) {
+      bucket++;
+    }
+    return bucket;
+  }
+
+  // Converts a fractional bucket position to an estimated bucket, clamped to the valid range.
+  final int estimate(double position) {
+    if (position < 0) {
+      return 0;
+    }
+    if (position >= boundaries.length) {
+      return boundaries.length;
+    }
+    // Also maps NaN to the first bucket, which correct() then moves to the right place.
+    return (int) position + 1;
+  }
+
+  private static boolean isLinear(double[] boundaries) {
+    int last = boundaries.length - 1;
+    double width = (boundaries[last] - boundaries[0]) / last;
+    for (int i = 1; i < last; i++) {
+      double expected = boundaries[0] + i * width;
+      if (Math.abs(expected - boundaries[i]) > width * LAYOUT_TOLERANCE) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isExponential(double[] boundaries) {
+    if (boundaries[0] <= 0) {
+      return false;
+    }
+    int last = boundaries.length - 1;
+    double logFactor = Math.log(boundaries[last] / boundaries[0]) / last;
+    for (int i = 1; i < last; i++) {
+      double expected = i * logFactor;
+      if (Math.abs(expected - Math.log(boundaries[i] / boundaries[0]))
+          > logFactor * LAYOUT_TOLERANCE) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Immutable
+  @VisibleForTesting
+  static final class SearchBucketIndex extends BucketIndex {
+
+    private SearchBucketIndex(double[] boundaries) {
+      super(boundaries);
+    }
+
+    @Override
+    int getBucket(double value) {
+      // Same comparison as the linear scan, unlike Arrays.binarySearch which uses Double.compare.
+      int low = 0;
+      int high = boundaries.length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (value < boundaries[mid]) {
+          high = mid;
+        } else {
+          low = mid + 1;
+        }
+      }
+      return low;
+    }
+  }
+
+  @Immutable
+  @VisibleForTesting
+  static final class LinearBucketIndex extends BucketIndex {
+    private final double offset;
+    private final double width;
+
+    private LinearBucketIndex(double[] boundaries) {
+      super(boundaries);
+      this.offset = boundaries[0];
+      this.width = (boundaries[boundaries.length - 1] - boundaries[0]) / (boundaries.length - 1);
+    }
+
+    @Override
+    int getBucket(double value) {
+      return correct(estimate((value - offset) / width), value);
+    }
+  }
+
+  @Immutable
+  @VisibleForTesting
+  static final class ExponentialBucketIndex extends BucketIndex {
+    private final double scale;
+    private final double logFactor;
+
+    private ExponentialBucketIndex(double[] boundaries) {
+      super(boundaries);
+      this.scale = boundaries[0];
+      this.logFactor =
+          Math.log(boundaries[boundaries.length - 1] / boundaries[0]) / (boundaries.length - 1);
+    }
+
+    @Override
+    int getBucket(double value) {
+      if (value < scale) {
+        return 0;
+      }
+      return correct(estimate(Math.log(value / scale) / logFactor), value);
+    }
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.opencensus.common.ToLongFunction;
+import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.MetricOptions;
+import io.opencensus.metrics.Metrics;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.concurrent.ThreadSafe;
+
+/*>>>
+import org.checkerframework.checker.nullness.qual.Nullable;
+*/
+
+/**
+ * Enforces the {@link CardinalityLimits} of the views of one {@link StatsManager}, by counting the
+ * series of each view and of all the views together.
+ */
+@ThreadSafe
+final class CardinalityLimiter {
+
+  // Shared by all the StatsManagers, because a time series can only be registered once.
+  private static final AtomicLong overflowedMeasurements = new AtomicLong();
+
+  static {
+    Metrics.getMetricRegistry()
+        .addDerivedLongCumulative(
+            "oc_stats_measurements_overflowed",
+            MetricOptions.builder()
+                .setDescription(
+                    "Number of measurements recorded into the overflow series of a view, because "
+                        + "the view had too many series.")
+                .setUnit("1")
+                .build())
+        .createTimeSeries(
+            Collections.<LabelValue>emptyList(),
+            overflowedMeasurements,
+            new ReportOverflowedMeasurements());
+  }
+
+  private final CardinalityLimits limits;
+  private final AtomicInteger numSeries = new AtomicInteger();
+
+  CardinalityLimiter(CardinalityLimits limits) {
+    this.limits = checkNotNull(limits, "limits");
+  }
+
+  CardinalityLimits getLimits() {
+    return limits;
+  }
+
+  /**
+   * Reserves room for a new series of a view. Returns {@code false} if either the view or all the
+   * views together are already at their limit.
+   *
+   * @param viewSeries the number of series of the view.
+   * @return whether the new series can be added.
+   */
+  boolean tryAddSeries(AtomicInteger viewSeries) {
+    if (!incrementIfBelow(viewSeries, limits.getMaxSeriesPerView())) {
+      return false;
+    }
+    if (!incrementIfBelow(numSeries, limits.getMaxSeries())) {
+      viewSeries.decrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Releases the room of a series reserved with {@link #tryAddSeries}.
+   *
+   * @param viewSeries the number of series of the view.
+   */
+  void removeSeries(AtomicInteger viewSeries) {
+    viewSeries.decrementAndGet();
+    numSeries.decrementAndGet();
+  }
+
+  // Counts a measurement recorded into an overflow series.
+  static void recordOverflow() {
+    overflowedMeasurements.incrementAndGet();
+  }
+
+  static long getOverflowedMeasurements() {
+    return overflowedMeasurements.get();
+  }
+
+  private static boolean incrementIfBelow(AtomicInteger counter, int max) {
+    while (true) {
+      int current = counter.get();
+      if (current >= max) {
+        return false;
+      }
+      if (counter.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  private static final class ReportOverflowedMeasurements
+      implements ToLongFunction</*@Nullable*/ AtomicLong> {
+    @Override
+    public long applyAsLong(/*@Nullable*/ AtomicLong counter) {
+      if (counter == null) {
+        return 0;
+      }
+      return counter.get();
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.auto.value.AutoValue;
+import io.opencensus.common.Duration;
+import io.opencensus.tags.TagValue;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Limits on the number of series (distinct lists of tag values) kept by the views of a {@link
+ * StatsComponentImplBase}.
+ *
+ * <p>Once a view has {@link #getMaxSeriesPerView()} series, or all the views together have {@link
+ * #getMaxSeries()} series, measurements with new tag values are recorded into a single overflow
+ * series of the view, whose tag values are all {@link #OVERFLOW_TAG_VALUE}. The number of such
+ * measurements is reported by the {@code oc_stats_measurements_overflowed} metric of {@link
+ * io.opencensus.metrics.Metrics#getMetricRegistry()}. It counts measurements rather than distinct
+ * refused tag values: a tuple recorded ten times past the limit counts ten times. Counting distinct
+ * tuples would require remembering every refused tuple, which is the memory the limits bound.
+ *
+ * <p>If {@link #getSeriesIdleTimeout()} is positive, series that have not been recorded for that
+ * long are dropped when the cumulative view is read, which frees room for new series. An evicted
+ * series starts again from zero if it is recorded later. Interval views free the room of a series
+ * once it has no stats left in the interval.
+ */
+@AutoValue
+@Immutable
+public abstract class CardinalityLimits {
+  private static final Duration ZERO = Duration.create(0, 0);
+
+  /** The tag value of every column of the overflow series. */
+  public static final TagValue OVERFLOW_TAG_VALUE = TagValue.create("opencensus_overflow");
+
+  /** {@code CardinalityLimits} that never limit nor evict series. */
+  public static final CardinalityLimits UNLIMITED = builder().build();
+
+  CardinalityLimits() {}
+
+  /**
+   * Returns the maximum number of series of a single view, not counting the overflow series.
+   *
+   * @return the maximum number of series of a single view.
+   */
+  public abstract int getMaxSeriesPerView();
+
+  /**
+   * Returns the maximum number of series of all the views, not counting the overflow series.
+   *
+   * @return the maximum number of series of all the views.
+   */
+  public abstract int getMaxSeries();
+
+  /**
+   * Returns how long a series may go without recordings before it is evicted, or zero if series
+   * are never evicted.
+   *
+   * @return the idle timeout of a series.
+   */
+  public abstract Duration getSeriesIdleTimeout();
+
+  /**
+   * Returns a new {@link Builder} with no limits.
+   *
+   * @return a new {@code Builder}.
+   */
+  public static Builder builder() {
+    return new AutoValue_CardinalityLimits.Builder()
+        .setMaxSeriesPerView(Integer.MAX_VALUE)
+        .setMaxSeries(Integer.MAX_VALUE)
+        .setSeriesIdleTimeout(ZERO);
+  }
+
+  /**
+   * Returns a {@link Builder} initialized to the same values as this {@code CardinalityLimits}.
+   *
+   * @return a {@code Builder} initialized to the same values as this {@code CardinalityLimits}.
+   */
+  public abstract Builder toBuilder();
+
+  /** A {@code Builder} class for {@link CardinalityLimits}. */
+  @AutoValue.Builder
+  public abstract static class Builder {
+
+    Builder() {}
+
+    /**
+     * Sets the maximum number of series of a single view.
+     *
+     * @param maxSeriesPerView the maximum number of series of a single view.
+     * @return this.
+     */
+    public abstract Builder setMaxSeriesPerView(int maxSeriesPerView);
+
+    /**
+     * Sets the maximum number of series of all the views.
+     *
+     * @param maxSeries the maximum number of series of all the views.
+     * @return this.
+     */
+    public abstract Builder setMaxSeries(int maxSeries);
+
+    /**
+     * Sets how long a series may go without recordings before it is evicted. Zero disables
+     * eviction.
+     *
+     * @param seriesIdleTimeout the idle timeout of a series.
+     * @return this.
+     */
+    public abstract Builder setSeriesIdleTimeout(Duration seriesIdleTimeout);
+
+    abstract CardinalityLimits autoBuild();
+
+    /**
+     * Builds and returns a {@code CardinalityLimits} with the desired values.
+     *
+     * @return a {@code CardinalityLimits} with the desired values.
+     * @throws IllegalArgumentException if any of the max numbers are not positive, or if the idle
+     *     timeout is negative.
+     */
+    public CardinalityLimits build() {
+      CardinalityLimits limits = autoBuild();
+      checkArgument(limits.getMaxSeriesPerView() > 0, "maxSeriesPerView should be positive.");
+      checkArgument(limits.getMaxSeries() > 0, "maxSeries should be positive.");
+      checkArgument(
+          limits.getSeriesIdleTimeout().compareTo(ZERO) >= 0,
+          "seriesIdleTimeout should not be negative.");
+      return limits;
+    }
+  }
+}
@@ -45,6 +45,11 @@ final class MeasureMapInternal {
     return new MeasureMapInternalIterator();
   }
 
+  // Returns the name of the first measure of this map, or the empty string if the map is empty.
+  String getFirstMeasureName() {
+    return measurements.isEmpty() ? "" : measurements.get(0).getMeasure().getName();
+  }
+
   // Returns the contextual information associated with an example value.
   Map<String, AttachmentValue> getAttachments() {
     return attachments;
@@ -16,9 +16,8 @@
 
 package io.opencensus.implcore.stats;
 
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Multimap;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Sets;
 import io.opencensus.common.Clock;
 import io.opencensus.common.Timestamp;
@@ -37,7 +36,6 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import javax.annotation.concurrent.GuardedBy;
 
@@ -49,28 +47,39 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 @SuppressWarnings("deprecation")
 final class MeasureToViewMap {
 
+  private final CardinalityLimiter limiter;
+
   /*
-   * A synchronized singleton map that stores the one-to-many mapping from Measures
-   * to MutableViewDatas.
+   * A copy-on-write singleton map that stores the one-to-many mapping from Measures
+   * to MutableViewDatas. Writers replace the whole snapshot while holding the lock on this object,
+   * readers (record, getMetrics, etc.) only read the volatile reference so they never contend with
+   * registration. Each MutableViewData is responsible for its own thread safety.
    */
-  @GuardedBy("this")
-  private final Multimap<String, MutableViewData> mutableMap =
-      HashMultimap.<String, MutableViewData>create();
+  private volatile ImmutableListMultimap<String, MutableViewData> mutableMap =
+      ImmutableListMultimap.of();
 
   @GuardedBy("this")
   private final Map<View.Name, View> registeredViews = new HashMap<View.Name, View>();
 
   // TODO(songya): consider adding a Measure.Name class
-  @GuardedBy("this")
-  private final Map<String, Measure> registeredMeasures = Maps.newHashMap();
+  // Copy-on-write snapshot, updated together with mutableMap.
+  private volatile ImmutableMap<String, Measure> registeredMeasures = ImmutableMap.of();
 
   // Cached set of exported views. It must be set to null whenever a view is registered or
   // unregistered.
   @javax.annotation.Nullable private volatile Set<View> exportedViews;
 
+  MeasureToViewMap() {
+    this(CardinalityLimits.UNLIMITED);
+  }
+
+  MeasureToViewMap(CardinalityLimits limits) {
+    this.limiter = new CardinalityLimiter(limits);
+  }
+
   /** Returns a {@link ViewData} corresponding to the given {@link View.Name}. */
   @javax.annotation.Nullable
-  synchronized ViewData getView(View.Name viewName, Clock clock, State state) {
+  ViewData getView(View.Name viewName, Clock clock, State state) {
     MutableViewData view = getMutableViewData(viewName);
     return view == null ? null : view.toViewData(clock.now(), state);
   }
@@ -117,10 +126,18 @@ final class MeasureToViewMap {
     }
     registeredViews.put(view.getName(), view);
     if (registeredMeasure == null) {
-      registeredMeasures.put(measure.getName(), measure);
+      registeredMeasures =
+          ImmutableMap.<String, Measure>builder()
+              .putAll(registeredMeasures)
+              .put(measure.getName(), measure)
+              .build();
     }
     Timestamp now = clock.now();
-    mutableMap.put(view.getMeasure().getName(), MutableViewData.create(view, now));
+    mutableMap =
+        ImmutableListMultimap.<String, MutableViewData>builder()
+            .putAll(mutableMap)
+            .put(view.getMeasure().getName(), MutableViewData.create(view, now, limiter))
+            .build();
   }
 
   @javax.annotation.Nullable
@@ -144,8 +161,12 @@ final class MeasureToViewMap {
             + mutableMap);
   }
 
-  // Records stats with a set of tags.
-  synchronized void record(TagContext tags, MeasureMapInternal stats, Timestamp timestamp) {
+  // Records stats with a set of tags. Does not lock the map, so it can run concurrently with
+  // registration, export and other recording threads.
+  void record(TagContext tags, MeasureMapInternal stats, Timestamp timestamp) {
+    // Read the snapshots once, so that one record() call sees a consistent set of views.
+    ImmutableMap<String, Measure> registeredMeasures = this.registeredMeasures;
+    ImmutableListMultimap<String, MutableViewData> mutableMap = this.mutableMap;
     Iterator<Measurement> iterator = stats.iterator();
     Map<String, AttachmentValue> attachments = stats.getAttachments();
     while (iterator.hasNext()) {
@@ -155,7 +176,7 @@ final class MeasureToViewMap {
         // unregistered measures will be ignored.
         continue;
       }
-      Collection<MutableViewData> viewDataCollection = mutableMap.get(measure.getName());
+      List<MutableViewData> viewDataCollection = mutableMap.get(measure.getName());
       for (MutableViewData viewData : viewDataCollection) {
         viewData.record(
             tags, RecordUtils.getDoubleValueFromMeasurement(measurement), timestamp, attachments);
@@ -163,11 +184,11 @@ final class MeasureToViewMap {
     }
   }
 
-  synchronized List<Metric> getMetrics(Clock clock, State state) {
+  List<Metric> getMetrics(Clock clock, State state) {
     List<Metric> metrics = new ArrayList<Metric>();
     Timestamp now = clock.now();
-    for (Entry<String, MutableViewData> entry : mutableMap.entries()) {
-      Metric metric = entry.getValue().toMetric(now, state);
+    for (MutableViewData mutableViewData : mutableMap.values()) {
+      Metric metric = mutableViewData.toMetric(now, state);
       if (metric != null) {
         metrics.add(metric);
       }
@@ -175,21 +196,30 @@ final class MeasureToViewMap {
     return metrics;
   }
 
-  // Clear stats for all the current MutableViewData
-  synchronized void clearStats() {
-    for (Entry<String, Collection<MutableViewData>> entry : mutableMap.asMap().entrySet()) {
-      for (MutableViewData mutableViewData : entry.getValue()) {
-        mutableViewData.clearStats();
+  // Returns the stats recorded since the previous call, and resets them.
+  List<Metric> getDeltaMetrics(Clock clock, State state) {
+    List<Metric> metrics = new ArrayList<Metric>();
+    Timestamp now = clock.now();
+    for (MutableViewData mutableViewData : mutableMap.values()) {
+      Metric metric = mutableViewData.toDeltaMetric(now, state);
+      if (metric != null) {
+        metrics.add(metric);
       }
     }
+    return metrics;
+  }
+
+  // Clear stats for all the current MutableViewData
+  void clearStats() {
+    for (MutableViewData mutableViewData : mutableMap.values()) {
+      mutableViewData.clearStats();
+    }
   }
 
   // Resume stats collection for all MutableViewData.
-  synchronized void resumeStatsCollection(Timestamp now) {
-    for (Entry<String, Collection<MutableViewData>> entry : mutableMap.asMap().entrySet()) {
-      for (MutableViewData mutableViewData : entry.getValue()) {
-        mutableViewData.resumeStatsCollection(now);
-      }
+  void resumeStatsCollection(Timestamp now) {
+    for (MutableViewData mutableViewData : mutableMap.values()) {
+      mutableViewData.resumeStatsCollection(now);
     }
   }
 }
@@ -16,23 +16,38 @@
 
 package io.opencensus.implcore.stats;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import io.opencensus.metrics.export.Metric;
 import io.opencensus.metrics.export.MetricProducer;
 import java.util.Collection;
 import javax.annotation.concurrent.ThreadSafe;
 
-/** Implementation of {@link MetricProducer}. */
+/**
+ * Implementation of {@link MetricProducer}.
+ *
+ * <p>With {@link AggregationTemporality#DELTA}, every call to {@link #getMetrics()} resets the
+ * cumulative views, so there should only be one exporter reading from it.
+ */
 @ThreadSafe
 final class MetricProducerImpl extends MetricProducer {
 
   private final StatsManager statsManager;
+  private final AggregationTemporality temporality;
 
   MetricProducerImpl(StatsManager statsManager) {
+    this(statsManager, AggregationTemporality.CUMULATIVE);
+  }
+
+  MetricProducerImpl(StatsManager statsManager, AggregationTemporality temporality) {
     this.statsManager = statsManager;
+    this.temporality = checkNotNull(temporality, "temporality");
   }
 
   @Override
   public Collection<Metric> getMetrics() {
-    return statsManager.getMetrics();
+    return temporality == AggregationTemporality.DELTA
+        ? statsManager.getDeltaMetrics()
+        : statsManager.getMetrics();
   }
 }
@@ -22,10 +22,13 @@ import io.opencensus.common.Functions;
 import io.opencensus.metrics.LabelKey;
 import io.opencensus.metrics.LabelValue;
 import io.opencensus.metrics.data.AttachmentValue;
+import io.opencensus.metrics.export.Distribution;
+import io.opencensus.metrics.export.Distribution.BucketOptions;
 import io.opencensus.metrics.export.MetricDescriptor;
 import io.opencensus.metrics.export.MetricDescriptor.Type;
 import io.opencensus.stats.Aggregation;
 import io.opencensus.stats.Aggregation.Count;
+import io.opencensus.stats.AggregationData.ExponentialDistributionData;
 import io.opencensus.stats.Measure;
 import io.opencensus.stats.View;
 import io.opencensus.tags.TagKey;
@@ -99,6 +102,47 @@ final class MetricUtils {
     return labelValues;
   }
 
+  /**
+   * Converts an {@link ExponentialDistributionData} to a {@link Distribution} with explicit bucket
+   * boundaries, so that it can be exported like any other distribution.
+   *
+   * <p>The first bucket holds the zero count, followed by one bucket per exponential bucket.
+   */
+  static Distribution exponentialDistributionDataToDistribution(
+      ExponentialDistributionData distributionData) {
+    List<Long> bucketCounts = distributionData.getBucketCounts();
+    List<Double> bucketBoundaries = new ArrayList<Double>(bucketCounts.size() + 1);
+    List<Distribution.Bucket> buckets = new ArrayList<Distribution.Bucket>(bucketCounts.size() + 2);
+    buckets.add(Distribution.Bucket.create(distributionData.getZeroCount()));
+    if (!bucketCounts.isEmpty()) {
+      int indexOffset = distributionData.getIndexOffset();
+      int scale = distributionData.getScale();
+      for (int i = 0; i <= bucketCounts.size(); i++) {
+        // base^index, with base = 2^(2^-scale).
+        double bucketBoundary = Math.pow(2, Math.scalb((double) (indexOffset + i), -scale));
+        if (Double.isInfinite(bucketBoundary)) {
+          // Only the upper bound of the last bucket can overflow, keep it open ended.
+          break;
+        }
+        bucketBoundaries.add(bucketBoundary);
+      }
+      for (long bucketCount : bucketCounts) {
+        buckets.add(Distribution.Bucket.create(bucketCount));
+      }
+      if (bucketBoundaries.size() > bucketCounts.size()) {
+        // Values above the upper bound of the last bucket.
+        buckets.add(Distribution.Bucket.create(0));
+      }
+    }
+    long count = distributionData.getCount();
+    return Distribution.create(
+        count,
+        count == 0 ? 0 : distributionData.getMean() * count,
+        distributionData.getSumOfSquaredDeviations(),
+        BucketOptions.explicitOptions(bucketBoundaries),
+        buckets);
+  }
+
   static Map<String, String> toStringAttachments(Map<String, AttachmentValue> attachments) {
     Map<String, String> stringAttachments = new HashMap<>();
     for (Map.Entry<String, AttachmentValue> entry : attachments.entrySet()) {
@@ -132,6 +176,9 @@ final class MetricUtils {
           if (arg instanceof Aggregation.Mean) {
             return Type.CUMULATIVE_DOUBLE; // Mean
           }
+          if (arg instanceof Aggregation.ExponentialDistribution) {
+            return Type.CUMULATIVE_DISTRIBUTION; // ExponentialDistribution
+          }
           throw new AssertionError();
         }
       };
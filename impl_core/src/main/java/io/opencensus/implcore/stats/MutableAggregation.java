@@ -260,6 +260,7 @@ abstract class MutableAggregation {
     private double sumOfSquaredDeviations = 0.0;
 
     private final BucketBoundaries bucketBoundaries;
+    private final BucketIndex bucketIndex;
     private final long[] bucketCounts;
 
     // If there's a histogram (i.e bucket boundaries are not empty) in this MutableDistribution,
@@ -269,6 +270,7 @@ abstract class MutableAggregation {
 
     private MutableDistribution(BucketBoundaries bucketBoundaries) {
       this.bucketBoundaries = bucketBoundaries;
+      this.bucketIndex = BucketIndex.forBoundaries(bucketBoundaries);
       int buckets = bucketBoundaries.getBoundaries().size() + 1;
       this.bucketCounts = new long[buckets];
       // In the implementation, each histogram bucket can have up to one exemplar, and the exemplar
@@ -305,12 +307,7 @@ abstract class MutableAggregation {
       double deltaFromMean2 = value - mean;
       sumOfSquaredDeviations += deltaFromMean * deltaFromMean2;
 
-      int bucket = 0;
-      for (; bucket < bucketBoundaries.getBoundaries().size(); bucket++) {
-        if (value < bucketBoundaries.getBoundaries().get(bucket)) {
-          break;
-        }
-      }
+      int bucket = bucketIndex.getBucket(value);
       bucketCounts[bucket]++;
 
       // No implicit recording for exemplars - if there are no attachments (contextual information),
@@ -332,6 +329,11 @@ abstract class MutableAggregation {
       checkArgument(
           this.bucketBoundaries.equals(mutableDistribution.bucketBoundaries),
           "Bucket boundaries should match.");
+      if (mutableDistribution.count == 0) {
+        // Nothing to combine. Returning early also keeps the mean of an empty distribution at 0
+        // instead of 0 / 0.
+        return;
+      }
 
       // Algorithm for calculating the combination of sum of squared deviations:
       // https://en.wikipedia.org/wiki/Algorithms_for_calculating_variance#Parallel_algorithm.
@@ -445,6 +447,226 @@ abstract class MutableAggregation {
     }
   }
 
+  /**
+   * Calculate distribution stats on aggregated {@code MeasureValue}s, with an exponential
+   * histogram. See {@link Aggregation.ExponentialDistribution} and {@link
+   * AggregationData.ExponentialDistributionData} for the bucket layout.
+   */
+  static final class MutableExponentialDistribution extends MutableAggregation {
+
+    // At scale 20 the buckets grow by less than 1e-6, and at scale -10 all the positive doubles
+    // fit in two buckets, so the histogram can always be brought down to maxBuckets >= 2.
+    @VisibleForTesting static final int MAX_SCALE = 20;
+    @VisibleForTesting static final int MIN_SCALE = -10;
+
+    private static final int INITIAL_BUCKETS = 8;
+    private static final double LN_2 = Math.log(2);
+
+    private double sum = 0.0;
+    private double mean = 0.0;
+    private long count = 0;
+    private double sumOfSquaredDeviations = 0.0;
+
+    private final int maxBuckets;
+    private int scale;
+    // Multiplier from the natural logarithm of a value to its bucket index, for scale > 0.
+    private double indexFactor;
+    private long zeroCount = 0;
+
+    // counts[i] is the count of the bucket with index firstIndex + i. Only the buckets between
+    // minIndex and maxIndex (inclusive) can be non-zero; there are none if minIndex > maxIndex.
+    private long[] counts = new long[0];
+    private int firstIndex = 0;
+    private int minIndex = 0;
+    private int maxIndex = -1;
+
+    private MutableExponentialDistribution(int scale, int maxBuckets) {
+      this.maxBuckets = maxBuckets;
+      setScale(scale);
+    }
+
+    /**
+     * Construct a {@code MutableExponentialDistribution}.
+     *
+     * @return an empty {@code MutableExponentialDistribution}.
+     */
+    static MutableExponentialDistribution create(
+        Aggregation.ExponentialDistribution exponentialDistribution) {
+      checkNotNull(exponentialDistribution, "exponentialDistribution");
+      return new MutableExponentialDistribution(
+          scaleForRelativeError(exponentialDistribution.getRelativeError()),
+          exponentialDistribution.getMaxBuckets());
+    }
+
+    // Returns the highest scale whose buckets are all within the relative error of their
+    // midpoint. A bucket [b, b * base) is if (base - 1) / (base + 1) <= relativeError.
+    @VisibleForTesting
+    static int scaleForRelativeError(double relativeError) {
+      double log2MaxBase = Math.log((1 + relativeError) / (1 - relativeError)) / LN_2;
+      // base = 2^(2^-scale), so scale >= -log2(log2(base)).
+      int scale = (int) Math.ceil(-Math.log(log2MaxBase) / LN_2);
+      return Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale));
+    }
+
+    @Override
+    void add(double value, Map<String, AttachmentValue> attachments, Timestamp timestamp) {
+      sum += value;
+      count++;
+
+      // Same as MutableDistribution.
+      double deltaFromMean = value - mean;
+      mean += deltaFromMean / count;
+      double deltaFromMean2 = value - mean;
+      sumOfSquaredDeviations += deltaFromMean * deltaFromMean2;
+
+      if (value >= Double.MIN_NORMAL) {
+        incrementBucket(getIndex(Math.min(value, Double.MAX_VALUE)), scale, 1);
+      } else {
+        // Zero, negative, subnormal or NaN.
+        zeroCount++;
+      }
+    }
+
+    // We don't compute fractional MutableExponentialDistribution, it's either whole or none.
+    @Override
+    void combine(MutableAggregation other, double fraction) {
+      checkArgument(
+          other instanceof MutableExponentialDistribution,
+          "MutableExponentialDistribution expected.");
+      if (Math.abs(1.0 - fraction) > TOLERANCE) {
+        return;
+      }
+
+      MutableExponentialDistribution distribution = (MutableExponentialDistribution) other;
+      if (distribution.count == 0) {
+        return;
+      }
+
+      // Same as MutableDistribution.
+      double delta = distribution.mean - this.mean;
+      this.sumOfSquaredDeviations =
+          this.sumOfSquaredDeviations
+              + distribution.sumOfSquaredDeviations
+              + Math.pow(delta, 2)
+                  * this.count
+                  * distribution.count
+                  / (this.count + distribution.count);
+      this.count += distribution.count;
+      this.sum += distribution.sum;
+      this.mean = this.sum / this.count;
+
+      this.zeroCount += distribution.zeroCount;
+      if (distribution.scale < scale) {
+        downscale(scale - distribution.scale);
+      }
+      for (int index = distribution.minIndex; index <= distribution.maxIndex; index++) {
+        long bucketCount = distribution.counts[index - distribution.firstIndex];
+        if (bucketCount != 0) {
+          incrementBucket(index, distribution.scale, bucketCount);
+        }
+      }
+    }
+
+    @Override
+    AggregationData toAggregationData() {
+      List<Long> boxedBucketCounts = new ArrayList<Long>();
+      for (int index = minIndex; index <= maxIndex; index++) {
+        boxedBucketCounts.add(counts[index - firstIndex]);
+      }
+      return AggregationData.ExponentialDistributionData.create(
+          mean,
+          count,
+          sumOfSquaredDeviations,
+          scale,
+          zeroCount,
+          minIndex <= maxIndex ? minIndex : 0,
+          boxedBucketCounts);
+    }
+
+    @Override
+    Point toPoint(Timestamp timestamp) {
+      return Point.create(
+          Value.distributionValue(
+              MetricUtils.exponentialDistributionDataToDistribution(
+                  (AggregationData.ExponentialDistributionData) toAggregationData())),
+          timestamp);
+    }
+
+    @VisibleForTesting
+    int getScale() {
+      return scale;
+    }
+
+    private void setScale(int scale) {
+      this.scale = scale;
+      this.indexFactor = Math.scalb(1 / LN_2, scale);
+    }
+
+    // Returns the index of the bucket of a positive, normal and finite value.
+    private int getIndex(double value) {
+      if (scale <= 0) {
+        // Exact: the exponent is the index at scale 0, and lower scales merge 2^-scale of them.
+        return Math.getExponent(value) >> -scale;
+      }
+      return (int) Math.floor(Math.log(value) * indexFactor);
+    }
+
+    // Adds bucketCount to the bucket with the given index at indexScale, which is not lower than
+    // the current scale. Lowers the scale if the bucket does not fit in maxBuckets.
+    private void incrementBucket(int index, int indexScale, long bucketCount) {
+      index >>= indexScale - scale;
+      int newMinIndex = minIndex <= maxIndex ? Math.min(minIndex, index) : index;
+      int newMaxIndex = minIndex <= maxIndex ? Math.max(maxIndex, index) : index;
+      int scaleReduction = 0;
+      while ((newMaxIndex >> scaleReduction) - (newMinIndex >> scaleReduction) >= maxBuckets) {
+        scaleReduction++;
+      }
+      if (scaleReduction > 0) {
+        downscale(scaleReduction);
+        index >>= scaleReduction;
+        newMinIndex >>= scaleReduction;
+        newMaxIndex >>= scaleReduction;
+      }
+      if (index < firstIndex || index >= firstIndex + counts.length) {
+        int length = newMaxIndex - newMinIndex + 1;
+        int newLength =
+            Math.min(maxBuckets, Math.max(length, Math.max(INITIAL_BUCKETS, 2 * counts.length)));
+        // Leave the free space on the side where the histogram grows.
+        resize(newLength, index < firstIndex ? newMaxIndex - newLength + 1 : newMinIndex);
+      }
+      counts[index - firstIndex] += bucketCount;
+      minIndex = newMinIndex;
+      maxIndex = newMaxIndex;
+    }
+
+    // Lowers the scale by the given amount, merging 2^scaleReduction neighboring buckets into one.
+    private void downscale(int scaleReduction) {
+      if (minIndex <= maxIndex) {
+        long[] oldCounts = counts;
+        int oldFirstIndex = firstIndex;
+        int oldMinIndex = minIndex;
+        int oldMaxIndex = maxIndex;
+        counts = new long[oldCounts.length];
+        firstIndex = oldMinIndex >> scaleReduction;
+        minIndex = oldMinIndex >> scaleReduction;
+        maxIndex = oldMaxIndex >> scaleReduction;
+        for (int index = oldMinIndex; index <= oldMaxIndex; index++) {
+          counts[(index >> scaleReduction) - firstIndex] += oldCounts[index - oldFirstIndex];
+        }
+      }
+      setScale(scale - scaleReduction);
+    }
+
+    private void resize(int newLength, int newFirstIndex) {
+      long[] newCounts = new long[newLength];
+      for (int index = minIndex; index <= maxIndex; index++) {
+        newCounts[index - newFirstIndex] = counts[index - firstIndex];
+      }
+      counts = newCounts;
+      firstIndex = newFirstIndex;
+    }
+  }
+
   /** Calculate double last value on aggregated {@code MeasureValue}s. */
   static class MutableLastValueDouble extends MutableAggregation {
 
@@ -17,21 +17,17 @@
 package io.opencensus.implcore.stats;
 
 import static com.google.common.base.Preconditions.checkArgument;
-import static io.opencensus.implcore.stats.RecordUtils.createAggregationMap;
 import static io.opencensus.implcore.stats.RecordUtils.createMutableAggregation;
 import static io.opencensus.implcore.stats.RecordUtils.getTagMap;
-import static io.opencensus.implcore.stats.RecordUtils.getTagValues;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Multimap;
 import io.opencensus.common.Duration;
 import io.opencensus.common.Function;
 import io.opencensus.common.Functions;
 import io.opencensus.common.Timestamp;
-import io.opencensus.implcore.internal.CheckerFrameworkUtils;
 import io.opencensus.implcore.internal.CurrentState.State;
+import io.opencensus.implcore.tags.TagMapImpl;
 import io.opencensus.metrics.LabelValue;
 import io.opencensus.metrics.data.AttachmentValue;
 import io.opencensus.metrics.export.Metric;
@@ -46,19 +42,34 @@ import io.opencensus.stats.View;
 import io.opencensus.stats.ViewData;
 import io.opencensus.tags.TagContext;
 import io.opencensus.tags.TagValue;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
 
 /*>>>
 import org.checkerframework.checker.nullness.qual.Nullable;
 */
 
-/** A mutable version of {@link ViewData}, used for recording stats and start/end time. */
+/**
+ * A mutable version of {@link ViewData}, used for recording stats and start/end time.
+ *
+ * <p>Implementations are thread-safe: {@link #record} may be called concurrently from multiple
+ * threads, and concurrently with {@link #toMetric} and {@link #toViewData}.
+ */
 @SuppressWarnings("deprecation")
+@ThreadSafe
 abstract class MutableViewData {
 
   @VisibleForTesting static final Timestamp ZERO_TIMESTAMP = Timestamp.create(0, 0);
@@ -77,10 +88,23 @@ abstract class MutableViewData {
    * @return a {@code MutableViewData}.
    */
   static MutableViewData create(final View view, final Timestamp start) {
+    return create(view, start, new CardinalityLimiter(CardinalityLimits.UNLIMITED));
+  }
+
+  /**
+   * Constructs a new {@link MutableViewData}.
+   *
+   * @param view the {@code View} linked with this {@code MutableViewData}.
+   * @param start the start {@code Timestamp}.
+   * @param limiter the {@code CardinalityLimiter} that limits the series of the view.
+   * @return a {@code MutableViewData}.
+   */
+  static MutableViewData create(
+      final View view, final Timestamp start, final CardinalityLimiter limiter) {
     return view.getWindow()
         .match(
-            new CreateCumulative(view, start),
-            new CreateInterval(view, start),
+            new CreateCumulative(view, start, limiter),
+            new CreateInterval(view, start, limiter),
             Functions.<MutableViewData>throwAssertionError());
   }
 
@@ -92,6 +116,13 @@ abstract class MutableViewData {
   @javax.annotation.Nullable
   abstract Metric toMetric(Timestamp now, State state);
 
+  /**
+   * Returns a {@link Metric} of the stats recorded since the previous call, and resets the stats.
+   * Gauges are not reset. See {@link AggregationTemporality#DELTA}.
+   */
+  @javax.annotation.Nullable
+  abstract Metric toDeltaMetric(Timestamp now, State state);
+
   /** Record stats with the given tags. */
   abstract void record(
       TagContext context,
@@ -99,9 +130,51 @@ abstract class MutableViewData {
       Timestamp timestamp,
       Map<String, AttachmentValue> attachments);
 
+  /**
+   * Returns the tag values of the given context for the columns of this view that a previous
+   * recording cached on the context, or {@code null}.
+   */
+  @javax.annotation.Nullable
+  @SuppressWarnings("unchecked")
+  final List</*@Nullable*/ TagValue> getCachedTagValues(TagContext context) {
+    if (!(context instanceof TagMapImpl)) {
+      return null;
+    }
+    return (List</*@Nullable*/ TagValue>)
+        ((TagMapImpl) context).getCachedValue(view.getColumns());
+  }
+
+  /** Returns the tag values of the given context for the columns of this view. */
+  final List</*@Nullable*/ TagValue> getTagValues(TagContext context) {
+    return RecordUtils.getTagValues(getTagMap(context), view.getColumns());
+  }
+
+  /**
+   * Caches on the context the tag values of the series it was recorded into. They are the key of
+   * the series, so recording the same context again (e.g. one measurement per measure of a
+   * request) neither resolves the columns again nor compares the tag values to find the series.
+   * Views with the same columns share the cached tag values.
+   */
+  final void cacheTagValues(TagContext context, List</*@Nullable*/ TagValue> tagValues) {
+    if (context instanceof TagMapImpl) {
+      ((TagMapImpl) context).putCachedValue(view.getColumns(), tagValues);
+    }
+  }
+
+  // Returns the tag values of the series that holds the measurements of the series over the limit.
+  private static List</*@Nullable*/ TagValue> createOverflowTagValues(View view) {
+    TagValue[] overflowTagValues = new TagValue[view.getColumns().size()];
+    Arrays.fill(overflowTagValues, CardinalityLimits.OVERFLOW_TAG_VALUE);
+    return new TagValueList(overflowTagValues);
+  }
+
   /** Convert this {@link MutableViewData} to {@link ViewData}. */
   abstract ViewData toViewData(Timestamp now, State state);
 
+  // Returns the number of series kept by this view.
+  @VisibleForTesting
+  abstract int getNumSeries();
+
   // Clear recorded stats.
   abstract void clearStats();
 
@@ -109,17 +182,53 @@ abstract class MutableViewData {
   // bucket list (for InternalMutableViewData).
   abstract void resumeStatsCollection(Timestamp now);
 
+  /*
+   * Each series (tag value list) owns a StripedMutableAggregation, which takes care of its own
+   * thread safety. The series map is a ConcurrentHashMap, so recording into different series never
+   * contends, and recording threads of the same series are spread over the cells of the series.
+   * The series keeps its key, which is cached on the recorded contexts, so that equal tag values
+   * recorded by different contexts share one list.
+   *
+   * New series are only added while the CardinalityLimiter has room for them, otherwise their
+   * measurements go to the overflow series. Idle series are evicted when the view is read, if the
+   * CardinalityLimits have an idle timeout. A series is marked as removed before it leaves the map,
+   * and a recording that finds the mark looks the series up again, so no measurement is recorded
+   * into a series that is no longer reported.
+   *
+   * Once the view is read with toDeltaMetric(), a series is marked dirty and queued on its first
+   * recording after being reset, so that the following reads only visit the series recorded since
+   * the previous read instead of every series of the view. The first read visits every series.
+   */
   private static final class CumulativeMutableViewData extends MutableViewData {
 
-    private Timestamp start;
-    private final Map<List</*@Nullable*/ TagValue>, MutableAggregation> tagValueAggregationMap =
-        Maps.newHashMap();
+    private volatile Timestamp start;
+    // Start of the points of the next toDeltaMetric() call.
+    @GuardedBy("this")
+    private Timestamp deltaStart;
+    private final ConcurrentMap<List</*@Nullable*/ TagValue>, CumulativeSeries> seriesMap =
+        new ConcurrentHashMap<List</*@Nullable*/ TagValue>, CumulativeSeries>();
+    // Set by the first toDeltaMetric() call, after which recordings queue the dirty series.
+    private volatile boolean trackDirtySeries;
+    // Series recorded since they were last reset by toDeltaMetric(), possibly removed since.
+    private final Queue<CumulativeSeries> dirtySeries =
+        new ConcurrentLinkedQueue<CumulativeSeries>();
     // Cache a MetricDescriptor to avoid converting View to MetricDescriptor in the future.
     private final MetricDescriptor metricDescriptor;
 
-    private CumulativeMutableViewData(View view, Timestamp start) {
+    private final CardinalityLimiter limiter;
+    // Number of series in seriesMap, not counting the overflow series.
+    private final AtomicInteger numSeries = new AtomicInteger();
+    private final List</*@Nullable*/ TagValue> overflowTagValues;
+    // Zero if idle series are never evicted.
+    private final long seriesIdleTimeoutMillis;
+
+    private CumulativeMutableViewData(View view, Timestamp start, CardinalityLimiter limiter) {
       super(view);
       this.start = start;
+      this.deltaStart = start;
+      this.limiter = limiter;
+      this.overflowTagValues = createOverflowTagValues(view);
+      this.seriesIdleTimeoutMillis = limiter.getLimits().getSeriesIdleTimeout().toMillis();
       MetricDescriptor metricDescriptor = MetricUtils.viewToMetricDescriptor(view);
       if (metricDescriptor == null) {
         throw new AssertionError(
@@ -133,6 +242,7 @@ abstract class MutableViewData {
     @Override
     Metric toMetric(Timestamp now, State state) {
       handleTimeRewinds(now);
+      evictIdleSeries(now);
       if (state == State.DISABLED) {
         return null;
       }
@@ -140,38 +250,177 @@ abstract class MutableViewData {
       @javax.annotation.Nullable
       Timestamp startTime = type == Type.GAUGE_INT64 || type == Type.GAUGE_DOUBLE ? null : start;
       List<TimeSeries> timeSeriesList = new ArrayList<TimeSeries>();
-      for (Entry<List</*@Nullable*/ TagValue>, MutableAggregation> entry :
-          tagValueAggregationMap.entrySet()) {
-        List<LabelValue> labelValues = MetricUtils.tagValuesToLabelValues(entry.getKey());
-        Point point = entry.getValue().toPoint(now);
+      for (CumulativeSeries series : seriesMap.values()) {
+        List<LabelValue> labelValues = MetricUtils.tagValuesToLabelValues(series.tagValues);
+        Point point = series.aggregation.toPoint(now);
         timeSeriesList.add(TimeSeries.createWithOnePoint(labelValues, point, startTime));
       }
       return Metric.create(metricDescriptor, timeSeriesList);
     }
 
+    @javax.annotation.Nullable
+    @Override
+    synchronized Metric toDeltaMetric(Timestamp now, State state) {
+      Type type = metricDescriptor.getType();
+      if (type == Type.GAUGE_INT64 || type == Type.GAUGE_DOUBLE) {
+        return toMetric(now, state);
+      }
+      handleTimeRewinds(now);
+      evictIdleSeries(now);
+      if (state == State.DISABLED) {
+        return null;
+      }
+      Timestamp startTime = deltaStart.compareTo(now) <= 0 ? deltaStart : now;
+      deltaStart = now;
+      List<TimeSeries> timeSeriesList = new ArrayList<TimeSeries>();
+      if (trackDirtySeries) {
+        CumulativeSeries series;
+        while ((series = dirtySeries.poll()) != null) {
+          // Skip the series removed since they were recorded.
+          if (seriesMap.get(series.tagValues) == series) {
+            addDeltaTimeSeries(series, now, startTime, timeSeriesList);
+          }
+        }
+      } else {
+        // Set before visiting the series, so that no recording is missed by both this read and
+        // the dirty series of the next one.
+        trackDirtySeries = true;
+        for (CumulativeSeries series : seriesMap.values()) {
+          addDeltaTimeSeries(series, now, startTime, timeSeriesList);
+        }
+      }
+      return Metric.create(metricDescriptor, timeSeriesList);
+    }
+
+    // Resets the series, and adds its point if it was recorded since its previous reset. The
+    // series is marked clean before it is reset, so that a concurrent recording that misses the
+    // reset queues the series again.
+    private static void addDeltaTimeSeries(
+        CumulativeSeries series,
+        Timestamp now,
+        Timestamp startTime,
+        List<TimeSeries> timeSeriesList) {
+      series.dirty.set(false);
+      Point point = series.aggregation.toPointAndReset(now);
+      if (point != null) {
+        List<LabelValue> labelValues = MetricUtils.tagValuesToLabelValues(series.tagValues);
+        timeSeriesList.add(TimeSeries.createWithOnePoint(labelValues, point, startTime));
+      }
+    }
+
     @Override
     void record(
         TagContext context,
         double value,
         Timestamp timestamp,
         Map<String, AttachmentValue> attachments) {
+      List</*@Nullable*/ TagValue> cachedTagValues = getCachedTagValues(context);
       List</*@Nullable*/ TagValue> tagValues =
-          getTagValues(getTagMap(context), super.view.getColumns());
-      if (!tagValueAggregationMap.containsKey(tagValues)) {
-        tagValueAggregationMap.put(
-            tagValues,
-            createMutableAggregation(super.view.getAggregation(), super.getView().getMeasure()));
+          cachedTagValues != null ? cachedTagValues : getTagValues(context);
+      while (true) {
+        CumulativeSeries series = seriesMap.get(tagValues);
+        if (series == null) {
+          series = addSeries(tagValues, timestamp);
+        }
+        if (seriesIdleTimeoutMillis > 0) {
+          series.aggregation.setLastRecorded(timestamp);
+        }
+        if (series.aggregation.add(value, attachments, timestamp)) {
+          if (trackDirtySeries && !series.dirty.get() && series.dirty.compareAndSet(false, true)) {
+            dirtySeries.add(series);
+          }
+          if (cachedTagValues == null) {
+            cacheTagValues(
+                context, series.tagValues == overflowTagValues ? tagValues : series.tagValues);
+          }
+          return;
+        }
+        // The series was removed concurrently. Finish removing it, and record into the series
+        // that replaces it.
+        removeSeries(series);
+      }
+    }
+
+    // Adds a series for the given tag values, or returns the overflow series if there is no room
+    // for a new series.
+    private CumulativeSeries addSeries(
+        List</*@Nullable*/ TagValue> tagValues, Timestamp timestamp) {
+      if (tagValues.equals(overflowTagValues)) {
+        return getOrAddOverflowSeries(timestamp);
+      }
+      if (!limiter.tryAddSeries(numSeries)) {
+        CardinalityLimiter.recordOverflow();
+        return getOrAddOverflowSeries(timestamp);
+      }
+      CumulativeSeries newSeries = newSeries(tagValues, timestamp);
+      CumulativeSeries existing = seriesMap.putIfAbsent(tagValues, newSeries);
+      if (existing != null) {
+        // Another thread added the same series first.
+        limiter.removeSeries(numSeries);
+        return existing;
+      }
+      return newSeries;
+    }
+
+    private CumulativeSeries getOrAddOverflowSeries(Timestamp timestamp) {
+      CumulativeSeries overflow = seriesMap.get(overflowTagValues);
+      if (overflow == null) {
+        CumulativeSeries newSeries = newSeries(overflowTagValues, timestamp);
+        overflow = seriesMap.putIfAbsent(overflowTagValues, newSeries);
+        if (overflow == null) {
+          overflow = newSeries;
+        }
+      }
+      return overflow;
+    }
+
+    private CumulativeSeries newSeries(
+        List</*@Nullable*/ TagValue> tagValues, Timestamp timestamp) {
+      StripedMutableAggregation newAggregation =
+          StripedMutableAggregation.create(
+              super.view.getAggregation(), super.getView().getMeasure());
+      // Set before the series is visible, so that it is never evicted as idle before its first
+      // recording.
+      newAggregation.setLastRecorded(timestamp);
+      return new CumulativeSeries(tagValues, newAggregation);
+    }
+
+    // Removes a series that is marked as removed. Only the thread that removes it from the map
+    // releases its room in the limiter.
+    private void removeSeries(CumulativeSeries series) {
+      if (seriesMap.remove(series.tagValues, series) && series.tagValues != overflowTagValues) {
+        limiter.removeSeries(numSeries);
+      }
+    }
+
+    // Removes the series that were not recorded for longer than the idle timeout. The last
+    // recording time is only kept to the second, so a series is never evicted early.
+    private void evictIdleSeries(Timestamp now) {
+      if (seriesIdleTimeoutMillis <= 0) {
+        return;
+      }
+      long cutoffSeconds =
+          (now.getSeconds() * 1000 + now.getNanos() / 1000000 - seriesIdleTimeoutMillis) / 1000;
+      for (CumulativeSeries series : seriesMap.values()) {
+        if (series.aggregation.getLastRecordedSeconds() < cutoffSeconds
+            && series.aggregation.markRemovedIfRecordedBefore(cutoffSeconds)) {
+          removeSeries(series);
+        }
       }
-      tagValueAggregationMap.get(tagValues).add(value, attachments, timestamp);
     }
 
     @Override
     ViewData toViewData(Timestamp now, State state) {
       handleTimeRewinds(now);
+      evictIdleSeries(now);
       if (state == State.ENABLED) {
+        Map<List</*@Nullable*/ TagValue>, AggregationData> aggregationMap = Maps.newHashMap();
+        for (CumulativeSeries series : seriesMap.values()) {
+          aggregationMap.put(series.tagValues, series.aggregation.toAggregationData());
+        }
         return ViewData.create(
             super.view,
-            createAggregationMap(tagValueAggregationMap, super.view.getMeasure()),
+            aggregationMap,
             ViewData.AggregationWindowData.CumulativeData.create(start, now));
       } else {
         // If Stats state is DISABLED, return an empty ViewData.
@@ -186,27 +435,51 @@ abstract class MutableViewData {
      * This method attemps to migrate this view into a reasonable state in the event of time going
      * backwards.
      */
-    private void handleTimeRewinds(Timestamp now) {
+    private synchronized void handleTimeRewinds(Timestamp now) {
       if (now.compareTo(start) < 0) {
         // Time went backwards, physics is broken, forget what we know.
         clearStats();
         start = now;
+        deltaStart = now;
       }
     }
 
+    @Override
+    int getNumSeries() {
+      return seriesMap.size();
+    }
+
     @Override
     void clearStats() {
-      tagValueAggregationMap.clear();
+      for (CumulativeSeries series : seriesMap.values()) {
+        series.aggregation.markRemovedIfRecordedBefore(Long.MAX_VALUE);
+        removeSeries(series);
+      }
     }
 
     @Override
-    void resumeStatsCollection(Timestamp now) {
+    synchronized void resumeStatsCollection(Timestamp now) {
       start = now;
+      deltaStart = now;
+    }
+
+    // A series and its tag values, which are its key in seriesMap.
+    private static final class CumulativeSeries {
+      private final List</*@Nullable*/ TagValue> tagValues;
+      private final StripedMutableAggregation aggregation;
+      // Whether the series is in dirtySeries.
+      private final AtomicBoolean dirty = new AtomicBoolean();
+
+      private CumulativeSeries(
+          List</*@Nullable*/ TagValue> tagValues, StripedMutableAggregation aggregation) {
+        this.tagValues = tagValues;
+        this.aggregation = aggregation;
+      }
     }
   }
 
   /*
-   * For each IntervalView, we always keep a queue of N + 1 buckets (by default N is 4).
+   * For each IntervalView, we keep a sliding window of N + 1 buckets (by default N is 4).
    * Each bucket has a duration which is interval duration / N.
    * Ideally:
    * 1. the buckets should always be up-to-date,
@@ -218,45 +491,73 @@ abstract class MutableViewData {
    * When getView() is called, we will extract and combine the stats from the current and past
    * buckets (part of the stats from the oldest bucket could have expired).
    *
-   * However, in reality, we couldn't track the status of buckets all the time (keep monitoring and
-   * updating the bucket queue will be expensive). When we call record() or getView(), some or all
-   * of the buckets might be outdated, and we will need to "pad" new buckets to the queue and remove
-   * outdated ones. After refreshing buckets, the bucket queue will able to maintain the three
-   * invariants in the ideal situation.
+   * Buckets are numbered with an increasing sequence number, and each series keeps its stats in a
+   * ring of N + 1 slots indexed by bucket number modulo N + 1. Moving the window forward only
+   * advances the number of the current bucket: a slot holding a bucket that is no longer in the
+   * window is stale, and is treated as empty until the series records into it again. This way the
+   * window rotates in constant time no matter how many series the view has. Once every N + 1
+   * buckets, the series that have no stats left in the window are removed, so that a view that is
+   * rarely read only keeps the series of the last two windows.
    *
    * For example:
    * 1. We have an IntervalView which has a duration of 8 seconds, we register this view at 10s.
-   * 2. Initially there will be 5 buckets: [2.0, 4.0), [4.0, 6.0), ..., [10.0, 12.0).
-   * 3. If users don't call record() or getView(), bucket queue will remain as it is, and some
+   * 2. Initially the window covers 5 buckets: [2.0, 4.0), [4.0, 6.0), ..., [10.0, 12.0), and the
+   *    current bucket is [10.0, 12.0).
+   * 3. If users don't call record() or getView(), the window will remain as it is, and some
    *    buckets could expire.
-   * 4. Suppose record() is called at 15s, now we need to refresh the bucket queue. We need to add
-   *    two new buckets [12.0, 14.0) and [14.0, 16.0), and remove two expired buckets [2.0, 4.0)
-   *    and [4.0, 6.0)
-   * 5. Suppose record() is called again at 30s, all the current buckets should have expired. We add
-   *    5 new buckets [22.0, 24.0) ... [30.0, 32.0) and remove all the previous buckets.
-   * 6. Suppose users call getView() at 35s, again we need to add two new buckets and remove two
-   *    expired one, so that bucket queue is up-to-date. Now we combine stats from all buckets and
-   *    return the combined IntervalViewData.
+   * 4. Suppose record() is called at 15s, now we need to move the window. The current bucket
+   *    becomes [14.0, 16.0), and the buckets [2.0, 4.0) and [4.0, 6.0) expire.
+   * 5. Suppose record() is called again at 30s, all the buckets in the window should have expired.
+   *    The window is restarted with the current bucket [30.0, 32.0).
+   * 6. Suppose users call getView() at 35s, again we need to move the window by two buckets, so
+   *    that it is up-to-date. Now we combine stats from all buckets and return the combined
+   *    IntervalViewData.
+   *
+   * The window is guarded by the lock on the IntervalMutableViewData itself, so each interval
+   * view only contends with itself.
+   *
+   * New series are only added while the CardinalityLimiter has room for them, otherwise their
+   * measurements go to the overflow series, same as for cumulative views. The room of a series is
+   * released when it is removed from the window.
    */
   private static final class IntervalMutableViewData extends MutableViewData {
 
     // TODO(songya): allow customizable bucket size in the future.
     private static final int N = 4; // IntervalView has N + 1 buckets
 
-    private final ArrayDeque<IntervalBucket> buckets = new ArrayDeque<IntervalBucket>();
+    @GuardedBy("this")
+    private final Map<List</*@Nullable*/ TagValue>, IntervalSeries> series = Maps.newHashMap();
+
+    // Sequence number and start time of the current (latest) bucket.
+    @GuardedBy("this")
+    private long currentBucket;
+
+    @GuardedBy("this")
+    private Timestamp startOfCurrentBucket;
+
+    // The current bucket at the last sweep of the series without stats in the window.
+    @GuardedBy("this")
+    private long lastSweepBucket;
 
     private final Duration totalDuration; // Duration of the whole interval.
     private final Duration bucketDuration; // Duration of a single bucket (totalDuration / N)
 
-    private IntervalMutableViewData(View view, Timestamp start) {
+    private final CardinalityLimiter limiter;
+    // Number of series in series, not counting the overflow series.
+    private final AtomicInteger numSeries = new AtomicInteger();
+    private final List</*@Nullable*/ TagValue> overflowTagValues;
+
+    private IntervalMutableViewData(View view, Timestamp start, CardinalityLimiter limiter) {
       super(view);
+      this.limiter = limiter;
+      this.overflowTagValues = createOverflowTagValues(view);
       Duration totalDuration = ((View.AggregationWindow.Interval) view.getWindow()).getDuration();
       this.totalDuration = totalDuration;
       this.bucketDuration = Duration.fromMillis(totalDuration.toMillis() / N);
 
-      // When initializing. add N empty buckets prior to the start timestamp of this
-      // IntervalMutableViewData, so that the last bucket will be the current one in effect.
-      shiftBucketList(N + 1, start);
+      // When initializing, the N buckets prior to the start timestamp of this
+      // IntervalMutableViewData are empty, so that the current bucket starts at the start timestamp.
+      this.startOfCurrentBucket = getStartOfCurrentBucket(start);
     }
 
     @javax.annotation.Nullable
@@ -265,22 +566,39 @@ abstract class MutableViewData {
       return null;
     }
 
+    @javax.annotation.Nullable
     @Override
-    void record(
+    Metric toDeltaMetric(Timestamp now, State state) {
+      return null;
+    }
+
+    @Override
+    synchronized void record(
         TagContext context,
         double value,
         Timestamp timestamp,
         Map<String, AttachmentValue> attachments) {
+      List</*@Nullable*/ TagValue> cachedTagValues = getCachedTagValues(context);
       List</*@Nullable*/ TagValue> tagValues =
-          getTagValues(getTagMap(context), super.view.getColumns());
+          cachedTagValues != null ? cachedTagValues : getTagValues(context);
       refreshBucketList(timestamp);
-      // It is always the last bucket that does the recording.
-      CheckerFrameworkUtils.castNonNull(buckets.peekLast())
-          .record(tagValues, value, attachments, timestamp);
+      IntervalSeries intervalSeries = series.get(tagValues);
+      if (intervalSeries == null) {
+        intervalSeries = addSeries(tagValues);
+      }
+      if (cachedTagValues == null) {
+        cacheTagValues(
+            context,
+            intervalSeries.tagValues == overflowTagValues ? tagValues : intervalSeries.tagValues);
+      }
+      // It is always the current bucket that does the recording.
+      intervalSeries
+          .getOrCreateSlot(currentBucket, super.view.getAggregation(), super.view.getMeasure())
+          .add(value, attachments, timestamp);
     }
 
     @Override
-    ViewData toViewData(Timestamp now, State state) {
+    synchronized ViewData toViewData(Timestamp now, State state) {
       refreshBucketList(now);
       if (state == State.ENABLED) {
         return ViewData.create(
@@ -297,161 +615,142 @@ abstract class MutableViewData {
     }
 
     @Override
-    void clearStats() {
-      for (IntervalBucket bucket : buckets) {
-        bucket.clearStats();
+    synchronized int getNumSeries() {
+      return series.size();
+    }
+
+    // Adds a series for the given tag values, or returns the overflow series if there is no room
+    // for a new series.
+    @GuardedBy("this")
+    private IntervalSeries addSeries(List</*@Nullable*/ TagValue> tagValues) {
+      if (!tagValues.equals(overflowTagValues) && !limiter.tryAddSeries(numSeries)) {
+        CardinalityLimiter.recordOverflow();
+        tagValues = overflowTagValues;
+        IntervalSeries overflow = series.get(overflowTagValues);
+        if (overflow != null) {
+          return overflow;
+        }
       }
+      IntervalSeries intervalSeries = new IntervalSeries(tagValues);
+      series.put(tagValues, intervalSeries);
+      return intervalSeries;
+    }
+
+    // Releases the room of a series that was removed from the window.
+    @GuardedBy("this")
+    private void releaseSeries(List</*@Nullable*/ TagValue> tagValues) {
+      if (!tagValues.equals(overflowTagValues)) {
+        limiter.removeSeries(numSeries);
+      }
+    }
+
+    @GuardedBy("this")
+    private void removeAllSeries() {
+      for (List</*@Nullable*/ TagValue> tagValues : series.keySet()) {
+        releaseSeries(tagValues);
+      }
+      series.clear();
+    }
+
+    @Override
+    synchronized void clearStats() {
+      removeAllSeries();
     }
 
     @Override
-    void resumeStatsCollection(Timestamp now) {
+    synchronized void resumeStatsCollection(Timestamp now) {
       // Refresh bucket list to be ready for stats recording, so that if record() is called right
       // after stats state is turned back on, record() will be faster.
       refreshBucketList(now);
     }
 
-    // Add new buckets and remove expired buckets by comparing the current timestamp with
-    // timestamp of the last bucket.
+    // Move the window forward by comparing the current timestamp with the start of the current
+    // bucket.
+    @GuardedBy("this")
     private void refreshBucketList(Timestamp now) {
-      if (buckets.size() != N + 1) {
-        throw new AssertionError("Bucket list must have exactly " + (N + 1) + " buckets.");
-      }
-      Timestamp startOfLastBucket =
-          CheckerFrameworkUtils.castNonNull(buckets.peekLast()).getStart();
       // Time went backwards!  Physics has failed us!  drop everything we know and relearn.
       // Prioritize:  Report data we're confident is correct.
-      if (now.compareTo(startOfLastBucket) < 0) {
+      if (now.compareTo(startOfCurrentBucket) < 0) {
         // TODO: configurable time-skew handling with options:
         // - Drop events in the future, keep others within a duration.
         // - Drop all events on skew
         // - Guess at time-skew and "fix" events
         // - Reset our "start" time to now if necessary.
-        buckets.clear();
-        shiftBucketList(N + 1, now);
+        removeAllSeries();
+        startOfCurrentBucket = getStartOfCurrentBucket(now);
         return;
       }
-      long elapsedTimeMillis = now.subtractTimestamp(startOfLastBucket).toMillis();
+      long elapsedTimeMillis = now.subtractTimestamp(startOfCurrentBucket).toMillis();
       long numOfPadBuckets = elapsedTimeMillis / bucketDuration.toMillis();
 
-      shiftBucketList(numOfPadBuckets, now);
-    }
-
-    // Add specified number of new buckets, and remove expired buckets
-    private void shiftBucketList(long numOfPadBuckets, Timestamp now) {
-      Timestamp startOfNewBucket;
-
-      if (!buckets.isEmpty()) {
-        startOfNewBucket =
-            CheckerFrameworkUtils.castNonNull(buckets.peekLast())
-                .getStart()
-                .addDuration(bucketDuration);
+      if (numOfPadBuckets > N + 1) {
+        // All current buckets expired. The start time of the latest bucket will be current time.
+        currentBucket += N + 1;
+        startOfCurrentBucket = getStartOfCurrentBucket(now);
+      } else if (numOfPadBuckets > 0) {
+        currentBucket += numOfPadBuckets;
+        startOfCurrentBucket =
+            startOfCurrentBucket.addDuration(
+                Duration.fromMillis(numOfPadBuckets * bucketDuration.toMillis()));
       } else {
-        // Initialize bucket list. Should only enter this block once.
-        startOfNewBucket = subtractDuration(now, totalDuration);
+        return;
       }
-
-      if (numOfPadBuckets > N + 1) {
-        // All current buckets expired, need to add N + 1 new buckets. The start time of the latest
-        // bucket will be current time.
-        startOfNewBucket = subtractDuration(now, totalDuration);
-        numOfPadBuckets = N + 1;
+      if (currentBucket - lastSweepBucket >= N + 1) {
+        removeExpiredSeries();
+        lastSweepBucket = currentBucket;
       }
+    }
 
-      for (int i = 0; i < numOfPadBuckets; i++) {
-        buckets.add(
-            new IntervalBucket(
-                startOfNewBucket,
-                bucketDuration,
-                super.view.getAggregation(),
-                super.view.getMeasure()));
-        startOfNewBucket = startOfNewBucket.addDuration(bucketDuration);
+    // Removes the series whose newest bucket is no longer in the window.
+    @GuardedBy("this")
+    private void removeExpiredSeries() {
+      Iterator<Entry<List</*@Nullable*/ TagValue>, IntervalSeries>> iterator =
+          series.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Entry<List</*@Nullable*/ TagValue>, IntervalSeries> entry = iterator.next();
+        if (entry.getValue().newestBucket < currentBucket - N) {
+          iterator.remove();
+          releaseSeries(entry.getKey());
+        }
       }
+    }
 
-      // removed expired buckets
-      while (buckets.size() > N + 1) {
-        buckets.pollFirst();
-      }
+    // Returns the start of the current bucket after N + 1 consecutive buckets have been laid out
+    // starting from (now - totalDuration).
+    private Timestamp getStartOfCurrentBucket(Timestamp now) {
+      return subtractDuration(now, totalDuration)
+          .addDuration(Duration.fromMillis(N * bucketDuration.toMillis()));
     }
 
     // Combine stats within each bucket, aggregate stats by tag values, and return the mapping from
-    // tag values to aggregation data.
+    // tag values to aggregation data. Series without stats in any bucket of the window are
+    // removed.
+    @GuardedBy("this")
     private Map<List</*@Nullable*/ TagValue>, AggregationData> combineBucketsAndGetAggregationMap(
         Timestamp now) {
-      // Need to maintain the order of inserted MutableAggregations (inserted based on time order).
-      Multimap<List</*@Nullable*/ TagValue>, MutableAggregation> multimap =
-          LinkedHashMultimap.create();
-
-      ArrayDeque<IntervalBucket> shallowCopy = new ArrayDeque<IntervalBucket>(buckets);
-
-      Aggregation aggregation = super.view.getAggregation();
-      Measure measure = super.view.getMeasure();
-      putBucketsIntoMultiMap(shallowCopy, multimap, aggregation, measure, now);
-      Map<List</*@Nullable*/ TagValue>, MutableAggregation> singleMap =
-          aggregateOnEachTagValueList(multimap, aggregation, measure);
-      return createAggregationMap(singleMap, super.getView().getMeasure());
-    }
-
-    // Put stats within each bucket to a multimap. Each tag value list (map key) could have multiple
-    // mutable aggregations (map value) from different buckets.
-    private static void putBucketsIntoMultiMap(
-        ArrayDeque<IntervalBucket> buckets,
-        Multimap<List</*@Nullable*/ TagValue>, MutableAggregation> multimap,
-        Aggregation aggregation,
-        Measure measure,
-        Timestamp now) {
-      // Put fractional stats of the head (oldest) bucket.
-      IntervalBucket head = CheckerFrameworkUtils.castNonNull(buckets.peekFirst());
-      IntervalBucket tail = CheckerFrameworkUtils.castNonNull(buckets.peekLast());
-      double fractionTail = tail.getFraction(now);
+      Duration elapsedTime = now.subtractTimestamp(startOfCurrentBucket);
+      double fractionTail = ((double) elapsedTime.toMillis()) / bucketDuration.toMillis();
       // TODO(songya): decide what to do when time goes backwards
       checkArgument(
           0.0 <= fractionTail && fractionTail <= 1.0,
           "Fraction " + fractionTail + " should be within [0.0, 1.0].");
       double fractionHead = 1.0 - fractionTail;
-      putFractionalMutableAggregationsToMultiMap(
-          head.getTagValueAggregationMap(), multimap, aggregation, measure, fractionHead);
-
-      // Put whole data of other buckets.
-      boolean shouldSkipFirst = true;
-      for (IntervalBucket bucket : buckets) {
-        if (shouldSkipFirst) {
-          shouldSkipFirst = false;
-          continue; // skip the first bucket
-        }
-        for (Entry<List</*@Nullable*/ TagValue>, MutableAggregation> entry :
-            bucket.getTagValueAggregationMap().entrySet()) {
-          multimap.put(entry.getKey(), entry.getValue());
-        }
-      }
-    }
 
-    // Put stats within one bucket into multimap, multiplied by a given fraction.
-    private static <T> void putFractionalMutableAggregationsToMultiMap(
-        Map<T, MutableAggregation> mutableAggrMap,
-        Multimap<T, MutableAggregation> multimap,
-        Aggregation aggregation,
-        Measure measure,
-        double fraction) {
-      for (Entry<T, MutableAggregation> entry : mutableAggrMap.entrySet()) {
-        // Initially empty MutableAggregations.
-        MutableAggregation fractionalMutableAgg = createMutableAggregation(aggregation, measure);
-        fractionalMutableAgg.combine(entry.getValue(), fraction);
-        multimap.put(entry.getKey(), fractionalMutableAgg);
-      }
-    }
-
-    // For each tag value list (key of AggregationMap), combine mutable aggregations into one
-    // mutable aggregation, thus convert the multimap into a single map.
-    private static <T> Map<T, MutableAggregation> aggregateOnEachTagValueList(
-        Multimap<T, MutableAggregation> multimap, Aggregation aggregation, Measure measure) {
-      Map<T, MutableAggregation> map = Maps.newHashMap();
-      for (T tagValues : multimap.keySet()) {
-        // Initially empty MutableAggregations.
-        MutableAggregation combinedAggregation = createMutableAggregation(aggregation, measure);
-        for (MutableAggregation mutableAggregation : multimap.get(tagValues)) {
-          combinedAggregation.combine(mutableAggregation, 1.0);
+      Aggregation aggregation = super.view.getAggregation();
+      Measure measure = super.view.getMeasure();
+      Map<List</*@Nullable*/ TagValue>, AggregationData> map = Maps.newHashMap();
+      Iterator<Entry<List</*@Nullable*/ TagValue>, IntervalSeries>> iterator =
+          series.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Entry<List</*@Nullable*/ TagValue>, IntervalSeries> entry = iterator.next();
+        MutableAggregation combined =
+            entry.getValue().combine(currentBucket, fractionHead, aggregation, measure);
+        if (combined == null) {
+          iterator.remove();
+          releaseSeries(entry.getKey());
+        } else {
+          map.put(entry.getKey(), combined.toAggregationData());
         }
-        map.put(tagValues, combinedAggregation);
       }
       return map;
     }
@@ -460,21 +759,86 @@ abstract class MutableViewData {
     private static Timestamp subtractDuration(Timestamp timestamp, Duration duration) {
       return timestamp.addDuration(Duration.create(-duration.getSeconds(), -duration.getNanos()));
     }
+
+    // The stats of one series in each bucket of the window. Bucket b is kept in slot b % (N + 1),
+    // and a slot only counts while it still holds a bucket of the window.
+    private static final class IntervalSeries {
+      // The key of the series in the map.
+      private final List</*@Nullable*/ TagValue> tagValues;
+      private final /*@Nullable*/ MutableAggregation[] slots = new MutableAggregation[N + 1];
+      private final long[] slotBuckets = new long[N + 1];
+      // The newest bucket the series recorded into.
+      private long newestBucket;
+
+      private IntervalSeries(List</*@Nullable*/ TagValue> tagValues) {
+        this.tagValues = tagValues;
+      }
+
+      private MutableAggregation getOrCreateSlot(
+          long bucket, Aggregation aggregation, Measure measure) {
+        int index = (int) (bucket % (N + 1));
+        MutableAggregation slot = slots[index];
+        if (slot == null || slotBuckets[index] != bucket) {
+          slot = createMutableAggregation(aggregation, measure);
+          slots[index] = slot;
+          slotBuckets[index] = bucket;
+          newestBucket = Math.max(newestBucket, bucket);
+        }
+        return slot;
+      }
+
+      @javax.annotation.Nullable
+      private MutableAggregation getSlot(long bucket) {
+        if (bucket < 0) {
+          return null;
+        }
+        int index = (int) (bucket % (N + 1));
+        return slotBuckets[index] == bucket ? slots[index] : null;
+      }
+
+      // Combines the fractional stats of the head (oldest) bucket with the whole stats of the other
+      // buckets, in time order. Returns null if the series has no stats in the window.
+      @javax.annotation.Nullable
+      private MutableAggregation combine(
+          long currentBucket, double fractionHead, Aggregation aggregation, Measure measure) {
+        MutableAggregation combined = null;
+        for (long bucket = currentBucket - N; bucket <= currentBucket; bucket++) {
+          MutableAggregation slot = getSlot(bucket);
+          if (slot != null) {
+            if (combined == null) {
+              // Initially empty MutableAggregation.
+              combined = createMutableAggregation(aggregation, measure);
+            }
+            if (bucket == currentBucket - N) {
+              // Scale the head bucket into an empty MutableAggregation first, so that combining
+              // it behaves the same as combining a fractional copy of a whole bucket.
+              MutableAggregation fractional = createMutableAggregation(aggregation, measure);
+              fractional.combine(slot, fractionHead);
+              slot = fractional;
+            }
+            combined.combine(slot, 1.0);
+          }
+        }
+        return combined;
+      }
+    }
   }
 
   private static final class CreateCumulative
       implements Function<View.AggregationWindow.Cumulative, MutableViewData> {
     @Override
     public MutableViewData apply(View.AggregationWindow.Cumulative arg) {
-      return new CumulativeMutableViewData(view, start);
+      return new CumulativeMutableViewData(view, start, limiter);
     }
 
     private final View view;
     private final Timestamp start;
+    private final CardinalityLimiter limiter;
 
-    private CreateCumulative(View view, Timestamp start) {
+    private CreateCumulative(View view, Timestamp start, CardinalityLimiter limiter) {
       this.view = view;
       this.start = start;
+      this.limiter = limiter;
     }
   }
 
@@ -482,15 +846,17 @@ abstract class MutableViewData {
       implements Function<View.AggregationWindow.Interval, MutableViewData> {
     @Override
     public MutableViewData apply(View.AggregationWindow.Interval arg) {
-      return new IntervalMutableViewData(view, start);
+      return new IntervalMutableViewData(view, start, limiter);
     }
 
     private final View view;
     private final Timestamp start;
+    private final CardinalityLimiter limiter;
 
-    private CreateInterval(View view, Timestamp start) {
+    private CreateInterval(View view, Timestamp start, CardinalityLimiter limiter) {
       this.view = view;
       this.start = start;
+      this.limiter = limiter;
     }
   }
 }
@@ -23,6 +23,7 @@ import io.opencensus.common.Function;
 import io.opencensus.common.Functions;
 import io.opencensus.implcore.stats.MutableAggregation.MutableCount;
 import io.opencensus.implcore.stats.MutableAggregation.MutableDistribution;
+import io.opencensus.implcore.stats.MutableAggregation.MutableExponentialDistribution;
 import io.opencensus.implcore.stats.MutableAggregation.MutableLastValueDouble;
 import io.opencensus.implcore.stats.MutableAggregation.MutableLastValueLong;
 import io.opencensus.implcore.stats.MutableAggregation.MutableMean;
@@ -35,7 +36,6 @@ import io.opencensus.stats.Aggregation.Count;
 import io.opencensus.stats.Aggregation.Distribution;
 import io.opencensus.stats.Aggregation.LastValue;
 import io.opencensus.stats.Aggregation.Sum;
-import io.opencensus.stats.AggregationData;
 import io.opencensus.stats.Measure;
 import io.opencensus.stats.Measure.MeasureDouble;
 import io.opencensus.stats.Measure.MeasureLong;
@@ -47,11 +47,9 @@ import io.opencensus.tags.Tag;
 import io.opencensus.tags.TagContext;
 import io.opencensus.tags.TagKey;
 import io.opencensus.tags.TagValue;
-import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 /*>>>
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -91,7 +89,7 @@ final class RecordUtils {
   @VisibleForTesting
   static List</*@Nullable*/ TagValue> getTagValues(
       Map<? extends TagKey, TagValueWithMetadata> tags, List<? extends TagKey> columns) {
-    List</*@Nullable*/ TagValue> tagValues = new ArrayList</*@Nullable*/ TagValue>(columns.size());
+    /*@Nullable*/ TagValue[] tagValues = new TagValue[columns.size()];
     // Record all the measures in a "Greedy" way.
     // Every view aggregates every measure. This is similar to doing a GROUPBY view’s keys.
     for (int i = 0; i < columns.size(); ++i) {
@@ -102,12 +100,12 @@ final class RecordUtils {
         if (newKeys != null) {
           tagValue = getTagValueForDeprecatedRpcTag(tags, newKeys);
         }
-        tagValues.add(tagValue);
+        tagValues[i] = tagValue;
       } else {
-        tagValues.add(tags.get(tagKey).getTagValue());
+        tagValues[i] = tags.get(tagKey).getTagValue();
       }
     }
-    return tagValues;
+    return new TagValueList(tagValues);
   }
 
   // TODO(songy23): remove the mapping once we completely remove the deprecated RPC constants.
@@ -156,17 +154,6 @@ final class RecordUtils {
         AggregationDefaultFunction.INSTANCE);
   }
 
-  // Covert a mapping from TagValues to MutableAggregation, to a mapping from TagValues to
-  // AggregationData.
-  static <T> Map<T, AggregationData> createAggregationMap(
-      Map<T, MutableAggregation> tagValueAggregationMap, Measure measure) {
-    Map<T, AggregationData> map = Maps.newHashMap();
-    for (Entry<T, MutableAggregation> entry : tagValueAggregationMap.entrySet()) {
-      map.put(entry.getKey(), entry.getValue().toAggregationData());
-    }
-    return map;
-  }
-
   static double getDoubleValueFromMeasurement(Measurement measurement) {
     return measurement.match(
         GET_VALUE_FROM_MEASUREMENT_DOUBLE,
@@ -232,6 +219,9 @@ final class RecordUtils {
       if (arg instanceof Aggregation.Mean) {
         return MutableMean.create();
       }
+      if (arg instanceof Aggregation.ExponentialDistribution) {
+        return MutableExponentialDistribution.create((Aggregation.ExponentialDistribution) arg);
+      }
       throw new IllegalArgumentException("Unknown Aggregation.");
     }
 
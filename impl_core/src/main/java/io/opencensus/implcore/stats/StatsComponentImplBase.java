@@ -43,13 +43,31 @@ public class StatsComponentImplBase extends StatsComponent {
    * @param clock the clock to use when recording stats.
    */
   public StatsComponentImplBase(EventQueue queue, Clock clock) {
-    StatsManager statsManager = new StatsManager(queue, clock, currentState);
+    this(queue, clock, StatsComponentOptions.DEFAULT);
+  }
+
+  /**
+   * Creates a new {@code StatsComponentImplBase}.
+   *
+   * @param queue the queue implementation.
+   * @param clock the clock to use when recording stats.
+   * @param options the options of the component.
+   */
+  public StatsComponentImplBase(EventQueue queue, Clock clock, StatsComponentOptions options) {
+    StatsManager statsManager =
+        new StatsManager(
+            queue,
+            clock,
+            currentState,
+            options.getRecordSynchronously(),
+            options.getCardinalityLimits());
     this.viewManager = new ViewManagerImpl(statsManager);
     this.statsRecorder = new StatsRecorderImpl(statsManager);
 
     // Create a new MetricProducerImpl and register it to MetricProducerManager when
     // StatsComponentImplBase is initialized.
-    MetricProducer metricProducer = new MetricProducerImpl(statsManager);
+    MetricProducer metricProducer =
+        new MetricProducerImpl(statsManager, options.getAggregationTemporality());
     Metrics.getExportComponent().getMetricProducerManager().add(metricProducer);
   }
 
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.opencensus.implcore.stats;
+
+import com.google.auto.value.AutoValue;
+import javax.annotation.concurrent.Immutable;
+
+/** Options of a {@link StatsComponentImplBase}. */
+@AutoValue
+@Immutable
+public abstract class StatsComponentOptions {
+
+  /** The default {@code StatsComponentOptions}. */
+  public static final StatsComponentOptions DEFAULT = builder().build();
+
+  StatsComponentOptions() {}
+
+  /**
+   * Returns whether stats are recorded directly on the thread that calls {@code
+   * MeasureMap.record}, instead of being handed over to the event queue.
+   *
+   * @return whether stats are recorded on the calling thread.
+   */
+  public abstract boolean getRecordSynchronously();
+
+  /**
+   * Returns the limits on the number of series of the views.
+   *
+   * @return the limits on the number of series of the views.
+   */
+  public abstract CardinalityLimits getCardinalityLimits();
+
+  /**
+   * Returns how the {@code MetricProducer} reports the points of cumulative views.
+   *
+   * @return how the {@code MetricProducer} reports the points of cumulative views.
+   */
+  public abstract AggregationTemporality getAggregationTemporality();
+
+  /**
+   * Returns a new {@link Builder} with the default options: stats are recorded through the event
+   * queue, the number of series is unlimited and cumulative views report cumulative points.
+   *
+   * @return a new {@code Builder}.
+   */
+  public static Builder builder() {
+    return new AutoValue_StatsComponentOptions.Builder()
+        .setRecordSynchronously(false)
+        .setCardinalityLimits(CardinalityLimits.UNLIMITED)
+        .setAggregationTemporality(AggregationTemporality.CUMULATIVE);
+  }
+
+  /**
+   * Returns a {@link Builder} initialized to the same values as this {@code
+   * StatsComponentOptions}.
+   *
+   * @return a {@code Builder} initialized to the same values as this {@code
+   *     StatsComponentOptions}.
+   */
+  public abstract Builder toBuilder();
+
+  /** A {@code Builder} class for {@link StatsComponentOptions}. */
+  @AutoValue.Builder
+  public abstract static class Builder {
+
+    Builder() {}
+
+    /**
+     * Sets whether stats are recorded on the calling thread instead of the event queue.
+     *
+     * @param recordSynchronously whether stats are recorded on the calling thread.
+     * @return this.
+     */
+    public abstract Builder setRecordSynchronously(boolean recordSynchronously);
+
+    /**
+     * Sets the limits on the number of series of the views.
+     *
+     * @param cardinalityLimits the limits on the number of series of the views.
+     * @return this.
+     */
+    public abstract Builder setCardinalityLimits(CardinalityLimits cardinalityLimits);
+
+    /**
+     * Sets how the {@code MetricProducer} reports the points of cumulative views.
+     *
+     * @param aggregationTemporality how the {@code MetricProducer} reports cumulative views.
+     * @return this.
+     */
+    public abstract Builder setAggregationTemporality(
+        AggregationTemporality aggregationTemporality);
+
+    /**
+     * Builds and returns a {@code StatsComponentOptions} with the desired values.
+     *
+     * @return a {@code StatsComponentOptions} with the desired values.
+     */
+    public abstract StatsComponentOptions build();
+  }
+}
@@ -39,15 +39,34 @@ final class StatsManager {
   private final Clock clock;
 
   private final CurrentState state;
-  private final MeasureToViewMap measureToViewMap = new MeasureToViewMap();
+  private final MeasureToViewMap measureToViewMap;
+
+  // If true, measurements are recorded on the calling thread instead of going through the queue.
+  private final boolean recordSynchronously;
 
   StatsManager(EventQueue queue, Clock clock, CurrentState state) {
+    this(queue, clock, state, false);
+  }
+
+  StatsManager(EventQueue queue, Clock clock, CurrentState state, boolean recordSynchronously) {
+    this(queue, clock, state, recordSynchronously, CardinalityLimits.UNLIMITED);
+  }
+
+  StatsManager(
+      EventQueue queue,
+      Clock clock,
+      CurrentState state,
+      boolean recordSynchronously,
+      CardinalityLimits cardinalityLimits) {
     checkNotNull(queue, "EventQueue");
     checkNotNull(clock, "Clock");
     checkNotNull(state, "state");
+    checkNotNull(cardinalityLimits, "cardinalityLimits");
     this.queue = queue;
     this.clock = clock;
     this.state = state;
+    this.recordSynchronously = recordSynchronously;
+    this.measureToViewMap = new MeasureToViewMap(cardinalityLimits);
   }
 
   void registerView(View view) {
@@ -67,7 +86,13 @@ final class StatsManager {
     // TODO(songya): consider exposing No-op MeasureMap and use it when stats state is DISABLED, so
     // that we don't need to create actual MeasureMapImpl.
     if (state.getInternal() == State.ENABLED) {
-      queue.enqueue(new StatsEvent(this, tags, measurementValues));
+      if (recordSynchronously) {
+        // MeasureToViewMap.record is thread-safe, so there is no need to hand the measurements
+        // over to the queue thread.
+        measureToViewMap.record(tags, measurementValues, clock.now());
+      } else {
+        queue.enqueue(new StatsEvent(this, tags, measurementValues));
+      }
     }
   }
 
@@ -75,6 +100,10 @@ final class StatsManager {
     return measureToViewMap.getMetrics(clock, state.getInternal());
   }
 
+  Collection<Metric> getDeltaMetrics() {
+    return measureToViewMap.getDeltaMetrics(clock, state.getInternal());
+  }
+
   void clearStats() {
     measureToViewMap.clearStats();
   }
@@ -84,7 +113,7 @@ final class StatsManager {
   }
 
   // An EventQueue entry that records the stats from one call to StatsManager.record(...).
-  private static final class StatsEvent implements EventQueue.Entry {
+  private static final class StatsEvent implements EventQueue.PartitionedEntry {
     private final TagContext tags;
     private final MeasureMapInternal stats;
     private final StatsManager statsManager;
@@ -100,5 +129,18 @@ final class StatsManager {
       // Add Timestamp to value after it went through the DisruptorQueue.
       statsManager.measureToViewMap.record(tags, stats, statsManager.clock.now());
     }
+
+    // Keeps the MeasureMaps with the same first measure in order. A measure that is not always the
+    // first one of its MeasureMaps can be processed out of order when the queue has several
+    // partitions, so its LastValue views may report an older value than the latest one recorded.
+    @Override
+    public int getPartitionKey() {
+      return stats.getFirstMeasureName().hashCode();
+    }
+
+    @Override
+    public boolean isDroppable() {
+      return true;
+    }
   }
 }
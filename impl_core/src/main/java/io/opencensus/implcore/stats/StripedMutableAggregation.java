@@ -0,0 +1,277 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.math.IntMath;
+import io.opencensus.common.Timestamp;
+import io.opencensus.metrics.data.AttachmentValue;
+import io.opencensus.metrics.export.Point;
+import io.opencensus.stats.Aggregation;
+import io.opencensus.stats.AggregationData;
+import io.opencensus.stats.Measure;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A thread-safe holder for the {@link MutableAggregation} of a single series, modelled after {@code
+ * java.util.concurrent.atomic.LongAdder}.
+ *
+ * <p>Recordings go to one of several cells, each guarded by its own lock, and reads merge all the
+ * cells. The cell table starts with a single cell and only grows when recording threads contend on
+ * a cell, so a series that is only recorded from one thread costs the same as a single locked
+ * {@code MutableAggregation}.
+ *
+ * <p>Aggregations that cannot be merged (last value) always use a single cell.
+ *
+ * <p>A series that is removed from its view is marked as removed while holding the locks of all its
+ * cells, so a recording either completes before the removal or sees the mark and is not recorded.
+ */
+@ThreadSafe
+final class StripedMutableAggregation {
+
+  // The cell table never grows beyond the number of CPUs, same as LongAdder.
+  private static final int MAX_CELLS =
+      IntMath.ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors());
+
+  private final Aggregation aggregation;
+  private final Measure measure;
+  private final int maxCells;
+
+  // Seconds of the timestamp of the latest recording. Only maintained by views that evict idle
+  // series, and only written when the second changes, so recording threads rarely share a write.
+  private volatile long lastRecordedSeconds;
+
+  // The length is always a power of two. Only replaced while holding the lock on this object, and
+  // existing cells are carried over, so a recording in progress is never lost.
+  private volatile Cell[] cells;
+
+  // Only set while holding the lock on this object and the locks of all the cells.
+  private volatile boolean removed;
+
+  private StripedMutableAggregation(Aggregation aggregation, Measure measure, int maxCells) {
+    this.aggregation = aggregation;
+    this.measure = measure;
+    this.maxCells = maxCells;
+    this.cells = new Cell[] {new Cell(RecordUtils.createMutableAggregation(aggregation, measure))};
+  }
+
+  /**
+   * Constructs a new, empty {@code StripedMutableAggregation}.
+   *
+   * @param aggregation the {@code Aggregation} of the view.
+   * @param measure the {@code Measure} of the view.
+   * @return an empty {@code StripedMutableAggregation}.
+   */
+  static StripedMutableAggregation create(Aggregation aggregation, Measure measure) {
+    checkNotNull(aggregation, "aggregation");
+    checkNotNull(measure, "measure");
+    return new StripedMutableAggregation(
+        aggregation, measure, aggregation instanceof Aggregation.LastValue ? 1 : MAX_CELLS);
+  }
+
+  /**
+   * Put a new value into one of the cells of this {@code StripedMutableAggregation}.
+   *
+   * @param value new value to be added to population
+   * @param attachments the contextual information on an {@code Exemplar}
+   * @param timestamp the timestamp when the value is recorded
+   * @return {@code false} if the series was removed, in which case the value is not recorded.
+   */
+  boolean add(double value, Map<String, AttachmentValue> attachments, Timestamp timestamp) {
+    Cell[] cells = this.cells;
+    Cell cell = cells[probe() & (cells.length - 1)];
+    if (!cell.lock.tryLock()) {
+      // Contention: spread the following recordings over more cells, but still record this value
+      // in the cell we already picked.
+      if (cells.length < maxCells) {
+        expand(cells);
+      }
+      cell.lock.lock();
+    }
+    try {
+      if (removed) {
+        return false;
+      }
+      cell.aggregation.add(value, attachments, timestamp);
+      cell.recorded = true;
+      return true;
+    } finally {
+      cell.lock.unlock();
+    }
+  }
+
+  /**
+   * Marks this series as removed if its latest recording is older than the given second. Once
+   * marked, {@link #add} no longer records into it.
+   *
+   * @param cutoffSeconds the series is only removed if it was last recorded before this second,
+   *     {@code Long.MAX_VALUE} to always remove it.
+   * @return whether the series is marked as removed.
+   */
+  synchronized boolean markRemovedIfRecordedBefore(long cutoffSeconds) {
+    if (removed) {
+      return true;
+    }
+    Cell[] cells = this.cells;
+    for (Cell cell : cells) {
+      cell.lock.lock();
+    }
+    try {
+      // Recordings set the last recorded time before they lock their cell, so the ones that
+      // completed before the cells were locked are seen here.
+      if (lastRecordedSeconds < cutoffSeconds) {
+        removed = true;
+      }
+      return removed;
+    } finally {
+      for (Cell cell : cells) {
+        cell.lock.unlock();
+      }
+    }
+  }
+
+  void setLastRecorded(Timestamp timestamp) {
+    long seconds = timestamp.getSeconds();
+    if (seconds != lastRecordedSeconds) {
+      lastRecordedSeconds = seconds;
+    }
+  }
+
+  long getLastRecordedSeconds() {
+    return lastRecordedSeconds;
+  }
+
+  AggregationData toAggregationData() {
+    Cell[] cells = this.cells;
+    if (cells.length == 1) {
+      Cell cell = cells[0];
+      cell.lock.lock();
+      try {
+        return cell.aggregation.toAggregationData();
+      } finally {
+        cell.lock.unlock();
+      }
+    }
+    return merge(cells).toAggregationData();
+  }
+
+  Point toPoint(Timestamp timestamp) {
+    Cell[] cells = this.cells;
+    if (cells.length == 1) {
+      Cell cell = cells[0];
+      cell.lock.lock();
+      try {
+        return cell.aggregation.toPoint(timestamp);
+      } finally {
+        cell.lock.unlock();
+      }
+    }
+    return merge(cells).toPoint(timestamp);
+  }
+
+  /**
+   * Returns a {@code Point} of the values recorded since the previous call, and resets the cells.
+   * Each cell is swapped for an empty one while holding its lock, so no recording is lost or
+   * reported twice.
+   *
+   * @param timestamp the timestamp of the {@code Point}.
+   * @return a {@code Point}, or {@code null} if nothing was recorded since the previous call.
+   */
+  @javax.annotation.Nullable
+  Point toPointAndReset(Timestamp timestamp) {
+    MutableAggregation merged = null;
+    for (Cell cell : this.cells) {
+      MutableAggregation taken;
+      cell.lock.lock();
+      try {
+        if (!cell.recorded) {
+          continue;
+        }
+        taken = cell.aggregation;
+        cell.aggregation = RecordUtils.createMutableAggregation(aggregation, measure);
+        cell.recorded = false;
+      } finally {
+        cell.lock.unlock();
+      }
+      // The taken aggregations are no longer visible to recording threads, so they can be merged
+      // into each other without locks.
+      if (merged == null) {
+        merged = taken;
+      } else {
+        merged.combine(taken, 1.0);
+      }
+    }
+    return merged == null ? null : merged.toPoint(timestamp);
+  }
+
+  @VisibleForTesting
+  int getNumberOfCells() {
+    return cells.length;
+  }
+
+  // Merges all cells into a new MutableAggregation. Each cell is locked only while it is merged.
+  private MutableAggregation merge(Cell[] cells) {
+    MutableAggregation merged = RecordUtils.createMutableAggregation(aggregation, measure);
+    for (Cell cell : cells) {
+      cell.lock.lock();
+      try {
+        merged.combine(cell.aggregation, 1.0);
+      } finally {
+        cell.lock.unlock();
+      }
+    }
+    return merged;
+  }
+
+  private synchronized void expand(Cell[] expected) {
+    if (cells != expected) {
+      // Already expanded by another thread.
+      return;
+    }
+    Cell[] newCells = new Cell[expected.length * 2];
+    System.arraycopy(expected, 0, newCells, 0, expected.length);
+    for (int i = expected.length; i < newCells.length; i++) {
+      newCells[i] = new Cell(RecordUtils.createMutableAggregation(aggregation, measure));
+    }
+    cells = newCells;
+  }
+
+  // Thread ids are assigned sequentially, so they spread well over a power of two table.
+  private static int probe() {
+    return (int) Thread.currentThread().getId();
+  }
+
+  private static final class Cell {
+    private final ReentrantLock lock = new ReentrantLock();
+
+    @GuardedBy("lock")
+    private MutableAggregation aggregation;
+
+    // Whether anything was recorded since the last reset.
+    @GuardedBy("lock")
+    private boolean recorded;
+
+    private Cell(MutableAggregation aggregation) {
+      this.aggregation = aggregation;
+    }
+  }
+}
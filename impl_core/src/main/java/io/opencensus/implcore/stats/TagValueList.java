@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import io.opencensus.tags.TagValue;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import javax.annotation.concurrent.Immutable;
+
+/*>>>
+import org.checkerframework.checker.nullness.qual.Nullable;
+*/
+
+/**
+ * An immutable list of {@link TagValue}s, used as the key that identifies one series of a view.
+ *
+ * <p>The hash code is computed once, when the list is created, so looking up a series only costs
+ * one array comparison. It is still a regular {@code List}, equal to any other {@code List} with
+ * the same elements, so it can be exposed as-is through {@code ViewData}.
+ */
+@Immutable
+final class TagValueList extends AbstractList</*@Nullable*/ TagValue> implements RandomAccess {
+
+  private final /*@Nullable*/ TagValue[] values;
+  private final int hashCode;
+
+  // The array is owned by the new TagValueList and must not be modified afterwards.
+  TagValueList(/*@Nullable*/ TagValue[] values) {
+    this.values = values;
+    // Same as the hash code specified by List.hashCode().
+    this.hashCode = Arrays.hashCode(values);
+  }
+
+  @Override
+  @javax.annotation.Nullable
+  public TagValue get(int index) {
+    return values[index];
+  }
+
+  @Override
+  public int size() {
+    return values.length;
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  @Override
+  public boolean equals(@javax.annotation.Nullable Object obj) {
+    if (obj == this) {
+      return true;
+    }
+    if (obj instanceof TagValueList) {
+      TagValueList that = (TagValueList) obj;
+      return hashCode == that.hashCode && Arrays.equals(values, that.values);
+    }
+    return super.equals(obj);
+  }
+}
@@ -27,10 +27,21 @@ import java.util.Map.Entry;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 
-/** Implementation of {@link TagContext}. */
+/**
+ * Implementation of {@link TagContext}.
+ *
+ * <p>The tags never change. A {@code TagMapImpl} can also cache a few values derived from its tags,
+ * e.g. the tag values of the columns of a view, so that recording the same context again does not
+ * derive them again.
+ */
 @Immutable
 public final class TagMapImpl extends TagContext {
 
+  // A context is usually recorded into the views of a few sets of columns.
+  private static final int MAX_CACHED_VALUES = 8;
+  // Initialized before EMPTY, which uses it.
+  private static final Object[] NO_CACHED_VALUES = new Object[0];
+
   /** Empty {@link TagMapImpl} with no tags. */
   public static final TagMapImpl EMPTY =
       new TagMapImpl(Collections.<TagKey, TagValueWithMetadata>emptyMap());
@@ -38,6 +49,10 @@ public final class TagMapImpl extends TagContext {
   // The types of the TagKey and value must match for each entry.
   private final Map<TagKey, TagValueWithMetadata> tags;
 
+  // Alternating keys and values, replaced as a whole when a value is added. Once full, no value is
+  // added, so that a context shared by many threads (e.g. EMPTY) is not written over and over.
+  private volatile Object[] cachedValues = NO_CACHED_VALUES;
+
   /**
    * Creates a new {@link TagMapImpl} with the given tags.
    *
@@ -56,6 +71,43 @@ public final class TagMapImpl extends TagContext {
     return tags;
   }
 
+  /**
+   * Returns the value derived from the tags that was cached for the given key.
+   *
+   * @param key the key of the value, compared with {@link Object#equals}.
+   * @return the cached value, or {@code null} if there is none.
+   */
+  @Nullable
+  public Object getCachedValue(Object key) {
+    Object[] values = cachedValues;
+    for (int i = 0; i < values.length; i += 2) {
+      if (values[i] == key || values[i].equals(key)) {
+        return values[i + 1];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Caches a value derived from the tags, unless a few values are already cached. The value must
+   * only depend on the tags and the key.
+   *
+   * @param key the key of the value.
+   * @param value the value.
+   */
+  public void putCachedValue(Object key, Object value) {
+    Object[] values = cachedValues;
+    if (values.length >= 2 * MAX_CACHED_VALUES) {
+      return;
+    }
+    // A concurrent put may be lost, which only costs deriving the value again.
+    Object[] newValues = new Object[values.length + 2];
+    System.arraycopy(values, 0, newValues, 0, values.length);
+    newValues[values.length] = key;
+    newValues[values.length + 1] = value;
+    cachedValues = newValues;
+  }
+
   @Override
   protected Iterator<Tag> getIterator() {
     return new TagIterator(tags);
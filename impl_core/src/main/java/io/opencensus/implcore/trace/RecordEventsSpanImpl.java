@@ -16,12 +16,13 @@
 
 package io.opencensus.implcore.trace;
 
+import static com.google.common.base.Preconditions.checkElementIndex;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.EvictingQueue;
 import io.opencensus.common.Clock;
 import io.opencensus.implcore.internal.TimestampConverter;
 import io.opencensus.implcore.trace.internal.ConcurrentIntrusiveList.Element;
@@ -37,12 +38,17 @@ import io.opencensus.trace.Tracer;
 import io.opencensus.trace.config.TraceParams;
 import io.opencensus.trace.export.SpanData;
 import io.opencensus.trace.export.SpanData.TimedEvent;
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
-import java.util.LinkedHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nullable;
@@ -58,6 +64,10 @@ public final class RecordEventsSpanImpl extends Span implements Element<RecordEv
   private static final EnumSet<Span.Options> RECORD_EVENTS_SPAN_OPTIONS =
       EnumSet.of(Span.Options.RECORD_EVENTS);
 
+  // Initial length of the arrays of attributes and events, which grow up to the limits of the
+  // TraceParams as needed.
+  private static final int INITIAL_EVENTS_LENGTH = 8;
+
   // The parent SpanId of this span. Null if this is a root span.
   @Nullable private final SpanId parentSpanId;
   // True if the parent is on a different process.
@@ -84,11 +94,11 @@ public final class RecordEventsSpanImpl extends Span implements Element<RecordEv
   // List of recorded annotations.
   @GuardedBy("this")
   @Nullable
-  private TraceEvents<EventWithNanoTime<Annotation>> annotations;
+  private TraceEvents<Annotation> annotations;
   // List of recorded network events.
   @GuardedBy("this")
   @Nullable
-  private TraceEvents<EventWithNanoTime<io.opencensus.trace.MessageEvent>> messageEvents;
+  private TraceEvents<io.opencensus.trace.MessageEvent> messageEvents;
   // List of recorded links to parent and child spans.
   @GuardedBy("this")
   @Nullable
@@ -245,16 +255,16 @@ public final class RecordEventsSpanImpl extends Span implements Element<RecordEv
       SpanData.Attributes attributesSpanData =
           attributes == null
               ? SpanData.Attributes.create(Collections.<String, AttributeValue>emptyMap(), 0)
-              : SpanData.Attributes.create(attributes, attributes.getNumberOfDroppedAttributes());
+              : SpanData.Attributes.create(
+                  attributes.asMap(), attributes.getNumberOfDroppedAttributes());
       SpanData.TimedEvents<Annotation> annotationsSpanData =
-          createTimedEvents(getInitializedAnnotations(), timestampConverter);
+          createTimedEvents(annotations, timestampConverter);
       SpanData.TimedEvents<io.opencensus.trace.MessageEvent> messageEventsSpanData =
-          createTimedEvents(getInitializedNetworkEvents(), timestampConverter);
+          createTimedEvents(messageEvents, timestampConverter);
       SpanData.Links linksSpanData =
           links == null
               ? SpanData.Links.create(Collections.<Link>emptyList(), 0)
-              : SpanData.Links.create(
-                  new ArrayList<Link>(links.events), links.getNumberOfDroppedEvents());
+              : SpanData.Links.create(links.asList(), links.getNumberOfDroppedEvents());
       return SpanData.create(
           getContext(),
           parentSpanId,
@@ -308,9 +318,7 @@ public final class RecordEventsSpanImpl extends Span implements Element<RecordEv
       }
       getInitializedAnnotations()
           .addEvent(
-              new EventWithNanoTime<Annotation>(
-                  clock.nowNanos(),
-                  Annotation.fromDescriptionAndAttributes(description, attributes)));
+              clock.nowNanos(), Annotation.fromDescriptionAndAttributes(description, attributes));
     }
   }
 
@@ -322,8 +330,7 @@ public final class RecordEventsSpanImpl extends Span implements Element<RecordEv
         logger.log(Level.FINE, "Calling addAnnotation() on an ended Span.");
         return;
       }
-      getInitializedAnnotations()
-          .addEvent(new EventWithNanoTime<Annotation>(clock.nowNanos(), annotation));
+      getInitializedAnnotations().addEvent(clock.nowNanos(), annotation);
     }
   }
 
@@ -336,9 +343,7 @@ public final class RecordEventsSpanImpl extends Span implements Element<RecordEv
         return;
       }
       getInitializedNetworkEvents()
-          .addEvent(
-              new EventWithNanoTime<io.opencensus.trace.MessageEvent>(
-                  clock.nowNanos(), checkNotNull(messageEvent, "networkEvent")));
+          .addEvent(clock.nowNanos(), checkNotNull(messageEvent, "networkEvent"));
     }
   }
 
@@ -403,21 +408,20 @@ public final class RecordEventsSpanImpl extends Span implements Element<RecordEv
   }
 
   @GuardedBy("this")
-  private TraceEvents<EventWithNanoTime<Annotation>> getInitializedAnnotations() {
+  private TraceEvents<Annotation> getInitializedAnnotations() {
     if (annotations == null) {
       annotations =
-          new TraceEvents<EventWithNanoTime<Annotation>>(traceParams.getMaxNumberOfAnnotations());
+          new TraceEvents<Annotation>(traceParams.getMaxNumberOfAnnotations(), /*timed=*/ true);
     }
     return annotations;
   }
 
   @GuardedBy("this")
-  private TraceEvents<EventWithNanoTime<io.opencensus.trace.MessageEvent>>
-      getInitializedNetworkEvents() {
+  private TraceEvents<io.opencensus.trace.MessageEvent> getInitializedNetworkEvents() {
     if (messageEvents == null) {
       messageEvents =
-          new TraceEvents<EventWithNanoTime<io.opencensus.trace.MessageEvent>>(
-              traceParams.getMaxNumberOfMessageEvents());
+          new TraceEvents<io.opencensus.trace.MessageEvent>(
+              traceParams.getMaxNumberOfMessageEvents(), /*timed=*/ true);
     }
     return messageEvents;
   }
@@ -425,7 +429,7 @@ public final class RecordEventsSpanImpl extends Span implements Element<RecordEv
   @GuardedBy("this")
   private TraceEvents<Link> getInitializedLinks() {
     if (links == null) {
-      links = new TraceEvents<Link>(traceParams.getMaxNumberOfLinks());
+      links = new TraceEvents<Link>(traceParams.getMaxNumberOfLinks(), /*timed=*/ false);
     }
     return links;
   }
@@ -435,16 +439,14 @@ public final class RecordEventsSpanImpl extends Span implements Element<RecordEv
     return status == null ? Status.OK : status;
   }
 
+  // SpanData copies the events, so they are converted directly from the TraceEvents arrays.
   private static <T> SpanData.TimedEvents<T> createTimedEvents(
-      TraceEvents<EventWithNanoTime<T>> events, TimestampConverter timestampConverter) {
+      @Nullable TraceEvents<T> events, TimestampConverter timestampConverter) {
     if (events == null) {
       return SpanData.TimedEvents.create(Collections.<TimedEvent<T>>emptyList(), 0);
     }
-    List<TimedEvent<T>> eventsList = new ArrayList<TimedEvent<T>>(events.events.size());
-    for (EventWithNanoTime<T> networkEvent : events.events) {
-      eventsList.add(networkEvent.toSpanDataTimedEvent(timestampConverter));
-    }
-    return SpanData.TimedEvents.create(eventsList, events.getNumberOfDroppedEvents());
+    return SpanData.TimedEvents.create(
+        events.asTimedEventList(timestampConverter), events.getNumberOfDroppedEvents());
   }
 
   @Override
@@ -485,21 +487,22 @@ public final class RecordEventsSpanImpl extends Span implements Element<RecordEv
     void onEnd(RecordEventsSpanImpl span);
   }
 
-  // A map implementation with a fixed capacity that drops events when the map gets full. Eviction
-  // is based on the access order.
-  private static final class AttributesWithCapacity extends LinkedHashMap<String, AttributeValue> {
+  // Attributes with a fixed capacity that drops the least recently put attribute when full, the
+  // same as an access ordered LinkedHashMap. Keys and values are kept in put order in parallel
+  // arrays that grow up to the capacity, so a put does not allocate once the arrays have grown.
+  // Spans have few attributes, so a linear search is cheaper than hashing.
+  private static final class AttributesWithCapacity {
     private final int capacity;
     private int totalRecordedAttributes = 0;
-    // Here because -Werror complains about this: [serial] serializable class AttributesWithCapacity
-    // has no definition of serialVersionUID. This class shouldn't be serialized.
-    private static final long serialVersionUID = 42L;
+    private String[] keys;
+    private AttributeValue[] values;
+    private int size = 0;
 
     private AttributesWithCapacity(int capacity) {
-      // Capacity of the map is capacity + 1 to avoid resizing because removeEldestEntry is invoked
-      // by put and putAll after inserting a new entry into the map. The loadFactor is set to 1
-      // to avoid resizing because. The accessOrder is set to true.
-      super(capacity + 1, 1, /*accessOrder=*/ true);
       this.capacity = capacity;
+      int initialLength = Math.min(capacity, INITIAL_EVENTS_LENGTH);
+      this.keys = new String[initialLength];
+      this.values = new AttributeValue[initialLength];
     }
 
     // Users must call this method instead of put to keep count of the total number of entries
@@ -509,55 +512,197 @@ public final class RecordEventsSpanImpl extends Span implements Element<RecordEv
       put(key, value);
     }
 
-    // Users must call this method instead of putAll to keep count of the total number of entries
+    // Users must call this method instead of put to keep count of the total number of entries
     // inserted.
     private void putAttributes(Map<String, AttributeValue> attributes) {
       totalRecordedAttributes += attributes.size();
-      putAll(attributes);
+      for (Map.Entry<String, AttributeValue> entry : attributes.entrySet()) {
+        put(entry.getKey(), entry.getValue());
+      }
     }
 
     private int getNumberOfDroppedAttributes() {
-      return totalRecordedAttributes - size();
+      return totalRecordedAttributes - size;
+    }
+
+    private void put(String key, AttributeValue value) {
+      int index = indexOf(key);
+      if (index >= 0) {
+        // An existing attribute becomes the most recently put one.
+        remove(index);
+      } else if (size == capacity) {
+        // Drop the least recently put attribute.
+        remove(0);
+      } else if (size == keys.length) {
+        int newLength = (int) Math.min((long) keys.length * 2, capacity);
+        keys = Arrays.copyOf(keys, newLength);
+        values = Arrays.copyOf(values, newLength);
+      }
+      keys[size] = key;
+      values[size] = value;
+      size++;
+    }
+
+    private int indexOf(String key) {
+      for (int i = 0; i < size; i++) {
+        if (Objects.equal(key, keys[i])) {
+          return i;
+        }
+      }
+      return -1;
     }
 
-    // It is called after each put or putAll call in order to determine if the eldest inserted
-    // entry should be removed or not.
-    @Override
-    protected boolean removeEldestEntry(Map.Entry<String, AttributeValue> eldest) {
-      return size() > this.capacity;
+    private void remove(int index) {
+      int numMoved = size - index - 1;
+      System.arraycopy(keys, index + 1, keys, index, numMoved);
+      System.arraycopy(values, index + 1, values, index, numMoved);
+      size--;
+      keys[size] = null;
+      values[size] = null;
+    }
+
+    // Returns a read-only view of the attributes, only valid until the next put.
+    private Map<String, AttributeValue> asMap() {
+      return new AbstractMap<String, AttributeValue>() {
+        @Override
+        public Set<Map.Entry<String, AttributeValue>> entrySet() {
+          return new AbstractSet<Map.Entry<String, AttributeValue>>() {
+            @Override
+            public int size() {
+              return size;
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, AttributeValue>> iterator() {
+              return new Iterator<Map.Entry<String, AttributeValue>>() {
+                private int next = 0;
+
+                @Override
+                public boolean hasNext() {
+                  return next < size;
+                }
+
+                @Override
+                public Map.Entry<String, AttributeValue> next() {
+                  if (next >= size) {
+                    throw new NoSuchElementException();
+                  }
+                  Map.Entry<String, AttributeValue> entry =
+                      new AbstractMap.SimpleImmutableEntry<String, AttributeValue>(
+                          keys[next], values[next]);
+                  next++;
+                  return entry;
+                }
+
+                @Override
+                public void remove() {
+                  throw new UnsupportedOperationException();
+                }
+              };
+            }
+          };
+        }
+      };
     }
   }
 
+  // Events with a fixed capacity that drops the oldest event when full. The events and, for timed
+  // events, their nano times are kept in parallel arrays that grow up to the capacity and are then
+  // used as a ring buffer, so adding an event does not allocate once the arrays have grown.
   private static final class TraceEvents<T> {
+    private final int capacity;
     private int totalRecordedEvents = 0;
-    private final EvictingQueue<T> events;
+    private Object[] events;
+    @Nullable private long[] nanoTimes;
+    // Index of the oldest event. Only moves once the arrays are full at the capacity.
+    private int head = 0;
+    private int size = 0;
+
+    TraceEvents(int maxNumEvents, boolean timed) {
+      this.capacity = maxNumEvents;
+      int initialLength = Math.min(maxNumEvents, INITIAL_EVENTS_LENGTH);
+      this.events = new Object[initialLength];
+      this.nanoTimes = timed ? new long[initialLength] : null;
+    }
 
     private int getNumberOfDroppedEvents() {
-      return totalRecordedEvents - events.size();
+      return totalRecordedEvents - size;
     }
 
-    TraceEvents(int maxNumEvents) {
-      events = EvictingQueue.create(maxNumEvents);
+    void addEvent(T event) {
+      addEvent(0, event);
     }
 
-    void addEvent(T event) {
+    void addEvent(long nanoTime, T event) {
       totalRecordedEvents++;
-      events.add(event);
+      int index;
+      if (size == capacity) {
+        // Overwrite the oldest event.
+        index = head;
+        head = (head + 1) % capacity;
+      } else {
+        if (size == events.length) {
+          // Not full yet, so the events are not wrapped around.
+          int newLength = (int) Math.min((long) events.length * 2, capacity);
+          events = Arrays.copyOf(events, newLength);
+          if (nanoTimes != null) {
+            nanoTimes = Arrays.copyOf(nanoTimes, newLength);
+          }
+        }
+        index = size;
+        size++;
+      }
+      events[index] = event;
+      if (nanoTimes != null) {
+        nanoTimes[index] = nanoTime;
+      }
     }
-  }
 
-  // Timed event that uses nanoTime to represent the Timestamp.
-  private static final class EventWithNanoTime<T> {
-    private final long nanoTime;
-    private final T event;
+    // Returns the array index of the i-th oldest event.
+    private int arrayIndex(int i) {
+      int index = head + i;
+      return index < events.length ? index : index - events.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T get(int i) {
+      return (T) events[arrayIndex(i)];
+    }
 
-    private EventWithNanoTime(long nanoTime, T event) {
-      this.nanoTime = nanoTime;
-      this.event = event;
+    // Returns a read-only view of the events from the oldest to the newest, only valid until the
+    // next event is added.
+    private List<T> asList() {
+      return new AbstractList<T>() {
+        @Override
+        public T get(int index) {
+          checkElementIndex(index, size);
+          return TraceEvents.this.get(index);
+        }
+
+        @Override
+        public int size() {
+          return size;
+        }
+      };
     }
 
-    private TimedEvent<T> toSpanDataTimedEvent(TimestampConverter timestampConverter) {
-      return TimedEvent.create(timestampConverter.convertNanoTime(nanoTime), event);
+    // Same as asList(), but converts the timed events to TimedEvents when they are read.
+    private List<TimedEvent<T>> asTimedEventList(final TimestampConverter timestampConverter) {
+      final long[] nanoTimes = checkNotNull(this.nanoTimes, "nanoTimes");
+      return new AbstractList<TimedEvent<T>>() {
+        @Override
+        public TimedEvent<T> get(int index) {
+          checkElementIndex(index, size);
+          return TimedEvent.create(
+              timestampConverter.convertNanoTime(nanoTimes[arrayIndex(index)]),
+              TraceEvents.this.get(index));
+        }
+
+        @Override
+        public int size() {
+          return size;
+        }
+      };
     }
   }
 
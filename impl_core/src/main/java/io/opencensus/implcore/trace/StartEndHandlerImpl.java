@@ -69,13 +69,19 @@ public final class StartEndHandlerImpl implements StartEndHandler {
     if ((span.getOptions().contains(Options.RECORD_EVENTS)
             && (inProcessRunningSpanStore.getEnabled() || sampledSpanStore.getEnabled()))
         || span.getContext().getTraceOptions().isSampled()) {
+      // The end of a span in the running span store must not be dropped, or the span would stay
+      // there forever.
+      boolean droppable =
+          !(span.getOptions().contains(Options.RECORD_EVENTS)
+              && inProcessRunningSpanStore.getEnabled());
       eventQueue.enqueue(
-          new SpanEndEvent(span, spanExporter, inProcessRunningSpanStore, sampledSpanStore));
+          new SpanEndEvent(
+              span, spanExporter, inProcessRunningSpanStore, sampledSpanStore, droppable));
     }
   }
 
   // An EventQueue entry that records the start of the span event.
-  private static final class SpanStartEvent implements EventQueue.Entry {
+  private static final class SpanStartEvent implements EventQueue.PartitionedEntry {
     private final RecordEventsSpanImpl span;
     private final InProcessRunningSpanStore inProcessRunningSpanStore;
 
@@ -88,24 +94,37 @@ public final class StartEndHandlerImpl implements StartEndHandler {
     public void process() {
       inProcessRunningSpanStore.onStart(span);
     }
+
+    @Override
+    public int getPartitionKey() {
+      return span.getContext().getSpanId().hashCode();
+    }
+
+    @Override
+    public boolean isDroppable() {
+      return true;
+    }
   }
 
   // An EventQueue entry that records the end of the span event.
-  private static final class SpanEndEvent implements EventQueue.Entry {
+  private static final class SpanEndEvent implements EventQueue.PartitionedEntry {
     private final RecordEventsSpanImpl span;
     private final InProcessRunningSpanStore inProcessRunningSpanStore;
     private final SpanExporterImpl spanExporter;
     @Nullable private final SampledSpanStoreImpl sampledSpanStore;
+    private final boolean droppable;
 
     SpanEndEvent(
         RecordEventsSpanImpl span,
         SpanExporterImpl spanExporter,
         InProcessRunningSpanStore inProcessRunningSpanStore,
-        @Nullable SampledSpanStoreImpl sampledSpanStore) {
+        @Nullable SampledSpanStoreImpl sampledSpanStore,
+        boolean droppable) {
       this.span = span;
       this.inProcessRunningSpanStore = inProcessRunningSpanStore;
       this.spanExporter = spanExporter;
       this.sampledSpanStore = sampledSpanStore;
+      this.droppable = droppable;
     }
 
     @Override
@@ -118,5 +137,16 @@ public final class StartEndHandlerImpl implements StartEndHandler {
         sampledSpanStore.considerForSampling(span);
       }
     }
+
+    // Same key as the SpanStartEvent, so the end of a span is processed after its start.
+    @Override
+    public int getPartitionKey() {
+      return span.getContext().getSpanId().hashCode();
+    }
+
+    @Override
+    public boolean isDroppable() {
+      return droppable;
+    }
   }
 }
@@ -27,7 +27,6 @@ import io.opencensus.implcore.trace.propagation.PropagationComponentImpl;
 import io.opencensus.trace.TraceComponent;
 import io.opencensus.trace.Tracer;
 import io.opencensus.trace.config.TraceConfig;
-import io.opencensus.trace.export.ExportComponent;
 import io.opencensus.trace.propagation.PropagationComponent;
 
 /**
@@ -52,12 +51,30 @@ public final class TraceComponentImplBase {
    * @param eventQueue the queue implementation.
    */
   public TraceComponentImplBase(Clock clock, RandomHandler randomHandler, EventQueue eventQueue) {
+    this(clock, randomHandler, eventQueue, 0);
+  }
+
+  /**
+   * Creates a new {@code TraceComponentImplBase}.
+   *
+   * @param clock the clock to use throughout tracing.
+   * @param randomHandler the random number generator for generating trace and span IDs.
+   * @param eventQueue the queue implementation.
+   * @param maxCompactSampleBytes if positive, the sampled span store keeps its samples as encoded
+   *     records whose total size is at most this many bytes; if zero, it keeps the sampled spans.
+   */
+  public TraceComponentImplBase(
+      Clock clock,
+      RandomHandler randomHandler,
+      EventQueue eventQueue,
+      long maxCompactSampleBytes) {
     this.clock = clock;
     // TODO(bdrutu): Add a config/argument for supportInProcessStores.
     if (eventQueue instanceof SimpleEventQueue) {
       exportComponent = ExportComponentImpl.createWithoutInProcessStores(eventQueue);
     } else {
-      exportComponent = ExportComponentImpl.createWithInProcessStores(eventQueue);
+      exportComponent =
+          ExportComponentImpl.createWithInProcessStores(eventQueue, maxCompactSampleBytes);
     }
     StartEndHandler startEndHandler =
         new StartEndHandlerImpl(
@@ -80,7 +97,7 @@ public final class TraceComponentImplBase {
     return clock;
   }
 
-  public ExportComponent getExportComponent() {
+  public ExportComponentImpl getExportComponent() {
     return exportComponent;
   }
 
@@ -60,7 +60,23 @@ public final class ExportComponentImpl extends ExportComponent {
    * @return a new {@code ExportComponentImpl}.
    */
   public static ExportComponentImpl createWithInProcessStores(EventQueue eventQueue) {
-    return new ExportComponentImpl(/* supportInProcessStores= */ true, eventQueue);
+    return createWithInProcessStores(eventQueue, 0);
+  }
+
+  /**
+   * Returns a new {@code ExportComponentImpl} that has valid instances for {@link RunningSpanStore}
+   * and {@link SampledSpanStore}.
+   *
+   * @param eventQueue the queue implementation.
+   * @param maxCompactSampleBytes if positive, the {@code SampledSpanStore} keeps its samples as
+   *     encoded records whose total size is at most this many bytes; if zero, it keeps the sampled
+   *     spans.
+   * @return a new {@code ExportComponentImpl}.
+   */
+  public static ExportComponentImpl createWithInProcessStores(
+      EventQueue eventQueue, long maxCompactSampleBytes) {
+    return new ExportComponentImpl(
+        /* supportInProcessStores= */ true, eventQueue, maxCompactSampleBytes);
   }
 
   /**
@@ -70,7 +86,7 @@ public final class ExportComponentImpl extends ExportComponent {
    * @return a new {@code ExportComponentImpl}.
    */
   public static ExportComponentImpl createWithoutInProcessStores(EventQueue eventQueue) {
-    return new ExportComponentImpl(/* supportInProcessStores= */ false, eventQueue);
+    return new ExportComponentImpl(/* supportInProcessStores= */ false, eventQueue, 0);
   }
 
   /**
@@ -78,13 +94,16 @@ public final class ExportComponentImpl extends ExportComponent {
    *
    * @param supportInProcessStores {@code true} to instantiate {@link RunningSpanStore} and {@link
    *     SampledSpanStore}.
+   * @param maxCompactSampleBytes the budget of the encoded samples of the {@code SampledSpanStore},
+   *     or zero to keep the sampled spans.
    */
-  private ExportComponentImpl(boolean supportInProcessStores, EventQueue eventQueue) {
+  private ExportComponentImpl(
+      boolean supportInProcessStores, EventQueue eventQueue, long maxCompactSampleBytes) {
     this.spanExporter = SpanExporterImpl.create(EXPORTER_BUFFER_SIZE, EXPORTER_SCHEDULE_DELAY);
     this.inProcessRunningSpanStore = InProcessRunningSpanStore.create();
     this.sampledSpanStore =
         supportInProcessStores
-            ? new InProcessSampledSpanStoreImpl(eventQueue)
+            ? new InProcessSampledSpanStoreImpl(eventQueue, maxCompactSampleBytes)
             : SampledSpanStoreImpl.getNoopSampledSpanStoreImpl();
   }
 }
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.trace.export;
+
+import io.opencensus.implcore.internal.DaemonThreadFactory;
+import io.opencensus.trace.export.ExportComponent;
+import io.opencensus.trace.export.SpanData;
+import io.opencensus.trace.export.SpanExporter.Handler;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Exports the batches of one {@link Handler} on its own thread, so that a slow handler only delays
+ * and drops its own batches, and not the batches of the other handlers.
+ *
+ * <p>The batches are shared by all the pipelines and must not be modified.
+ *
+ * <p>With a {@link SpanSpillLog}, the batches that cannot be queued are appended to the log instead
+ * of being dropped, and are exported again when no queued batch is waiting, at most at the given
+ * number of spans per second, so that a handler catching up with an outage is not flooded. The
+ * batches are appended by the writer thread of the log, so that neither offering a batch nor a
+ * handler blocked in an export delay the spill.
+ */
+@ThreadSafe
+final class HandlerPipeline implements Runnable {
+  private static final Logger logger = Logger.getLogger(ExportComponent.class.getName());
+
+  // Marks the end of the batches, once the pipeline is stopped. Compared by identity.
+  private static final List<SpanData> END_OF_BATCHES = new ArrayList<SpanData>(0);
+  // How long to wait for the writer thread when the only spilled batches are not written yet.
+  private static final long PENDING_SPILL_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final String name;
+  private final Handler handler;
+  private final BlockingQueue<List<SpanData>> batches;
+  private final AtomicLong droppedSpans = new AtomicLong();
+  // Shared with the other pipelines of the exporter, and not reset when this one stops.
+  private final AtomicLong allHandlersDroppedSpans;
+  @Nullable private final SpanSpillLog spillLog;
+  private final SpanSpillLog.RefusedBatchListener refusedBatchListener =
+      new SpanSpillLog.RefusedBatchListener() {
+        @Override
+        public void onRefused(int spans) {
+          drop(spans);
+        }
+      };
+  private final long nanosPerSpilledSpan;
+
+  // Only used by the pipeline thread.
+  private long nextSpilledBatchNanos = System.nanoTime();
+
+  private final Object monitor = new Object();
+
+  @GuardedBy("monitor")
+  private long queuedBatches = 0;
+
+  @GuardedBy("monitor")
+  private long exportedBatches = 0;
+
+  @GuardedBy("monitor")
+  private boolean stopped = false;
+
+  /**
+   * Creates and starts a new {@code HandlerPipeline}.
+   *
+   * @param name the name of the handler.
+   * @param handler the handler.
+   * @param maxQueuedBatches the number of batches that can wait for the handler before new batches
+   *     are dropped.
+   */
+  HandlerPipeline(String name, Handler handler, int maxQueuedBatches) {
+    this(name, handler, maxQueuedBatches, null, 1, new AtomicLong());
+  }
+
+  /**
+   * Creates and starts a new {@code HandlerPipeline} that spills the batches it cannot queue.
+   *
+   * @param name the name of the handler.
+   * @param handler the handler.
+   * @param maxQueuedBatches the number of batches that can wait for the handler before new batches
+   *     are spilled.
+   * @param spillLog the log of the spilled batches, or {@code null} to drop them.
+   * @param spilledSpansPerSecond the maximum number of spilled spans exported per second.
+   * @param allHandlersDroppedSpans the counter of the spans dropped by all the pipelines, to which
+   *     the spans dropped by this pipeline are added.
+   */
+  HandlerPipeline(
+      String name,
+      Handler handler,
+      int maxQueuedBatches,
+      @Nullable SpanSpillLog spillLog,
+      long spilledSpansPerSecond,
+      AtomicLong allHandlersDroppedSpans) {
+    this.name = name;
+    this.handler = handler;
+    this.batches = new ArrayBlockingQueue<List<SpanData>>(maxQueuedBatches);
+    this.spillLog = spillLog;
+    this.nanosPerSpilledSpan = TimeUnit.SECONDS.toNanos(1) / spilledSpansPerSecond;
+    this.allHandlersDroppedSpans = allHandlersDroppedSpans;
+    new DaemonThreadFactory("ExportComponent.HandlerThread." + name).newThread(this).start();
+  }
+
+  /**
+   * Queues a batch for the handler, or spills or drops it if the handler is too far behind.
+   *
+   * @param batch the batch to export.
+   */
+  void offer(List<SpanData> batch) {
+    synchronized (monitor) {
+      if (stopped) {
+        return;
+      }
+      if (batches.offer(batch)) {
+        queuedBatches++;
+        return;
+      }
+    }
+    // Outside of the monitor, so that awaitExported() does not wait for the encoding.
+    spill(batch);
+  }
+
+  /** Waits until the handler exported the batches queued so far, or the pipeline is stopped. */
+  void awaitExported() {
+    synchronized (monitor) {
+      long target = queuedBatches;
+      while (exportedBatches < target && !stopped) {
+        try {
+          monitor.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Drops, or spills, the queued batches and stops the thread once the current batch is exported.
+   */
+  void stop() {
+    List<List<SpanData>> remainingBatches = new ArrayList<List<SpanData>>();
+    synchronized (monitor) {
+      stopped = true;
+      batches.drainTo(remainingBatches);
+      // Cannot fail, the queue was just emptied and no batch is queued once stopped.
+      batches.offer(END_OF_BATCHES);
+      monitor.notifyAll();
+    }
+    // Outside of the monitor, so that offer() and awaitExported() do not wait for the encoding.
+    for (List<SpanData> batch : remainingBatches) {
+      // Exported again by the next pipeline of this handler if spilled.
+      spill(batch);
+    }
+  }
+
+  long getDroppedSpans() {
+    return droppedSpans.get();
+  }
+
+  private void spill(List<SpanData> batch) {
+    if (spillLog == null || !spillLog.appendAsync(batch, refusedBatchListener)) {
+      drop(batch.size());
+    }
+  }
+
+  private void drop(int spans) {
+    droppedSpans.addAndGet(spans);
+    allHandlersDroppedSpans.addAndGet(spans);
+  }
+
+  @Override
+  public void run() {
+    while (true) {
+      List<SpanData> batch;
+      try {
+        batch = takeQueuedBatch();
+      } catch (InterruptedException e) {
+        // Preserve the interruption status as per guidance and stop doing any work.
+        Thread.currentThread().interrupt();
+        return;
+      }
+      if (batch == null) {
+        exportSpilledBatch();
+        continue;
+      }
+      if (batch == END_OF_BATCHES) {
+        return;
+      }
+      export(batch);
+      synchronized (monitor) {
+        exportedBatches++;
+        monitor.notifyAll();
+      }
+    }
+  }
+
+  // Waits for a queued batch. Returns null when no batch is queued and a spilled batch is due.
+  @Nullable
+  private List<SpanData> takeQueuedBatch() throws InterruptedException {
+    if (spillLog == null) {
+      return batches.take();
+    }
+    List<SpanData> batch = batches.poll();
+    if (batch != null) {
+      return batch;
+    }
+    if (spillLog.isEmpty()) {
+      // Batches are only spilled while the queue is full, so a queued batch wakes up this thread
+      // before any batch to spill.
+      return batches.take();
+    }
+    return batches.poll(nextSpilledBatchNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+  }
+
+  private void exportSpilledBatch() {
+    if (spillLog == null) {
+      return;
+    }
+    List<SpanData> batch = spillLog.poll();
+    if (batch == null) {
+      // The spilled batches are still waiting for the writer thread.
+      nextSpilledBatchNanos = System.nanoTime() + PENDING_SPILL_RETRY_NANOS;
+      return;
+    }
+    nextSpilledBatchNanos = System.nanoTime() + batch.size() * nanosPerSpilledSpan;
+    export(batch);
+  }
+
+  private void export(List<SpanData> batch) {
+    // In case of any exception thrown by the service handler continue to run.
+    try {
+      handler.export(batch);
+    } catch (Throwable e) {
+      logger.log(Level.WARNING, "Exception thrown by the service export " + name, e);
+    }
+  }
+}
@@ -28,6 +28,9 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
@@ -36,6 +39,10 @@ import javax.annotation.concurrent.ThreadSafe;
 public final class InProcessRunningSpanStore extends RunningSpanStore {
   private static final Summary EMPTY_SUMMARY =
       RunningSpanStore.Summary.create(Collections.<String, PerSpanNameSummary>emptyMap());
+  // At least twice the number of processors (up to 64), and a power of two so that the span id
+  // picks a shard with a mask.
+  private static final int NUM_SHARDS =
+      Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1));
 
   @Nullable private volatile InProcessRunningSpanStoreImpl impl = null;
 
@@ -109,55 +116,123 @@ public final class InProcessRunningSpanStore extends RunningSpanStore {
     }
   }
 
+  /**
+   * Keeps the running spans in several {@link ConcurrentIntrusiveList}s, chosen by span id, so
+   * that spans starting and ending on different threads rarely wait for the same lock. The number
+   * of running spans of each name is counted separately, so the summary does not walk the spans.
+   */
+  @ThreadSafe
   private static final class InProcessRunningSpanStoreImpl {
-    private final ConcurrentIntrusiveList<RecordEventsSpanImpl> runningSpans;
-
+    private final int maxNumberOfElements;
+    private final ConcurrentIntrusiveList<RecordEventsSpanImpl>[] shards;
+    // The total number of spans in the shards, including the ones being added.
+    private final AtomicInteger numElements = new AtomicInteger();
+    private final ConcurrentMap<String, AtomicInteger> numSpansPerName =
+        new ConcurrentHashMap<String, AtomicInteger>();
+
+    @SuppressWarnings("unchecked")
     private InProcessRunningSpanStoreImpl(int maxNumberOfElements) {
-      runningSpans = new ConcurrentIntrusiveList<>(maxNumberOfElements);
+      this.maxNumberOfElements = maxNumberOfElements;
+      shards =
+          (ConcurrentIntrusiveList<RecordEventsSpanImpl>[])
+              new ConcurrentIntrusiveList<?>[NUM_SHARDS];
+      for (int i = 0; i < NUM_SHARDS; i++) {
+        // The capacity is enforced by numElements, for all the shards together.
+        shards[i] = new ConcurrentIntrusiveList<>(Integer.MAX_VALUE);
+      }
     }
 
     private void onStart(RecordEventsSpanImpl span) {
-      runningSpans.addElement(span);
+      if (!tryReserve()) {
+        return;
+      }
+      if (getShard(span).addElement(span)) {
+        getNumSpans(span.getName()).incrementAndGet();
+      } else {
+        numElements.decrementAndGet();
+      }
     }
 
     private void onEnd(RecordEventsSpanImpl span) {
       // TODO: Count and display when try to remove span that was not present.
-      runningSpans.removeElement(span);
+      if (getShard(span).removeElement(span)) {
+        numElements.decrementAndGet();
+        getNumSpans(span.getName()).decrementAndGet();
+      }
     }
 
     private Summary getSummary() {
-      Collection<RecordEventsSpanImpl> allRunningSpans = runningSpans.getAll();
-      Map<String, Integer> numSpansPerName = new HashMap<String, Integer>();
-      for (RecordEventsSpanImpl span : allRunningSpans) {
-        Integer prevValue = numSpansPerName.get(span.getName());
-        numSpansPerName.put(span.getName(), prevValue != null ? prevValue + 1 : 1);
-      }
       Map<String, PerSpanNameSummary> perSpanNameSummary =
           new HashMap<String, PerSpanNameSummary>();
-      for (Map.Entry<String, Integer> it : numSpansPerName.entrySet()) {
-        perSpanNameSummary.put(it.getKey(), PerSpanNameSummary.create(it.getValue()));
+      for (Map.Entry<String, AtomicInteger> it : numSpansPerName.entrySet()) {
+        int numRunningSpans = it.getValue().get();
+        if (numRunningSpans > 0) {
+          perSpanNameSummary.put(it.getKey(), PerSpanNameSummary.create(numRunningSpans));
+        }
       }
       return Summary.create(perSpanNameSummary);
     }
 
     private Collection<SpanData> getRunningSpans(Filter filter) {
-      Collection<RecordEventsSpanImpl> allRunningSpans = runningSpans.getAll();
+      AtomicInteger numSpans = numSpansPerName.get(filter.getSpanName());
+      if (numSpans == null || numSpans.get() <= 0) {
+        return Collections.emptyList();
+      }
+      // Takes a snapshot of one shard at a time, and converts the spans outside the shard locks.
+      List<RecordEventsSpanImpl> spans = new ArrayList<RecordEventsSpanImpl>();
+      for (ConcurrentIntrusiveList<RecordEventsSpanImpl> shard : shards) {
+        for (RecordEventsSpanImpl span : shard.getAll()) {
+          if (span.getName().equals(filter.getSpanName())) {
+            spans.add(span);
+          }
+        }
+      }
       int maxSpansToReturn =
-          filter.getMaxSpansToReturn() == 0 ? allRunningSpans.size() : filter.getMaxSpansToReturn();
-      List<SpanData> ret = new ArrayList<SpanData>(maxSpansToReturn);
-      for (RecordEventsSpanImpl span : allRunningSpans) {
+          filter.getMaxSpansToReturn() == 0 ? spans.size() : filter.getMaxSpansToReturn();
+      List<SpanData> ret = new ArrayList<SpanData>(Math.min(maxSpansToReturn, spans.size()));
+      for (RecordEventsSpanImpl span : spans) {
         if (ret.size() == maxSpansToReturn) {
           break;
         }
-        if (span.getName().equals(filter.getSpanName())) {
-          ret.add(span.toSpanData());
-        }
+        ret.add(span.toSpanData());
       }
       return ret;
     }
 
     private void clear() {
-      runningSpans.clear();
+      for (ConcurrentIntrusiveList<RecordEventsSpanImpl> shard : shards) {
+        shard.clear();
+      }
+      numElements.set(0);
+      numSpansPerName.clear();
+    }
+
+    private boolean tryReserve() {
+      while (true) {
+        int current = numElements.get();
+        if (current >= maxNumberOfElements) {
+          return false;
+        }
+        if (numElements.compareAndSet(current, current + 1)) {
+          return true;
+        }
+      }
+    }
+
+    private ConcurrentIntrusiveList<RecordEventsSpanImpl> getShard(RecordEventsSpanImpl span) {
+      return shards[span.getContext().getSpanId().hashCode() & (NUM_SHARDS - 1)];
+    }
+
+    private AtomicInteger getNumSpans(String spanName) {
+      AtomicInteger numSpans = numSpansPerName.get(spanName);
+      if (numSpans == null) {
+        AtomicInteger newNumSpans = new AtomicInteger();
+        numSpans = numSpansPerName.putIfAbsent(spanName, newNumSpans);
+        if (numSpans == null) {
+          numSpans = newNumSpans;
+        }
+      }
+      return numSpans;
     }
   }
 }
@@ -16,6 +16,9 @@
 
 package io.opencensus.implcore.trace.export;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.EvictingQueue;
 import io.opencensus.implcore.internal.EventQueue;
 import io.opencensus.implcore.trace.RecordEventsSpanImpl;
@@ -32,20 +35,41 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
-/** In-process implementation of the {@link SampledSpanStore}. */
+/**
+ * In-process implementation of the {@link SampledSpanStore}.
+ *
+ * <p>By default the samples are the ended spans themselves, which keeps their attributes, events
+ * and links in the heap for as long as they are sampled. Alternatively the samples can be kept as
+ * compact encoded records, decoded to {@link SpanData} only when queried, within a fixed budget of
+ * bytes for all the records of the store. A sample that does not fit in the budget is not kept.
+ *
+ * <p>Each bucket of samples has its own lock, so sampling spans of different names or latencies,
+ * and queries of the store, do not wait for each other.
+ */
 @ThreadSafe
 public final class InProcessSampledSpanStoreImpl extends SampledSpanStoreImpl {
   private static final int NUM_SAMPLES_PER_LATENCY_BUCKET = 10;
   private static final int NUM_SAMPLES_PER_ERROR_BUCKET = 5;
   private static final long TIME_BETWEEN_SAMPLES = TimeUnit.SECONDS.toNanos(1);
-  private static final int NUM_LATENCY_BUCKETS = LatencyBucketBoundaries.values().length;
+  // Cached because values() returns a new array on every call.
+  private static final LatencyBucketBoundaries[] LATENCY_BUCKET_BOUNDARIES =
+      LatencyBucketBoundaries.values();
+  private static final CanonicalCode[] CANONICAL_CODES = CanonicalCode.values();
+  private static final int NUM_LATENCY_BUCKETS = LATENCY_BUCKET_BOUNDARIES.length;
   // The total number of canonical codes - 1 (the OK code).
-  private static final int NUM_ERROR_BUCKETS = CanonicalCode.values().length - 1;
+  private static final int NUM_ERROR_BUCKETS = CANONICAL_CODES.length - 1;
+  // The latency bucket of the smallest latency of each bit length, from 0 to 63 bits. The bucket
+  // of a latency is this bucket, or one of the next ones when a bucket boundary falls between two
+  // powers of two.
+  private static final int[] LATENCY_BUCKET_BY_BIT_LENGTH = newLatencyBucketByBitLength();
   private static final int MAX_PER_SPAN_NAME_SAMPLES =
       NUM_SAMPLES_PER_LATENCY_BUCKET * NUM_LATENCY_BUCKETS
           + NUM_SAMPLES_PER_ERROR_BUCKET * NUM_ERROR_BUCKETS;
@@ -54,29 +78,131 @@ public final class InProcessSampledSpanStoreImpl extends SampledSpanStoreImpl {
   // between the main threads and the worker thread.
   private final EventQueue eventQueue;
 
-  @GuardedBy("samples")
-  private final Map<String, PerSpanNameSamples> samples;
+  private final ConcurrentMap<String, PerSpanNameSamples> samples;
 
+  // Null if the samples are the spans themselves.
+  @Nullable private final SampleArena sampleArena;
+
+  /** A sampled span, kept either as the span itself or as an encoded record. */
+  private abstract static class Sample {
+    abstract long getLatencyNs();
+
+    abstract SpanData toSpanData();
+  }
+
+  private static final class LiveSample extends Sample {
+    private final RecordEventsSpanImpl span;
+
+    private LiveSample(RecordEventsSpanImpl span) {
+      this.span = span;
+    }
+
+    @Override
+    long getLatencyNs() {
+      return span.getLatencyNs();
+    }
+
+    @Override
+    SpanData toSpanData() {
+      return span.toSpanData();
+    }
+  }
+
+  private static final class CompactSample extends Sample {
+    private final long latencyNs;
+    private final byte[] record;
+
+    private CompactSample(long latencyNs, byte[] record) {
+      this.latencyNs = latencyNs;
+      this.record = record;
+    }
+
+    @Override
+    long getLatencyNs() {
+      return latencyNs;
+    }
+
+    @Override
+    SpanData toSpanData() {
+      return SpanDataCodec.decode(record);
+    }
+  }
+
+  /** Bounds the total size of the records of the {@link CompactSample}s of a store. */
+  @ThreadSafe
+  private static final class SampleArena {
+    private final long maxBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong droppedSamples = new AtomicLong();
+
+    private SampleArena(long maxBytes) {
+      this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Encodes a span, and reserves room for its record in place of the record of the sample it
+     * evicts, if any. Returns {@code null} if the record does not fit.
+     */
+    @Nullable
+    private CompactSample tryAllocate(RecordEventsSpanImpl span, @Nullable Sample evicted) {
+      byte[] record = SpanDataCodec.encode(span.toSpanData());
+      long freedBytes = evicted == null ? 0 : ((CompactSample) evicted).record.length;
+      while (true) {
+        long current = usedBytes.get();
+        long next = current - freedBytes + record.length;
+        if (next > maxBytes) {
+          droppedSamples.incrementAndGet();
+          return null;
+        }
+        if (usedBytes.compareAndSet(current, next)) {
+          return new CompactSample(span.getLatencyNs(), record);
+        }
+      }
+    }
+
+    private void release(Sample sample) {
+      usedBytes.addAndGet(-((CompactSample) sample).record.length);
+    }
+  }
+
+  @ThreadSafe
   private static final class Bucket {
 
-    private final EvictingQueue<RecordEventsSpanImpl> sampledSpansQueue;
-    private final EvictingQueue<RecordEventsSpanImpl> notSampledSpansQueue;
+    @GuardedBy("this")
+    private final EvictingQueue<Sample> sampledSpansQueue;
+
+    @GuardedBy("this")
+    private final EvictingQueue<Sample> notSampledSpansQueue;
+
+    @Nullable private final SampleArena sampleArena;
+
+    @GuardedBy("this")
     private long lastSampledNanoTime;
+
+    @GuardedBy("this")
     private long lastNotSampledNanoTime;
 
-    private Bucket(int numSamples) {
+    // Set once the bucket is removed from the store, after which it keeps no new samples.
+    @GuardedBy("this")
+    private boolean released;
+
+    private Bucket(int numSamples, @Nullable SampleArena sampleArena) {
       sampledSpansQueue = EvictingQueue.create(numSamples);
       notSampledSpansQueue = EvictingQueue.create(numSamples);
+      this.sampleArena = sampleArena;
     }
 
-    private void considerForSampling(RecordEventsSpanImpl span) {
+    private synchronized void considerForSampling(RecordEventsSpanImpl span) {
+      if (released) {
+        return;
+      }
       long spanEndNanoTime = span.getEndNanoTime();
       if (span.getContext().getTraceOptions().isSampled()) {
         // Need to compare by doing the subtraction all the time because in case of an overflow,
         // this may never sample again (at least for the next ~200 years). No real chance to
         // overflow two times because that means the process runs for ~200 years.
         if (spanEndNanoTime - lastSampledNanoTime > TIME_BETWEEN_SAMPLES) {
-          sampledSpansQueue.add(span);
+          addSample(span, sampledSpansQueue);
           lastSampledNanoTime = spanEndNanoTime;
         }
       } else {
@@ -84,34 +210,55 @@ public final class InProcessSampledSpanStoreImpl extends SampledSpanStoreImpl {
         // this may never sample again (at least for the next ~200 years). No real chance to
         // overflow two times because that means the process runs for ~200 years.
         if (spanEndNanoTime - lastNotSampledNanoTime > TIME_BETWEEN_SAMPLES) {
-          notSampledSpansQueue.add(span);
+          addSample(span, notSampledSpansQueue);
           lastNotSampledNanoTime = spanEndNanoTime;
         }
       }
     }
 
-    private void getSamples(int maxSpansToReturn, List<RecordEventsSpanImpl> output) {
+    @GuardedBy("this")
+    private void addSample(RecordEventsSpanImpl span, EvictingQueue<Sample> queue) {
+      if (sampleArena == null) {
+        queue.add(new LiveSample(span));
+        return;
+      }
+      // The queue evicts its oldest sample when it is full.
+      Sample evicted = queue.remainingCapacity() == 0 ? queue.peek() : null;
+      Sample sample = sampleArena.tryAllocate(span, evicted);
+      if (sample != null) {
+        queue.add(sample);
+      }
+    }
+
+    private synchronized void release() {
+      released = true;
+      if (sampleArena != null) {
+        for (Sample sample : sampledSpansQueue) {
+          sampleArena.release(sample);
+        }
+        for (Sample sample : notSampledSpansQueue) {
+          sampleArena.release(sample);
+        }
+      }
+    }
+
+    private synchronized void getSamples(int maxSpansToReturn, List<Sample> output) {
       getSamples(maxSpansToReturn, output, sampledSpansQueue);
       getSamples(maxSpansToReturn, output, notSampledSpansQueue);
     }
 
     private static void getSamples(
-        int maxSpansToReturn,
-        List<RecordEventsSpanImpl> output,
-        EvictingQueue<RecordEventsSpanImpl> queue) {
-      for (RecordEventsSpanImpl span : queue) {
+        int maxSpansToReturn, List<Sample> output, EvictingQueue<Sample> queue) {
+      for (Sample sample : queue) {
         if (output.size() >= maxSpansToReturn) {
           break;
         }
-        output.add(span);
+        output.add(sample);
       }
     }
 
-    private void getSamplesFilteredByLatency(
-        long latencyLowerNs,
-        long latencyUpperNs,
-        int maxSpansToReturn,
-        List<RecordEventsSpanImpl> output) {
+    private synchronized void getSamplesFilteredByLatency(
+        long latencyLowerNs, long latencyUpperNs, int maxSpansToReturn, List<Sample> output) {
       getSamplesFilteredByLatency(
           latencyLowerNs, latencyUpperNs, maxSpansToReturn, output, sampledSpansQueue);
       getSamplesFilteredByLatency(
@@ -122,20 +269,20 @@ public final class InProcessSampledSpanStoreImpl extends SampledSpanStoreImpl {
         long latencyLowerNs,
         long latencyUpperNs,
         int maxSpansToReturn,
-        List<RecordEventsSpanImpl> output,
-        EvictingQueue<RecordEventsSpanImpl> queue) {
-      for (RecordEventsSpanImpl span : queue) {
+        List<Sample> output,
+        EvictingQueue<Sample> queue) {
+      for (Sample sample : queue) {
         if (output.size() >= maxSpansToReturn) {
           break;
         }
-        long spanLatencyNs = span.getLatencyNs();
+        long spanLatencyNs = sample.getLatencyNs();
         if (spanLatencyNs >= latencyLowerNs && spanLatencyNs < latencyUpperNs) {
-          output.add(span);
+          output.add(sample);
         }
       }
     }
 
-    private int getNumSamples() {
+    private synchronized int getNumSamples() {
       return sampledSpansQueue.size() + notSampledSpansQueue.size();
     }
   }
@@ -149,29 +296,31 @@ public final class InProcessSampledSpanStoreImpl extends SampledSpanStoreImpl {
     private final Bucket[] latencyBuckets;
     private final Bucket[] errorBuckets;
 
-    private PerSpanNameSamples() {
+    private PerSpanNameSamples(@Nullable SampleArena sampleArena) {
       latencyBuckets = new Bucket[NUM_LATENCY_BUCKETS];
       for (int i = 0; i < NUM_LATENCY_BUCKETS; i++) {
-        latencyBuckets[i] = new Bucket(NUM_SAMPLES_PER_LATENCY_BUCKET);
+        latencyBuckets[i] = new Bucket(NUM_SAMPLES_PER_LATENCY_BUCKET, sampleArena);
       }
       errorBuckets = new Bucket[NUM_ERROR_BUCKETS];
       for (int i = 0; i < NUM_ERROR_BUCKETS; i++) {
-        errorBuckets[i] = new Bucket(NUM_SAMPLES_PER_ERROR_BUCKET);
+        errorBuckets[i] = new Bucket(NUM_SAMPLES_PER_ERROR_BUCKET, sampleArena);
+      }
+    }
+
+    // Releases the room of the samples in the arena, once the samples are removed from the store.
+    private void release() {
+      for (Bucket bucket : latencyBuckets) {
+        bucket.release();
+      }
+      for (Bucket bucket : errorBuckets) {
+        bucket.release();
       }
     }
 
     @Nullable
     private Bucket getLatencyBucket(long latencyNs) {
-      for (int i = 0; i < NUM_LATENCY_BUCKETS; i++) {
-        LatencyBucketBoundaries boundaries = LatencyBucketBoundaries.values()[i];
-        if (latencyNs >= boundaries.getLatencyLowerNs()
-            && latencyNs < boundaries.getLatencyUpperNs()) {
-          return latencyBuckets[i];
-        }
-      }
-      // latencyNs is negative or Long.MAX_VALUE, so this Span can be ignored. This cannot happen
-      // in real production because System#nanoTime is monotonic.
-      return null;
+      int index = getLatencyBucketIndex(latencyNs);
+      return index < 0 ? null : latencyBuckets[index];
     }
 
     private Bucket getErrorBucket(CanonicalCode code) {
@@ -198,8 +347,7 @@ public final class InProcessSampledSpanStoreImpl extends SampledSpanStoreImpl {
       Map<LatencyBucketBoundaries, Integer> latencyBucketSummaries =
           new EnumMap<LatencyBucketBoundaries, Integer>(LatencyBucketBoundaries.class);
       for (int i = 0; i < NUM_LATENCY_BUCKETS; i++) {
-        latencyBucketSummaries.put(
-            LatencyBucketBoundaries.values()[i], latencyBuckets[i].getNumSamples());
+        latencyBucketSummaries.put(LATENCY_BUCKET_BOUNDARIES[i], latencyBuckets[i].getNumSamples());
       }
       return latencyBucketSummaries;
     }
@@ -208,15 +356,13 @@ public final class InProcessSampledSpanStoreImpl extends SampledSpanStoreImpl {
       Map<CanonicalCode, Integer> errorBucketSummaries =
           new EnumMap<CanonicalCode, Integer>(CanonicalCode.class);
       for (int i = 0; i < NUM_ERROR_BUCKETS; i++) {
-        errorBucketSummaries.put(CanonicalCode.values()[i + 1], errorBuckets[i].getNumSamples());
+        errorBucketSummaries.put(CANONICAL_CODES[i + 1], errorBuckets[i].getNumSamples());
       }
       return errorBucketSummaries;
     }
 
-    private List<RecordEventsSpanImpl> getErrorSamples(
-        @Nullable CanonicalCode code, int maxSpansToReturn) {
-      ArrayList<RecordEventsSpanImpl> output =
-          new ArrayList<RecordEventsSpanImpl>(maxSpansToReturn);
+    private List<Sample> getErrorSamples(@Nullable CanonicalCode code, int maxSpansToReturn) {
+      ArrayList<Sample> output = new ArrayList<Sample>(maxSpansToReturn);
       if (code != null) {
         getErrorBucket(code).getSamples(maxSpansToReturn, output);
       } else {
@@ -227,12 +373,11 @@ public final class InProcessSampledSpanStoreImpl extends SampledSpanStoreImpl {
       return output;
     }
 
-    private List<RecordEventsSpanImpl> getLatencySamples(
+    private List<Sample> getLatencySamples(
         long latencyLowerNs, long latencyUpperNs, int maxSpansToReturn) {
-      ArrayList<RecordEventsSpanImpl> output =
-          new ArrayList<RecordEventsSpanImpl>(maxSpansToReturn);
+      ArrayList<Sample> output = new ArrayList<Sample>(maxSpansToReturn);
       for (int i = 0; i < NUM_LATENCY_BUCKETS; i++) {
-        LatencyBucketBoundaries boundaries = LatencyBucketBoundaries.values()[i];
+        LatencyBucketBoundaries boundaries = LATENCY_BUCKET_BOUNDARIES[i];
         if (latencyUpperNs >= boundaries.getLatencyLowerNs()
             && latencyLowerNs < boundaries.getLatencyUpperNs()) {
           latencyBuckets[i].getSamplesFilteredByLatency(
@@ -243,39 +388,49 @@ public final class InProcessSampledSpanStoreImpl extends SampledSpanStoreImpl {
     }
   }
 
-  /** Constructs a new {@code InProcessSampledSpanStoreImpl}. */
+  /** Constructs a new {@code InProcessSampledSpanStoreImpl} that keeps the sampled spans. */
   InProcessSampledSpanStoreImpl(EventQueue eventQueue) {
-    samples = new HashMap<String, PerSpanNameSamples>();
+    this(eventQueue, 0);
+  }
+
+  /**
+   * Constructs a new {@code InProcessSampledSpanStoreImpl}.
+   *
+   * @param eventQueue the queue of the register/unregister events.
+   * @param maxCompactSampleBytes if positive, the samples are kept as encoded records whose total
+   *     size is at most this many bytes; if zero, the sampled spans are kept.
+   */
+  InProcessSampledSpanStoreImpl(EventQueue eventQueue, long maxCompactSampleBytes) {
+    checkArgument(maxCompactSampleBytes >= 0, "maxCompactSampleBytes should not be negative.");
+    samples = new ConcurrentHashMap<String, PerSpanNameSamples>();
+    sampleArena = maxCompactSampleBytes > 0 ? new SampleArena(maxCompactSampleBytes) : null;
     this.eventQueue = eventQueue;
   }
 
   @Override
   public Summary getSummary() {
     Map<String, PerSpanNameSummary> ret = new HashMap<String, PerSpanNameSummary>();
-    synchronized (samples) {
-      for (Map.Entry<String, PerSpanNameSamples> it : samples.entrySet()) {
-        ret.put(
-            it.getKey(),
-            PerSpanNameSummary.create(
-                it.getValue().getNumbersOfLatencySampledSpans(),
-                it.getValue().getNumbersOfErrorSampledSpans()));
-      }
+    for (Map.Entry<String, PerSpanNameSamples> it : samples.entrySet()) {
+      ret.put(
+          it.getKey(),
+          PerSpanNameSummary.create(
+              it.getValue().getNumbersOfLatencySampledSpans(),
+              it.getValue().getNumbersOfErrorSampledSpans()));
     }
     return Summary.create(ret);
   }
 
   @Override
   public void considerForSampling(RecordEventsSpanImpl span) {
-    synchronized (samples) {
-      String spanName = span.getName();
-      if (span.getSampleToLocalSpanStore() && !samples.containsKey(spanName)) {
-        samples.put(spanName, new PerSpanNameSamples());
-      }
-      PerSpanNameSamples perSpanNameSamples = samples.get(spanName);
-      if (perSpanNameSamples != null) {
-        perSpanNameSamples.considerForSampling(span);
+    String spanName = span.getName();
+    PerSpanNameSamples perSpanNameSamples = samples.get(spanName);
+    if (perSpanNameSamples == null) {
+      if (!span.getSampleToLocalSpanStore()) {
+        return;
       }
+      perSpanNameSamples = getOrAddPerSpanNameSamples(spanName);
     }
+    perSpanNameSamples.considerForSampling(span);
   }
 
   @Override
@@ -295,13 +450,21 @@ public final class InProcessSampledSpanStoreImpl extends SampledSpanStoreImpl {
   }
 
   private void internaltRegisterSpanNamesForCollection(Collection<String> spanNames) {
-    synchronized (samples) {
-      for (String spanName : spanNames) {
-        if (!samples.containsKey(spanName)) {
-          samples.put(spanName, new PerSpanNameSamples());
-        }
+    for (String spanName : spanNames) {
+      getOrAddPerSpanNameSamples(spanName);
+    }
+  }
+
+  private PerSpanNameSamples getOrAddPerSpanNameSamples(String spanName) {
+    PerSpanNameSamples perSpanNameSamples = samples.get(spanName);
+    if (perSpanNameSamples == null) {
+      PerSpanNameSamples newSamples = new PerSpanNameSamples(sampleArena);
+      perSpanNameSamples = samples.putIfAbsent(spanName, newSamples);
+      if (perSpanNameSamples == null) {
+        perSpanNameSamples = newSamples;
       }
     }
+    return perSpanNameSamples;
   }
 
   private static final class RegisterSpanNameEvent implements EventQueue.Entry {
@@ -327,8 +490,11 @@ public final class InProcessSampledSpanStoreImpl extends SampledSpanStoreImpl {
   }
 
   private void internalUnregisterSpanNamesForCollection(Collection<String> spanNames) {
-    synchronized (samples) {
-      samples.keySet().removeAll(spanNames);
+    for (String spanName : spanNames) {
+      PerSpanNameSamples perSpanNameSamples = samples.remove(spanName);
+      if (perSpanNameSamples != null) {
+        perSpanNameSamples.release();
+      }
     }
   }
 
@@ -350,9 +516,7 @@ public final class InProcessSampledSpanStoreImpl extends SampledSpanStoreImpl {
 
   @Override
   public Set<String> getRegisteredSpanNamesForCollection() {
-    synchronized (samples) {
-      return Collections.unmodifiableSet(new HashSet<String>(samples.keySet()));
-    }
+    return Collections.unmodifiableSet(new HashSet<String>(samples.keySet()));
   }
 
   @Override
@@ -361,17 +525,14 @@ public final class InProcessSampledSpanStoreImpl extends SampledSpanStoreImpl {
         filter.getMaxSpansToReturn() == 0
             ? MAX_PER_SPAN_NAME_SAMPLES
             : filter.getMaxSpansToReturn();
-    List<RecordEventsSpanImpl> spans = Collections.emptyList();
-    // Try to not keep the lock to much, do the RecordEventsSpanImpl -> SpanData conversion outside
-    // the lock.
-    synchronized (samples) {
-      PerSpanNameSamples perSpanNameSamples = samples.get(filter.getSpanName());
-      if (perSpanNameSamples != null) {
-        spans = perSpanNameSamples.getErrorSamples(filter.getCanonicalCode(), numSpansToReturn);
-      }
+    List<Sample> spans = Collections.emptyList();
+    // Try to not keep the locks to much, do the Sample -> SpanData conversion outside the locks.
+    PerSpanNameSamples perSpanNameSamples = samples.get(filter.getSpanName());
+    if (perSpanNameSamples != null) {
+      spans = perSpanNameSamples.getErrorSamples(filter.getCanonicalCode(), numSpansToReturn);
     }
     List<SpanData> ret = new ArrayList<SpanData>(spans.size());
-    for (RecordEventsSpanImpl span : spans) {
+    for (Sample span : spans) {
       ret.add(span.toSpanData());
     }
     return Collections.unmodifiableList(ret);
@@ -383,21 +544,60 @@ public final class InProcessSampledSpanStoreImpl extends SampledSpanStoreImpl {
         filter.getMaxSpansToReturn() == 0
             ? MAX_PER_SPAN_NAME_SAMPLES
             : filter.getMaxSpansToReturn();
-    List<RecordEventsSpanImpl> spans = Collections.emptyList();
-    // Try to not keep the lock to much, do the RecordEventsSpanImpl -> SpanData conversion outside
-    // the lock.
-    synchronized (samples) {
-      PerSpanNameSamples perSpanNameSamples = samples.get(filter.getSpanName());
-      if (perSpanNameSamples != null) {
-        spans =
-            perSpanNameSamples.getLatencySamples(
-                filter.getLatencyLowerNs(), filter.getLatencyUpperNs(), numSpansToReturn);
-      }
+    List<Sample> spans = Collections.emptyList();
+    // Try to not keep the locks to much, do the Sample -> SpanData conversion outside the locks.
+    PerSpanNameSamples perSpanNameSamples = samples.get(filter.getSpanName());
+    if (perSpanNameSamples != null) {
+      spans =
+          perSpanNameSamples.getLatencySamples(
+              filter.getLatencyLowerNs(), filter.getLatencyUpperNs(), numSpansToReturn);
     }
     List<SpanData> ret = new ArrayList<SpanData>(spans.size());
-    for (RecordEventsSpanImpl span : spans) {
+    for (Sample span : spans) {
       ret.add(span.toSpanData());
     }
     return Collections.unmodifiableList(ret);
   }
+
+  // Returns the index of the latency bucket of latencyNs, or -1 if latencyNs is negative or
+  // Long.MAX_VALUE. This cannot happen in real production because System#nanoTime is monotonic.
+  @VisibleForTesting
+  static int getLatencyBucketIndex(long latencyNs) {
+    if (latencyNs < 0) {
+      return -1;
+    }
+    int index = LATENCY_BUCKET_BY_BIT_LENGTH[64 - Long.numberOfLeadingZeros(latencyNs)];
+    while (latencyNs >= LATENCY_BUCKET_BOUNDARIES[index].getLatencyUpperNs()) {
+      if (++index == NUM_LATENCY_BUCKETS) {
+        return -1;
+      }
+    }
+    return index;
+  }
+
+  private static int[] newLatencyBucketByBitLength() {
+    // Non-negative latencies have at most 63 bits.
+    int[] bucketByBitLength = new int[Long.SIZE];
+    int index = 0;
+    for (int bitLength = 0; bitLength < Long.SIZE; bitLength++) {
+      // The smallest latency with this bit length.
+      long minLatencyNs = bitLength == 0 ? 0 : 1L << (bitLength - 1);
+      while (index < NUM_LATENCY_BUCKETS - 1
+          && minLatencyNs >= LATENCY_BUCKET_BOUNDARIES[index].getLatencyUpperNs()) {
+        index++;
+      }
+      bucketByBitLength[bitLength] = index;
+    }
+    return bucketByBitLength;
+  }
+
+  @VisibleForTesting
+  long getCompactSampleBytes() {
+    return sampleArena == null ? 0 : sampleArena.usedBytes.get();
+  }
+
+  @VisibleForTesting
+  long getDroppedCompactSamples() {
+    return sampleArena == null ? 0 : sampleArena.droppedSamples.get();
+  }
 }
@@ -0,0 +1,416 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.trace.export;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import io.opencensus.common.Function;
+import io.opencensus.common.Functions;
+import io.opencensus.common.Timestamp;
+import io.opencensus.implcore.internal.VarInt;
+import io.opencensus.trace.Annotation;
+import io.opencensus.trace.AttributeValue;
+import io.opencensus.trace.Link;
+import io.opencensus.trace.MessageEvent;
+import io.opencensus.trace.Span.Kind;
+import io.opencensus.trace.SpanContext;
+import io.opencensus.trace.SpanId;
+import io.opencensus.trace.Status;
+import io.opencensus.trace.Status.CanonicalCode;
+import io.opencensus.trace.TraceId;
+import io.opencensus.trace.TraceOptions;
+import io.opencensus.trace.Tracestate;
+import io.opencensus.trace.export.SpanData;
+import io.opencensus.trace.export.SpanData.Attributes;
+import io.opencensus.trace.export.SpanData.Links;
+import io.opencensus.trace.export.SpanData.TimedEvent;
+import io.opencensus.trace.export.SpanData.TimedEvents;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Encodes a {@link SpanData} into a compact byte array, and decodes it back.
+ *
+ * <p>The encoding is only meant to be decoded by the same version of the library, see {@link
+ * SpanSpillLog} for the encoded spans that outlive the process. Enums are encoded by their
+ * ordinal, counts and lengths as var ints.
+ */
+final class SpanDataCodec {
+  private static final byte ABSENT = 0;
+  private static final byte PRESENT = 1;
+
+  private static final byte STRING_VALUE = 0;
+  private static final byte BOOLEAN_VALUE = 1;
+  private static final byte LONG_VALUE = 2;
+  private static final byte DOUBLE_VALUE = 3;
+
+  private static final Kind[] KINDS = Kind.values();
+  private static final CanonicalCode[] CANONICAL_CODES = CanonicalCode.values();
+  private static final MessageEvent.Type[] MESSAGE_EVENT_TYPES = MessageEvent.Type.values();
+  private static final Link.Type[] LINK_TYPES = Link.Type.values();
+
+  /**
+   * Encodes a {@code SpanData}.
+   *
+   * @param spanData the {@code SpanData} to encode.
+   * @return the encoded {@code SpanData}.
+   */
+  static byte[] encode(SpanData spanData) {
+    ByteArrayDataOutput output = ByteStreams.newDataOutput();
+    encodeSpanContext(spanData.getContext(), output);
+    SpanId parentSpanId = spanData.getParentSpanId();
+    if (parentSpanId == null) {
+      output.writeByte(ABSENT);
+    } else {
+      output.writeByte(PRESENT);
+      output.write(parentSpanId.getBytes());
+    }
+    Boolean hasRemoteParent = spanData.getHasRemoteParent();
+    if (hasRemoteParent == null) {
+      output.writeByte(ABSENT);
+    } else {
+      output.writeByte(PRESENT);
+      output.writeBoolean(hasRemoteParent);
+    }
+    encodeString(spanData.getName(), output);
+    Kind kind = spanData.getKind();
+    if (kind == null) {
+      output.writeByte(ABSENT);
+    } else {
+      output.writeByte(PRESENT);
+      putVarInt(kind.ordinal(), output);
+    }
+    encodeTimestamp(spanData.getStartTimestamp(), output);
+    encodeAttributeMap(spanData.getAttributes().getAttributeMap(), output);
+    putVarInt(spanData.getAttributes().getDroppedAttributesCount(), output);
+    encodeAnnotations(spanData.getAnnotations(), output);
+    encodeMessageEvents(spanData.getMessageEvents(), output);
+    encodeLinks(spanData.getLinks(), output);
+    Integer childSpanCount = spanData.getChildSpanCount();
+    if (childSpanCount == null) {
+      output.writeByte(ABSENT);
+    } else {
+      output.writeByte(PRESENT);
+      putVarInt(childSpanCount, output);
+    }
+    Status status = spanData.getStatus();
+    if (status == null) {
+      output.writeByte(ABSENT);
+    } else {
+      output.writeByte(PRESENT);
+      putVarInt(status.getCanonicalCode().ordinal(), output);
+      encodeNullableString(status.getDescription(), output);
+    }
+    Timestamp endTimestamp = spanData.getEndTimestamp();
+    if (endTimestamp == null) {
+      output.writeByte(ABSENT);
+    } else {
+      output.writeByte(PRESENT);
+      encodeTimestamp(endTimestamp, output);
+    }
+    return output.toByteArray();
+  }
+
+  /**
+   * Decodes a {@code SpanData} encoded by {@link #encode}.
+   *
+   * @param bytes the encoded {@code SpanData}.
+   * @return the decoded {@code SpanData}.
+   */
+  static SpanData decode(byte[] bytes) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    SpanContext context = decodeSpanContext(buffer);
+    SpanId parentSpanId = buffer.get() == PRESENT ? decodeSpanId(buffer) : null;
+    Boolean hasRemoteParent = buffer.get() == PRESENT ? buffer.get() != 0 : null;
+    String name = decodeString(buffer);
+    Kind kind = buffer.get() == PRESENT ? KINDS[VarInt.getVarInt(buffer)] : null;
+    Timestamp startTimestamp = decodeTimestamp(buffer);
+    Attributes attributes =
+        Attributes.create(decodeAttributeMap(buffer), VarInt.getVarInt(buffer));
+    TimedEvents<Annotation> annotations = decodeAnnotations(buffer);
+    TimedEvents<MessageEvent> messageEvents = decodeMessageEvents(buffer);
+    Links links = decodeLinks(buffer);
+    Integer childSpanCount = buffer.get() == PRESENT ? VarInt.getVarInt(buffer) : null;
+    Status status = null;
+    if (buffer.get() == PRESENT) {
+      status =
+          CANONICAL_CODES[VarInt.getVarInt(buffer)]
+              .toStatus()
+              .withDescription(decodeNullableString(buffer));
+    }
+    Timestamp endTimestamp = buffer.get() == PRESENT ? decodeTimestamp(buffer) : null;
+    return SpanData.create(
+        context,
+        parentSpanId,
+        hasRemoteParent,
+        name,
+        kind,
+        startTimestamp,
+        attributes,
+        annotations,
+        messageEvents,
+        links,
+        childSpanCount,
+        status,
+        endTimestamp);
+  }
+
+  private static void encodeSpanContext(SpanContext context, ByteArrayDataOutput output) {
+    output.write(context.getTraceId().getBytes());
+    output.write(context.getSpanId().getBytes());
+    output.writeByte(context.getTraceOptions().getByte());
+    List<Tracestate.Entry> entries = context.getTracestate().getEntries();
+    putVarInt(entries.size(), output);
+    for (Tracestate.Entry entry : entries) {
+      encodeString(entry.getKey(), output);
+      encodeString(entry.getValue(), output);
+    }
+  }
+
+  private static SpanContext decodeSpanContext(ByteBuffer buffer) {
+    byte[] traceId = new byte[TraceId.SIZE];
+    buffer.get(traceId);
+    SpanId spanId = decodeSpanId(buffer);
+    TraceOptions traceOptions = TraceOptions.fromByte(buffer.get());
+    int numEntries = VarInt.getVarInt(buffer);
+    List<Tracestate.Entry> entries = new ArrayList<Tracestate.Entry>(numEntries);
+    for (int i = 0; i < numEntries; i++) {
+      entries.add(Tracestate.Entry.create(decodeString(buffer), decodeString(buffer)));
+    }
+    // The builder adds each entry in front of the previous ones.
+    Tracestate.Builder tracestate = Tracestate.builder();
+    for (int i = numEntries - 1; i >= 0; i--) {
+      tracestate.set(entries.get(i).getKey(), entries.get(i).getValue());
+    }
+    return SpanContext.create(
+        TraceId.fromBytes(traceId), spanId, traceOptions, tracestate.build());
+  }
+
+  private static SpanId decodeSpanId(ByteBuffer buffer) {
+    byte[] spanId = new byte[SpanId.SIZE];
+    buffer.get(spanId);
+    return SpanId.fromBytes(spanId);
+  }
+
+  private static void encodeTimestamp(Timestamp timestamp, ByteArrayDataOutput output) {
+    output.writeLong(timestamp.getSeconds());
+    output.writeInt(timestamp.getNanos());
+  }
+
+  private static Timestamp decodeTimestamp(ByteBuffer buffer) {
+    long seconds = buffer.getLong();
+    return Timestamp.create(seconds, buffer.getInt());
+  }
+
+  private static void encodeAnnotations(
+      TimedEvents<Annotation> annotations, ByteArrayDataOutput output) {
+    putVarInt(annotations.getEvents().size(), output);
+    for (TimedEvent<Annotation> timedEvent : annotations.getEvents()) {
+      encodeTimestamp(timedEvent.getTimestamp(), output);
+      encodeString(timedEvent.getEvent().getDescription(), output);
+      encodeAttributeMap(timedEvent.getEvent().getAttributes(), output);
+    }
+    putVarInt(annotations.getDroppedEventsCount(), output);
+  }
+
+  private static TimedEvents<Annotation> decodeAnnotations(ByteBuffer buffer) {
+    int numEvents = VarInt.getVarInt(buffer);
+    List<TimedEvent<Annotation>> events = new ArrayList<TimedEvent<Annotation>>(numEvents);
+    for (int i = 0; i < numEvents; i++) {
+      Timestamp timestamp = decodeTimestamp(buffer);
+      String description = decodeString(buffer);
+      events.add(
+          TimedEvent.create(
+              timestamp,
+              Annotation.fromDescriptionAndAttributes(description, decodeAttributeMap(buffer))));
+    }
+    return TimedEvents.create(events, VarInt.getVarInt(buffer));
+  }
+
+  private static void encodeMessageEvents(
+      TimedEvents<MessageEvent> messageEvents, ByteArrayDataOutput output) {
+    putVarInt(messageEvents.getEvents().size(), output);
+    for (TimedEvent<MessageEvent> timedEvent : messageEvents.getEvents()) {
+      MessageEvent event = timedEvent.getEvent();
+      encodeTimestamp(timedEvent.getTimestamp(), output);
+      putVarInt(event.getType().ordinal(), output);
+      output.writeLong(event.getMessageId());
+      output.writeLong(event.getUncompressedMessageSize());
+      output.writeLong(event.getCompressedMessageSize());
+    }
+    putVarInt(messageEvents.getDroppedEventsCount(), output);
+  }
+
+  private static TimedEvents<MessageEvent> decodeMessageEvents(ByteBuffer buffer) {
+    int numEvents = VarInt.getVarInt(buffer);
+    List<TimedEvent<MessageEvent>> events = new ArrayList<TimedEvent<MessageEvent>>(numEvents);
+    for (int i = 0; i < numEvents; i++) {
+      Timestamp timestamp = decodeTimestamp(buffer);
+      MessageEvent.Type type = MESSAGE_EVENT_TYPES[VarInt.getVarInt(buffer)];
+      long messageId = buffer.getLong();
+      long uncompressedMessageSize = buffer.getLong();
+      long compressedMessageSize = buffer.getLong();
+      events.add(
+          TimedEvent.create(
+              timestamp,
+              MessageEvent.builder(type, messageId)
+                  .setUncompressedMessageSize(uncompressedMessageSize)
+                  .setCompressedMessageSize(compressedMessageSize)
+                  .build()));
+    }
+    return TimedEvents.create(events, VarInt.getVarInt(buffer));
+  }
+
+  private static void encodeLinks(Links links, ByteArrayDataOutput output) {
+    putVarInt(links.getLinks().size(), output);
+    for (Link link : links.getLinks()) {
+      output.write(link.getTraceId().getBytes());
+      output.write(link.getSpanId().getBytes());
+      putVarInt(link.getType().ordinal(), output);
+      encodeAttributeMap(link.getAttributes(), output);
+    }
+    putVarInt(links.getDroppedLinksCount(), output);
+  }
+
+  private static Links decodeLinks(ByteBuffer buffer) {
+    int numLinks = VarInt.getVarInt(buffer);
+    List<Link> links = new ArrayList<Link>(numLinks);
+    for (int i = 0; i < numLinks; i++) {
+      byte[] traceId = new byte[TraceId.SIZE];
+      buffer.get(traceId);
+      SpanId spanId = decodeSpanId(buffer);
+      Link.Type type = LINK_TYPES[VarInt.getVarInt(buffer)];
+      links.add(
+          Link.fromSpanContext(
+              SpanContext.create(TraceId.fromBytes(traceId), spanId, TraceOptions.DEFAULT),
+              type,
+              decodeAttributeMap(buffer)));
+    }
+    return Links.create(links, VarInt.getVarInt(buffer));
+  }
+
+  private static void encodeAttributeMap(
+      Map<String, AttributeValue> attributes, final ByteArrayDataOutput output) {
+    putVarInt(attributes.size(), output);
+    for (Map.Entry<String, AttributeValue> attribute : attributes.entrySet()) {
+      encodeString(attribute.getKey(), output);
+      attribute
+          .getValue()
+          .match(
+              new Function<String, Void>() {
+                @Override
+                public Void apply(String value) {
+                  output.writeByte(STRING_VALUE);
+                  encodeString(value, output);
+                  return null;
+                }
+              },
+              new Function<Boolean, Void>() {
+                @Override
+                public Void apply(Boolean value) {
+                  output.writeByte(BOOLEAN_VALUE);
+                  output.writeBoolean(value);
+                  return null;
+                }
+              },
+              new Function<Long, Void>() {
+                @Override
+                public Void apply(Long value) {
+                  output.writeByte(LONG_VALUE);
+                  output.writeLong(value);
+                  return null;
+                }
+              },
+              new Function<Double, Void>() {
+                @Override
+                public Void apply(Double value) {
+                  output.writeByte(DOUBLE_VALUE);
+                  output.writeDouble(value);
+                  return null;
+                }
+              },
+              Functions.</*@Nullable*/ Void>throwAssertionError());
+    }
+  }
+
+  private static Map<String, AttributeValue> decodeAttributeMap(ByteBuffer buffer) {
+    int numAttributes = VarInt.getVarInt(buffer);
+    Map<String, AttributeValue> attributes = new HashMap<String, AttributeValue>(numAttributes);
+    for (int i = 0; i < numAttributes; i++) {
+      String key = decodeString(buffer);
+      AttributeValue value;
+      byte valueType = buffer.get();
+      switch (valueType) {
+        case STRING_VALUE:
+          value = AttributeValue.stringAttributeValue(decodeString(buffer));
+          break;
+        case BOOLEAN_VALUE:
+          value = AttributeValue.booleanAttributeValue(buffer.get() != 0);
+          break;
+        case LONG_VALUE:
+          value = AttributeValue.longAttributeValue(buffer.getLong());
+          break;
+        case DOUBLE_VALUE:
+          value = AttributeValue.doubleAttributeValue(buffer.getDouble());
+          break;
+        default:
+          throw new AssertionError("Unknown attribute value type: " + valueType);
+      }
+      attributes.put(key, value);
+    }
+    return attributes;
+  }
+
+  private static void encodeString(String value, ByteArrayDataOutput output) {
+    byte[] bytes = value.getBytes(Charsets.UTF_8);
+    putVarInt(bytes.length, output);
+    output.write(bytes);
+  }
+
+  private static String decodeString(ByteBuffer buffer) {
+    byte[] bytes = new byte[VarInt.getVarInt(buffer)];
+    buffer.get(bytes);
+    return new String(bytes, Charsets.UTF_8);
+  }
+
+  private static void encodeNullableString(@Nullable String value, ByteArrayDataOutput output) {
+    if (value == null) {
+      output.writeByte(ABSENT);
+    } else {
+      output.writeByte(PRESENT);
+      encodeString(value, output);
+    }
+  }
+
+  @Nullable
+  private static String decodeNullableString(ByteBuffer buffer) {
+    return buffer.get() == PRESENT ? decodeString(buffer) : null;
+  }
+
+  private static void putVarInt(int value, ByteArrayDataOutput output) {
+    byte[] bytes = new byte[VarInt.varIntSize(value)];
+    VarInt.putVarInt(value, bytes, 0);
+    output.write(bytes);
+  }
+
+  private SpanDataCodec() {}
+}
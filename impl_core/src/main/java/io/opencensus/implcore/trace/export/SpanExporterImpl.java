@@ -16,28 +16,37 @@
 
 package io.opencensus.implcore.trace.export;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import com.google.common.annotations.VisibleForTesting;
 import io.opencensus.common.Duration;
 import io.opencensus.common.ToLongFunction;
-import io.opencensus.implcore.internal.CheckerFrameworkUtils;
 import io.opencensus.implcore.internal.DaemonThreadFactory;
 import io.opencensus.implcore.trace.RecordEventsSpanImpl;
 import io.opencensus.metrics.DerivedLongCumulative;
 import io.opencensus.metrics.DerivedLongGauge;
+import io.opencensus.metrics.LabelKey;
 import io.opencensus.metrics.LabelValue;
 import io.opencensus.metrics.MetricOptions;
 import io.opencensus.metrics.Metrics;
-import io.opencensus.trace.export.ExportComponent;
 import io.opencensus.trace.export.SpanData;
 import io.opencensus.trace.export.SpanExporter;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javax.annotation.concurrent.GuardedBy;
 
 /*>>>
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -45,7 +54,7 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 
 /** Implementation of the {@link SpanExporter}. */
 public final class SpanExporterImpl extends SpanExporter {
-  private static final Logger logger = Logger.getLogger(ExportComponent.class.getName());
+  private static final Logger logger = Logger.getLogger(SpanExporterImpl.class.getName());
   private static final DerivedLongCumulative droppedSpans =
       Metrics.getMetricRegistry()
           .addDerivedLongCumulative(
@@ -70,6 +79,22 @@ public final class SpanExporterImpl extends SpanExporter {
                   .setDescription("Current number of spans referenced by the exporter thread.")
                   .setUnit("1")
                   .build());
+  private static final DerivedLongCumulative handlerDroppedSpans =
+      Metrics.getMetricRegistry()
+          .addDerivedLongCumulative(
+              "oc_worker_handler_spans_dropped",
+              MetricOptions.builder()
+                  .setDescription(
+                      "Number of spans dropped because the handler was too far behind.")
+                  .setUnit("1")
+                  .setLabelKeys(
+                      Collections.singletonList(
+                          LabelKey.create("handler", "The name of the handler.")))
+                  .build());
+
+  // Number of batches that can wait for a handler before new batches are dropped for it. Like the
+  // 4 * bufferSize spans that the worker can reference.
+  private static final int MAX_QUEUED_BATCHES_PER_HANDLER = 4;
 
   private final Worker worker;
   private final Thread workerThread;
@@ -81,6 +106,9 @@ public final class SpanExporterImpl extends SpanExporter {
    * spans data. If the number of buffered SpanData objects is greater than {@code bufferSize} then
    * the thread wakes up sooner.
    *
+   * <p>Each registered handler exports the batches on its own thread, with its own queue of at most
+   * four batches. A handler that falls behind only drops its own batches.
+   *
    * @param bufferSize the size of the buffered span data.
    * @param scheduleDelay the maximum delay.
    */
@@ -109,6 +137,26 @@ public final class SpanExporterImpl extends SpanExporter {
     worker.unregisterHandler(name);
   }
 
+  /**
+   * Makes the handlers registered from now on spill to disk the batches they cannot keep up with,
+   * instead of dropping them, and export them again once they catch up. Each handler has its own
+   * log of spilled batches in a subdirectory of {@code directory}, named after the handler. The
+   * batches left there by a previous process are exported when the handler is registered.
+   *
+   * @param directory the directory of the spilled batches.
+   * @param maxBytesPerHandler the maximum number of bytes of the spilled batches of each handler.
+   * @param spilledSpansPerSecond the maximum number of spilled spans exported per second by each
+   *     handler.
+   * @throws IllegalArgumentException if {@code maxBytesPerHandler} or {@code
+   *     spilledSpansPerSecond} is not positive.
+   */
+  public void enableSpill(File directory, long maxBytesPerHandler, long spilledSpansPerSecond) {
+    checkNotNull(directory, "directory");
+    checkArgument(maxBytesPerHandler > 0, "maxBytesPerHandler must be positive");
+    checkArgument(spilledSpansPerSecond > 0, "spilledSpansPerSecond must be positive");
+    worker.enableSpill(directory, maxBytesPerHandler, spilledSpansPerSecond);
+  }
+
   void flush() {
     worker.flush();
   }
@@ -116,6 +164,7 @@ public final class SpanExporterImpl extends SpanExporter {
   void shutdown() {
     flush();
     workerThread.interrupt();
+    worker.stopHandlers();
   }
 
   private SpanExporterImpl(Worker worker) {
@@ -151,6 +200,18 @@ public final class SpanExporterImpl extends SpanExporter {
     }
   }
 
+  private enum ReportHandlerDroppedSpans implements ToLongFunction</*@Nullable*/ HandlerPipeline> {
+    INSTANCE;
+
+    @Override
+    public long applyAsLong(/*@Nullable*/ HandlerPipeline pipeline) {
+      if (pipeline == null) {
+        return 0;
+      }
+      return pipeline.getDroppedSpans();
+    }
+  }
+
   private static class ReportPushedSpans implements ToLongFunction</*@Nullable*/ Worker> {
     @Override
     public long applyAsLong(/*@Nullable*/ Worker worker) {
@@ -166,11 +227,26 @@ public final class SpanExporterImpl extends SpanExporter {
     return workerThread;
   }
 
-  @VisibleForTesting
-  long getDroppedSpans() {
+  /**
+   * Returns the number of spans dropped so far because the export queue was full.
+   *
+   * @return the number of spans dropped so far because the export queue was full.
+   */
+  public long getDroppedSpans() {
     return worker.getDroppedSpans();
   }
 
+  /**
+   * Returns the number of spans dropped so far because the export queue was full, or because a
+   * handler was too far behind, including by the handlers unregistered since. A span dropped by
+   * several handlers is counted once per handler.
+   *
+   * @return the number of spans dropped so far by the exporter and all its handlers.
+   */
+  public long getTotalDroppedSpans() {
+    return worker.getDroppedSpans() + worker.getAllHandlersDroppedSpans();
+  }
+
   @VisibleForTesting
   long getReferencedSpans() {
     return worker.getReferencedSpans();
@@ -181,180 +257,323 @@ public final class SpanExporterImpl extends SpanExporter {
     return worker.getPushedSpans();
   }
 
+  @VisibleForTesting
+  long getHandlerDroppedSpans(String name) {
+    return worker.getHandlerDroppedSpans(name);
+  }
+
   // Worker in a thread that batches multiple span data and calls the registered services to export
   // that data.
   //
   // The map of registered handlers is implemented using ConcurrentHashMap ensuring full
   // concurrency of retrievals and adjustable expected concurrency for updates. Retrievals
   // reflect the results of the most recently completed update operations held upon their onset.
+  // Each handler has its own HandlerPipeline, and the worker thread only hands the batches over.
   //
-  // The list of batched data is protected by an explicit monitor object which ensures full
-  // concurrency.
+  // The batched spans are handed over through a lock-free queue, so producers never block each
+  // other nor the worker thread. The number of referenced spans, queued or being exported, is
+  // bounded by maxReferencedSpans, which is also the capacity of the queue.
   private static final class Worker implements Runnable {
-    private final Object monitor = new Object();
-
-    @GuardedBy("monitor")
-    private final List<RecordEventsSpanImpl> spans;
-
-    @GuardedBy("monitor")
-    private long referencedSpans = 0;
+    private final SpanQueue spans;
+    private final AtomicLong referencedSpans = new AtomicLong();
+    private final AtomicLong droppedSpans = new AtomicLong();
+    private final AtomicLong allHandlersDroppedSpans = new AtomicLong();
+    private final AtomicLong pushedSpans = new AtomicLong();
+
+    // Set by the producer that wakes up the worker thread when bufferSize spans are queued, and
+    // cleared by the worker thread before it exports them, so that it is only woken up once.
+    private final AtomicBoolean wakeUpRequested = new AtomicBoolean();
+    @javax.annotation.Nullable private volatile Thread workerThread;
+
+    // Held while taking spans out of the queue, which only supports one consumer at a time, e.g.
+    // when flush() is called while the worker thread exports.
+    private final Object drainLock = new Object();
+
+    private final Map<String, HandlerPipeline> serviceHandlers = new ConcurrentHashMap<>();
+
+    // The spill logs outlive the pipelines, so that a handler registered again exports the batches
+    // spilled before. Guarded by serviceHandlers, like the spill settings.
+    private final Map<String, SpanSpillLog> spillLogs = new HashMap<>();
+    @javax.annotation.Nullable private File spillDirectory;
+    private long spillMaxBytes;
+    private long spilledSpansPerSecond = 1;
 
-    @GuardedBy("monitor")
-    private long droppedSpans = 0;
-
-    @GuardedBy("monitor")
-    private long pushedSpans = 0;
-
-    private final Map<String, Handler> serviceHandlers = new ConcurrentHashMap<>();
     private final int bufferSize;
     private final long maxReferencedSpans;
-    private final long scheduleDelayMillis;
+    private final long scheduleDelayNanos;
 
     // See SpanExporterImpl#addSpan.
     private void addSpan(RecordEventsSpanImpl span) {
-      synchronized (monitor) {
-        if (referencedSpans == maxReferencedSpans) {
-          droppedSpans++;
-          return;
+      if (!tryReferenceSpan()) {
+        droppedSpans.incrementAndGet();
+        return;
+      }
+      long queuedSpans = spans.offer(span);
+      if (queuedSpans >= bufferSize
+          && !wakeUpRequested.get()
+          && wakeUpRequested.compareAndSet(false, true)) {
+        Thread thread = workerThread;
+        if (thread != null) {
+          LockSupport.unpark(thread);
         }
-        this.spans.add(span);
-        referencedSpans++;
-        if (spans.size() >= bufferSize) {
-          monitor.notifyAll();
+      }
+    }
+
+    // Reserves room for one more span, unless maxReferencedSpans are already referenced.
+    private boolean tryReferenceSpan() {
+      while (true) {
+        long current = referencedSpans.get();
+        if (current >= maxReferencedSpans) {
+          return false;
+        }
+        if (referencedSpans.compareAndSet(current, current + 1)) {
+          return true;
         }
       }
     }
 
     // See SpanExporter#registerHandler.
     private void registerHandler(String name, Handler serviceHandler) {
-      serviceHandlers.put(name, serviceHandler);
+      List<LabelValue> labelValues = Collections.singletonList(LabelValue.create(name));
+      synchronized (serviceHandlers) {
+        HandlerPipeline pipeline =
+            new HandlerPipeline(
+                name,
+                serviceHandler,
+                MAX_QUEUED_BATCHES_PER_HANDLER,
+                getSpillLog(name),
+                spilledSpansPerSecond,
+                allHandlersDroppedSpans);
+        HandlerPipeline previous = serviceHandlers.put(name, pipeline);
+        if (previous != null) {
+          previous.stop();
+          handlerDroppedSpans.removeTimeSeries(labelValues);
+        }
+        handlerDroppedSpans.createTimeSeries(
+            labelValues, pipeline, ReportHandlerDroppedSpans.INSTANCE);
+      }
     }
 
     // See SpanExporter#unregisterHandler.
     private void unregisterHandler(String name) {
-      serviceHandlers.remove(name);
+      synchronized (serviceHandlers) {
+        HandlerPipeline pipeline = serviceHandlers.remove(name);
+        if (pipeline != null) {
+          pipeline.stop();
+          handlerDroppedSpans.removeTimeSeries(Collections.singletonList(LabelValue.create(name)));
+        }
+      }
+    }
+
+    private void stopHandlers() {
+      synchronized (serviceHandlers) {
+        for (HandlerPipeline pipeline : serviceHandlers.values()) {
+          pipeline.stop();
+        }
+        for (SpanSpillLog spillLog : spillLogs.values()) {
+          spillLog.close();
+        }
+      }
+    }
+
+    // See SpanExporterImpl#enableSpill.
+    private void enableSpill(File directory, long maxBytes, long spilledSpansPerSecond) {
+      synchronized (serviceHandlers) {
+        this.spillDirectory = directory;
+        this.spillMaxBytes = maxBytes;
+        this.spilledSpansPerSecond = spilledSpansPerSecond;
+      }
+    }
+
+    // Returns the spill log of the handler, or null if spilling is not enabled or the log cannot be
+    // opened.
+    @javax.annotation.Nullable
+    private SpanSpillLog getSpillLog(String name) {
+      File directory = spillDirectory;
+      if (directory == null) {
+        return null;
+      }
+      SpanSpillLog spillLog = spillLogs.get(name);
+      if (spillLog == null) {
+        File handlerDirectory = new File(directory, name.replaceAll("[^A-Za-z0-9._-]", "_"));
+        try {
+          spillLog = SpanSpillLog.open(handlerDirectory, spillMaxBytes);
+        } catch (IOException e) {
+          logger.log(Level.WARNING, "Cannot spill the spans of the handler " + name, e);
+          return null;
+        }
+        spillLogs.put(name, spillLog);
+      }
+      return spillLog;
     }
 
-    // Exports the list of SpanData to all the ServiceHandlers.
+    private long getHandlerDroppedSpans(String name) {
+      HandlerPipeline pipeline = serviceHandlers.get(name);
+      return pipeline == null ? 0 : pipeline.getDroppedSpans();
+    }
+
+    // Hands the list of SpanData over to all the ServiceHandlers.
     private void onBatchExport(List<SpanData> spanDataList) {
-      // From the java documentation of the ConcurrentHashMap#entrySet():
+      // From the java documentation of the ConcurrentHashMap#values():
       // The view's iterator is a "weakly consistent" iterator that will never throw
       // ConcurrentModificationException, and guarantees to traverse elements as they existed
       // upon construction of the iterator, and may (but is not guaranteed to) reflect any
       // modifications subsequent to construction.
-      for (Map.Entry<String, Handler> it : serviceHandlers.entrySet()) {
-        // In case of any exception thrown by the service handlers continue to run.
-        try {
-          it.getValue().export(spanDataList);
-        } catch (Throwable e) {
-          logger.log(Level.WARNING, "Exception thrown by the service export " + it.getKey(), e);
-        }
+      for (HandlerPipeline pipeline : serviceHandlers.values()) {
+        pipeline.offer(spanDataList);
       }
     }
 
     private Worker(int bufferSize, Duration scheduleDelay) {
-      spans = new ArrayList<>(bufferSize);
       this.bufferSize = bufferSize;
       // We notify the worker thread when bufferSize elements in the queue, so we will most likely
       // have to process more than bufferSize elements but less than 2 * bufferSize in that cycle.
       // During the processing time we want to allow the same amount of elements to be queued.
       // So we need to have 4 * bufferSize maximum elements referenced as an estimate.
       this.maxReferencedSpans = 4L * bufferSize;
-      this.scheduleDelayMillis = scheduleDelay.toMillis();
+      this.spans = new SpanQueue((int) maxReferencedSpans);
+      this.scheduleDelayNanos = TimeUnit.MILLISECONDS.toNanos(scheduleDelay.toMillis());
     }
 
     @Override
     public void run() {
+      workerThread = Thread.currentThread();
       while (true) {
-        // Copy all the batched spans in a separate list to release the monitor lock asap to
-        // avoid blocking the producer thread.
-        ArrayList<RecordEventsSpanImpl> spansCopy;
-        synchronized (monitor) {
-          if (spans.size() < bufferSize) {
-            do {
-              // In the case of a spurious wakeup we export only if we have at least one span in
-              // the batch. It is acceptable because batching is a best effort mechanism here.
-              try {
-                monitor.wait(scheduleDelayMillis);
-              } catch (InterruptedException ie) {
-                // Preserve the interruption status as per guidance and stop doing any work.
-                Thread.currentThread().interrupt();
-                return;
-              }
-            } while (spans.isEmpty());
+        if (!awaitSpans()) {
+          return;
+        }
+        wakeUpRequested.set(false);
+        exportBatches();
+      }
+    }
+
+    // Waits until bufferSize spans are queued, or until the schedule delay elapsed with at least
+    // one span queued. A zero schedule delay waits for bufferSize spans. Returns false if the
+    // worker thread was interrupted.
+    private boolean awaitSpans() {
+      long deadlineNanos = System.nanoTime() + scheduleDelayNanos;
+      while (spans.size() < bufferSize) {
+        if (scheduleDelayNanos == 0) {
+          LockSupport.park(this);
+        } else {
+          long remainingNanos = deadlineNanos - System.nanoTime();
+          if (remainingNanos <= 0) {
+            if (spans.size() > 0) {
+              break;
+            }
+            // Export only if we have at least one span in the batch. It is acceptable because
+            // batching is a best effort mechanism here.
+            deadlineNanos = System.nanoTime() + scheduleDelayNanos;
+            remainingNanos = scheduleDelayNanos;
           }
-          spansCopy = new ArrayList<>(spans);
-          spans.clear();
+          LockSupport.parkNanos(this, remainingNanos);
+        }
+        if (Thread.currentThread().isInterrupted()) {
+          // Preserve the interruption status as per guidance and stop doing any work.
+          return false;
         }
-        // Execute the batch export outside the synchronized to not block all producers.
-        exportBatches(spansCopy);
       }
+      return true;
     }
 
+    // Exports the queued spans, and waits until every handler exported them.
     private void flush() {
-      ArrayList<RecordEventsSpanImpl> spansCopy;
-      synchronized (monitor) {
-        spansCopy = new ArrayList<>(spans);
-        spans.clear();
+      exportBatches();
+      for (HandlerPipeline pipeline : serviceHandlers.values()) {
+        pipeline.awaitExported();
       }
-      // Execute the batch export outside the synchronized to not block all producers.
-      exportBatches(spansCopy);
     }
 
     private long getDroppedSpans() {
-      synchronized (monitor) {
-        return droppedSpans;
-      }
+      return droppedSpans.get();
+    }
+
+    private long getAllHandlersDroppedSpans() {
+      return allHandlersDroppedSpans.get();
     }
 
     private long getReferencedSpans() {
-      synchronized (monitor) {
-        return referencedSpans;
-      }
+      return referencedSpans.get();
     }
 
     private long getPushedSpans() {
-      synchronized (monitor) {
-        return pushedSpans;
-      }
+      return pushedSpans.get();
     }
 
-    private void exportBatches(ArrayList<RecordEventsSpanImpl> spansCopy) {
-      ArrayList<SpanData> spanDataList = new ArrayList<>(bufferSize);
-      for (int i = 0; i < spansCopy.size(); i++) {
-        spanDataList.add(spansCopy.get(i).toSpanData());
-
-        // Remove the reference to the RecordEventsSpanImpl to allow GC to free the memory.
-        // TODO: Refactor the handling of the spans list to remove this call to castNonNull. Setting
-        // the elements to null after they are read is safe because 'exportBatches' is only ever
-        // called on a copy of 'spans', and the copy is not reused.
-        spansCopy.set(i, (RecordEventsSpanImpl) CheckerFrameworkUtils.castNonNull(null));
-
-        if (spanDataList.size() == bufferSize) {
-          // One full batch, export it now. Wrap the list with unmodifiableList to ensure exporter
-          // does not change the list.
-          onBatchExport(Collections.unmodifiableList(spanDataList));
-          // Cannot clear because the exporter may still have a reference to this list (e.g. async
-          // scheduled work), so just create a new list.
-          spanDataList = new ArrayList<>(bufferSize);
-          // We removed reference for bufferSize Spans.
-          synchronized (monitor) {
-            referencedSpans -= bufferSize;
-            pushedSpans += bufferSize;
+    // Exports the spans queued when this method is called, in batches of at most bufferSize.
+    // Spans queued meanwhile are left for the next cycle, so that fast producers cannot keep the
+    // worker thread exporting forever.
+    private void exportBatches() {
+      long spansToExport = spans.size();
+      while (spansToExport > 0) {
+        List<SpanData> spanDataList;
+        synchronized (drainLock) {
+          int batchSize = (int) Math.min(Math.min(spansToExport, bufferSize), spans.size());
+          if (batchSize == 0) {
+            // Another thread exported them.
+            return;
+          }
+          spanDataList = new ArrayList<>(batchSize);
+          for (int i = 0; i < batchSize; i++) {
+            spanDataList.add(spans.poll().toSpanData());
           }
         }
-      }
-      // Last incomplete batch, send this as well.
-      if (!spanDataList.isEmpty()) {
-        // Wrap the list with unmodifiableList to ensure exporter does not change the list.
+        // Execute the batch export outside the lock to not block the worker thread or a flush().
+        // The list cannot be reused because the exporters may still have a reference to it (e.g.
+        // queued in their pipeline), so it is sized to the batch. Wrap the list with
+        // unmodifiableList to ensure exporters do not change the list they share.
         onBatchExport(Collections.unmodifiableList(spanDataList));
-        // We removed reference for spanDataList.size() Spans.
-        synchronized (monitor) {
-          referencedSpans -= spanDataList.size();
-          pushedSpans += spanDataList.size();
-        }
-        spanDataList.clear();
+        // We removed reference for spanDataList.size() Spans. Pushed first, so that the spans are
+        // always counted as referenced or pushed.
+        pushedSpans.addAndGet(spanDataList.size());
+        referencedSpans.addAndGet(-spanDataList.size());
+        spansToExport -= spanDataList.size();
       }
     }
   }
+
+  // A queue of spans with many producers and one consumer at a time, backed by a ring buffer.
+  // Producers must not offer more spans than the capacity of the queue minus the spans still
+  // queued, which the Worker guarantees by bounding the number of referenced spans.
+  private static final class SpanQueue {
+    private final AtomicReferenceArray<RecordEventsSpanImpl> ring;
+    private final int mask;
+    // Index of the next slot to be claimed by a producer.
+    private final AtomicLong tail = new AtomicLong();
+    // Index of the next slot to be read, only written by the consumer.
+    private volatile long head = 0;
+
+    private SpanQueue(int capacity) {
+      int ringSize = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+      this.ring = new AtomicReferenceArray<RecordEventsSpanImpl>(ringSize);
+      this.mask = ringSize - 1;
+    }
+
+    // Adds a span and returns the number of queued spans, including this one.
+    private long offer(RecordEventsSpanImpl span) {
+      long index = tail.getAndIncrement();
+      ring.lazySet((int) (index & mask), span);
+      return index + 1 - head;
+    }
+
+    // Removes and returns the oldest span. Must only be called when size() is positive.
+    private RecordEventsSpanImpl poll() {
+      int slot = (int) (head & mask);
+      RecordEventsSpanImpl span = ring.get(slot);
+      while (span == null) {
+        // A producer claimed the slot but did not store its span yet.
+        Thread.yield();
+        span = ring.get(slot);
+      }
+      // Remove the reference to the RecordEventsSpanImpl to allow GC to free the memory.
+      ring.lazySet(slot, null);
+      head = head + 1;
+      return span;
+    }
+
+    // Returns the number of spans claimed by producers and not polled yet.
+    private long size() {
+      return tail.get() - head;
+    }
+  }
 }
@@ -0,0 +1,496 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.trace.export;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.opencensus.implcore.internal.DaemonThreadFactory;
+import io.opencensus.trace.export.SpanData;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * An append-only log of batches of {@link SpanData}, kept in memory-mapped segment files in a
+ * directory, so that the batches that a handler cannot keep up with are kept until it catches up,
+ * including across a restart of the process.
+ *
+ * <p>Each segment starts with a header, followed by one record per batch: the length of the
+ * encoded batch, its CRC32 and the encoded batch. The length is written last, so that a record
+ * interrupted by a crash is ignored. A consumed record is marked by negating its length, so that
+ * it is not replayed after a restart, and a segment is deleted once all its records are consumed.
+ *
+ * <p>New batches are refused once the segments would take more than the given number of bytes.
+ *
+ * <p>Batches appended with {@link #appendAsync} are encoded by the caller and written to the
+ * segments by the writer thread of the log, so that the caller never waits for the disk. At most
+ * one segment of encoded batches waits for the writer thread, further batches are refused.
+ */
+@ThreadSafe
+final class SpanSpillLog {
+  private static final Logger logger = Logger.getLogger(SpanSpillLog.class.getName());
+
+  private static final int MAGIC = 0x4f435350;
+  // Changed whenever the format of the records or of SpanDataCodec changes.
+  private static final int VERSION = 1;
+  private static final int SEGMENT_HEADER_BYTES = 8;
+  private static final int RECORD_HEADER_BYTES = 8;
+  private static final String SEGMENT_SUFFIX = ".spill";
+  private static final int MAX_SEGMENT_BYTES = 4 * 1024 * 1024;
+
+  // Marks the end of the pending records, once the log is closed. Compared by identity.
+  private static final PendingRecord END_OF_RECORDS = new PendingRecord(new byte[0], 0, null);
+
+  private final File directory;
+  private final int segmentBytes;
+  private final int maxSegments;
+
+  // The records waiting for the writer thread, and their total number of bytes. The bytes are
+  // released once a record is written, so that isEmpty() sees every record written or pending.
+  private final BlockingQueue<PendingRecord> pendingRecords =
+      new LinkedBlockingQueue<PendingRecord>();
+  private final AtomicLong pendingBytes = new AtomicLong();
+
+  // Guards the hand-over to the writer thread, and is never held while writing to the segments.
+  private final Object writerLock = new Object();
+
+  @GuardedBy("writerLock")
+  @Nullable
+  private Thread writerThread;
+
+  @GuardedBy("writerLock")
+  private boolean writerClosed = false;
+
+  @GuardedBy("this")
+  private final Deque<Segment> segments = new ArrayDeque<Segment>();
+
+  @GuardedBy("this")
+  private long nextSegmentId;
+
+  @GuardedBy("this")
+  private boolean closed = false;
+
+  private SpanSpillLog(File directory, int segmentBytes, int maxSegments) {
+    this.directory = directory;
+    this.segmentBytes = segmentBytes;
+    this.maxSegments = maxSegments;
+  }
+
+  /**
+   * Opens the log in the given directory, creating the directory if needed. The batches left in
+   * the directory by a previous log are replayed first.
+   *
+   * @param directory the directory of the segment files.
+   * @param maxBytes the maximum number of bytes of the segment files.
+   * @return the log.
+   * @throws IOException if the directory cannot be created or read.
+   */
+  static SpanSpillLog open(File directory, long maxBytes) throws IOException {
+    int segmentBytes = (int) Math.min(MAX_SEGMENT_BYTES, maxBytes);
+    return open(directory, segmentBytes, (int) Math.max(1, maxBytes / segmentBytes));
+  }
+
+  @VisibleForTesting
+  static SpanSpillLog open(File directory, int segmentBytes, int maxSegments) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create the spill directory " + directory);
+    }
+    SpanSpillLog log = new SpanSpillLog(directory, segmentBytes, maxSegments);
+    log.recoverSegments();
+    return log;
+  }
+
+  /**
+   * Appends a batch to the log.
+   *
+   * @param batch the batch to append.
+   * @return {@code true} if the batch was appended, {@code false} if the log is full or closed.
+   */
+  @VisibleForTesting
+  boolean append(List<SpanData> batch) {
+    return write(encode(batch));
+  }
+
+  /**
+   * Hands a batch over to the writer thread of the log, which appends it.
+   *
+   * @param batch the batch to append.
+   * @param listener notified if the writer thread cannot append the batch.
+   * @return {@code true} if the batch was handed over, {@code false} if too many bytes are already
+   *     waiting for the writer thread, or if the log is closed.
+   */
+  boolean appendAsync(List<SpanData> batch, RefusedBatchListener listener) {
+    byte[] record = encode(batch);
+    if (pendingBytes.addAndGet(record.length) > segmentBytes) {
+      pendingBytes.addAndGet(-record.length);
+      return false;
+    }
+    synchronized (writerLock) {
+      if (writerClosed) {
+        pendingBytes.addAndGet(-record.length);
+        return false;
+      }
+      if (writerThread == null) {
+        writerThread =
+            new DaemonThreadFactory("ExportComponent.SpillWriterThread." + directory.getName())
+                .newThread(new Writer());
+        writerThread.start();
+      }
+      pendingRecords.add(new PendingRecord(record, batch.size(), listener));
+    }
+    return true;
+  }
+
+  private static byte[] encode(List<SpanData> batch) {
+    ByteArrayDataOutput output = ByteStreams.newDataOutput();
+    output.writeInt(batch.size());
+    for (SpanData spanData : batch) {
+      byte[] encoded = SpanDataCodec.encode(spanData);
+      output.writeInt(encoded.length);
+      output.write(encoded);
+    }
+    return output.toByteArray();
+  }
+
+  private boolean write(byte[] record) {
+    if (RECORD_HEADER_BYTES + record.length > segmentBytes - SEGMENT_HEADER_BYTES) {
+      return false;
+    }
+    CRC32 crc = new CRC32();
+    crc.update(record);
+    synchronized (this) {
+      if (closed) {
+        return false;
+      }
+      Segment segment = segments.peekLast();
+      if (segment == null
+          || segment.sealed
+          || segment.writePosition + RECORD_HEADER_BYTES + record.length > segmentBytes) {
+        if (segment != null) {
+          segment.sealed = true;
+        }
+        removeConsumedSegments();
+        if (segments.size() >= maxSegments) {
+          return false;
+        }
+        try {
+          segment = createSegment();
+        } catch (IOException e) {
+          logger.log(Level.WARNING, "Cannot create a spill segment in " + directory, e);
+          return false;
+        }
+        segments.addLast(segment);
+      }
+      segment.write(record, (int) crc.getValue());
+      return true;
+    }
+  }
+
+  /**
+   * Removes the oldest batch from the log.
+   *
+   * @return the oldest batch, or {@code null} if the log is empty.
+   */
+  @Nullable
+  List<SpanData> poll() {
+    byte[] record;
+    synchronized (this) {
+      record = pollRecord();
+    }
+    if (record == null) {
+      return null;
+    }
+    // Decoded outside of the lock, so that appending does not wait for it.
+    ByteBuffer buffer = ByteBuffer.wrap(record);
+    int spans = buffer.getInt();
+    List<SpanData> batch = new ArrayList<SpanData>(spans);
+    for (int i = 0; i < spans; i++) {
+      byte[] encoded = new byte[buffer.getInt()];
+      buffer.get(encoded);
+      batch.add(SpanDataCodec.decode(encoded));
+    }
+    return batch;
+  }
+
+  /** Returns {@code true} if the log has no batch, written or waiting for the writer thread. */
+  synchronized boolean isEmpty() {
+    if (pendingBytes.get() > 0) {
+      return false;
+    }
+    for (Segment segment : segments) {
+      if (segment.readPosition < segment.writePosition) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Waits until the writer thread appended the batches handed over to it, writes the segments to
+   * disk, and refuses new batches.
+   */
+  void close() {
+    Thread writer;
+    synchronized (writerLock) {
+      writerClosed = true;
+      writer = writerThread;
+      if (writer != null) {
+        pendingRecords.add(END_OF_RECORDS);
+      }
+    }
+    if (writer != null) {
+      Uninterruptibles.joinUninterruptibly(writer);
+    }
+    synchronized (this) {
+      closed = true;
+      for (Segment segment : segments) {
+        segment.buffer.force();
+      }
+    }
+  }
+
+  /** Notified of the batches handed over to the writer thread that it could not append. */
+  interface RefusedBatchListener {
+    void onRefused(int spans);
+  }
+
+  // Appends the pending records, until the log is closed.
+  private final class Writer implements Runnable {
+    @Override
+    public void run() {
+      while (true) {
+        PendingRecord pendingRecord;
+        try {
+          pendingRecord = pendingRecords.take();
+        } catch (InterruptedException e) {
+          // Preserve the interruption status as per guidance and stop doing any work.
+          Thread.currentThread().interrupt();
+          return;
+        }
+        if (pendingRecord == END_OF_RECORDS) {
+          return;
+        }
+        boolean written = write(pendingRecord.record);
+        pendingBytes.addAndGet(-pendingRecord.record.length);
+        if (!written && pendingRecord.listener != null) {
+          pendingRecord.listener.onRefused(pendingRecord.spans);
+        }
+      }
+    }
+  }
+
+  private static final class PendingRecord {
+    private final byte[] record;
+    private final int spans;
+    @Nullable private final RefusedBatchListener listener;
+
+    private PendingRecord(byte[] record, int spans, @Nullable RefusedBatchListener listener) {
+      this.record = record;
+      this.spans = spans;
+      this.listener = listener;
+    }
+  }
+
+  @GuardedBy("this")
+  @Nullable
+  private byte[] pollRecord() {
+    while (true) {
+      removeConsumedSegments();
+      Segment segment = segments.peekFirst();
+      if (segment == null || segment.readPosition >= segment.writePosition) {
+        return null;
+      }
+      byte[] record = segment.read();
+      if (record != null) {
+        return record;
+      }
+    }
+  }
+
+  @GuardedBy("this")
+  private void removeConsumedSegments() {
+    Segment segment;
+    while ((segment = segments.peekFirst()) != null
+        && segment.sealed
+        && segment.readPosition >= segment.writePosition) {
+      segments.removeFirst();
+      delete(segment.file);
+    }
+  }
+
+  @GuardedBy("this")
+  private Segment createSegment() throws IOException {
+    File file = segmentFile(nextSegmentId++);
+    MappedByteBuffer buffer = map(file, segmentBytes);
+    buffer.putInt(0, MAGIC);
+    buffer.putInt(4, VERSION);
+    return new Segment(file, buffer, SEGMENT_HEADER_BYTES, SEGMENT_HEADER_BYTES);
+  }
+
+  // Loads the segments left by a previous log. They are all sealed, new batches go to new segments.
+  private synchronized void recoverSegments() throws IOException {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      throw new IOException("Cannot list the spill directory " + directory);
+    }
+    List<Long> ids = new ArrayList<Long>();
+    for (File file : files) {
+      String name = file.getName();
+      if (name.endsWith(SEGMENT_SUFFIX)) {
+        try {
+          ids.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+        } catch (NumberFormatException e) {
+          // Not a segment.
+        }
+      }
+    }
+    Long[] sortedIds = ids.toArray(new Long[0]);
+    Arrays.sort(sortedIds);
+    for (Long id : sortedIds) {
+      nextSegmentId = id + 1;
+      Segment segment = recoverSegment(segmentFile(id));
+      if (segment == null) {
+        continue;
+      }
+      segment.sealed = true;
+      segments.addLast(segment);
+    }
+  }
+
+  @Nullable
+  private static Segment recoverSegment(File file) throws IOException {
+    long length = file.length();
+    if (length < SEGMENT_HEADER_BYTES || length > Integer.MAX_VALUE) {
+      delete(file);
+      return null;
+    }
+    MappedByteBuffer buffer = map(file, (int) length);
+    if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+      logger.log(Level.WARNING, "Ignoring the spill segment " + file + " of another version.");
+      delete(file);
+      return null;
+    }
+    int readPosition = -1;
+    int position = SEGMENT_HEADER_BYTES;
+    while (position + RECORD_HEADER_BYTES <= length) {
+      int recordLength = buffer.getInt(position);
+      if (recordLength == 0
+          || Math.abs((long) recordLength) > length - position - RECORD_HEADER_BYTES) {
+        break;
+      }
+      if (recordLength > 0 && readPosition < 0) {
+        readPosition = position;
+      }
+      position += RECORD_HEADER_BYTES + Math.abs(recordLength);
+    }
+    if (readPosition < 0) {
+      // Every record was consumed.
+      delete(file);
+      return null;
+    }
+    return new Segment(file, buffer, readPosition, position);
+  }
+
+  private File segmentFile(long id) {
+    return new File(directory, String.format("%020d%s", id, SEGMENT_SUFFIX));
+  }
+
+  private static MappedByteBuffer map(File file, int length) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      randomAccessFile.setLength(length);
+      // The mapping stays valid after the file is closed.
+      return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+  private static void delete(File file) {
+    // May fail while the file is still mapped on some platforms, its records are marked consumed.
+    if (!file.delete()) {
+      logger.log(Level.FINE, "Cannot delete the spill segment " + file);
+    }
+  }
+
+  private static final class Segment {
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private int readPosition;
+    private int writePosition;
+    // No more records are appended to a sealed segment.
+    private boolean sealed = false;
+
+    private Segment(File file, MappedByteBuffer buffer, int readPosition, int writePosition) {
+      this.file = file;
+      this.buffer = buffer;
+      this.readPosition = readPosition;
+      this.writePosition = writePosition;
+    }
+
+    private void write(byte[] record, int crc) {
+      ByteBuffer target = buffer.duplicate();
+      target.position(writePosition + 4);
+      target.putInt(crc);
+      target.put(record);
+      buffer.putInt(writePosition, record.length);
+      writePosition += RECORD_HEADER_BYTES + record.length;
+    }
+
+    // Returns the next record and marks it consumed, or null if it is consumed or corrupted.
+    @Nullable
+    private byte[] read() {
+      int position = readPosition;
+      int recordLength = buffer.getInt(position);
+      readPosition += RECORD_HEADER_BYTES + Math.abs(recordLength);
+      if (recordLength < 0) {
+        return null;
+      }
+      buffer.putInt(position, -recordLength);
+      byte[] record = new byte[recordLength];
+      ByteBuffer source = buffer.duplicate();
+      source.position(position + RECORD_HEADER_BYTES);
+      source.get(record);
+      CRC32 crc = new CRC32();
+      crc.update(record);
+      if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+        logger.log(Level.WARNING, "Ignoring a corrupted record in the spill segment " + file);
+        return null;
+      }
+      return record;
+    }
+  }
+}
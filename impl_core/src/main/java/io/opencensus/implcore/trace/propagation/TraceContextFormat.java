@@ -20,7 +20,6 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.Splitter;
 import io.opencensus.trace.SpanContext;
 import io.opencensus.trace.SpanId;
 import io.opencensus.trace.TraceId;
@@ -31,7 +30,6 @@ import io.opencensus.trace.propagation.TextFormat;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.regex.Pattern;
 
 /*>>>
 import org.checkerframework.checker.nullness.qual.NonNull;
@@ -40,6 +38,11 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 /**
  * Implementation of the TraceContext propagation protocol. See <a
  * href=https://github.com/w3c/distributed-tracing>w3c/distributed-tracing</a>.
+ *
+ * <p>The last injected {@code Tracestate} and the last extracted {@code tracestate} header are
+ * cached with their encoding, because child spans share the {@code Tracestate} of their parent and
+ * callers often send the same {@code tracestate} header, so that propagating the same state again
+ * does not encode or parse it again.
  */
 public class TraceContextFormat extends TextFormat {
   private static final Tracestate TRACESTATE_DEFAULT = Tracestate.builder().build();
@@ -61,12 +64,14 @@ public class TraceContextFormat extends TextFormat {
   private static final int TRACE_OPTION_OFFSET =
       SPAN_ID_OFFSET + SPAN_ID_HEX_SIZE + TRACEPARENT_DELIMITER_SIZE;
   private static final int TRACEPARENT_HEADER_SIZE = TRACE_OPTION_OFFSET + TRACE_OPTION_HEX_SIZE;
-  private static final int TRACESTATE_MAX_SIZE = 512;
   private static final int TRACESTATE_MAX_MEMBERS = 32;
   private static final char TRACESTATE_KEY_VALUE_DELIMITER = '=';
   private static final char TRACESTATE_ENTRY_DELIMITER = ',';
-  private static final Splitter TRACESTATE_ENTRY_DELIMITER_SPLITTER =
-      Splitter.on(Pattern.compile("[ \t]*" + TRACESTATE_ENTRY_DELIMITER + "[ \t]*"));
+
+  private volatile TracestateHeader lastInjectedTracestate =
+      new TracestateHeader(TRACESTATE_DEFAULT, "");
+  private volatile TracestateHeader lastExtractedTracestate =
+      new TracestateHeader(TRACESTATE_DEFAULT, "");
 
   @Override
   public List<String> fields() {
@@ -89,22 +94,18 @@ public class TraceContextFormat extends TextFormat {
     chars[TRACE_OPTION_OFFSET - 1] = TRACEPARENT_DELIMITER;
     spanContext.getTraceOptions().copyLowerBase16To(chars, TRACE_OPTION_OFFSET);
     setter.put(carrier, TRACEPARENT, new String(chars));
-    List<Tracestate.Entry> entries = spanContext.getTracestate().getEntries();
-    if (entries.isEmpty()) {
+    Tracestate tracestate = spanContext.getTracestate();
+    if (tracestate.getEntries().isEmpty()) {
       // No need to add an empty "tracestate" header.
       return;
     }
-    StringBuilder stringBuilder = new StringBuilder(TRACESTATE_MAX_SIZE);
-    for (Tracestate.Entry entry : entries) {
-      if (stringBuilder.length() != 0) {
-        stringBuilder.append(TRACESTATE_ENTRY_DELIMITER);
-      }
-      stringBuilder
-          .append(entry.getKey())
-          .append(TRACESTATE_KEY_VALUE_DELIMITER)
-          .append(entry.getValue());
+    TracestateHeader cached = lastInjectedTracestate;
+    // Compared by identity first, because spans usually share the Tracestate of their parent.
+    if (cached.tracestate != tracestate && !cached.tracestate.equals(tracestate)) {
+      cached = new TracestateHeader(tracestate, encodeTracestate(tracestate));
+      lastInjectedTracestate = cached;
     }
-    setter.put(carrier, TRACESTATE, stringBuilder.toString());
+    setter.put(carrier, TRACESTATE, cached.header);
   }
 
   @Override
@@ -143,22 +144,93 @@ public class TraceContextFormat extends TextFormat {
       if (tracestate == null || tracestate.isEmpty()) {
         return SpanContext.create(traceId, spanId, traceOptions, TRACESTATE_DEFAULT);
       }
-      Tracestate.Builder tracestateBuilder = Tracestate.builder();
-      List<String> listMembers = TRACESTATE_ENTRY_DELIMITER_SPLITTER.splitToList(tracestate);
-      checkArgument(
-          listMembers.size() <= TRACESTATE_MAX_MEMBERS, "Tracestate has too many elements.");
-      // Iterate in reverse order because when call builder set the elements is added in the
-      // front of the list.
-      for (int i = listMembers.size() - 1; i >= 0; i--) {
-        String listMember = listMembers.get(i);
-        int index = listMember.indexOf(TRACESTATE_KEY_VALUE_DELIMITER);
-        checkArgument(index != -1, "Invalid tracestate list-member format.");
-        tracestateBuilder.set(
-            listMember.substring(0, index), listMember.substring(index + 1, listMember.length()));
+      TracestateHeader cached = lastExtractedTracestate;
+      if (!cached.header.equals(tracestate)) {
+        cached = new TracestateHeader(decodeTracestate(tracestate), tracestate);
+        lastExtractedTracestate = cached;
       }
-      return SpanContext.create(traceId, spanId, traceOptions, tracestateBuilder.build());
+      return SpanContext.create(traceId, spanId, traceOptions, cached.tracestate);
     } catch (IllegalArgumentException e) {
       throw new SpanContextParseException("Invalid tracestate: " + tracestate, e);
     }
   }
+
+  private static String encodeTracestate(Tracestate tracestate) {
+    List<Tracestate.Entry> entries = tracestate.getEntries();
+    // The size of the delimiters.
+    int size = 2 * entries.size() - 1;
+    for (Tracestate.Entry entry : entries) {
+      size += entry.getKey().length() + entry.getValue().length();
+    }
+    StringBuilder stringBuilder = new StringBuilder(size);
+    for (Tracestate.Entry entry : entries) {
+      if (stringBuilder.length() != 0) {
+        stringBuilder.append(TRACESTATE_ENTRY_DELIMITER);
+      }
+      stringBuilder
+          .append(entry.getKey())
+          .append(TRACESTATE_KEY_VALUE_DELIMITER)
+          .append(entry.getValue());
+    }
+    return stringBuilder.toString();
+  }
+
+  // Parses the list-members in a single pass. Optional white space around the entry delimiters is
+  // not part of the list-members.
+  private static Tracestate decodeTracestate(String tracestate) {
+    String[] keysAndValues = new String[2 * TRACESTATE_MAX_MEMBERS];
+    int numMembers = 0;
+    int length = tracestate.length();
+    int memberStart = 0;
+    while (true) {
+      int memberEnd = tracestate.indexOf(TRACESTATE_ENTRY_DELIMITER, memberStart);
+      if (memberEnd == -1) {
+        memberEnd = length;
+      }
+      int start = memberStart;
+      int end = memberEnd;
+      if (memberStart != 0) {
+        while (start < end && isOptionalWhiteSpace(tracestate.charAt(start))) {
+          start++;
+        }
+      }
+      if (memberEnd != length) {
+        while (end > start && isOptionalWhiteSpace(tracestate.charAt(end - 1))) {
+          end--;
+        }
+      }
+      checkArgument(numMembers < TRACESTATE_MAX_MEMBERS, "Tracestate has too many elements.");
+      int index = tracestate.indexOf(TRACESTATE_KEY_VALUE_DELIMITER, start);
+      checkArgument(index != -1 && index < end, "Invalid tracestate list-member format.");
+      keysAndValues[2 * numMembers] = tracestate.substring(start, index);
+      keysAndValues[2 * numMembers + 1] = tracestate.substring(index + 1, end);
+      numMembers++;
+      if (memberEnd == length) {
+        break;
+      }
+      memberStart = memberEnd + 1;
+    }
+    Tracestate.Builder tracestateBuilder = Tracestate.builder();
+    // Iterate in reverse order because when call builder set the elements is added in the
+    // front of the list.
+    for (int i = numMembers - 1; i >= 0; i--) {
+      tracestateBuilder.set(keysAndValues[2 * i], keysAndValues[2 * i + 1]);
+    }
+    return tracestateBuilder.build();
+  }
+
+  private static boolean isOptionalWhiteSpace(char c) {
+    return c == ' ' || c == '\t';
+  }
+
+  /** A {@code Tracestate} and its {@code tracestate} header. */
+  private static final class TracestateHeader {
+    private final Tracestate tracestate;
+    private final String header;
+
+    private TracestateHeader(Tracestate tracestate, String header) {
+      this.tracestate = tracestate;
+      this.header = header;
+    }
+  }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.trace.samplers;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.opencensus.common.Clock;
+import io.opencensus.implcore.common.MillisClock;
+import io.opencensus.implcore.internal.StripedLongCounter;
+import io.opencensus.implcore.trace.export.SpanExporterImpl;
+import io.opencensus.trace.Sampler;
+import io.opencensus.trace.Span;
+import io.opencensus.trace.SpanContext;
+import io.opencensus.trace.SpanId;
+import io.opencensus.trace.TraceId;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A {@link Sampler} that adjusts its sampling probability to sample about a given number of spans
+ * per second, and that samples less when the {@link SpanExporterImpl} or one of its handlers drops
+ * spans.
+ *
+ * <p>Like the probability sampler, it compares the lower 64 bits of the trace id with an upper
+ * bound, so all the spans of a trace get the same decision, and keeps the decision of a sampled
+ * parent or parent link. The probability is adjusted once per second by the thread that samples the
+ * first span of the next second, so there is no background thread and the other threads only read
+ * one volatile field.
+ */
+@ThreadSafe
+public final class AdaptiveSampler extends Sampler {
+  private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+  // The probability does not go lower, so that the sampler keeps observing some spans.
+  @VisibleForTesting static final double MIN_PROBABILITY = 1e-6;
+  // The probability at most doubles per window, so that a burst after an idle window is not fully
+  // sampled.
+  private static final double MAX_INCREASE = 2.0;
+
+  /** Returns the number of spans dropped so far by the exporter. */
+  @VisibleForTesting
+  interface DroppedSpansCounter {
+    long getDroppedSpans();
+  }
+
+  private final double targetSampledSpansPerSecond;
+  private final DroppedSpansCounter droppedSpansCounter;
+  private final Clock clock;
+  private final AtomicLong windowStartNanos;
+  // Counted by every sampled span, so striped to not contend between the threads that start spans.
+  private final StripedLongCounter sampledSpansInWindow = new StripedLongCounter();
+
+  // Written only by the thread that closes a window, at most once per window.
+  private volatile double probability = 1.0;
+  private volatile long lastDroppedSpans;
+
+  private volatile long idUpperBound = Long.MAX_VALUE;
+
+  /**
+   * Returns a new {@code AdaptiveSampler}.
+   *
+   * @param targetSampledSpansPerSecond the number of spans to sample per second. Must be positive.
+   * @param spanExporter the exporter of the sampled spans, which reports the dropped spans.
+   * @return a new {@code AdaptiveSampler}.
+   * @throws IllegalArgumentException if {@code targetSampledSpansPerSecond} is not positive.
+   */
+  public static AdaptiveSampler create(
+      double targetSampledSpansPerSecond, final SpanExporterImpl spanExporter) {
+    checkNotNull(spanExporter, "spanExporter");
+    return new AdaptiveSampler(
+        targetSampledSpansPerSecond,
+        new DroppedSpansCounter() {
+          @Override
+          public long getDroppedSpans() {
+            return spanExporter.getTotalDroppedSpans();
+          }
+        },
+        MillisClock.getInstance());
+  }
+
+  @VisibleForTesting
+  AdaptiveSampler(
+      double targetSampledSpansPerSecond, DroppedSpansCounter droppedSpansCounter, Clock clock) {
+    checkArgument(targetSampledSpansPerSecond > 0, "targetSampledSpansPerSecond must be positive");
+    this.targetSampledSpansPerSecond = targetSampledSpansPerSecond;
+    this.droppedSpansCounter = checkNotNull(droppedSpansCounter, "droppedSpansCounter");
+    this.clock = clock;
+    this.windowStartNanos = new AtomicLong(clock.nowNanos());
+    this.lastDroppedSpans = droppedSpansCounter.getDroppedSpans();
+  }
+
+  @Override
+  public boolean shouldSample(
+      @Nullable SpanContext parentContext,
+      @Nullable Boolean hasRemoteParent,
+      TraceId traceId,
+      SpanId spanId,
+      String name,
+      @Nullable List<Span> parentLinks) {
+    maybeAdjustProbability();
+    if (isSampledParent(parentContext, parentLinks)
+        || Math.abs(traceId.getLowerLong()) < idUpperBound) {
+      sampledSpansInWindow.addAndGetCell(1);
+      return true;
+    }
+    return false;
+  }
+
+  private static boolean isSampledParent(
+      @Nullable SpanContext parentContext, @Nullable List<Span> parentLinks) {
+    if (parentContext != null && parentContext.getTraceOptions().isSampled()) {
+      return true;
+    }
+    if (parentLinks != null) {
+      for (Span parentLink : parentLinks) {
+        if (parentLink.getContext().getTraceOptions().isSampled()) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private void maybeAdjustProbability() {
+    long nowNanos = clock.nowNanos();
+    long startNanos = windowStartNanos.get();
+    long elapsedNanos = nowNanos - startNanos;
+    if (elapsedNanos < WINDOW_NANOS || !windowStartNanos.compareAndSet(startNanos, nowNanos)) {
+      return;
+    }
+    double sampledSpansPerSecond =
+        sampledSpansInWindow.sumThenReset() * (double) WINDOW_NANOS / elapsedNanos;
+    long droppedSpans = droppedSpansCounter.getDroppedSpans();
+    double newProbability;
+    if (droppedSpans > lastDroppedSpans) {
+      // The exporter cannot keep up, whatever the target.
+      newProbability = probability / 2;
+    } else if (sampledSpansPerSecond == 0) {
+      newProbability = probability * MAX_INCREASE;
+    } else {
+      newProbability =
+          probability
+              * Math.min(MAX_INCREASE, targetSampledSpansPerSecond / sampledSpansPerSecond);
+    }
+    newProbability = Math.max(MIN_PROBABILITY, Math.min(1.0, newProbability));
+    lastDroppedSpans = droppedSpans;
+    probability = newProbability;
+    // See ProbabilitySampler for the special case of 1.0.
+    idUpperBound =
+        newProbability == 1.0 ? Long.MAX_VALUE : (long) (newProbability * Long.MAX_VALUE);
+  }
+
+  @VisibleForTesting
+  double getProbability() {
+    return probability;
+  }
+
+  @Override
+  public String getDescription() {
+    return String.format("AdaptiveSampler{%.6f}", targetSampledSpansPerSecond);
+  }
+
+  @Override
+  public String toString() {
+    return getDescription();
+  }
+}
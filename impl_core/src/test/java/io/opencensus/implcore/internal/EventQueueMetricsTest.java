@@ -0,0 +1,109 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.internal;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link EventQueueMetrics}. */
+@RunWith(JUnit4.class)
+public class EventQueueMetricsTest {
+  private final EventQueueMetrics metrics = new EventQueueMetrics("EventQueueMetricsTest");
+
+  private static final class FirstEntry implements EventQueue.Entry {
+    @Override
+    public void process() {}
+  }
+
+  private static final class SecondEntry implements EventQueue.Entry {
+    @Override
+    public void process() {}
+  }
+
+  private static final class SlowEntry implements EventQueue.Entry {
+    private int processed;
+
+    @Override
+    public void process() {
+      processed++;
+      try {
+        Thread.sleep(2);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  @Test
+  public void process_PerEntryType() {
+    metrics.process(new FirstEntry());
+    metrics.process(new FirstEntry());
+    metrics.process(new SecondEntry());
+    assertThat(metrics.getProcessedEntries(FirstEntry.class)).isEqualTo(2);
+    assertThat(metrics.getProcessedEntries(SecondEntry.class)).isEqualTo(1);
+  }
+
+  @Test
+  public void process_TimesOneEntryPerSamplePeriod() {
+    SlowEntry entry = new SlowEntry();
+    // The first entry of the thread is timed, and its time counts for the whole period.
+    metrics.process(entry);
+    long sampledNanos = metrics.getProcessingNanos(SlowEntry.class);
+    assertThat(sampledNanos).isAtLeast(2000000L * EventQueueMetrics.TIMING_SAMPLE_PERIOD);
+    for (int i = 1; i < EventQueueMetrics.TIMING_SAMPLE_PERIOD; i++) {
+      metrics.process(entry);
+    }
+    assertThat(entry.processed).isEqualTo(EventQueueMetrics.TIMING_SAMPLE_PERIOD);
+    assertThat(metrics.getProcessedEntries(SlowEntry.class))
+        .isEqualTo(EventQueueMetrics.TIMING_SAMPLE_PERIOD);
+    assertThat(metrics.getProcessingNanos(SlowEntry.class)).isEqualTo(sampledNanos);
+    // The next period starts with a timed entry.
+    metrics.process(entry);
+    assertThat(metrics.getProcessingNanos(SlowEntry.class)).isGreaterThan(sampledNanos);
+  }
+
+  @Test
+  public void process_FromManyThreads() throws InterruptedException {
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] =
+          new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  for (int j = 0; j < 1000; j++) {
+                    metrics.process(new FirstEntry());
+                  }
+                }
+              });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertThat(metrics.getProcessedEntries(FirstEntry.class)).isEqualTo(8000);
+  }
+
+  @Test
+  public void getProcessedEntries_UnknownEntryType() {
+    assertThat(metrics.getProcessedEntries(SimpleEventQueue.class)).isEqualTo(0);
+    assertThat(metrics.getProcessingNanos(SimpleEventQueue.class)).isEqualTo(0);
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.opencensus.implcore.internal;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link StripedLongCounter}. */
+@RunWith(JUnit4.class)
+public class StripedLongCounterTest {
+
+  @Test
+  public void sumAddsTheCellsOfAllThreads() throws InterruptedException {
+    final StripedLongCounter counter = new StripedLongCounter();
+    assertThat(counter.addAndGetCell(2)).isEqualTo(2);
+    Thread thread =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                counter.addAndGetCell(3);
+              }
+            });
+    thread.start();
+    thread.join();
+    assertThat(counter.sum()).isEqualTo(5);
+  }
+
+  @Test
+  public void sumThenReset() {
+    StripedLongCounter counter = new StripedLongCounter();
+    counter.addAndGetCell(2);
+    counter.addAndGetCell(3);
+    assertThat(counter.sumThenReset()).isEqualTo(5);
+    assertThat(counter.sum()).isEqualTo(0);
+    counter.addAndGetCell(1);
+    assertThat(counter.sumThenReset()).isEqualTo(1);
+  }
+}
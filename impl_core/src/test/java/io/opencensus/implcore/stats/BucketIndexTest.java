@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import io.opencensus.implcore.stats.BucketIndex.ExponentialBucketIndex;
+import io.opencensus.implcore.stats.BucketIndex.LinearBucketIndex;
+import io.opencensus.implcore.stats.BucketIndex.SearchBucketIndex;
+import io.opencensus.stats.BucketBoundaries;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link BucketIndex}. */
+@RunWith(JUnit4.class)
+public class BucketIndexTest {
+
+  @Test
+  public void emptyBoundaries() {
+    BucketIndex index = BucketIndex.create(BucketBoundaries.create(Collections.<Double>emptyList()));
+    assertThat(index).isInstanceOf(SearchBucketIndex.class);
+    assertThat(index.getBucket(-1.0)).isEqualTo(0);
+    assertThat(index.getBucket(1.0)).isEqualTo(0);
+  }
+
+  @Test
+  public void linearBoundaries() {
+    List<Double> boundaries = new ArrayList<Double>();
+    for (int i = 0; i < 50; i++) {
+      boundaries.add(0.1 + i * 0.1);
+    }
+    BucketIndex index = BucketIndex.create(BucketBoundaries.create(boundaries));
+    assertThat(index).isInstanceOf(LinearBucketIndex.class);
+    assertMatchesLinearScan(index, boundaries);
+  }
+
+  @Test
+  public void exponentialBoundaries() {
+    List<Double> boundaries = new ArrayList<Double>();
+    for (int i = 0; i < 50; i++) {
+      boundaries.add(0.5 * Math.pow(1.5, i));
+    }
+    BucketIndex index = BucketIndex.create(BucketBoundaries.create(boundaries));
+    assertThat(index).isInstanceOf(ExponentialBucketIndex.class);
+    assertMatchesLinearScan(index, boundaries);
+  }
+
+  @Test
+  public void explicitBoundaries() {
+    List<Double> boundaries = Arrays.asList(0.5, 1.0, 2.0, 3.0, 5.0, 8.0, 13.0, 100.0);
+    BucketIndex index = BucketIndex.create(BucketBoundaries.create(boundaries));
+    assertThat(index).isInstanceOf(SearchBucketIndex.class);
+    assertMatchesLinearScan(index, boundaries);
+  }
+
+  @Test
+  public void forBoundaries_SharedBetweenEqualBoundaries() {
+    BucketIndex index1 =
+        BucketIndex.forBoundaries(BucketBoundaries.create(Arrays.asList(1.0, 2.0, 5.0)));
+    BucketIndex index2 =
+        BucketIndex.forBoundaries(BucketBoundaries.create(Arrays.asList(1.0, 2.0, 5.0)));
+    assertThat(index1).isSameInstanceAs(index2);
+  }
+
+  // Compares the BucketIndex with the linear scan previously done by MutableDistribution, for
+  // every boundary, values in between and outside the boundaries, and special values.
+  private static void assertMatchesLinearScan(BucketIndex index, List<Double> boundaries) {
+    List<Double> values =
+        new ArrayList<Double>(
+            Arrays.asList(
+                Double.NEGATIVE_INFINITY,
+                Double.POSITIVE_INFINITY,
+                Double.NaN,
+                -Double.MAX_VALUE,
+                Double.MAX_VALUE,
+                0.0,
+                -0.0,
+                Double.MIN_VALUE));
+    for (double boundary : boundaries) {
+      values.add(boundary);
+      values.add(Math.nextUp(boundary));
+      values.add(-Math.nextUp(-boundary));
+      values.add(boundary * 1.01 + 0.01);
+    }
+    for (double value : values) {
+      int expected = 0;
+      for (; expected < boundaries.size(); expected++) {
+        if (value < boundaries.get(expected)) {
+          break;
+        }
+      }
+      assertWithMessage("bucket of " + value).that(index.getBucket(value)).isEqualTo(expected);
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.common.Duration;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link CardinalityLimits}. */
+@RunWith(JUnit4.class)
+public class CardinalityLimitsTest {
+
+  @Test
+  public void unlimited() {
+    assertThat(CardinalityLimits.UNLIMITED.getMaxSeriesPerView()).isEqualTo(Integer.MAX_VALUE);
+    assertThat(CardinalityLimits.UNLIMITED.getMaxSeries()).isEqualTo(Integer.MAX_VALUE);
+    assertThat(CardinalityLimits.UNLIMITED.getSeriesIdleTimeout())
+        .isEqualTo(Duration.create(0, 0));
+  }
+
+  @Test
+  public void updateAll() {
+    CardinalityLimits limits =
+        CardinalityLimits.UNLIMITED
+            .toBuilder()
+            .setMaxSeriesPerView(10)
+            .setMaxSeries(100)
+            .setSeriesIdleTimeout(Duration.create(60, 0))
+            .build();
+    assertThat(limits.getMaxSeriesPerView()).isEqualTo(10);
+    assertThat(limits.getMaxSeries()).isEqualTo(100);
+    assertThat(limits.getSeriesIdleTimeout()).isEqualTo(Duration.create(60, 0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void updateMaxSeriesPerView_NonPositive() {
+    CardinalityLimits.builder().setMaxSeriesPerView(0).build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void updateMaxSeries_NonPositive() {
+    CardinalityLimits.builder().setMaxSeries(0).build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void updateSeriesIdleTimeout_Negative() {
+    CardinalityLimits.builder().setSeriesIdleTimeout(Duration.create(-1, 0)).build();
+  }
+}
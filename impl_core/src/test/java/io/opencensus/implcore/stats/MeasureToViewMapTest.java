@@ -20,7 +20,10 @@ import static com.google.common.truth.Truth.assertThat;
 
 import io.opencensus.common.Timestamp;
 import io.opencensus.implcore.internal.CurrentState.State;
+import io.opencensus.implcore.tags.TagMapImpl;
+import io.opencensus.stats.Aggregation.Count;
 import io.opencensus.stats.Aggregation.Mean;
+import io.opencensus.stats.AggregationData.CountData;
 import io.opencensus.stats.Measure;
 import io.opencensus.stats.View;
 import io.opencensus.stats.View.AggregationWindow.Cumulative;
@@ -28,8 +31,13 @@ import io.opencensus.stats.View.Name;
 import io.opencensus.stats.ViewData;
 import io.opencensus.stats.ViewData.AggregationWindowData.CumulativeData;
 import io.opencensus.tags.TagKey;
+import io.opencensus.tags.TagValue;
 import io.opencensus.testing.common.TestClock;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -66,4 +74,57 @@ public class MeasureToViewMapTest {
         .isEqualTo(CumulativeData.create(Timestamp.create(10, 20), Timestamp.create(30, 40)));
     assertThat(viewData.getAggregationMap()).isEmpty();
   }
+
+  @Test
+  public void testConcurrentRecordAndRegister() throws InterruptedException {
+    final MeasureToViewMap measureToViewMap = new MeasureToViewMap();
+    final TestClock clock = TestClock.create(Timestamp.create(10, 20));
+    View countView =
+        View.create(
+            View.Name.create("my count view"),
+            "view description",
+            MEASURE,
+            Count.create(),
+            Collections.<TagKey>emptyList(),
+            CUMULATIVE);
+    measureToViewMap.registerView(countView, clock);
+    final int numThreads = 8;
+    final int recordsPerThread = 1000;
+    final CountDownLatch startLatch = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < numThreads; i++) {
+      Thread thread =
+          new Thread() {
+            @Override
+            public void run() {
+              try {
+                startLatch.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+              }
+              for (int j = 0; j < recordsPerThread; j++) {
+                measureToViewMap.record(
+                    TagMapImpl.EMPTY,
+                    MeasureMapInternal.builder().put((Measure.MeasureDouble) MEASURE, 1.0).build(),
+                    clock.now());
+              }
+            }
+          };
+      threads.add(thread);
+      thread.start();
+    }
+    startLatch.countDown();
+    // Registration and export must be able to proceed while recording is in progress.
+    measureToViewMap.registerView(VIEW, clock);
+    measureToViewMap.getMetrics(clock, State.ENABLED);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    ViewData viewData = measureToViewMap.getView(countView.getName(), clock, State.ENABLED);
+    assertThat(viewData.getAggregationMap())
+        .containsExactly(
+            Collections.<TagValue>emptyList(),
+            CountData.create((long) numThreads * recordsPerThread));
+  }
 }
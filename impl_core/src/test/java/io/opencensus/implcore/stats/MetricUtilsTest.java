@@ -21,13 +21,17 @@ import static com.google.common.truth.Truth.assertThat;
 import io.opencensus.common.Duration;
 import io.opencensus.metrics.LabelKey;
 import io.opencensus.metrics.LabelValue;
+import io.opencensus.metrics.export.Distribution.Bucket;
+import io.opencensus.metrics.export.Distribution.BucketOptions;
 import io.opencensus.metrics.export.MetricDescriptor;
 import io.opencensus.metrics.export.MetricDescriptor.Type;
 import io.opencensus.stats.Aggregation.Count;
 import io.opencensus.stats.Aggregation.Distribution;
+import io.opencensus.stats.Aggregation.ExponentialDistribution;
 import io.opencensus.stats.Aggregation.LastValue;
 import io.opencensus.stats.Aggregation.Mean;
 import io.opencensus.stats.Aggregation.Sum;
+import io.opencensus.stats.AggregationData.ExponentialDistributionData;
 import io.opencensus.stats.BucketBoundaries;
 import io.opencensus.stats.Measure.MeasureDouble;
 import io.opencensus.stats.Measure.MeasureLong;
@@ -70,6 +74,8 @@ public class MetricUtilsTest {
   private static final Mean MEAN = Mean.create();
   private static final Distribution DISTRIBUTION = Distribution.create(BUCKET_BOUNDARIES);
   private static final LastValue LAST_VALUE = LastValue.create();
+  private static final ExponentialDistribution EXPONENTIAL_DISTRIBUTION =
+      ExponentialDistribution.create(0.01);
   private static final View VIEW_1 =
       View.create(
           VIEW_NAME, VIEW_DESCRIPTION, MEASURE_DOUBLE, LAST_VALUE, Collections.singletonList(KEY));
@@ -127,6 +133,45 @@ public class MetricUtilsTest {
         .isEqualTo(Type.CUMULATIVE_DISTRIBUTION);
     assertThat(MetricUtils.getType(MEASURE_LONG, DISTRIBUTION))
         .isEqualTo(Type.CUMULATIVE_DISTRIBUTION);
+    assertThat(MetricUtils.getType(MEASURE_DOUBLE, EXPONENTIAL_DISTRIBUTION))
+        .isEqualTo(Type.CUMULATIVE_DISTRIBUTION);
+    assertThat(MetricUtils.getType(MEASURE_LONG, EXPONENTIAL_DISTRIBUTION))
+        .isEqualTo(Type.CUMULATIVE_DISTRIBUTION);
+  }
+
+  @Test
+  public void exponentialDistributionDataToDistribution() {
+    // Scale -1: [4, 16), [16, 64), [64, 256).
+    ExponentialDistributionData distributionData =
+        ExponentialDistributionData.create(20, 5, 1000, -1, 1, 1, Arrays.asList(2L, 0L, 2L));
+    assertThat(MetricUtils.exponentialDistributionDataToDistribution(distributionData))
+        .isEqualTo(
+            io.opencensus.metrics.export.Distribution.create(
+                5,
+                100,
+                1000,
+                BucketOptions.explicitOptions(Arrays.asList(4.0, 16.0, 64.0, 256.0)),
+                Arrays.asList(
+                    Bucket.create(1),
+                    Bucket.create(2),
+                    Bucket.create(0),
+                    Bucket.create(2),
+                    Bucket.create(0))));
+  }
+
+  @Test
+  public void exponentialDistributionDataToDistribution_LastBoundaryOverflows() {
+    // Scale -10: [1, 2^1024) has no finite upper bound.
+    ExponentialDistributionData distributionData =
+        ExponentialDistributionData.create(1e300, 1, 0, -10, 0, 0, Arrays.asList(1L));
+    assertThat(MetricUtils.exponentialDistributionDataToDistribution(distributionData))
+        .isEqualTo(
+            io.opencensus.metrics.export.Distribution.create(
+                1,
+                1e300,
+                0,
+                BucketOptions.explicitOptions(Arrays.asList(1.0)),
+                Arrays.asList(Bucket.create(0), Bucket.create(1))));
   }
 
   @Test
@@ -23,6 +23,7 @@ import com.google.common.collect.ImmutableList;
 import io.opencensus.common.Timestamp;
 import io.opencensus.implcore.stats.MutableAggregation.MutableCount;
 import io.opencensus.implcore.stats.MutableAggregation.MutableDistribution;
+import io.opencensus.implcore.stats.MutableAggregation.MutableExponentialDistribution;
 import io.opencensus.implcore.stats.MutableAggregation.MutableLastValueDouble;
 import io.opencensus.implcore.stats.MutableAggregation.MutableLastValueLong;
 import io.opencensus.implcore.stats.MutableAggregation.MutableMean;
@@ -36,9 +37,11 @@ import io.opencensus.metrics.export.Distribution.Bucket;
 import io.opencensus.metrics.export.Distribution.BucketOptions;
 import io.opencensus.metrics.export.Point;
 import io.opencensus.metrics.export.Value;
+import io.opencensus.stats.Aggregation.ExponentialDistribution;
 import io.opencensus.stats.AggregationData;
 import io.opencensus.stats.AggregationData.CountData;
 import io.opencensus.stats.AggregationData.DistributionData;
+import io.opencensus.stats.AggregationData.ExponentialDistributionData;
 import io.opencensus.stats.AggregationData.LastValueDataDouble;
 import io.opencensus.stats.AggregationData.LastValueDataLong;
 import io.opencensus.stats.AggregationData.MeanData;
@@ -67,6 +70,9 @@ public class MutableAggregationTest {
   private static final BucketBoundaries BUCKET_BOUNDARIES_EMPTY =
       BucketBoundaries.create(Collections.<Double>emptyList());
   private static final Timestamp TIMESTAMP = Timestamp.create(60, 0);
+  // Relative errors for which buckets grow by a factor of 2 (scale 0) and sqrt(2) (scale 1).
+  private static final double RELATIVE_ERROR_SCALE_0 = 0.34;
+  private static final double RELATIVE_ERROR_SCALE_1 = 0.18;
   private static final AttachmentValue ATTACHMENT_VALUE_1 = AttachmentValueString.create("v1");
   private static final AttachmentValue ATTACHMENT_VALUE_2 = AttachmentValueString.create("v2");
   private static final AttachmentValue ATTACHMENT_VALUE_3 = AttachmentValueString.create("v3");
@@ -268,6 +274,127 @@ public class MutableAggregationTest {
     verifyMutableDistribution(combined, 0, 8, 1500.0, new long[] {5, 3});
   }
 
+  @Test
+  public void testCombine_EmptyDistribution() {
+    MutableDistribution distribution = MutableDistribution.create(BUCKET_BOUNDARIES);
+    for (double val : Arrays.asList(5.0, -5.0)) {
+      distribution.add(val, Collections.<String, AttachmentValue>emptyMap(), TIMESTAMP);
+    }
+
+    MutableDistribution combined = MutableDistribution.create(BUCKET_BOUNDARIES);
+    combined.combine(MutableDistribution.create(BUCKET_BOUNDARIES), 1.0);
+    verifyMutableDistribution(combined, 0, 0, 0, new long[] {0, 0});
+    combined.combine(distribution, 1.0);
+    verifyMutableDistribution(combined, 0, 2, 50.0, new long[] {2, 0});
+  }
+
+  @Test
+  public void testExponentialDistribution_ScaleForRelativeError() {
+    assertThat(MutableExponentialDistribution.scaleForRelativeError(RELATIVE_ERROR_SCALE_0))
+        .isEqualTo(0);
+    assertThat(MutableExponentialDistribution.scaleForRelativeError(RELATIVE_ERROR_SCALE_1))
+        .isEqualTo(1);
+    // 2^(1/64) - 1 / (2^(1/64) + 1) is about 0.54%, and 2^(1/32) is above 1%.
+    assertThat(MutableExponentialDistribution.scaleForRelativeError(0.01)).isEqualTo(6);
+    assertThat(MutableExponentialDistribution.scaleForRelativeError(1e-12))
+        .isEqualTo(MutableExponentialDistribution.MAX_SCALE);
+  }
+
+  @Test
+  public void testAdd_ExponentialDistribution() {
+    MutableExponentialDistribution distribution =
+        MutableExponentialDistribution.create(
+            ExponentialDistribution.create(RELATIVE_ERROR_SCALE_0));
+    for (double val : Arrays.asList(0.0, -1.0, 1.0, 1.5, 2.0, 5.0)) {
+      distribution.add(val, Collections.<String, AttachmentValue>emptyMap(), TIMESTAMP);
+    }
+    ExponentialDistributionData data =
+        (ExponentialDistributionData) distribution.toAggregationData();
+    assertThat(data.getCount()).isEqualTo(6);
+    assertThat(data.getMean()).isWithin(TOLERANCE).of(8.5 / 6);
+    assertThat(data.getScale()).isEqualTo(0);
+    assertThat(data.getZeroCount()).isEqualTo(2);
+    // [1, 2), [2, 4), [4, 8)
+    assertThat(data.getIndexOffset()).isEqualTo(0);
+    assertThat(data.getBucketCounts()).containsExactly(2L, 1L, 1L).inOrder();
+  }
+
+  @Test
+  public void testAdd_ExponentialDistribution_Downscale() {
+    MutableExponentialDistribution distribution =
+        MutableExponentialDistribution.create(
+            ExponentialDistribution.create(RELATIVE_ERROR_SCALE_0, 2));
+    for (double val : Arrays.asList(1.0, 2.0, 4.0, 0.5)) {
+      distribution.add(val, Collections.<String, AttachmentValue>emptyMap(), TIMESTAMP);
+    }
+    // 4 doesn't fit in [1, 2), [2, 4), so the scale goes down to -1: [1, 4), [4, 16). Then 0.5
+    // doesn't fit either, and the scale goes down to -2: [1/16, 1), [1, 16).
+    ExponentialDistributionData data =
+        (ExponentialDistributionData) distribution.toAggregationData();
+    assertThat(data.getScale()).isEqualTo(-2);
+    assertThat(data.getIndexOffset()).isEqualTo(-1);
+    assertThat(data.getBucketCounts()).containsExactly(1L, 3L).inOrder();
+  }
+
+  @Test
+  public void testCombine_ExponentialDistribution() {
+    MutableExponentialDistribution scale0 =
+        MutableExponentialDistribution.create(
+            ExponentialDistribution.create(RELATIVE_ERROR_SCALE_0));
+    MutableExponentialDistribution scale1 =
+        MutableExponentialDistribution.create(
+            ExponentialDistribution.create(RELATIVE_ERROR_SCALE_1));
+    for (double val : Arrays.asList(1.0, 4.0)) {
+      scale0.add(val, Collections.<String, AttachmentValue>emptyMap(), TIMESTAMP);
+    }
+    for (double val : Arrays.asList(1.5, 0.0)) {
+      scale1.add(val, Collections.<String, AttachmentValue>emptyMap(), TIMESTAMP);
+    }
+    assertThat(scale1.getScale()).isEqualTo(1);
+
+    // The histogram with the higher scale is lowered to the scale of the other one.
+    scale1.combine(scale0, 1.0);
+    ExponentialDistributionData data = (ExponentialDistributionData) scale1.toAggregationData();
+    assertThat(data.getCount()).isEqualTo(4);
+    assertThat(data.getMean()).isWithin(TOLERANCE).of(6.5 / 4);
+    assertThat(data.getSumOfSquaredDeviations())
+        .isWithin(TOLERANCE)
+        .of(
+            Math.pow(1.0 - 6.5 / 4, 2)
+                + Math.pow(4.0 - 6.5 / 4, 2)
+                + Math.pow(1.5 - 6.5 / 4, 2)
+                + Math.pow(0.0 - 6.5 / 4, 2));
+    assertThat(data.getScale()).isEqualTo(0);
+    assertThat(data.getZeroCount()).isEqualTo(1);
+    assertThat(data.getIndexOffset()).isEqualTo(0);
+    assertThat(data.getBucketCounts()).containsExactly(2L, 0L, 1L).inOrder();
+  }
+
+  @Test
+  public void testExponentialDistribution_ToPoint() {
+    MutableExponentialDistribution distribution =
+        MutableExponentialDistribution.create(
+            ExponentialDistribution.create(RELATIVE_ERROR_SCALE_0));
+    for (double val : Arrays.asList(1.0, 2.5)) {
+      distribution.add(val, Collections.<String, AttachmentValue>emptyMap(), TIMESTAMP);
+    }
+    assertThat(distribution.toPoint(TIMESTAMP))
+        .isEqualTo(
+            Point.create(
+                Value.distributionValue(
+                    Distribution.create(
+                        2,
+                        3.5,
+                        1.125,
+                        BucketOptions.explicitOptions(Arrays.asList(1.0, 2.0, 4.0)),
+                        Arrays.asList(
+                            Bucket.create(0),
+                            Bucket.create(1),
+                            Bucket.create(1),
+                            Bucket.create(0)))),
+                TIMESTAMP));
+  }
+
   @Test
   public void mutableAggregation_ToAggregationData() {
     assertThat(MutableSumDouble.create().toAggregationData()).isEqualTo(SumDataDouble.create(0));
@@ -280,6 +407,12 @@ public class MutableAggregationTest {
         .isEqualTo(LastValueDataDouble.create(Double.NaN));
     assertThat(MutableLastValueLong.create().toAggregationData())
         .isEqualTo(LastValueDataLong.create(0));
+    assertThat(
+            MutableExponentialDistribution.create(
+                    ExponentialDistribution.create(RELATIVE_ERROR_SCALE_0))
+                .toAggregationData())
+        .isEqualTo(
+            ExponentialDistributionData.create(0, 0, 0, 0, 0, 0, Collections.<Long>emptyList()));
   }
 
   @Test
@@ -304,6 +437,20 @@ public class MutableAggregationTest {
                         BucketOptions.explicitOptions(BUCKET_BOUNDARIES.getBoundaries()),
                         Arrays.asList(Bucket.create(0), Bucket.create(0)))),
                 TIMESTAMP));
+    assertThat(
+            MutableExponentialDistribution.create(
+                    ExponentialDistribution.create(RELATIVE_ERROR_SCALE_0))
+                .toPoint(TIMESTAMP))
+        .isEqualTo(
+            Point.create(
+                Value.distributionValue(
+                    Distribution.create(
+                        0,
+                        0,
+                        0,
+                        BucketOptions.explicitOptions(Collections.<Double>emptyList()),
+                        Arrays.asList(Bucket.create(0)))),
+                TIMESTAMP));
   }
 
   private static void verifyMutableDistribution(
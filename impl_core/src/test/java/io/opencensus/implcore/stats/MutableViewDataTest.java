@@ -18,20 +18,36 @@ package io.opencensus.implcore.stats;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import io.opencensus.common.Duration;
 import io.opencensus.common.Timestamp;
 import io.opencensus.implcore.internal.CurrentState;
 import io.opencensus.implcore.tags.TagMapImpl;
+import io.opencensus.implcore.tags.TagValueWithMetadata;
+import io.opencensus.metrics.LabelValue;
 import io.opencensus.metrics.data.AttachmentValue;
+import io.opencensus.metrics.export.Metric;
+import io.opencensus.metrics.export.Point;
+import io.opencensus.metrics.export.TimeSeries;
+import io.opencensus.metrics.export.Value;
 import io.opencensus.stats.Aggregation;
 import io.opencensus.stats.Aggregation.Count;
 import io.opencensus.stats.Aggregation.Distribution;
+import io.opencensus.stats.Aggregation.LastValue;
+import io.opencensus.stats.AggregationData;
+import io.opencensus.stats.AggregationData.CountData;
 import io.opencensus.stats.BucketBoundaries;
 import io.opencensus.stats.Measure.MeasureDouble;
 import io.opencensus.stats.View;
+import io.opencensus.stats.View.AggregationWindow.Interval;
 import io.opencensus.stats.ViewData;
 import io.opencensus.tags.TagKey;
+import io.opencensus.tags.TagMetadata;
+import io.opencensus.tags.TagMetadata.TagTtl;
+import io.opencensus.tags.TagValue;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -40,6 +56,8 @@ import org.junit.runners.JUnit4;
 @RunWith(JUnit4.class)
 public class MutableViewDataTest {
 
+  private static final Timestamp START = Timestamp.create(10000000, 0);
+
   @Test
   public void testConstants() {
     assertThat(MutableViewData.ZERO_TIMESTAMP).isEqualTo(Timestamp.create(0, 0));
@@ -93,4 +111,397 @@ public class MutableViewDataTest {
     ViewData result = viewData.toViewData(thePast, state);
     assertThat(result.getAggregationMap()).isEmpty();
   }
+
+  @Test
+  public void testRecordAlternatingContexts() {
+    TagKey key = TagKey.create("KEY");
+    View tester =
+        View.create(
+            View.Name.create("view"),
+            "Description",
+            MeasureDouble.create("name", "desc", "us"),
+            Count.create(),
+            Collections.singletonList(key));
+    Timestamp start = Timestamp.create(10000000, 0);
+    Timestamp validPointTime = Timestamp.create(10000010, 0);
+    MutableViewData viewData = MutableViewData.create(tester, start);
+    // Two distinct contexts with the same tag value, and one with a different value.
+    TagMapImpl context1 = newTagMap(key, TagValue.create("v1"));
+    TagMapImpl context2 = newTagMap(key, TagValue.create("v1"));
+    TagMapImpl context3 = newTagMap(key, TagValue.create("v2"));
+    for (TagMapImpl context : Arrays.asList(context1, context1, context2, context3, context1)) {
+      viewData.record(
+          context, 1.0, validPointTime, Collections.<String, AttachmentValue>emptyMap());
+    }
+    ViewData result = viewData.toViewData(validPointTime, CurrentState.State.ENABLED);
+    assertThat(result.getAggregationMap())
+        .containsExactly(
+            Arrays.asList(TagValue.create("v1")),
+            CountData.create(4),
+            Arrays.asList(TagValue.create("v2")),
+            CountData.create(1));
+    // Equal tag values are interned to the key of their series, and cached on each context.
+    assertThat(context2.getCachedValue(tester.getColumns()))
+        .isSameInstanceAs(context1.getCachedValue(tester.getColumns()));
+    assertThat(context3.getCachedValue(tester.getColumns()))
+        .isEqualTo(Arrays.asList(TagValue.create("v2")));
+  }
+
+  @Test
+  public void testRecordIntervalAcrossBuckets() {
+    TagKey key = TagKey.create("KEY");
+    // The interval is 10 seconds, so each of the buckets has a duration of 2.5 seconds.
+    View tester =
+        View.create(
+            View.Name.create("view"),
+            "Description",
+            MeasureDouble.create("name", "desc", "us"),
+            Count.create(),
+            Collections.singletonList(key),
+            Interval.create(Duration.create(10, 0)));
+    long startMillis = 10000000000L;
+    MutableViewData viewData = MutableViewData.create(tester, Timestamp.fromMillis(startMillis));
+    TagMapImpl context = newTagMap(key, TagValue.create("v1"));
+    for (long offsetMillis : new long[] {1000, 3000, 6000, 6000}) {
+      viewData.record(
+          context,
+          1.0,
+          Timestamp.fromMillis(startMillis + offsetMillis),
+          Collections.<String, AttachmentValue>emptyMap());
+    }
+    assertIntervalCount(viewData, startMillis + 6000, 4);
+
+    // Recording into the current bucket is visible to the next read.
+    viewData.record(
+        context,
+        1.0,
+        Timestamp.fromMillis(startMillis + 7000),
+        Collections.<String, AttachmentValue>emptyMap());
+    assertIntervalCount(viewData, startMillis + 7000, 5);
+
+    // At 13s the first bucket expired, and 80% of the second bucket [2.5, 5.0) is still counted.
+    assertIntervalCount(viewData, startMillis + 13000, 4);
+
+    // The current bucket reuses the slot of the expired first bucket.
+    viewData.record(
+        context,
+        1.0,
+        Timestamp.fromMillis(startMillis + 13000),
+        Collections.<String, AttachmentValue>emptyMap());
+    assertIntervalCount(viewData, startMillis + 13000, 5);
+
+    // All buckets expired.
+    assertThat(
+            viewData
+                .toViewData(Timestamp.fromMillis(startMillis + 30000), CurrentState.State.ENABLED)
+                .getAggregationMap())
+        .isEmpty();
+  }
+
+  @Test
+  public void testRecordIntervalRemovesExpiredSeriesWithoutReads() {
+    TagKey key = TagKey.create("KEY");
+    View tester =
+        View.create(
+            View.Name.create("view"),
+            "Description",
+            MeasureDouble.create("name", "desc", "us"),
+            Count.create(),
+            Collections.singletonList(key),
+            Interval.create(Duration.create(10, 0)));
+    MutableViewData viewData = MutableViewData.create(tester, START);
+    for (int i = 0; i < 100; i++) {
+      recordCount(viewData, newTagMap(key, TagValue.create("v" + i)), START);
+    }
+    assertThat(viewData.getNumSeries()).isEqualTo(100);
+
+    // Within the window, no series is removed.
+    recordCount(
+        viewData, newTagMap(key, TagValue.create("v0")), START.addDuration(Duration.create(5, 0)));
+    assertThat(viewData.getNumSeries()).isEqualTo(100);
+
+    // Once the window moved past them, the series that did not record again are removed.
+    recordCount(
+        viewData, newTagMap(key, TagValue.create("v0")), START.addDuration(Duration.create(25, 0)));
+    assertThat(viewData.getNumSeries()).isEqualTo(1);
+  }
+
+  private static void assertIntervalCount(MutableViewData viewData, long nowMillis, long count) {
+    ViewData result =
+        viewData.toViewData(Timestamp.fromMillis(nowMillis), CurrentState.State.ENABLED);
+    assertThat(result.getAggregationMap())
+        .containsExactly(Arrays.asList(TagValue.create("v1")), CountData.create(count));
+  }
+
+  @Test
+  public void testRecordOverMaxSeriesPerView() {
+    TagKey key = TagKey.create("KEY");
+    CardinalityLimiter limiter =
+        new CardinalityLimiter(CardinalityLimits.builder().setMaxSeriesPerView(2).build());
+    MutableViewData viewData = MutableViewData.create(createCountView(key), START, limiter);
+    long overflowed = CardinalityLimiter.getOverflowedMeasurements();
+    for (String value : Arrays.asList("v1", "v2", "v3", "v1", "v4")) {
+      recordCount(viewData, newTagMap(key, TagValue.create(value)), START);
+    }
+    assertThat(viewData.toViewData(START, CurrentState.State.ENABLED).getAggregationMap())
+        .containsExactly(
+            Arrays.asList(TagValue.create("v1")),
+            CountData.create(2),
+            Arrays.asList(TagValue.create("v2")),
+            CountData.create(1),
+            Arrays.asList(CardinalityLimits.OVERFLOW_TAG_VALUE),
+            CountData.create(2));
+    assertThat(CardinalityLimiter.getOverflowedMeasurements() - overflowed).isEqualTo(2);
+  }
+
+  @Test
+  public void testRecordOverMaxSeries() {
+    TagKey key = TagKey.create("KEY");
+    CardinalityLimiter limiter =
+        new CardinalityLimiter(CardinalityLimits.builder().setMaxSeries(2).build());
+    MutableViewData viewData1 = MutableViewData.create(createCountView(key), START, limiter);
+    MutableViewData viewData2 = MutableViewData.create(createCountView(key), START, limiter);
+    recordCount(viewData1, newTagMap(key, TagValue.create("v1")), START);
+    recordCount(viewData1, newTagMap(key, TagValue.create("v2")), START);
+    recordCount(viewData2, newTagMap(key, TagValue.create("v1")), START);
+    assertThat(viewData2.toViewData(START, CurrentState.State.ENABLED).getAggregationMap())
+        .containsExactly(Arrays.asList(CardinalityLimits.OVERFLOW_TAG_VALUE), CountData.create(1));
+
+    // Clearing the stats of a view frees room for new series of the other views.
+    viewData1.clearStats();
+    recordCount(viewData2, newTagMap(key, TagValue.create("v2")), START);
+    assertThat(viewData2.toViewData(START, CurrentState.State.ENABLED).getAggregationMap())
+        .containsExactly(
+            Arrays.asList(CardinalityLimits.OVERFLOW_TAG_VALUE),
+            CountData.create(1),
+            Arrays.asList(TagValue.create("v2")),
+            CountData.create(1));
+  }
+
+  @Test
+  public void testEvictIdleSeries() {
+    TagKey key = TagKey.create("KEY");
+    CardinalityLimiter limiter =
+        new CardinalityLimiter(
+            CardinalityLimits.builder()
+                .setMaxSeriesPerView(1)
+                .setSeriesIdleTimeout(Duration.create(60, 0))
+                .build());
+    MutableViewData viewData = MutableViewData.create(createCountView(key), START, limiter);
+    recordCount(viewData, newTagMap(key, TagValue.create("v1")), START);
+    Timestamp later = START.addDuration(Duration.create(30, 0));
+    recordCount(viewData, newTagMap(key, TagValue.create("v2")), later);
+    // Not idle for long enough yet.
+    assertThat(viewData.toViewData(later, CurrentState.State.ENABLED).getAggregationMap())
+        .containsExactly(
+            Arrays.asList(TagValue.create("v1")),
+            CountData.create(1),
+            Arrays.asList(CardinalityLimits.OVERFLOW_TAG_VALUE),
+            CountData.create(1));
+
+    // Only the series of v1 is idle for more than a minute, and its eviction frees room for v3.
+    Timestamp muchLater = START.addDuration(Duration.create(62, 0));
+    assertThat(viewData.toViewData(muchLater, CurrentState.State.ENABLED).getAggregationMap())
+        .containsExactly(
+            Arrays.asList(CardinalityLimits.OVERFLOW_TAG_VALUE), CountData.create(1));
+    recordCount(viewData, newTagMap(key, TagValue.create("v3")), muchLater);
+    assertThat(viewData.toViewData(muchLater, CurrentState.State.ENABLED).getAggregationMap())
+        .containsExactly(
+            Arrays.asList(CardinalityLimits.OVERFLOW_TAG_VALUE),
+            CountData.create(1),
+            Arrays.asList(TagValue.create("v3")),
+            CountData.create(1));
+  }
+
+  @Test
+  public void testEvictIdleSeriesConcurrentlyWithRecord() throws InterruptedException {
+    final TagKey key = TagKey.create("KEY");
+    CardinalityLimiter limiter =
+        new CardinalityLimiter(
+            CardinalityLimits.builder().setSeriesIdleTimeout(Duration.create(60, 0)).build());
+    final Timestamp muchLater = START.addDuration(Duration.create(62, 0));
+    for (int i = 0; i < 200; i++) {
+      final MutableViewData viewData =
+          MutableViewData.create(createCountView(key), START, limiter);
+      recordCount(viewData, newTagMap(key, TagValue.create("v1")), START);
+      // The idle series is evicted while it is recorded again: the new measurement is either
+      // recorded before the eviction, which then keeps the series, or into a new series.
+      Thread recorder =
+          new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  recordCount(viewData, newTagMap(key, TagValue.create("v1")), muchLater);
+                }
+              });
+      recorder.start();
+      viewData.toViewData(muchLater, CurrentState.State.ENABLED);
+      recorder.join();
+      Map<List<TagValue>, AggregationData> aggregationMap =
+          viewData.toViewData(muchLater, CurrentState.State.ENABLED).getAggregationMap();
+      assertThat(aggregationMap).hasSize(1);
+      AggregationData count = aggregationMap.get(Arrays.asList(TagValue.create("v1")));
+      assertThat(count).isAnyOf(CountData.create(1), CountData.create(2));
+      viewData.clearStats();
+    }
+  }
+
+  @Test
+  public void testRecordIntervalOverMaxSeriesPerView() {
+    TagKey key = TagKey.create("KEY");
+    CardinalityLimiter limiter =
+        new CardinalityLimiter(CardinalityLimits.builder().setMaxSeriesPerView(2).build());
+    View tester =
+        View.create(
+            View.Name.create("view"),
+            "Description",
+            MeasureDouble.create("name", "desc", "us"),
+            Count.create(),
+            Collections.singletonList(key),
+            Interval.create(Duration.create(10, 0)));
+    MutableViewData viewData = MutableViewData.create(tester, START, limiter);
+    long overflowed = CardinalityLimiter.getOverflowedMeasurements();
+    for (String value : Arrays.asList("v1", "v2", "v3", "v1", "v4")) {
+      recordCount(viewData, newTagMap(key, TagValue.create(value)), START);
+    }
+    assertThat(viewData.toViewData(START, CurrentState.State.ENABLED).getAggregationMap())
+        .containsExactly(
+            Arrays.asList(TagValue.create("v1")),
+            CountData.create(2),
+            Arrays.asList(TagValue.create("v2")),
+            CountData.create(1),
+            Arrays.asList(CardinalityLimits.OVERFLOW_TAG_VALUE),
+            CountData.create(2));
+    assertThat(CardinalityLimiter.getOverflowedMeasurements() - overflowed).isEqualTo(2);
+
+    // Once the series expired, their room is released.
+    Timestamp later = START.addDuration(Duration.create(25, 0));
+    recordCount(viewData, newTagMap(key, TagValue.create("v3")), later);
+    recordCount(viewData, newTagMap(key, TagValue.create("v4")), later);
+    assertThat(viewData.toViewData(later, CurrentState.State.ENABLED).getAggregationMap())
+        .containsExactly(
+            Arrays.asList(TagValue.create("v3")),
+            CountData.create(1),
+            Arrays.asList(TagValue.create("v4")),
+            CountData.create(1));
+  }
+
+  @Test
+  public void testToDeltaMetric() {
+    TagKey key = TagKey.create("KEY");
+    MutableViewData viewData = MutableViewData.create(createCountView(key), START);
+    TagMapImpl context1 = newTagMap(key, TagValue.create("v1"));
+    TagMapImpl context2 = newTagMap(key, TagValue.create("v2"));
+    recordCount(viewData, context1, START);
+    recordCount(viewData, context1, START);
+    recordCount(viewData, context2, START);
+    Timestamp read1 = START.addDuration(Duration.create(10, 0));
+    Metric metric1 = viewData.toDeltaMetric(read1, CurrentState.State.ENABLED);
+    assertThat(metric1.getTimeSeriesList())
+        .containsExactly(
+            TimeSeries.createWithOnePoint(
+                Collections.singletonList(LabelValue.create("v1")),
+                Point.create(Value.longValue(2), read1),
+                START),
+            TimeSeries.createWithOnePoint(
+                Collections.singletonList(LabelValue.create("v2")),
+                Point.create(Value.longValue(1), read1),
+                START));
+
+    // Only the series recorded since the previous read, starting at the previous read.
+    recordCount(viewData, context1, read1);
+    Timestamp read2 = START.addDuration(Duration.create(20, 0));
+    Metric metric2 = viewData.toDeltaMetric(read2, CurrentState.State.ENABLED);
+    assertThat(metric2.getTimeSeriesList())
+        .containsExactly(
+            TimeSeries.createWithOnePoint(
+                Collections.singletonList(LabelValue.create("v1")),
+                Point.create(Value.longValue(1), read2),
+                read1));
+    assertThat(viewData.toViewData(read2, CurrentState.State.ENABLED).getAggregationMap())
+        .containsExactly(
+            Arrays.asList(TagValue.create("v1")),
+            CountData.create(0),
+            Arrays.asList(TagValue.create("v2")),
+            CountData.create(0));
+
+    Timestamp read3 = START.addDuration(Duration.create(30, 0));
+    assertThat(viewData.toDeltaMetric(read3, CurrentState.State.ENABLED).getTimeSeriesList())
+        .isEmpty();
+  }
+
+  @Test
+  public void testToDeltaMetric_SkipsSeriesRemovedSinceRecorded() {
+    TagKey key = TagKey.create("KEY");
+    MutableViewData viewData = MutableViewData.create(createCountView(key), START);
+    TagMapImpl context = newTagMap(key, TagValue.create("v1"));
+    recordCount(viewData, context, START);
+    Timestamp read1 = START.addDuration(Duration.create(10, 0));
+    assertThat(viewData.toDeltaMetric(read1, CurrentState.State.ENABLED).getTimeSeriesList())
+        .hasSize(1);
+
+    // The series is queued as dirty, then removed.
+    recordCount(viewData, context, read1);
+    viewData.clearStats();
+    Timestamp read2 = START.addDuration(Duration.create(20, 0));
+    assertThat(viewData.toDeltaMetric(read2, CurrentState.State.ENABLED).getTimeSeriesList())
+        .isEmpty();
+
+    // The series that replaces it is queued again.
+    recordCount(viewData, context, read2);
+    Timestamp read3 = START.addDuration(Duration.create(30, 0));
+    assertThat(viewData.toDeltaMetric(read3, CurrentState.State.ENABLED).getTimeSeriesList())
+        .containsExactly(
+            TimeSeries.createWithOnePoint(
+                Collections.singletonList(LabelValue.create("v1")),
+                Point.create(Value.longValue(1), read3),
+                read2));
+  }
+
+  @Test
+  public void testToDeltaMetric_GaugeNotReset() {
+    TagKey key = TagKey.create("KEY");
+    View view =
+        View.create(
+            View.Name.create("view"),
+            "Description",
+            MeasureDouble.create("name", "desc", "us"),
+            LastValue.create(),
+            Collections.singletonList(key));
+    MutableViewData viewData = MutableViewData.create(view, START);
+    viewData.record(
+        newTagMap(key, TagValue.create("v1")),
+        5.0,
+        START,
+        Collections.<String, AttachmentValue>emptyMap());
+    Timestamp read = START.addDuration(Duration.create(10, 0));
+    Metric metric = viewData.toDeltaMetric(read, CurrentState.State.ENABLED);
+    assertThat(viewData.toDeltaMetric(read, CurrentState.State.ENABLED)).isEqualTo(metric);
+    assertThat(metric.getTimeSeriesList())
+        .containsExactly(
+            TimeSeries.createWithOnePoint(
+                Collections.singletonList(LabelValue.create("v1")),
+                Point.create(Value.doubleValue(5.0), read),
+                null));
+  }
+
+  private static View createCountView(TagKey key) {
+    return View.create(
+        View.Name.create("view"),
+        "Description",
+        MeasureDouble.create("name", "desc", "us"),
+        Count.create(),
+        Collections.singletonList(key));
+  }
+
+  private static void recordCount(MutableViewData viewData, TagMapImpl context, Timestamp time) {
+    viewData.record(context, 1.0, time, Collections.<String, AttachmentValue>emptyMap());
+  }
+
+  private static TagMapImpl newTagMap(TagKey key, TagValue value) {
+    return new TagMapImpl(
+        Collections.singletonMap(
+            key,
+            TagValueWithMetadata.create(value, TagMetadata.create(TagTtl.UNLIMITED_PROPAGATION))));
+  }
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.opencensus.implcore.stats;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.common.Duration;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link StatsComponentOptions}. */
+@RunWith(JUnit4.class)
+public class StatsComponentOptionsTest {
+
+  @Test
+  public void defaultOptions() {
+    assertThat(StatsComponentOptions.DEFAULT.getRecordSynchronously()).isFalse();
+    assertThat(StatsComponentOptions.DEFAULT.getCardinalityLimits())
+        .isEqualTo(CardinalityLimits.UNLIMITED);
+    assertThat(StatsComponentOptions.DEFAULT.getAggregationTemporality())
+        .isEqualTo(AggregationTemporality.CUMULATIVE);
+  }
+
+  @Test
+  public void updateAll() {
+    CardinalityLimits limits =
+        CardinalityLimits.builder().setSeriesIdleTimeout(Duration.create(60, 0)).build();
+    StatsComponentOptions options =
+        StatsComponentOptions.DEFAULT
+            .toBuilder()
+            .setRecordSynchronously(true)
+            .setCardinalityLimits(limits)
+            .setAggregationTemporality(AggregationTemporality.DELTA)
+            .build();
+    assertThat(options.getRecordSynchronously()).isTrue();
+    assertThat(options.getCardinalityLimits()).isEqualTo(limits);
+    assertThat(options.getAggregationTemporality()).isEqualTo(AggregationTemporality.DELTA);
+  }
+}
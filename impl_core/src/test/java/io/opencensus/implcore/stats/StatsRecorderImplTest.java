@@ -24,6 +24,7 @@ import com.google.common.collect.ImmutableMap;
 import io.grpc.Context;
 import io.opencensus.common.Duration;
 import io.opencensus.common.Timestamp;
+import io.opencensus.implcore.internal.EventQueue;
 import io.opencensus.implcore.internal.SimpleEventQueue;
 import io.opencensus.implcore.stats.StatsTestUtil.SimpleTagContext;
 import io.opencensus.metrics.data.AttachmentValue;
@@ -132,6 +133,42 @@ public final class StatsRecorderImplTest {
     assertThat(viewData.getAggregationMap().keySet()).containsExactly(Arrays.asList(VALUE));
   }
 
+  @Test
+  public void record_Synchronously() {
+    EventQueue unusedQueue =
+        new EventQueue() {
+          @Override
+          public void enqueue(Entry entry) {
+            throw new AssertionError("Stats should not be recorded through the queue.");
+          }
+
+          @Override
+          public void shutdown() {}
+        };
+    StatsComponent synchronousStatsComponent =
+        new StatsComponentImplBase(
+            unusedQueue,
+            testClock,
+            StatsComponentOptions.builder().setRecordSynchronously(true).build());
+    View view =
+        View.create(
+            VIEW_NAME,
+            "description",
+            MEASURE_DOUBLE,
+            Count.create(),
+            Arrays.asList(KEY),
+            Cumulative.create());
+    synchronousStatsComponent.getViewManager().registerView(view);
+    synchronousStatsComponent
+        .getStatsRecorder()
+        .newMeasureMap()
+        .put(MEASURE_DOUBLE, 1.0)
+        .record(new SimpleTagContext(Tag.create(KEY, VALUE)));
+    ViewData viewData = synchronousStatsComponent.getViewManager().getView(VIEW_NAME);
+    assertThat(viewData.getAggregationMap())
+        .containsExactly(Arrays.asList(VALUE), CountData.create(1));
+  }
+
   @Test
   public void record_UnregisteredMeasure() {
     View view =
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import static com.google.common.truth.Truth.assertThat;
+import static io.opencensus.implcore.stats.StatsTestUtil.assertAggregationDataEquals;
+
+import io.opencensus.common.Timestamp;
+import io.opencensus.metrics.data.AttachmentValue;
+import io.opencensus.metrics.export.Point;
+import io.opencensus.metrics.export.Value;
+import io.opencensus.stats.Aggregation.Count;
+import io.opencensus.stats.Aggregation.Distribution;
+import io.opencensus.stats.Aggregation.LastValue;
+import io.opencensus.stats.Aggregation.Mean;
+import io.opencensus.stats.Aggregation.Sum;
+import io.opencensus.stats.AggregationData.CountData;
+import io.opencensus.stats.AggregationData.DistributionData;
+import io.opencensus.stats.AggregationData.LastValueDataDouble;
+import io.opencensus.stats.AggregationData.MeanData;
+import io.opencensus.stats.AggregationData.SumDataDouble;
+import io.opencensus.stats.BucketBoundaries;
+import io.opencensus.stats.Measure.MeasureDouble;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link StripedMutableAggregation}. */
+@RunWith(JUnit4.class)
+public class StripedMutableAggregationTest {
+
+  private static final double TOLERANCE = 1e-6;
+  private static final MeasureDouble MEASURE = MeasureDouble.create("measure", "description", "1");
+  private static final Timestamp TIMESTAMP = Timestamp.create(60, 0);
+  private static final Map<String, AttachmentValue> EMPTY_ATTACHMENTS =
+      Collections.<String, AttachmentValue>emptyMap();
+
+  @Test
+  public void createEmpty() {
+    StripedMutableAggregation aggregation =
+        StripedMutableAggregation.create(Count.create(), MEASURE);
+    assertThat(aggregation.getNumberOfCells()).isEqualTo(1);
+    assertThat(aggregation.toAggregationData()).isEqualTo(CountData.create(0));
+    assertThat(aggregation.toPoint(TIMESTAMP))
+        .isEqualTo(Point.create(Value.longValue(0), TIMESTAMP));
+  }
+
+  @Test
+  public void recordFromSingleThread() {
+    StripedMutableAggregation aggregation = StripedMutableAggregation.create(Sum.create(), MEASURE);
+    for (double value : Arrays.asList(1.0, 2.5, -0.5)) {
+      aggregation.add(value, EMPTY_ATTACHMENTS, TIMESTAMP);
+    }
+    // Uncontended recording never expands the cell table.
+    assertThat(aggregation.getNumberOfCells()).isEqualTo(1);
+    assertThat(aggregation.toAggregationData()).isEqualTo(SumDataDouble.create(3.0));
+  }
+
+  @Test
+  public void toPointAndReset() {
+    StripedMutableAggregation aggregation =
+        StripedMutableAggregation.create(Count.create(), MEASURE);
+    assertThat(aggregation.toPointAndReset(TIMESTAMP)).isNull();
+    aggregation.add(1.0, EMPTY_ATTACHMENTS, TIMESTAMP);
+    aggregation.add(2.0, EMPTY_ATTACHMENTS, TIMESTAMP);
+    assertThat(aggregation.toPointAndReset(TIMESTAMP))
+        .isEqualTo(Point.create(Value.longValue(2), TIMESTAMP));
+    // Nothing recorded since the reset.
+    assertThat(aggregation.toPointAndReset(TIMESTAMP)).isNull();
+    assertThat(aggregation.toAggregationData()).isEqualTo(CountData.create(0));
+    aggregation.add(3.0, EMPTY_ATTACHMENTS, TIMESTAMP);
+    assertThat(aggregation.toPointAndReset(TIMESTAMP))
+        .isEqualTo(Point.create(Value.longValue(1), TIMESTAMP));
+  }
+
+  @Test
+  public void markRemovedIfRecordedBefore() {
+    StripedMutableAggregation aggregation =
+        StripedMutableAggregation.create(Count.create(), MEASURE);
+    aggregation.setLastRecorded(TIMESTAMP);
+    assertThat(aggregation.add(1.0, EMPTY_ATTACHMENTS, TIMESTAMP)).isTrue();
+    // Recorded at the cutoff second, so not removed.
+    assertThat(aggregation.markRemovedIfRecordedBefore(TIMESTAMP.getSeconds())).isFalse();
+    assertThat(aggregation.add(1.0, EMPTY_ATTACHMENTS, TIMESTAMP)).isTrue();
+    assertThat(aggregation.markRemovedIfRecordedBefore(TIMESTAMP.getSeconds() + 1)).isTrue();
+    // Once removed, values are no longer recorded.
+    assertThat(aggregation.add(1.0, EMPTY_ATTACHMENTS, TIMESTAMP)).isFalse();
+    assertThat(aggregation.markRemovedIfRecordedBefore(0)).isTrue();
+    assertThat(aggregation.toAggregationData()).isEqualTo(CountData.create(2));
+  }
+
+  @Test
+  public void recordFromMultipleThreads_Count() throws InterruptedException {
+    StripedMutableAggregation aggregation =
+        StripedMutableAggregation.create(Count.create(), MEASURE);
+    recordConcurrently(aggregation, 8, 10000, 1.0);
+    assertThat(aggregation.toAggregationData()).isEqualTo(CountData.create(80000));
+  }
+
+  @Test
+  public void recordFromMultipleThreads_Mean() throws InterruptedException {
+    StripedMutableAggregation aggregation =
+        StripedMutableAggregation.create(Mean.create(), MEASURE);
+    recordConcurrently(aggregation, 8, 10000, 2.0);
+    assertAggregationDataEquals(
+        MeanData.create(2.0, 80000), aggregation.toAggregationData(), TOLERANCE);
+  }
+
+  @Test
+  public void recordFromMultipleThreads_Distribution() throws InterruptedException {
+    StripedMutableAggregation aggregation =
+        StripedMutableAggregation.create(
+            Distribution.create(BucketBoundaries.create(Arrays.asList(1.0, 5.0))), MEASURE);
+    recordConcurrently(aggregation, 8, 10000, 3.0);
+    assertAggregationDataEquals(
+        DistributionData.create(3.0, 80000, 0.0, Arrays.asList(0L, 80000L, 0L)),
+        aggregation.toAggregationData(),
+        TOLERANCE);
+  }
+
+  @Test
+  public void lastValueUsesSingleCell() throws InterruptedException {
+    StripedMutableAggregation aggregation =
+        StripedMutableAggregation.create(LastValue.create(), MEASURE);
+    recordConcurrently(aggregation, 8, 10000, 4.0);
+    assertThat(aggregation.getNumberOfCells()).isEqualTo(1);
+    assertThat(aggregation.toAggregationData()).isEqualTo(LastValueDataDouble.create(4.0));
+  }
+
+  private static void recordConcurrently(
+      final StripedMutableAggregation aggregation,
+      int numThreads,
+      final int recordsPerThread,
+      final double value)
+      throws InterruptedException {
+    final CountDownLatch startLatch = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < numThreads; i++) {
+      Thread thread =
+          new Thread() {
+            @Override
+            public void run() {
+              try {
+                startLatch.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+              }
+              for (int j = 0; j < recordsPerThread; j++) {
+                aggregation.add(value, EMPTY_ATTACHMENTS, TIMESTAMP);
+              }
+            }
+          };
+      threads.add(thread);
+      thread.start();
+    }
+    startLatch.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.stats;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.testing.EqualsTester;
+import io.opencensus.tags.TagValue;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link TagValueList}. */
+@RunWith(JUnit4.class)
+public class TagValueListTest {
+
+  private static final TagValue V1 = TagValue.create("v1");
+  private static final TagValue V2 = TagValue.create("v2");
+
+  @Test
+  public void testGet() {
+    TagValueList list = new TagValueList(new TagValue[] {V1, null, V2});
+    assertThat(list.size()).isEqualTo(3);
+    assertThat(list.get(0)).isEqualTo(V1);
+    assertThat(list.get(1)).isNull();
+    assertThat(list.get(2)).isEqualTo(V2);
+  }
+
+  @Test
+  public void testEquals() {
+    new EqualsTester()
+        .addEqualityGroup(
+            new TagValueList(new TagValue[] {V1, V2}),
+            new TagValueList(new TagValue[] {TagValue.create("v1"), TagValue.create("v2")}),
+            Arrays.asList(V1, V2))
+        .addEqualityGroup(
+            new TagValueList(new TagValue[] {V1, null}), Arrays.asList(V1, (TagValue) null))
+        .addEqualityGroup(new TagValueList(new TagValue[] {V2, V1}))
+        .addEqualityGroup(new TagValueList(new TagValue[0]), Arrays.<TagValue>asList())
+        .testEquals();
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void preventMutation() {
+    new TagValueList(new TagValue[] {V1}).set(0, V2);
+  }
+}
@@ -81,6 +81,30 @@ public class TagMapImplTest {
     assertThat(tags.getTags()).containsExactly(K1, VM1, K2, VM2);
   }
 
+  @Test
+  public void cachedValues() {
+    TagMapImpl tags = new TagMapImpl(ImmutableMap.of(K1, VM1));
+    assertThat(tags.getCachedValue(Arrays.asList(K1))).isNull();
+    tags.putCachedValue(Arrays.asList(K1), "value1");
+    tags.putCachedValue(Arrays.asList(K1, K2), "value2");
+    // Keys are compared with equals.
+    assertThat(tags.getCachedValue(Arrays.asList(K1))).isEqualTo("value1");
+    assertThat(tags.getCachedValue(Arrays.asList(K1, K2))).isEqualTo("value2");
+    assertThat(tags.getCachedValue(Arrays.asList(K2))).isNull();
+  }
+
+  @Test
+  public void cachedValues_NoneAddedOnceFull() {
+    TagMapImpl tags = new TagMapImpl(ImmutableMap.of(K1, VM1));
+    for (int i = 0; i < 8; i++) {
+      tags.putCachedValue(i, "value" + i);
+    }
+    tags.putCachedValue(8, "value8");
+    assertThat(tags.getCachedValue(0)).isEqualTo("value0");
+    assertThat(tags.getCachedValue(7)).isEqualTo("value7");
+    assertThat(tags.getCachedValue(8)).isNull();
+  }
+
   @Test
   public void put_newKey() {
     TagContext tags = new TagMapImpl(ImmutableMap.of(K1, VM1));
@@ -445,6 +445,44 @@ public class RecordEventsSpanImplTest {
     }
   }
 
+  @Test
+  public void droppingAnnotations_MoreThanInitialCapacity() {
+    final int maxNumberOfAnnotations = 20;
+    TraceParams traceParams =
+        TraceParams.DEFAULT.toBuilder().setMaxNumberOfAnnotations(maxNumberOfAnnotations).build();
+    RecordEventsSpanImpl span =
+        RecordEventsSpanImpl.startSpan(
+            spanContext,
+            SPAN_NAME,
+            null,
+            parentSpanId,
+            false,
+            traceParams,
+            startEndHandler,
+            timestampConverter,
+            testClock);
+    for (int i = 0; i < 10; i++) {
+      span.addAnnotation(Annotation.fromDescription("annotation" + i));
+    }
+    SpanData spanData = span.toSpanData();
+    for (int i = 10; i < 45; i++) {
+      span.addAnnotation(Annotation.fromDescription("annotation" + i));
+    }
+    // The SpanData is not changed by later annotations.
+    assertThat(spanData.getAnnotations().getDroppedEventsCount()).isEqualTo(0);
+    assertThat(spanData.getAnnotations().getEvents().size()).isEqualTo(10);
+    assertThat(spanData.getAnnotations().getEvents().get(9).getEvent())
+        .isEqualTo(Annotation.fromDescription("annotation9"));
+
+    spanData = span.toSpanData();
+    assertThat(spanData.getAnnotations().getDroppedEventsCount()).isEqualTo(25);
+    assertThat(spanData.getAnnotations().getEvents().size()).isEqualTo(maxNumberOfAnnotations);
+    for (int i = 0; i < maxNumberOfAnnotations; i++) {
+      assertThat(spanData.getAnnotations().getEvents().get(i).getEvent())
+          .isEqualTo(Annotation.fromDescription("annotation" + (25 + i)));
+    }
+  }
+
   @Test
   public void droppingNetworkEvents() {
     final int maxNumberOfNetworkEvents = 8;
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.trace.export;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.common.Timestamp;
+import io.opencensus.trace.Annotation;
+import io.opencensus.trace.AttributeValue;
+import io.opencensus.trace.Link;
+import io.opencensus.trace.MessageEvent;
+import io.opencensus.trace.SpanContext;
+import io.opencensus.trace.SpanId;
+import io.opencensus.trace.Status;
+import io.opencensus.trace.TraceId;
+import io.opencensus.trace.TraceOptions;
+import io.opencensus.trace.export.SpanData;
+import io.opencensus.trace.export.SpanData.Attributes;
+import io.opencensus.trace.export.SpanData.Links;
+import io.opencensus.trace.export.SpanData.TimedEvent;
+import io.opencensus.trace.export.SpanData.TimedEvents;
+import io.opencensus.trace.export.SpanExporter.Handler;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link HandlerPipeline}. */
+@RunWith(JUnit4.class)
+public class HandlerPipelineTest {
+  private final Random random = new Random(1234);
+  private final BlockingHandler handler = new BlockingHandler();
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @After
+  public void tearDown() {
+    handler.unblock();
+  }
+
+  private SpanData createSpanData(String name) {
+    return SpanData.create(
+        SpanContext.create(
+            TraceId.generateRandomId(random),
+            SpanId.generateRandomId(random),
+            TraceOptions.builder().setIsSampled(true).build()),
+        null,
+        null,
+        name,
+        null,
+        Timestamp.create(123, 456),
+        Attributes.create(Collections.<String, AttributeValue>emptyMap(), 0),
+        TimedEvents.create(Collections.<TimedEvent<Annotation>>emptyList(), 0),
+        TimedEvents.create(Collections.<TimedEvent<MessageEvent>>emptyList(), 0),
+        Links.create(Collections.<Link>emptyList(), 0),
+        null,
+        Status.OK,
+        Timestamp.create(124, 0));
+  }
+
+  private List<SpanData> createBatch(String name, int size) {
+    List<SpanData> batch = new ArrayList<SpanData>(size);
+    for (int i = 0; i < size; i++) {
+      batch.add(createSpanData(name + "/" + i));
+    }
+    return Collections.unmodifiableList(batch);
+  }
+
+  @Test
+  public void stopCountsTheQueuedBatchesAsDropped() throws InterruptedException {
+    HandlerPipeline pipeline = new HandlerPipeline("test", handler, 2);
+    pipeline.offer(createBatch("exporting", 1));
+    handler.awaitExporting();
+    pipeline.offer(createBatch("queued1", 2));
+    pipeline.offer(createBatch("queued2", 3));
+    pipeline.offer(createBatch("dropped", 4));
+    assertThat(pipeline.getDroppedSpans()).isEqualTo(4);
+
+    pipeline.stop();
+    assertThat(pipeline.getDroppedSpans()).isEqualTo(9);
+  }
+
+  @Test
+  public void spillsWhileTheHandlerIsBlocked() throws IOException, InterruptedException {
+    final int numSpilledBatches = 10;
+    SpanSpillLog spillLog = SpanSpillLog.open(temporaryFolder.newFolder(), 1024 * 1024);
+    HandlerPipeline pipeline =
+        new HandlerPipeline("test", handler, 2, spillLog, 1000000, new AtomicLong());
+    pipeline.offer(createBatch("exporting", 1));
+    handler.awaitExporting();
+    pipeline.offer(createBatch("queued1", 2));
+    pipeline.offer(createBatch("queued2", 3));
+    for (int i = 0; i < numSpilledBatches; i++) {
+      pipeline.offer(createBatch("spilled" + i, 1));
+    }
+    assertThat(pipeline.getDroppedSpans()).isEqualTo(0);
+
+    // Waits for the writer thread while the handler is still blocked.
+    spillLog.close();
+    for (int i = 0; i < numSpilledBatches; i++) {
+      List<SpanData> batch = spillLog.poll();
+      assertThat(batch).hasSize(1);
+      assertThat(batch.get(0).getName()).isEqualTo("spilled" + i + "/0");
+    }
+    assertThat(spillLog.isEmpty()).isTrue();
+    assertThat(pipeline.getDroppedSpans()).isEqualTo(0);
+  }
+
+  @Test
+  public void exportsTheSpilledBatchesOnceUnblocked() throws IOException, InterruptedException {
+    SpanSpillLog spillLog = SpanSpillLog.open(temporaryFolder.newFolder(), 1024 * 1024);
+    HandlerPipeline pipeline =
+        new HandlerPipeline("test", handler, 2, spillLog, 1000000, new AtomicLong());
+    pipeline.offer(createBatch("exporting", 1));
+    handler.awaitExporting();
+    pipeline.offer(createBatch("queued1", 2));
+    pipeline.offer(createBatch("queued2", 3));
+    pipeline.offer(createBatch("spilled1", 4));
+    pipeline.offer(createBatch("spilled2", 5));
+
+    handler.unblock();
+    handler.awaitExportedSpans(1 + 2 + 3 + 4 + 5);
+    assertThat(spillLog.isEmpty()).isTrue();
+    assertThat(pipeline.getDroppedSpans()).isEqualTo(0);
+    pipeline.stop();
+  }
+
+  @Test
+  public void stopSpillsTheQueuedBatches() throws IOException, InterruptedException {
+    SpanSpillLog spillLog = SpanSpillLog.open(temporaryFolder.newFolder(), 1024 * 1024);
+    AtomicLong allHandlersDroppedSpans = new AtomicLong();
+    HandlerPipeline pipeline =
+        new HandlerPipeline("test", handler, 2, spillLog, 1000000, allHandlersDroppedSpans);
+    pipeline.offer(createBatch("exporting", 1));
+    handler.awaitExporting();
+    pipeline.offer(createBatch("queued1", 2));
+    pipeline.offer(createBatch("queued2", 3));
+    pipeline.offer(createBatch("spilled", 4));
+
+    pipeline.stop();
+    assertThat(spillLog.isEmpty()).isFalse();
+    // The batch that could not be queued was handed over to the writer thread first.
+    spillLog.close();
+    assertThat(spillLog.poll()).hasSize(4);
+    assertThat(spillLog.poll()).hasSize(2);
+    assertThat(spillLog.poll()).hasSize(3);
+    assertThat(pipeline.getDroppedSpans()).isEqualTo(0);
+    assertThat(allHandlersDroppedSpans.get()).isEqualTo(0);
+  }
+
+  // Handler that blocks in export() until unblocked.
+  private static final class BlockingHandler extends Handler {
+    private final CountDownLatch exporting = new CountDownLatch(1);
+    private final CountDownLatch unblocked = new CountDownLatch(1);
+    // One permit per exported span.
+    private final Semaphore exportedSpans = new Semaphore(0);
+
+    @Override
+    public void export(Collection<SpanData> spanDataList) {
+      exporting.countDown();
+      try {
+        unblocked.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      exportedSpans.release(spanDataList.size());
+    }
+
+    private void awaitExporting() throws InterruptedException {
+      exporting.await();
+    }
+
+    private void awaitExportedSpans(int numSpans) throws InterruptedException {
+      exportedSpans.acquire(numSpans);
+    }
+
+    private void unblock() {
+      unblocked.countDown();
+    }
+  }
+}
@@ -31,6 +31,8 @@ import io.opencensus.trace.TraceOptions;
 import io.opencensus.trace.Tracestate;
 import io.opencensus.trace.config.TraceParams;
 import io.opencensus.trace.export.RunningSpanStore.Filter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import org.junit.Before;
 import org.junit.Test;
@@ -191,4 +193,55 @@ public class InProcessRunningSpanStoreImplTest {
     span4.end();
     assertThat(activeSpansExporter.getSummary().getPerSpanNameSummary().size()).isEqualTo(0);
   }
+
+  @Test
+  public void setMaxNumberOfSpans_LimitsAllTheSpans() {
+    activeSpansExporter.setMaxNumberOfSpans(3);
+    List<RecordEventsSpanImpl> spans = new ArrayList<RecordEventsSpanImpl>();
+    for (int i = 0; i < 5; i++) {
+      spans.add(createSpan(SPAN_NAME_1));
+    }
+    assertThat(
+            activeSpansExporter
+                .getSummary()
+                .getPerSpanNameSummary()
+                .get(SPAN_NAME_1)
+                .getNumRunningSpans())
+        .isEqualTo(3);
+    assertThat(activeSpansExporter.getRunningSpans(Filter.create(SPAN_NAME_1, 0))).hasSize(3);
+    for (RecordEventsSpanImpl span : spans) {
+      span.end();
+    }
+    assertThat(activeSpansExporter.getSummary().getPerSpanNameSummary()).isEmpty();
+    assertThat(activeSpansExporter.getRunningSpans(Filter.create(SPAN_NAME_1, 0))).isEmpty();
+  }
+
+  @Test
+  public void startAndEndSpansFromManyThreads() throws Exception {
+    activeSpansExporter.setMaxNumberOfSpans(1000);
+    final List<RecordEventsSpanImpl> spans = new ArrayList<RecordEventsSpanImpl>();
+    for (int i = 0; i < 800; i++) {
+      spans.add(createSpan(i % 2 == 0 ? SPAN_NAME_1 : SPAN_NAME_2));
+    }
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < 4; t++) {
+      final int first = t;
+      Thread thread =
+          new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  for (int i = first; i < spans.size(); i += 4) {
+                    spans.get(i).end();
+                  }
+                }
+              });
+      thread.start();
+      threads.add(thread);
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertThat(activeSpansExporter.getSummary().getPerSpanNameSummary()).isEmpty();
+  }
 }
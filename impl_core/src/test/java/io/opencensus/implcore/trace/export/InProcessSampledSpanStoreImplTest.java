@@ -24,6 +24,7 @@ import io.opencensus.implcore.internal.SimpleEventQueue;
 import io.opencensus.implcore.trace.RecordEventsSpanImpl;
 import io.opencensus.implcore.trace.RecordEventsSpanImpl.StartEndHandler;
 import io.opencensus.testing.common.TestClock;
+import io.opencensus.trace.AttributeValue;
 import io.opencensus.trace.EndSpanOptions;
 import io.opencensus.trace.Span;
 import io.opencensus.trace.SpanContext;
@@ -365,4 +366,99 @@ public class InProcessSampledSpanStoreImplTest {
             LatencyFilter.create(REGISTERED_SPAN_NAME, 0, Long.MAX_VALUE, 0));
     assertThat(samples.size()).isEqualTo(0);
   }
+
+  @Test
+  public void compactSamplesDecodeToSpanData() {
+    InProcessSampledSpanStoreImpl compactStore =
+        new InProcessSampledSpanStoreImpl(new SimpleEventQueue(), 1024 * 1024);
+    compactStore.registerSpanNamesForCollection(Collections.singletonList(REGISTERED_SPAN_NAME));
+    RecordEventsSpanImpl span1 = createSampledSpan(REGISTERED_SPAN_NAME);
+    span1.putAttribute("key", AttributeValue.stringAttributeValue("value"));
+    span1.addAnnotation("annotation");
+    testClock.advanceTime(Duration.create(0, (int) TimeUnit.MICROSECONDS.toNanos(20)));
+    span1.end();
+    compactStore.considerForSampling(span1);
+    RecordEventsSpanImpl span2 = createSampledSpan(REGISTERED_SPAN_NAME);
+    testClock.advanceTime(Duration.create(0, 1000));
+    span2.end(EndSpanOptions.builder().setStatus(Status.CANCELLED).build());
+    compactStore.considerForSampling(span2);
+    assertThat(
+            compactStore.getLatencySampledSpans(
+                LatencyFilter.create(REGISTERED_SPAN_NAME, 0, Long.MAX_VALUE, 0)))
+        .containsExactly(span1.toSpanData());
+    assertThat(
+            compactStore.getErrorSampledSpans(
+                ErrorFilter.create(REGISTERED_SPAN_NAME, CanonicalCode.CANCELLED, 0)))
+        .containsExactly(span2.toSpanData());
+    assertThat(compactStore.getCompactSampleBytes()).isGreaterThan(0L);
+  }
+
+  @Test
+  public void compactSamplesOverTheBudgetAreDropped() {
+    InProcessSampledSpanStoreImpl compactStore =
+        new InProcessSampledSpanStoreImpl(new SimpleEventQueue(), 1);
+    compactStore.registerSpanNamesForCollection(Collections.singletonList(REGISTERED_SPAN_NAME));
+    RecordEventsSpanImpl span = createSampledSpan(REGISTERED_SPAN_NAME);
+    testClock.advanceTime(Duration.create(0, 1000));
+    span.end(EndSpanOptions.builder().setStatus(Status.CANCELLED).build());
+    compactStore.considerForSampling(span);
+    assertThat(
+            compactStore.getErrorSampledSpans(ErrorFilter.create(REGISTERED_SPAN_NAME, null, 0)))
+        .isEmpty();
+    assertThat(compactStore.getCompactSampleBytes()).isEqualTo(0L);
+    assertThat(compactStore.getDroppedCompactSamples()).isEqualTo(1L);
+  }
+
+  @Test
+  public void compactSamplesEvictedOrUnregisteredFreeTheirBytes() {
+    InProcessSampledSpanStoreImpl compactStore =
+        new InProcessSampledSpanStoreImpl(new SimpleEventQueue(), 1024 * 1024);
+    compactStore.registerSpanNamesForCollection(Collections.singletonList(REGISTERED_SPAN_NAME));
+    long bytesPerSample = 0;
+    // More samples than the error bucket keeps, all of the same size.
+    for (int i = 0; i < 10; i++) {
+      // Advance time to allow other spans to be sampled.
+      testClock.advanceTime(Duration.create(5, 0));
+      RecordEventsSpanImpl span = createSampledSpan(REGISTERED_SPAN_NAME);
+      testClock.advanceTime(Duration.create(0, 1000));
+      span.end(EndSpanOptions.builder().setStatus(Status.CANCELLED).build());
+      compactStore.considerForSampling(span);
+      if (i == 0) {
+        bytesPerSample = compactStore.getCompactSampleBytes();
+      }
+    }
+    int numSamples =
+        compactStore
+            .getSummary()
+            .getPerSpanNameSummary()
+            .get(REGISTERED_SPAN_NAME)
+            .getNumbersOfErrorSampledSpans()
+            .get(CanonicalCode.CANCELLED);
+    assertThat(numSamples).isLessThan(10);
+    assertThat(compactStore.getCompactSampleBytes()).isEqualTo(numSamples * bytesPerSample);
+    compactStore.unregisterSpanNamesForCollection(
+        Collections.singletonList(REGISTERED_SPAN_NAME));
+    assertThat(compactStore.getCompactSampleBytes()).isEqualTo(0L);
+  }
+
+  @Test
+  public void getLatencyBucketIndex() {
+    LatencyBucketBoundaries[] boundaries = LatencyBucketBoundaries.values();
+    for (int i = 0; i < boundaries.length; i++) {
+      long lowerNs = boundaries[i].getLatencyLowerNs();
+      long upperNs = boundaries[i].getLatencyUpperNs();
+      assertThat(InProcessSampledSpanStoreImpl.getLatencyBucketIndex(lowerNs)).isEqualTo(i);
+      long middleNs = lowerNs + (upperNs - lowerNs) / 2;
+      assertThat(InProcessSampledSpanStoreImpl.getLatencyBucketIndex(middleNs)).isEqualTo(i);
+      assertThat(InProcessSampledSpanStoreImpl.getLatencyBucketIndex(upperNs - 1)).isEqualTo(i);
+    }
+    for (int bitLength = 1; bitLength < Long.SIZE; bitLength++) {
+      long latencyNs = 1L << (bitLength - 1);
+      int index = InProcessSampledSpanStoreImpl.getLatencyBucketIndex(latencyNs);
+      assertThat(latencyNs).isAtLeast(boundaries[index].getLatencyLowerNs());
+      assertThat(latencyNs).isLessThan(boundaries[index].getLatencyUpperNs());
+    }
+    assertThat(InProcessSampledSpanStoreImpl.getLatencyBucketIndex(-1)).isEqualTo(-1);
+    assertThat(InProcessSampledSpanStoreImpl.getLatencyBucketIndex(Long.MAX_VALUE)).isEqualTo(-1);
+  }
 }
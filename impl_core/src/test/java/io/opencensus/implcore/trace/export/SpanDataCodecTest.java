@@ -0,0 +1,153 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.trace.export;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.common.Timestamp;
+import io.opencensus.trace.Annotation;
+import io.opencensus.trace.AttributeValue;
+import io.opencensus.trace.Link;
+import io.opencensus.trace.MessageEvent;
+import io.opencensus.trace.Span.Kind;
+import io.opencensus.trace.SpanContext;
+import io.opencensus.trace.SpanId;
+import io.opencensus.trace.Status;
+import io.opencensus.trace.TraceId;
+import io.opencensus.trace.TraceOptions;
+import io.opencensus.trace.Tracestate;
+import io.opencensus.trace.export.SpanData;
+import io.opencensus.trace.export.SpanData.Attributes;
+import io.opencensus.trace.export.SpanData.Links;
+import io.opencensus.trace.export.SpanData.TimedEvent;
+import io.opencensus.trace.export.SpanData.TimedEvents;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link SpanDataCodec}. */
+@RunWith(JUnit4.class)
+public class SpanDataCodecTest {
+  private static final Timestamp startTimestamp = Timestamp.create(123, 456);
+  private static final Timestamp eventTimestamp = Timestamp.create(123, 789);
+  private static final Timestamp endTimestamp = Timestamp.create(124, 12);
+  private final Random random = new Random(1234);
+  private final SpanContext spanContext =
+      SpanContext.create(
+          TraceId.generateRandomId(random),
+          SpanId.generateRandomId(random),
+          TraceOptions.builder().setIsSampled(true).build(),
+          Tracestate.builder().set("first", "1").set("second", "2").build());
+  private final SpanId parentSpanId = SpanId.generateRandomId(random);
+
+  @Test
+  public void encodeAndDecode() {
+    Map<String, AttributeValue> attributes = new HashMap<String, AttributeValue>();
+    attributes.put("string", AttributeValue.stringAttributeValue("välue"));
+    attributes.put("boolean", AttributeValue.booleanAttributeValue(true));
+    attributes.put("long", AttributeValue.longAttributeValue(-42L));
+    attributes.put("double", AttributeValue.doubleAttributeValue(1.5));
+    SpanData spanData =
+        SpanData.create(
+            spanContext,
+            parentSpanId,
+            true,
+            "SpanName",
+            Kind.SERVER,
+            startTimestamp,
+            Attributes.create(attributes, 1),
+            TimedEvents.create(
+                Collections.singletonList(
+                    TimedEvent.create(
+                        eventTimestamp,
+                        Annotation.fromDescriptionAndAttributes("annotation", attributes))),
+                2),
+            TimedEvents.create(
+                Arrays.asList(
+                    TimedEvent.create(
+                        eventTimestamp,
+                        MessageEvent.builder(MessageEvent.Type.SENT, 1)
+                            .setUncompressedMessageSize(100)
+                            .setCompressedMessageSize(50)
+                            .build()),
+                    TimedEvent.create(
+                        endTimestamp, MessageEvent.builder(MessageEvent.Type.RECEIVED, 2).build())),
+                3),
+            Links.create(
+                Collections.singletonList(
+                    Link.fromSpanContext(
+                        SpanContext.create(
+                            TraceId.generateRandomId(random),
+                            SpanId.generateRandomId(random),
+                            TraceOptions.DEFAULT),
+                        Link.Type.PARENT_LINKED_SPAN,
+                        attributes)),
+                4),
+            5,
+            Status.CANCELLED.withDescription("description"),
+            endTimestamp);
+    assertThat(SpanDataCodec.decode(SpanDataCodec.encode(spanData))).isEqualTo(spanData);
+  }
+
+  @Test
+  public void encodeAndDecode_AbsentFields() {
+    SpanData spanData =
+        SpanData.create(
+            SpanContext.create(
+                TraceId.generateRandomId(random),
+                SpanId.generateRandomId(random),
+                TraceOptions.DEFAULT),
+            null,
+            null,
+            "",
+            null,
+            startTimestamp,
+            Attributes.create(Collections.<String, AttributeValue>emptyMap(), 0),
+            TimedEvents.create(Collections.<TimedEvent<Annotation>>emptyList(), 0),
+            TimedEvents.create(Collections.<TimedEvent<MessageEvent>>emptyList(), 0),
+            Links.create(Collections.<Link>emptyList(), 0),
+            null,
+            null,
+            null);
+    assertThat(SpanDataCodec.decode(SpanDataCodec.encode(spanData))).isEqualTo(spanData);
+  }
+
+  @Test
+  public void encodeAndDecode_StatusWithoutDescription() {
+    SpanData spanData =
+        SpanData.create(
+            spanContext,
+            parentSpanId,
+            false,
+            "SpanName",
+            Kind.CLIENT,
+            startTimestamp,
+            Attributes.create(Collections.<String, AttributeValue>emptyMap(), 0),
+            TimedEvents.create(Collections.<TimedEvent<Annotation>>emptyList(), 0),
+            TimedEvents.create(Collections.<TimedEvent<MessageEvent>>emptyList(), 0),
+            Links.create(Collections.<Link>emptyList(), 0),
+            0,
+            Status.OK,
+            endTimestamp);
+    assertThat(SpanDataCodec.decode(SpanDataCodec.encode(spanData))).isEqualTo(spanData);
+  }
+}
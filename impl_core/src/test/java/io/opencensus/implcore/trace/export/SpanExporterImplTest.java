@@ -25,7 +25,9 @@ import io.opencensus.implcore.internal.SimpleEventQueue;
 import io.opencensus.implcore.trace.RecordEventsSpanImpl;
 import io.opencensus.implcore.trace.RecordEventsSpanImpl.StartEndHandler;
 import io.opencensus.implcore.trace.StartEndHandlerImpl;
+import io.opencensus.implcore.trace.samplers.AdaptiveSampler;
 import io.opencensus.testing.export.TestHandler;
+import io.opencensus.trace.Span;
 import io.opencensus.trace.SpanContext;
 import io.opencensus.trace.SpanId;
 import io.opencensus.trace.TraceId;
@@ -34,13 +36,19 @@ import io.opencensus.trace.Tracestate;
 import io.opencensus.trace.config.TraceParams;
 import io.opencensus.trace.export.SpanData;
 import io.opencensus.trace.export.SpanExporter.Handler;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 import javax.annotation.concurrent.GuardedBy;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 import org.mockito.ArgumentMatchers;
@@ -70,6 +78,7 @@ public class SpanExporterImplTest {
       SampledSpanStoreImpl.getNoopSampledSpanStoreImpl();
   private final TestHandler serviceHandler = new TestHandler();
   @Mock private Handler mockServiceHandler;
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
 
   @Before
   public void setUp() {
@@ -179,9 +188,9 @@ public class SpanExporterImplTest {
   }
 
   @Test
-  public void exportMoreSpansThanTheMaximumLimit() {
+  public void slowHandlerDoesNotBlockOtherHandlers() {
     final int bufferSize = 4;
-    final int maxReferencedSpans = bufferSize * 4;
+    final int numBatches = 10;
     SpanExporterImpl spanExporter = SpanExporterImpl.create(bufferSize, Duration.create(1, 0));
     StartEndHandler startEndHandler =
         new StartEndHandlerImpl(
@@ -191,44 +200,188 @@ public class SpanExporterImplTest {
     spanExporter.registerHandler("test.service", serviceHandler);
     spanExporter.registerHandler("test.blocking", blockingExporter);
 
-    List<SpanData> spansToExport = new ArrayList<>(maxReferencedSpans);
-    for (int i = 0; i < maxReferencedSpans; i++) {
-      spansToExport.add(createSampledEndedSpan(startEndHandler, "span_1_" + i).toSpanData());
+    for (int i = 0; i < numBatches; i++) {
+      List<SpanData> spansToExport = new ArrayList<>(bufferSize);
+      for (int j = 0; j < bufferSize; j++) {
+        String spanName = "span_" + i + "_" + j;
+        spansToExport.add(createSampledEndedSpan(startEndHandler, spanName).toSpanData());
+      }
+      // The blocked handler does not delay the other one.
+      List<SpanData> exported = serviceHandler.waitForExport(bufferSize);
+      assertThat(exported).containsExactlyElementsIn(spansToExport);
     }
 
-    assertThat(spanExporter.getReferencedSpans()).isEqualTo(maxReferencedSpans);
+    // The blocked handler holds at most one batch being exported and 4 queued batches, the
+    // following ones are only dropped for that handler.
+    assertThat(spanExporter.getHandlerDroppedSpans("test.blocking"))
+        .isAtLeast((long) (numBatches - 5) * bufferSize);
+    assertThat(spanExporter.getHandlerDroppedSpans("test.service")).isEqualTo(0);
+    assertThat(spanExporter.getDroppedSpans()).isEqualTo(0);
+    assertThat(spanExporter.getTotalDroppedSpans())
+        .isAtLeast((long) (numBatches - 5) * bufferSize);
 
-    // Now we should start dropping.
-    for (int i = 0; i < 7; i++) {
-      createSampledEndedSpan(startEndHandler, "span_2_" + i);
-      assertThat(spanExporter.getDroppedSpans()).isEqualTo(i + 1);
-    }
+    // Release the blocking exporter
+    blockingExporter.unblock();
+  }
+
+  @Test
+  public void adaptiveSamplerSamplesLessWhenSlowHandlerDropsSpans() throws InterruptedException {
+    final int bufferSize = 4;
+    final int numBatches = 10;
+    SpanExporterImpl spanExporter = SpanExporterImpl.create(bufferSize, Duration.create(1, 0));
+    StartEndHandler startEndHandler =
+        new StartEndHandlerImpl(
+            spanExporter, runningSpanStore, sampledSpanStore, new SimpleEventQueue());
+    BlockingExporter blockingExporter = new BlockingExporter();
+    AdaptiveSampler sampler = AdaptiveSampler.create(1e9, spanExporter);
 
-    assertThat(spanExporter.getReferencedSpans()).isEqualTo(maxReferencedSpans);
+    spanExporter.registerHandler("test.service", serviceHandler);
+    spanExporter.registerHandler("test.blocking", blockingExporter);
+    for (int i = 0; i < numBatches; i++) {
+      for (int j = 0; j < bufferSize; j++) {
+        createSampledEndedSpan(startEndHandler, "span_" + i + "_" + j);
+      }
+      serviceHandler.waitForExport(bufferSize);
+    }
+    assertThat(spanExporter.getDroppedSpans()).isEqualTo(0);
+
+    // The first span of the next second halves the probability, whatever the target.
+    Thread.sleep(1100);
+    int sampled = 0;
+    for (int i = 0; i < 1000; i++) {
+      if (sampler.shouldSample(
+          null,
+          null,
+          TraceId.generateRandomId(random),
+          SpanId.generateRandomId(random),
+          SPAN_NAME_1,
+          Collections.<Span>emptyList())) {
+        sampled++;
+      }
+    }
+    assertThat(sampled).isLessThan(700);
 
     // Release the blocking exporter
     blockingExporter.unblock();
+  }
+
+  @Test
+  public void slowHandlerSpillsTheBatchesItCannotQueue() throws IOException {
+    final int bufferSize = 4;
+    final int numBatches = 10;
+    SpanExporterImpl spanExporter = SpanExporterImpl.create(bufferSize, Duration.create(1, 0));
+    spanExporter.enableSpill(temporaryFolder.newFolder(), 1024 * 1024, 1000000);
+    StartEndHandler startEndHandler =
+        new StartEndHandlerImpl(
+            spanExporter, runningSpanStore, sampledSpanStore, new SimpleEventQueue());
+    final BlockingExporter blockingExporter = new BlockingExporter();
+    final TestHandler slowServiceHandler = new TestHandler();
+
+    spanExporter.registerHandler("test.service", serviceHandler);
+    spanExporter.registerHandler(
+        "test.slow",
+        new Handler() {
+          @Override
+          public void export(Collection<SpanData> spanDataList) {
+            blockingExporter.export(spanDataList);
+            slowServiceHandler.export(spanDataList);
+          }
+        });
 
-    List<SpanData> exported = serviceHandler.waitForExport(maxReferencedSpans);
-    assertThat(exported).isNotNull();
-    assertThat(exported).containsExactlyElementsIn(spansToExport);
-    exported.clear();
-    spansToExport.clear();
-
-    // We cannot compare with maxReferencedSpans here because the worker thread may get
-    // unscheduled immediately after exporting, but before updating the pushed spans, if that is
-    // the case at most bufferSize spans will miss.
-    assertThat(spanExporter.getPushedSpans()).isAtLeast((long) maxReferencedSpans - bufferSize);
-
-    for (int i = 0; i < 7; i++) {
-      spansToExport.add(createSampledEndedSpan(startEndHandler, "span_3_" + i).toSpanData());
-      // No more dropped spans.
-      assertThat(spanExporter.getDroppedSpans()).isEqualTo(7);
+    List<SpanData> spansToExport = new ArrayList<>(numBatches * bufferSize);
+    for (int i = 0; i < numBatches; i++) {
+      for (int j = 0; j < bufferSize; j++) {
+        String spanName = "span_" + i + "_" + j;
+        spansToExport.add(createSampledEndedSpan(startEndHandler, spanName).toSpanData());
+      }
+      serviceHandler.waitForExport(bufferSize);
     }
+    // The batches that the blocked handler cannot queue are spilled instead of dropped.
+    assertThat(spanExporter.getHandlerDroppedSpans("test.slow")).isEqualTo(0);
+
+    blockingExporter.unblock();
+    assertThat(slowServiceHandler.waitForExport(numBatches * bufferSize))
+        .containsExactlyElementsIn(spansToExport);
+  }
+
+  @Test
+  public void unregisterHandlerStopsExporting() {
+    SpanExporterImpl spanExporter = SpanExporterImpl.create(4, Duration.create(1, 0));
+    StartEndHandler startEndHandler =
+        new StartEndHandlerImpl(
+            spanExporter, runningSpanStore, sampledSpanStore, new SimpleEventQueue());
+    TestHandler unregisteredHandler = new TestHandler();
+
+    spanExporter.registerHandler("test.service", serviceHandler);
+    spanExporter.registerHandler("test.unregistered", unregisteredHandler);
+    spanExporter.unregisterHandler("test.unregistered");
+
+    RecordEventsSpanImpl span1 = createSampledEndedSpan(startEndHandler, SPAN_NAME_1);
+    spanExporter.flush();
+    assertThat(serviceHandler.waitForExport(1)).containsExactly(span1.toSpanData());
+    assertThat(unregisteredHandler.waitForExport(0)).isEmpty();
+  }
 
-    exported = serviceHandler.waitForExport(7);
-    assertThat(exported).isNotNull();
-    assertThat(exported).containsExactlyElementsIn(spansToExport);
+  // Handler that collects the names of the exported spans.
+  private static class NameCollectingHandler extends Handler {
+    @GuardedBy("this")
+    final List<String> names = new ArrayList<>();
+
+    @Override
+    public synchronized void export(Collection<SpanData> spanDataList) {
+      for (SpanData spanData : spanDataList) {
+        names.add(spanData.getName());
+      }
+    }
+
+    synchronized List<String> getNames() {
+      return new ArrayList<>(names);
+    }
+  }
+
+  @Test(timeout = 10000L)
+  public void exportSpansFromManyThreads() throws InterruptedException {
+    final int numThreads = 4;
+    final int spansPerThread = 1000;
+    SpanExporterImpl spanExporter = SpanExporterImpl.create(16, Duration.create(0, 1000000));
+    final StartEndHandler startEndHandler =
+        new StartEndHandlerImpl(
+            spanExporter, runningSpanStore, sampledSpanStore, new SimpleEventQueue());
+    NameCollectingHandler handler = new NameCollectingHandler();
+    spanExporter.registerHandler("test.collecting", handler);
+
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < numThreads; t++) {
+      final String prefix = "span_" + t + "_";
+      Thread thread =
+          new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  for (int i = 0; i < spansPerThread; i++) {
+                    createSampledEndedSpan(startEndHandler, prefix + i);
+                  }
+                }
+              });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    while (spanExporter.getReferencedSpans() > 0) {
+      Thread.sleep(10);
+    }
+    // Waits for the handler to export the batches handed over to it.
+    spanExporter.flush();
+    // Every span is either exported once or dropped, by the exporter or for the handler.
+    List<String> names = handler.getNames();
+    Set<String> uniqueNames = new HashSet<>(names);
+    assertThat(uniqueNames).hasSize(names.size());
+    long handlerDroppedSpans = spanExporter.getHandlerDroppedSpans("test.collecting");
+    assertThat(names.size() + handlerDroppedSpans + spanExporter.getDroppedSpans())
+        .isEqualTo((long) numThreads * spansPerThread);
+    assertThat(spanExporter.getPushedSpans()).isEqualTo(names.size() + handlerDroppedSpans);
   }
 
   @Test
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.trace.export;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.common.Timestamp;
+import io.opencensus.trace.Annotation;
+import io.opencensus.trace.AttributeValue;
+import io.opencensus.trace.Link;
+import io.opencensus.trace.MessageEvent;
+import io.opencensus.trace.SpanContext;
+import io.opencensus.trace.SpanId;
+import io.opencensus.trace.Status;
+import io.opencensus.trace.TraceId;
+import io.opencensus.trace.TraceOptions;
+import io.opencensus.trace.export.SpanData;
+import io.opencensus.trace.export.SpanData.Attributes;
+import io.opencensus.trace.export.SpanData.Links;
+import io.opencensus.trace.export.SpanData.TimedEvent;
+import io.opencensus.trace.export.SpanData.TimedEvents;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link SpanSpillLog}. */
+@RunWith(JUnit4.class)
+public class SpanSpillLogTest {
+  private static final int SEGMENT_BYTES = 4096;
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+  private final Random random = new Random(1234);
+
+  private SpanData createSpanData(String name) {
+    return SpanData.create(
+        SpanContext.create(
+            TraceId.generateRandomId(random),
+            SpanId.generateRandomId(random),
+            TraceOptions.builder().setIsSampled(true).build()),
+        null,
+        null,
+        name,
+        null,
+        Timestamp.create(123, 456),
+        Attributes.create(Collections.<String, AttributeValue>emptyMap(), 0),
+        TimedEvents.create(Collections.<TimedEvent<Annotation>>emptyList(), 0),
+        TimedEvents.create(Collections.<TimedEvent<MessageEvent>>emptyList(), 0),
+        Links.create(Collections.<Link>emptyList(), 0),
+        null,
+        Status.OK,
+        Timestamp.create(124, 0));
+  }
+
+  private List<SpanData> createBatch(String name, int size) {
+    List<SpanData> batch = new ArrayList<SpanData>(size);
+    for (int i = 0; i < size; i++) {
+      batch.add(createSpanData(name + "/" + i));
+    }
+    return batch;
+  }
+
+  @Test
+  public void appendAndPoll() throws IOException {
+    SpanSpillLog spillLog = SpanSpillLog.open(temporaryFolder.newFolder(), SEGMENT_BYTES, 4);
+    assertThat(spillLog.isEmpty()).isTrue();
+    assertThat(spillLog.poll()).isNull();
+    List<SpanData> first = createBatch("first", 3);
+    List<SpanData> second = createBatch("second", 1);
+    assertThat(spillLog.append(first)).isTrue();
+    assertThat(spillLog.append(second)).isTrue();
+    assertThat(spillLog.isEmpty()).isFalse();
+    assertThat(spillLog.poll()).containsExactlyElementsIn(first).inOrder();
+    assertThat(spillLog.poll()).containsExactlyElementsIn(second).inOrder();
+    assertThat(spillLog.isEmpty()).isTrue();
+    assertThat(spillLog.poll()).isNull();
+  }
+
+  @Test
+  public void appendToManySegments() throws IOException {
+    File directory = temporaryFolder.newFolder();
+    SpanSpillLog spillLog = SpanSpillLog.open(directory, SEGMENT_BYTES, 100);
+    List<List<SpanData>> batches = new ArrayList<List<SpanData>>();
+    for (int i = 0; i < 50; i++) {
+      List<SpanData> batch = createBatch("batch" + i, 5);
+      batches.add(batch);
+      assertThat(spillLog.append(batch)).isTrue();
+    }
+    assertThat(directory.list().length).isGreaterThan(1);
+    for (List<SpanData> batch : batches) {
+      assertThat(spillLog.poll()).containsExactlyElementsIn(batch).inOrder();
+    }
+    assertThat(spillLog.poll()).isNull();
+    // Only the segment being written is left.
+    assertThat(directory.list().length).isEqualTo(1);
+  }
+
+  @Test
+  public void refusesBatchesWhenFull() throws IOException {
+    SpanSpillLog spillLog = SpanSpillLog.open(temporaryFolder.newFolder(), SEGMENT_BYTES, 2);
+    int appended = 0;
+    while (spillLog.append(createBatch("batch" + appended, 5))) {
+      appended++;
+    }
+    assertThat(appended).isGreaterThan(0);
+    // Room is made by consuming a whole segment.
+    while (spillLog.poll() != null) {}
+    assertThat(spillLog.append(createBatch("batch", 5))).isTrue();
+  }
+
+  @Test
+  public void refusesBatchesLargerThanASegment() throws IOException {
+    SpanSpillLog spillLog = SpanSpillLog.open(temporaryFolder.newFolder(), SEGMENT_BYTES, 100);
+    assertThat(spillLog.append(createBatch("batch", 1000))).isFalse();
+    assertThat(spillLog.isEmpty()).isTrue();
+  }
+
+  @Test
+  public void refusesBatchesWhenClosed() throws IOException {
+    SpanSpillLog spillLog = SpanSpillLog.open(temporaryFolder.newFolder(), SEGMENT_BYTES, 4);
+    spillLog.close();
+    assertThat(spillLog.append(createBatch("batch", 1))).isFalse();
+  }
+
+  @Test
+  public void replaysUnconsumedBatchesAfterReopen() throws IOException {
+    File directory = temporaryFolder.newFolder();
+    SpanSpillLog spillLog = SpanSpillLog.open(directory, SEGMENT_BYTES, 100);
+    List<List<SpanData>> batches = new ArrayList<List<SpanData>>();
+    for (int i = 0; i < 20; i++) {
+      List<SpanData> batch = createBatch("batch" + i, 5);
+      batches.add(batch);
+      assertThat(spillLog.append(batch)).isTrue();
+    }
+    for (int i = 0; i < 7; i++) {
+      assertThat(spillLog.poll()).containsExactlyElementsIn(batches.get(i)).inOrder();
+    }
+    spillLog.close();
+
+    SpanSpillLog reopened = SpanSpillLog.open(directory, SEGMENT_BYTES, 100);
+    List<SpanData> newBatch = createBatch("new", 2);
+    assertThat(reopened.append(newBatch)).isTrue();
+    for (int i = 7; i < 20; i++) {
+      assertThat(reopened.poll()).containsExactlyElementsIn(batches.get(i)).inOrder();
+    }
+    assertThat(reopened.poll()).containsExactlyElementsIn(newBatch).inOrder();
+    assertThat(reopened.poll()).isNull();
+  }
+
+  @Test
+  public void skipsCorruptedRecords() throws IOException {
+    File directory = temporaryFolder.newFolder();
+    SpanSpillLog spillLog = SpanSpillLog.open(directory, SEGMENT_BYTES, 4);
+    List<SpanData> first = createBatch("first", 1);
+    List<SpanData> second = createBatch("second", 1);
+    spillLog.append(first);
+    spillLog.append(second);
+    spillLog.close();
+    // Flips a byte of the first record, after the segment and record headers.
+    File segment = directory.listFiles()[0];
+    RandomAccessFile file = new RandomAccessFile(segment, "rw");
+    try {
+      file.seek(20);
+      int value = file.read();
+      file.seek(20);
+      file.write(value ^ 0xff);
+    } finally {
+      file.close();
+    }
+
+    SpanSpillLog reopened = SpanSpillLog.open(directory, SEGMENT_BYTES, 4);
+    assertThat(reopened.poll()).containsExactlyElementsIn(second).inOrder();
+    assertThat(reopened.poll()).isNull();
+  }
+
+  @Test
+  public void ignoresSegmentsOfAnotherVersion() throws IOException {
+    File directory = temporaryFolder.newFolder();
+    SpanSpillLog spillLog = SpanSpillLog.open(directory, SEGMENT_BYTES, 4);
+    spillLog.append(createBatch("batch", 1));
+    spillLog.close();
+    File segment = directory.listFiles()[0];
+    RandomAccessFile file = new RandomAccessFile(segment, "rw");
+    try {
+      file.seek(4);
+      file.writeInt(-1);
+    } finally {
+      file.close();
+    }
+
+    SpanSpillLog reopened = SpanSpillLog.open(directory, SEGMENT_BYTES, 4);
+    assertThat(reopened.poll()).isNull();
+    assertThat(segment.exists()).isFalse();
+  }
+}
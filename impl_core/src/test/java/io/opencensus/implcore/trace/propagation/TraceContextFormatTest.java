@@ -283,6 +283,73 @@ public class TraceContextFormatTest {
     traceContextFormat.extract(invalidHeaders, getter);
   }
 
+  @Test
+  public void inject_DifferentTraceStates() {
+    Tracestate otherTracestate = Tracestate.builder().set("baz", "foo").build();
+    for (int i = 0; i < 2; i++) {
+      Map<String, String> carrier = new LinkedHashMap<String, String>();
+      traceContextFormat.inject(
+          SpanContext.create(TRACE_ID, SPAN_ID, SAMPLED_TRACE_OPTIONS, TRACESTATE_NOT_DEFAULT),
+          carrier,
+          setter);
+      assertThat(carrier.get(TRACESTATE)).isEqualTo(TRACESTATE_NOT_DEFAULT_ENCODING);
+      carrier.clear();
+      traceContextFormat.inject(
+          SpanContext.create(TRACE_ID, SPAN_ID, SAMPLED_TRACE_OPTIONS, otherTracestate),
+          carrier,
+          setter);
+      assertThat(carrier.get(TRACESTATE)).isEqualTo("baz=foo");
+    }
+  }
+
+  @Test
+  public void extract_DifferentTraceStates() throws SpanContextParseException {
+    for (int i = 0; i < 2; i++) {
+      Map<String, String> carrier = new LinkedHashMap<String, String>();
+      carrier.put(TRACEPARENT, TRACEPARENT_HEADER_NOT_SAMPLED);
+      carrier.put(TRACESTATE, TRACESTATE_NOT_DEFAULT_ENCODING);
+      assertThat(traceContextFormat.extract(carrier, getter).getTracestate())
+          .isEqualTo(TRACESTATE_NOT_DEFAULT);
+      carrier.put(TRACESTATE, "baz=foo");
+      assertThat(traceContextFormat.extract(carrier, getter).getTracestate())
+          .isEqualTo(Tracestate.builder().set("baz", "foo").build());
+    }
+  }
+
+  @Test
+  public void extract_NotSampledContext_TraceStateWithTabs() throws SpanContextParseException {
+    Map<String, String> carrier = new LinkedHashMap<String, String>();
+    carrier.put(TRACEPARENT, TRACEPARENT_HEADER_NOT_SAMPLED);
+    carrier.put(TRACESTATE, "foo=bar\t, \tbar=baz");
+    assertThat(traceContextFormat.extract(carrier, getter))
+        .isEqualTo(
+            SpanContext.create(TRACE_ID, SPAN_ID, TraceOptions.DEFAULT, TRACESTATE_NOT_DEFAULT));
+  }
+
+  @Test
+  public void extract_InvalidTracestate_EmptyListMember() throws SpanContextParseException {
+    Map<String, String> invalidHeaders = new HashMap<String, String>();
+    invalidHeaders.put(TRACEPARENT, "00-" + TRACE_ID_BASE16 + "-" + SPAN_ID_BASE16 + "-01");
+    invalidHeaders.put(TRACESTATE, "foo=bar, ,bar=baz");
+    thrown.expect(SpanContextParseException.class);
+    thrown.expectMessage("Invalid tracestate: " + "foo=bar, ,bar=baz");
+    traceContextFormat.extract(invalidHeaders, getter);
+  }
+
+  @Test
+  public void extract_InvalidTracestate_TooManyListMembers() throws SpanContextParseException {
+    StringBuilder tracestate = new StringBuilder("key0=value");
+    for (int i = 1; i <= 32; i++) {
+      tracestate.append(",key").append(i).append("=value");
+    }
+    Map<String, String> invalidHeaders = new HashMap<String, String>();
+    invalidHeaders.put(TRACEPARENT, "00-" + TRACE_ID_BASE16 + "-" + SPAN_ID_BASE16 + "-01");
+    invalidHeaders.put(TRACESTATE, tracestate.toString());
+    thrown.expect(SpanContextParseException.class);
+    thrown.expectMessage("Invalid tracestate: " + tracestate);
+    traceContextFormat.extract(invalidHeaders, getter);
+  }
+
   @Test
   public void fieldsList() {
     assertThat(traceContextFormat.fields()).containsExactly(TRACEPARENT, TRACESTATE);
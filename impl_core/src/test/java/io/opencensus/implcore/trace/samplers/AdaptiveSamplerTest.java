@@ -0,0 +1,168 @@
+/*
+ * Copyright 2020, OpenCensus Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opencensus.implcore.trace.samplers;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.common.Duration;
+import io.opencensus.common.Timestamp;
+import io.opencensus.testing.common.TestClock;
+import io.opencensus.trace.Span;
+import io.opencensus.trace.SpanContext;
+import io.opencensus.trace.SpanId;
+import io.opencensus.trace.TraceId;
+import io.opencensus.trace.TraceOptions;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link AdaptiveSampler}. */
+@RunWith(JUnit4.class)
+public class AdaptiveSamplerTest {
+  private static final String SPAN_NAME = "MySpanName";
+  private static final Duration ONE_SECOND = Duration.create(1, 0);
+  private final Random random = new Random(1234);
+  private final TestClock testClock = TestClock.create(Timestamp.create(12345, 54321));
+  private final AtomicLong droppedSpans = new AtomicLong();
+  private final AdaptiveSampler.DroppedSpansCounter droppedSpansCounter =
+      new AdaptiveSampler.DroppedSpansCounter() {
+        @Override
+        public long getDroppedSpans() {
+          return droppedSpans.get();
+        }
+      };
+
+  private int sampleRootSpans(AdaptiveSampler sampler, int numSpans) {
+    int sampled = 0;
+    for (int i = 0; i < numSpans; i++) {
+      if (sampler.shouldSample(
+          null,
+          null,
+          TraceId.generateRandomId(random),
+          SpanId.generateRandomId(random),
+          SPAN_NAME,
+          Collections.<Span>emptyList())) {
+        sampled++;
+      }
+    }
+    return sampled;
+  }
+
+  @Test
+  public void samplesEverythingInitially() {
+    AdaptiveSampler sampler = new AdaptiveSampler(10, droppedSpansCounter, testClock);
+    assertThat(sampler.getProbability()).isEqualTo(1.0);
+    assertThat(sampleRootSpans(sampler, 1000)).isEqualTo(1000);
+  }
+
+  @Test
+  public void adjustsToTarget() {
+    AdaptiveSampler sampler = new AdaptiveSampler(100, droppedSpansCounter, testClock);
+    sampleRootSpans(sampler, 1000);
+    testClock.advanceTime(ONE_SECOND);
+    // The first span of the next second adjusts the probability.
+    sampleRootSpans(sampler, 1);
+    assertThat(sampler.getProbability()).isWithin(1e-9).of(0.1);
+    int sampled = sampleRootSpans(sampler, 999);
+    assertThat(sampled).isAtLeast(50);
+    assertThat(sampled).isAtMost(150);
+  }
+
+  @Test
+  public void adjustsOncePerSecond() {
+    AdaptiveSampler sampler = new AdaptiveSampler(100, droppedSpansCounter, testClock);
+    sampleRootSpans(sampler, 1000);
+    testClock.advanceTime(Duration.create(0, 999999999));
+    sampleRootSpans(sampler, 1);
+    assertThat(sampler.getProbability()).isEqualTo(1.0);
+  }
+
+  @Test
+  public void increasesAtMostTwicePerSecond() {
+    AdaptiveSampler sampler = new AdaptiveSampler(100, droppedSpansCounter, testClock);
+    sampleRootSpans(sampler, 10000);
+    testClock.advanceTime(ONE_SECOND);
+    sampleRootSpans(sampler, 1);
+    assertThat(sampler.getProbability()).isWithin(1e-9).of(0.01);
+    // Nothing is sampled for a second.
+    testClock.advanceTime(ONE_SECOND);
+    sampleRootSpans(sampler, 1);
+    assertThat(sampler.getProbability()).isWithin(1e-9).of(0.02);
+  }
+
+  @Test
+  public void halvesWhenSpansAreDropped() {
+    AdaptiveSampler sampler = new AdaptiveSampler(1000, droppedSpansCounter, testClock);
+    sampleRootSpans(sampler, 1000);
+    droppedSpans.addAndGet(10);
+    testClock.advanceTime(ONE_SECOND);
+    sampleRootSpans(sampler, 1);
+    assertThat(sampler.getProbability()).isEqualTo(0.5);
+    // No new dropped spans.
+    testClock.advanceTime(ONE_SECOND);
+    sampleRootSpans(sampler, 1);
+    assertThat(sampler.getProbability()).isEqualTo(1.0);
+  }
+
+  @Test
+  public void neverBelowMinProbability() {
+    AdaptiveSampler sampler = new AdaptiveSampler(1e-12, droppedSpansCounter, testClock);
+    sampleRootSpans(sampler, 1000);
+    testClock.advanceTime(ONE_SECOND);
+    sampleRootSpans(sampler, 1);
+    assertThat(sampler.getProbability()).isEqualTo(AdaptiveSampler.MIN_PROBABILITY);
+  }
+
+  @Test
+  public void keepsSampledParentDecision() {
+    AdaptiveSampler sampler = new AdaptiveSampler(1e-12, droppedSpansCounter, testClock);
+    sampleRootSpans(sampler, 1000);
+    testClock.advanceTime(ONE_SECOND);
+    sampleRootSpans(sampler, 1);
+    TraceId traceId = TraceId.generateRandomId(random);
+    SpanContext sampledParent =
+        SpanContext.create(
+            traceId,
+            SpanId.generateRandomId(random),
+            TraceOptions.builder().setIsSampled(true).build());
+    for (int i = 0; i < 100; i++) {
+      assertThat(
+              sampler.shouldSample(
+                  sampledParent,
+                  false,
+                  traceId,
+                  SpanId.generateRandomId(random),
+                  SPAN_NAME,
+                  Collections.<Span>emptyList()))
+          .isTrue();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void create_ZeroTarget() {
+    new AdaptiveSampler(0, droppedSpansCounter, testClock);
+  }
+
+  @Test
+  public void getDescription() {
+    assertThat(new AdaptiveSampler(10, droppedSpansCounter, testClock).getDescription())
+        .isEqualTo(String.format("AdaptiveSampler{%.6f}", 10.0));
+  }
+}